@@ -0,0 +1,292 @@
+/*****************************************************
+ *
+ * AssetUploadRequestTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.api;
+
+
+///// Import(s) /////
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import ly.kite.KiteTestCase;
+import ly.kite.util.Asset;
+import ly.kite.util.UploadableImage;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the asset upload request class.
+ *
+ *****************************************************/
+public class AssetUploadRequestTests extends KiteTestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "AssetUploadRequestTests";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Retry tests.
+   *
+   *****************************************************/
+
+  public void testIsRetryable1()
+    {
+    Assert.assertTrue( AssetUploadRequest.isRetryable( new IOException() ) );
+
+    Assert.assertTrue( AssetUploadRequest.isRetryable( new AssetUploadRequest.S3UploadException( 500 ) ) );
+    Assert.assertTrue( AssetUploadRequest.isRetryable( new AssetUploadRequest.S3UploadException( 503 ) ) );
+    Assert.assertTrue( AssetUploadRequest.isRetryable( new AssetUploadRequest.S3UploadException( 408 ) ) );
+    Assert.assertTrue( AssetUploadRequest.isRetryable( new AssetUploadRequest.S3UploadException( 429 ) ) );
+
+    Assert.assertFalse( AssetUploadRequest.isRetryable( new AssetUploadRequest.S3UploadException( 400 ) ) );
+    Assert.assertFalse( AssetUploadRequest.isRetryable( new AssetUploadRequest.S3UploadException( 403 ) ) );
+
+    Assert.assertFalse( AssetUploadRequest.isRetryable( new IllegalStateException() ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Runs a single asset upload against a stub that fails
+   * with the supplied errors in turn, and then succeeds.
+   *
+   *****************************************************/
+  private UploadOutcome upload( final StubUploadRequest request ) throws InterruptedException
+    {
+    final Context                                         context = getContext();
+    final UploadOutcome                                   outcome = new UploadOutcome();
+    final AssetUploadRequest.SignedS3RequestUploadDetails details = new AssetUploadRequest.SignedS3RequestUploadDetails();
+
+    details.assetId         = 123L;
+    details.uploadableImage = new UploadableImage( new Asset( "/tmp/image1.jpg" ) );
+    details.bytes           = new byte[] { 0x3f, 0x12, 0x45 };
+
+    final List<AssetUploadRequest.SignedS3RequestUploadDetails> detailsList = new ArrayList<>();
+    detailsList.add( details );
+
+    new Handler( Looper.getMainLooper() ).post( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        request.startUploads( context, detailsList, outcome );
+        }
+      } );
+
+    Assert.assertTrue( outcome.latch.await( 10, TimeUnit.SECONDS ) );
+
+    outcome.uploadableImage = details.uploadableImage;
+
+    return ( outcome );
+    }
+
+
+  public void testRetry1() throws InterruptedException
+    {
+    // Transient failures are retried, backing off a little more each time
+
+    StubUploadRequest request = new StubUploadRequest( getContext(), new IOException(), new AssetUploadRequest.S3UploadException( 503 ) );
+    UploadOutcome     outcome = upload( request );
+
+    Assert.assertTrue( outcome.succeeded );
+    Assert.assertNull( outcome.error );
+    Assert.assertEquals( 3, request.attemptCount );
+    Assert.assertTrue( outcome.uploadableImage.hasBeenUploaded() );
+
+    Assert.assertEquals( 2, request.delayList.size() );
+    Assert.assertTrue( request.delayList.get( 0 ) > 0 );
+    Assert.assertTrue( request.delayList.get( 1 ) > request.delayList.get( 0 ) );
+    }
+
+
+  public void testRetry2() throws InterruptedException
+    {
+    // The upload fails once all the attempts have been used up
+
+    IOException       lastError = new IOException();
+    StubUploadRequest request   = new StubUploadRequest( getContext(), new IOException(), new IOException(), lastError, new IOException() );
+    UploadOutcome     outcome   = upload( request );
+
+    Assert.assertFalse( outcome.succeeded );
+    Assert.assertSame( lastError, outcome.error );
+    Assert.assertEquals( 3, request.attemptCount );
+    Assert.assertEquals( 2, request.delayList.size() );
+    Assert.assertFalse( outcome.uploadableImage.hasBeenUploaded() );
+    }
+
+
+  public void testRetry3() throws InterruptedException
+    {
+    // Errors that won't go away aren't retried
+
+    AssetUploadRequest.S3UploadException error   = new AssetUploadRequest.S3UploadException( 403 );
+    StubUploadRequest                    request = new StubUploadRequest( getContext(), error );
+    UploadOutcome                        outcome = upload( request );
+
+    Assert.assertFalse( outcome.succeeded );
+    Assert.assertSame( error, outcome.error );
+    Assert.assertEquals( 1, request.attemptCount );
+    Assert.assertEquals( 0, request.delayList.size() );
+    }
+
+  
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * An upload request that doesn't go to S3, but fails
+   * with a list of errors in turn, and then succeeds.
+   * Retries are not delayed, but the delays that would
+   * have been used are recorded.
+   *
+   *****************************************************/
+  private static class StubUploadRequest extends AssetUploadRequest
+    {
+    private Exception[]  mErrors;
+    private Handler      mHandler;
+
+    volatile int         attemptCount;
+    List<Long>           delayList;
+
+
+    StubUploadRequest( Context context, Exception... errors )
+      {
+      super( context );
+
+      mErrors   = errors;
+      mHandler  = new Handler( Looper.getMainLooper() );
+      delayList = new ArrayList<>();
+      }
+
+
+    @Override
+    void uploadAssetToS3( Context context, SignedS3RequestUploadDetails details, byte[] bytes, final UploadToS3Listener listener )
+      {
+      final Exception error = ( attemptCount < mErrors.length ? mErrors[ attemptCount ] : null );
+
+      attemptCount ++;
+
+      // Report the outcome later, as a real upload would
+      mHandler.post( new Runnable()
+        {
+        @Override
+        public void run()
+          {
+          if ( error != null ) listener.onError( error );
+          else                 listener.onUploadComplete();
+          }
+        } );
+      }
+
+
+    @Override
+    long getRetryDelayMillis( int attemptCount )
+      {
+      delayList.add( super.getRetryDelayMillis( attemptCount ) );
+
+      return ( 0 );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Records the outcome of an upload.
+   *
+   *****************************************************/
+  private static class UploadOutcome implements AssetUploadRequest.AssetUploadOrRegisterListener
+    {
+    CountDownLatch   latch = new CountDownLatch( 1 );
+
+    boolean          succeeded;
+    Exception        error;
+    UploadableImage  uploadableImage;
+
+
+    @Override
+    public void onProgress( int totalAssetsUploaded, int totalAssetsToUpload, long bytesWritten, long totalAssetBytesWritten, long totalAssetBytesExpectedToWrite )
+      {
+      }
+
+    @Override
+    public void onSuccess()
+      {
+      succeeded = true;
+      latch.countDown();
+      }
+
+    @Override
+    public void onError( Exception ex )
+      {
+      error = ex;
+      latch.countDown();
+      }
+    }
+
+  }
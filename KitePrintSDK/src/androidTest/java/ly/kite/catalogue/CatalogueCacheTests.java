@@ -0,0 +1,185 @@
+/*****************************************************
+ *
+ * CatalogueCacheTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.catalogue;
+
+
+///// Import(s) /////
+
+import junit.framework.Assert;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ly.kite.KiteTestCase;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the catalogue cache.
+ *
+ *****************************************************/
+public class CatalogueCacheTests extends KiteTestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "CatalogueCacheTests";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Write / read tests.
+   *
+   *****************************************************/
+
+  public void testWriteRead1() throws Exception
+    {
+    CatalogueCache.Writer writer = CatalogueCache.openWriter( getContext(), "api-key-1", "https://example.com/template/", "\"etag1\"", "Wed, 21 Oct 2015 07:28:00 GMT" );
+
+    Assert.assertNotNull( writer );
+
+    writer.writeUserConfig( new JSONObject( "{theme:{primary:\"#00ff00\"}}" ) );
+    writer.writePayPalSupportedCurrencies( new JSONArray( "[\"GBP\",\"USD\"]" ) );
+    writer.writeCustomObject( "extra", new JSONObject( "{a:1}" ) );
+    writer.commit();
+    writer.close();
+
+
+    // Different API key or URL
+
+    Assert.assertNull( CatalogueCache.read( getContext(), "api-key-2", "https://example.com/template/" ) );
+    Assert.assertNull( CatalogueCache.read( getContext(), "api-key-1", "https://example.com/other/" ) );
+
+
+    CatalogueCache.Entry entry = CatalogueCache.read( getContext(), "api-key-1", "https://example.com/template/" );
+
+    Assert.assertNotNull( entry );
+    Assert.assertEquals( "\"etag1\"", entry.getETag() );
+    Assert.assertEquals( "Wed, 21 Oct 2015 07:28:00 GMT", entry.getLastModified() );
+
+    Catalogue catalogue = entry.getCatalogue();
+
+    Assert.assertEquals( 0, catalogue.getProductCount() );
+    Assert.assertEquals( "#00ff00", catalogue.getUserConfigObject( "theme" ).optString( "primary" ) );
+    Assert.assertEquals( 2, catalogue.getPayPalSupportedCurrencyCodes().size() );
+    Assert.assertEquals( 1, catalogue.getCustomObject( "extra" ).optInt( "a" ) );
+    }
+
+  public void testUncommitted1() throws Exception
+    {
+    CatalogueCache.Writer writer = CatalogueCache.openWriter( getContext(), "api-key-1", "https://example.com/template/", null, null );
+
+    writer.commit();
+    writer.close();
+
+    CatalogueCache.Entry entry = CatalogueCache.read( getContext(), "api-key-1", "https://example.com/template/" );
+
+    Assert.assertNotNull( entry );
+    Assert.assertNull( entry.getETag() );
+    Assert.assertNull( entry.getLastModified() );
+
+
+    // An abandoned write should leave the previous file in place
+
+    writer = CatalogueCache.openWriter( getContext(), "api-key-2", "https://example.com/template/", null, null );
+
+    writer.writeCustomObject( "extra", new JSONObject( "{a:1}" ) );
+    writer.close();
+
+    Assert.assertNotNull( CatalogueCache.read( getContext(), "api-key-1", "https://example.com/template/" ) );
+    Assert.assertNull( CatalogueCache.read( getContext(), "api-key-2", "https://example.com/template/" ) );
+    }
+
+
+  public void testOverlappingWriters1() throws Exception
+    {
+    // A writer that is abandoned whilst a newer one is in progress shouldn't affect it
+
+    CatalogueCache.Writer oldWriter = CatalogueCache.openWriter( getContext(), "api-key-1", "https://example.com/template/", "\"old\"", null );
+    CatalogueCache.Writer newWriter = CatalogueCache.openWriter( getContext(), "api-key-1", "https://example.com/template/", "\"new\"", null );
+
+    oldWriter.writeCustomObject( "extra", new JSONObject( "{a:1}" ) );
+    newWriter.writeCustomObject( "extra", new JSONObject( "{a:2}" ) );
+
+    oldWriter.close();
+
+    newWriter.commit();
+    newWriter.close();
+
+    CatalogueCache.Entry entry = CatalogueCache.read( getContext(), "api-key-1", "https://example.com/template/" );
+
+    Assert.assertNotNull( entry );
+    Assert.assertEquals( "\"new\"", entry.getETag() );
+    Assert.assertEquals( 2, entry.getCatalogue().getCustomObject( "extra" ).optInt( "a" ) );
+    }
+
+  public void testNullAPIKey1() throws Exception
+    {
+    CatalogueCache.Writer writer = CatalogueCache.openWriter( getContext(), null, "https://example.com/template/", null, null );
+
+    Assert.assertNotNull( writer );
+
+    writer.commit();
+    writer.close();
+
+    Assert.assertNotNull( CatalogueCache.read( getContext(), null, "https://example.com/template/" ) );
+    Assert.assertNull( CatalogueCache.read( getContext(), "api-key-1", "https://example.com/template/" ) );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  }
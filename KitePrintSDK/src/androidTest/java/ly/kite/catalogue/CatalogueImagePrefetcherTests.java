@@ -0,0 +1,411 @@
+/*****************************************************
+ *
+ * CatalogueImagePrefetcherTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.catalogue;
+
+
+///// Import(s) /////
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import ly.kite.KiteSDK;
+import ly.kite.KiteTestCase;
+import ly.kite.journey.UserJourneyType;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the catalogue image prefetcher.
+ *
+ *****************************************************/
+public class CatalogueImagePrefetcherTests extends KiteTestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "CatalogueImagePrefetcherTests";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Creates a product with images.
+   *
+   *****************************************************/
+  private Product createProduct( String productId, String... imageURLStrings ) throws Exception
+    {
+    Product product = new Product( productId, productId, productId, "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 );
+
+    ArrayList<URL> imageURLList = new ArrayList<>();
+
+    for ( String imageURLString : imageURLStrings ) imageURLList.add( new URL( imageURLString ) );
+
+    product.setImageURLs( new URL( "http://kite.ly/" + productId + "-hero.jpg" ), imageURLList );
+
+    return ( product );
+    }
+
+
+  /*****************************************************
+   *
+   * Creates a list of items, with image URLs that won't
+   * have been cached.
+   *
+   *****************************************************/
+  private List<CatalogueImagePrefetcher.PrefetchItem> createItemList( int essentialCount, int nonEssentialCount ) throws Exception
+    {
+    List<CatalogueImagePrefetcher.PrefetchItem> itemList = new ArrayList<>();
+
+    long uniqueId = System.nanoTime();
+
+    for ( int itemIndex = 0; itemIndex < essentialCount + nonEssentialCount; itemIndex ++ )
+      {
+      URL imageURL = new URL( "http://kite.ly/prefetch-test-" + uniqueId + "-" + itemIndex + ".jpg" );
+
+      itemList.add( new CatalogueImagePrefetcher.PrefetchItem( KiteSDK.IMAGE_CATEGORY_PRODUCT_IMAGE, imageURL, itemIndex < essentialCount ) );
+      }
+
+    return ( itemList );
+    }
+
+
+  /*****************************************************
+   *
+   * Completes each download that a prefetcher requests,
+   * until it stops requesting any more.
+   *
+   *****************************************************/
+  private void completeDownloads( StubPrefetcher prefetcher )
+    {
+    for ( int urlIndex = 0; urlIndex < prefetcher.requestedURLList.size(); urlIndex ++ )
+      {
+      prefetcher.onDownloadSuccess( prefetcher.requestedURLList.get( urlIndex ), null, null );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if any URL in a list starts with the
+   * supplied string.
+   *
+   *****************************************************/
+  private boolean containsURLStartingWith( List<URL> urlList, String urlPrefix )
+    {
+    for ( URL url : urlList )
+      {
+      if ( url.toString().startsWith( urlPrefix ) ) return ( true );
+      }
+
+    return ( false );
+    }
+
+
+  /*****************************************************
+   *
+   * Ranking tests.
+   *
+   *****************************************************/
+
+  public void testRanking1() throws Exception
+    {
+    Catalogue catalogue = new Catalogue();
+
+    catalogue.addProduct( "Group A", new URL( "http://kite.ly/group-a.jpg" ), createProduct( "product1", "http://kite.ly/product1-1.jpg", "http://kite.ly/product1-2.jpg" ) );
+    catalogue.addProduct( "Group B", new URL( "http://kite.ly/group-b.jpg" ), createProduct( "product2", "http://kite.ly/product2-1.jpg" ) );
+
+    List<CatalogueImagePrefetcher.PrefetchItem> itemList = CatalogueImagePrefetcher.getRankedItemList( catalogue, true );
+
+    Assert.assertEquals( 7, itemList.size() );
+
+    Assert.assertEquals( "http://kite.ly/group-a.jpg",       itemList.get( 0 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/group-b.jpg",       itemList.get( 1 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/product1-hero.jpg", itemList.get( 2 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/product2-hero.jpg", itemList.get( 3 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/product1-1.jpg",    itemList.get( 4 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/product2-1.jpg",    itemList.get( 5 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/product1-2.jpg",    itemList.get( 6 ).mImageURL.toString() );
+
+    Assert.assertEquals( KiteSDK.IMAGE_CATEGORY_PRODUCT_ITEM,  itemList.get( 3 ).mImageCategory );
+    Assert.assertEquals( KiteSDK.IMAGE_CATEGORY_PRODUCT_IMAGE, itemList.get( 4 ).mImageCategory );
+
+    Assert.assertTrue ( itemList.get( 5 ).mIsEssential );
+    Assert.assertFalse( itemList.get( 6 ).mIsEssential );
+    }
+
+  public void testRanking2() throws Exception
+    {
+    Catalogue catalogue = new Catalogue();
+
+    // Products that share a group image should only fetch it once
+    catalogue.addProduct( "Group A", new URL( "http://kite.ly/group-a.jpg" ), createProduct( "product1", "http://kite.ly/product1-1.jpg", "http://kite.ly/product1-2.jpg" ) );
+    catalogue.addProduct( "Group A", new URL( "http://kite.ly/group-a.jpg" ), createProduct( "product2" ) );
+
+    List<CatalogueImagePrefetcher.PrefetchItem> itemList = CatalogueImagePrefetcher.getRankedItemList( catalogue, false );
+
+    Assert.assertEquals( 4, itemList.size() );
+
+    Assert.assertEquals( "http://kite.ly/group-a.jpg",       itemList.get( 0 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/product1-hero.jpg", itemList.get( 1 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/product2-hero.jpg", itemList.get( 2 ).mImageURL.toString() );
+    Assert.assertEquals( "http://kite.ly/product1-1.jpg",    itemList.get( 3 ).mImageURL.toString() );
+    }
+
+
+  /*****************************************************
+   *
+   * Download tests.
+   *
+   *****************************************************/
+
+  public void testConcurrency1() throws Exception
+    {
+    List<CatalogueImagePrefetcher.PrefetchItem> itemList   = createItemList( 5, 0 );
+    StubPrefetcher                              prefetcher = new StubPrefetcher( getContext(), true, false );
+
+    prefetcher.setPendingItems( itemList );
+    prefetcher.start();
+
+    // No more than 2 downloads are in progress at any time
+
+    Assert.assertEquals( 2, prefetcher.requestedURLList.size() );
+
+    prefetcher.onDownloadSuccess( itemList.get( 0 ).mImageURL, null, null );
+
+    Assert.assertEquals( 3, prefetcher.requestedURLList.size() );
+
+    prefetcher.onDownloadSuccess( itemList.get( 1 ).mImageURL, null, null );
+    prefetcher.onDownloadSuccess( itemList.get( 2 ).mImageURL, null, null );
+
+    Assert.assertEquals( 5, prefetcher.requestedURLList.size() );
+
+    prefetcher.onDownloadSuccess( itemList.get( 3 ).mImageURL, null, null );
+    prefetcher.onDownloadSuccess( itemList.get( 4 ).mImageURL, null, null );
+
+    Assert.assertEquals( 5, prefetcher.requestedURLList.size() );
+
+    for ( int itemIndex = 0; itemIndex < itemList.size(); itemIndex ++ )
+      {
+      Assert.assertEquals( itemList.get( itemIndex ).mImageURL, prefetcher.requestedURLList.get( itemIndex ) );
+      }
+    }
+
+  public void testFailure1() throws Exception
+    {
+    List<CatalogueImagePrefetcher.PrefetchItem> itemList   = createItemList( 5, 0 );
+    StubPrefetcher                              prefetcher = new StubPrefetcher( getContext(), true, false );
+
+    prefetcher.setPendingItems( itemList );
+    prefetcher.start();
+
+    Assert.assertEquals( 2, prefetcher.requestedURLList.size() );
+
+    // The first failure stops any more downloads, even when the other one completes
+
+    prefetcher.onDownloadFailure( itemList.get( 0 ).mImageURL, new IOException( "Test failure" ) );
+    prefetcher.onDownloadSuccess( itemList.get( 1 ).mImageURL, null, null );
+
+    Assert.assertEquals( 2, prefetcher.requestedURLList.size() );
+    }
+
+  public void testCancel1() throws Exception
+    {
+    List<CatalogueImagePrefetcher.PrefetchItem> itemList   = createItemList( 5, 0 );
+    StubPrefetcher                              prefetcher = new StubPrefetcher( getContext(), true, false );
+
+    prefetcher.setPendingItems( itemList );
+    prefetcher.start();
+
+    Assert.assertEquals( 2, prefetcher.requestedURLList.size() );
+
+    // Cancelled downloads free up their slots, so prefetching can carry on later
+
+    prefetcher.onDownloadCancelled( itemList.get( 0 ).mImageURL );
+    prefetcher.onDownloadCancelled( itemList.get( 1 ).mImageURL );
+
+    prefetcher.start();
+
+    Assert.assertEquals( 4, prefetcher.requestedURLList.size() );
+    Assert.assertEquals( itemList.get( 2 ).mImageURL, prefetcher.requestedURLList.get( 2 ) );
+    Assert.assertEquals( itemList.get( 3 ).mImageURL, prefetcher.requestedURLList.get( 3 ) );
+    }
+
+  public void testNetwork1() throws Exception
+    {
+    // Nothing is downloaded without a network connection
+
+    StubPrefetcher prefetcher = new StubPrefetcher( getContext(), false, false );
+
+    prefetcher.setPendingItems( createItemList( 2, 2 ) );
+    prefetcher.start();
+
+    Assert.assertEquals( 0, prefetcher.requestedURLList.size() );
+    }
+
+  public void testNetwork2() throws Exception
+    {
+    // On a metered network, only the essential images are downloaded
+
+    List<CatalogueImagePrefetcher.PrefetchItem> itemList   = createItemList( 1, 3 );
+    StubPrefetcher                              prefetcher = new StubPrefetcher( getContext(), true, true );
+
+    prefetcher.setPendingItems( itemList );
+    prefetcher.start();
+
+    Assert.assertEquals( 1, prefetcher.requestedURLList.size() );
+
+    prefetcher.onDownloadSuccess( itemList.get( 0 ).mImageURL, null, null );
+
+    Assert.assertEquals( 1, prefetcher.requestedURLList.size() );
+    Assert.assertEquals( itemList.get( 0 ).mImageURL, prefetcher.requestedURLList.get( 0 ) );
+    }
+
+  public void testNetwork3() throws Exception
+    {
+    Catalogue catalogue = new Catalogue();
+
+    catalogue.addProduct( "Group A", null, createProduct( "product1", "http://kite.ly/product1-1-" + System.nanoTime() + ".jpg", "http://kite.ly/product1-2-" + System.nanoTime() + ".jpg" ) );
+
+    // Gallery images after the first are never downloaded if the customiser doesn't
+    // allow them, even on an unmetered network.
+
+    StubPrefetcher prefetcher = new StubPrefetcher( getContext(), true, false );
+
+    prefetcher.setPendingItems( CatalogueImagePrefetcher.getRankedItemList( catalogue, false ) );
+    prefetcher.start();
+
+    completeDownloads( prefetcher );
+
+    Assert.assertTrue( containsURLStartingWith( prefetcher.requestedURLList, "http://kite.ly/product1-1-" ) );
+    Assert.assertFalse( containsURLStartingWith( prefetcher.requestedURLList, "http://kite.ly/product1-2-" ) );
+
+
+    // If they are allowed, they are only downloaded on an unmetered network
+
+    prefetcher = new StubPrefetcher( getContext(), true, true );
+
+    prefetcher.setPendingItems( CatalogueImagePrefetcher.getRankedItemList( catalogue, true ) );
+    prefetcher.start();
+
+    completeDownloads( prefetcher );
+
+    Assert.assertFalse( containsURLStartingWith( prefetcher.requestedURLList, "http://kite.ly/product1-2-" ) );
+
+    prefetcher = new StubPrefetcher( getContext(), true, false );
+
+    prefetcher.setPendingItems( CatalogueImagePrefetcher.getRankedItemList( catalogue, true ) );
+    prefetcher.start();
+
+    completeDownloads( prefetcher );
+
+    Assert.assertTrue( containsURLStartingWith( prefetcher.requestedURLList, "http://kite.ly/product1-2-" ) );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * A prefetcher with a fixed network state, that records
+   * download requests instead of making them.
+   *
+   *****************************************************/
+  static private class StubPrefetcher extends CatalogueImagePrefetcher
+    {
+    private boolean  mIsConnected;
+    private boolean  mIsMetered;
+
+    List<URL>        requestedURLList;
+
+
+    StubPrefetcher( Context context, boolean isConnected, boolean isMetered )
+      {
+      super( context );
+
+      mIsConnected     = isConnected;
+      mIsMetered       = isMetered;
+      requestedURLList = new ArrayList<>();
+      }
+
+
+    @Override
+    boolean isNetworkConnected()
+      {
+      return ( mIsConnected );
+      }
+
+
+    @Override
+    boolean isNetworkMetered()
+      {
+      return ( mIsMetered );
+      }
+
+
+    @Override
+    void requestDownload( URL imageURL, File imageDirectory, File imageFile )
+      {
+      requestedURLList.add( imageURL );
+      }
+    }
+
+  }
@@ -39,6 +39,8 @@ package ly.kite.catalogue;
 
 ///// Import(s) /////
 
+import android.util.JsonReader;
+
 import junit.framework.Assert;
 
 import org.json.JSONArray;
@@ -46,6 +48,12 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
 import ly.kite.KiteTestCase;
 
 
@@ -63,42 +71,15 @@ public class CatalogueLoaderTests extends KiteTestCase
   @SuppressWarnings( "unused" )
   private static final String  LOG_TAG = "CatalogueLoaderTests";
 
-
-  ////////// Static Variable(s) //////////
-
-
-  ////////// Member Variable(s) //////////
-
-
-  ////////// Static Initialiser(s) //////////
-
-
-  ////////// Static Method(s) //////////
-
-
-  ////////// Constructor(s) //////////
-
-
-  ////////// Method(s) //////////
-
-  /*****************************************************
-   *
-   * Parse products test.
-   *
-   *****************************************************/
-
-  public void testParseProducts1()
-    {
-    Catalogue catalogue = new Catalogue();
-
-    JSONTokener tokener = new JSONTokener(
-            "[" +
+  // A complete product
+  static private final String  PRODUCT1_JSON_STRING =
                     "{" +
                     "active:true," +
                     "product_active:true," +
                     "template_id:product1," +
                     "name:\"Product 1\"," +
                     "description:\"This is product 1\"," +
+                    "product_category:\"Prints\"," +
                     "images_per_page:1," +  // Optional
                     "grid_count_x:1," +  // Optional
                     "grid_count_y:1," +  // Optional
@@ -130,8 +111,37 @@ public class CatalogueLoaderTests extends KiteTestCase
                             "mask_bleed: [ 1, 1, 1, 1 ]," +
                             "image_border: [ 0.1, 0.1, 0.1, 0.1 ]" +
                             "}" +
-                    "}" +
-            "]" );
+                    "}";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Parse products test.
+   *
+   *****************************************************/
+
+  public void testParseProducts1()
+    {
+    Catalogue catalogue = new Catalogue();
+
+    JSONTokener tokener = new JSONTokener( "[" + PRODUCT1_JSON_STRING + "]" );
 
     try
       {
@@ -148,14 +158,254 @@ public class CatalogueLoaderTests extends KiteTestCase
     }
 
 
+  /*****************************************************
+   *
+   * Returns the JSON for a numbered product, in one of
+   * two groups.
+   *
+   *****************************************************/
+  static private JSONObject createProductJSONObject( int productNumber ) throws JSONException
+    {
+    String jsonString = PRODUCT1_JSON_STRING
+            .replace( "template_id:product1", "template_id:product" + productNumber )
+            .replace( "\"Product 1\"", "\"Product " + productNumber + "\"" )
+            .replace( "\"Product group 1\"", "\"Product group " + ( 1 + ( productNumber / 5 ) % 2 ) + "\"" );
+
+    return ( new JSONObject( jsonString ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the ids of the products in a catalogue, in
+   * order.
+   *
+   *****************************************************/
+  static private List<String> getProductIdList( Catalogue catalogue )
+    {
+    return ( getProductIdList( catalogue.getProducts() ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the ids of a collection of products, in
+   * order.
+   *
+   *****************************************************/
+  static private List<String> getProductIdList( Collection<Product> productCollection )
+    {
+    List<String> productIdList = new ArrayList<>();
+
+    for ( Product product : productCollection )
+      {
+      productIdList.add( product.getId() );
+      }
+
+    return ( productIdList );
+    }
+
+
+  /*****************************************************
+   *
+   * Parallel parse tests.
+   *
+   *****************************************************/
+
+  public void testProductListParser1() throws Exception
+    {
+    // Enough products for several chunks, and a part chunk, including one that
+    // can't be parsed.
+
+    List<JSONObject> productJSONObjectList = new ArrayList<>();
+
+    for ( int productNumber = 1; productNumber <= 30; productNumber ++ )
+      {
+      productJSONObjectList.add( productNumber == 13 ? new JSONObject( "{template_id:bad}" ) : createProductJSONObject( productNumber ) );
+      }
+
+
+    Catalogue sequentialCatalogue = new Catalogue();
+
+    for ( JSONObject productJSONObject : productJSONObjectList )
+      {
+      CatalogueLoader.parseProduct( productJSONObject, sequentialCatalogue );
+      }
+
+
+    Catalogue                         parallelCatalogue  = new Catalogue();
+    CatalogueLoader.ProductListParser productListParser  = new CatalogueLoader.ProductListParser( parallelCatalogue, null, null );
+
+    for ( JSONObject productJSONObject : productJSONObjectList )
+      {
+      productListParser.add( productJSONObject );
+      }
+
+    productListParser.finish();
+
+
+    // The bad product is skipped, and the rest are in their original order
+
+    List<String> productIdList = getProductIdList( parallelCatalogue );
+
+    Assert.assertEquals( 29, productIdList.size() );
+    Assert.assertEquals( "product1", productIdList.get( 0 ) );
+    Assert.assertEquals( "product12", productIdList.get( 11 ) );
+    Assert.assertEquals( "product14", productIdList.get( 12 ) );
+    Assert.assertEquals( "product30", productIdList.get( 28 ) );
+
+
+    // The catalogue is the same as a sequential parse
+
+    Assert.assertEquals( getProductIdList( sequentialCatalogue ), productIdList );
+
+    List<ProductGroup> sequentialGroupList = sequentialCatalogue.getProductGroupList();
+    List<ProductGroup> parallelGroupList   = parallelCatalogue.getProductGroupList();
+
+    Assert.assertEquals( 2, parallelGroupList.size() );
+    Assert.assertEquals( sequentialGroupList.size(), parallelGroupList.size() );
+
+    for ( int groupIndex = 0; groupIndex < parallelGroupList.size(); groupIndex ++ )
+      {
+      Assert.assertEquals( sequentialGroupList.get( groupIndex ).getDisplayLabel(), parallelGroupList.get( groupIndex ).getDisplayLabel() );
+      Assert.assertEquals( getProductIdList( sequentialGroupList.get( groupIndex ).getProductList() ), getProductIdList( parallelGroupList.get( groupIndex ).getProductList() ) );
+      }
+    }
+
+
+  public void testProductListParser2() throws Exception
+    {
+    // An unexpected error in a chunk is passed on, rather than losing the chunk
+
+    CatalogueLoader.ProductListParser productListParser = new CatalogueLoader.ProductListParser( new Catalogue(), null, null );
+
+    try
+      {
+      for ( int productNumber = 1; productNumber <= 30; productNumber ++ )
+        {
+        productListParser.add( productNumber == 13 ? new FailingJSONObject() : createProductJSONObject( productNumber ) );
+        }
+
+      productListParser.finish();
+
+      Assert.fail( "Expected parse error" );
+      }
+    catch ( ParseError pe )
+      {
+      // Expected
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Re-use of unchanged products test.
+   *
+   *****************************************************/
+
+  public void testReuseProducts1() throws Exception
+    {
+    String catalogueJSONString = "{objects:[" + PRODUCT1_JSON_STRING + "]}";
+
+    HashMap<String,CatalogueLoader.ParsedProduct> parsedProductTable1 = new HashMap<>();
+
+    JsonReader jsonReader = new JsonReader( new StringReader( catalogueJSONString ) );
+    jsonReader.setLenient( true );
+
+    Catalogue catalogue1 = CatalogueLoader.parseCatalogue( jsonReader, null, null, parsedProductTable1 );
+
+    Assert.assertEquals( 1, catalogue1.getProductCount() );
+    Assert.assertEquals( 1, parsedProductTable1.size() );
+
+
+    // The same JSON should give the same product
+
+    HashMap<String,CatalogueLoader.ParsedProduct> parsedProductTable2 = new HashMap<>();
+
+    jsonReader = new JsonReader( new StringReader( catalogueJSONString ) );
+    jsonReader.setLenient( true );
+
+    Catalogue catalogue2 = CatalogueLoader.parseCatalogue( jsonReader, null, parsedProductTable1, parsedProductTable2 );
+
+    Assert.assertEquals( 1, catalogue2.getProductCount() );
+    Assert.assertSame( catalogue1.getProduct( 0 ), catalogue2.getProduct( 0 ) );
+    Assert.assertEquals( parsedProductTable1.keySet(), parsedProductTable2.keySet() );
+
+
+    // Changed JSON should give a new product
+
+    jsonReader = new JsonReader( new StringReader( catalogueJSONString.replace( "This is product 1", "This is product 1 again" ) ) );
+    jsonReader.setLenient( true );
+
+    Catalogue catalogue3 = CatalogueLoader.parseCatalogue( jsonReader, null, parsedProductTable2, null );
+
+    Assert.assertEquals( 1, catalogue3.getProductCount() );
+    Assert.assertNotSame( catalogue1.getProduct( 0 ), catalogue3.getProduct( 0 ) );
+    Assert.assertEquals( "This is product 1 again", catalogue3.getProduct( 0 ).getDescription() );
+    }
+
+
+  /*****************************************************
+   *
+   * Stream parse catalogue test.
+   *
+   *****************************************************/
+
+  public void testParseCatalogue1()
+    {
+    JsonReader jsonReader = new JsonReader( new StringReader(
+            "{" +
+                    "user_config:{theme:{primary:\"#ff0000\"}}," +
+                    "objects:[ 1, \"not a product\" ]," +
+                    "paypal_supported_currencies:[\"GBP\",\"EUR\"]," +
+                    "ignored:{a:[1,2,{b:null}]}" +
+            "}" ) );
+
+    jsonReader.setLenient( true );
+
+    try
+      {
+      Catalogue catalogue = CatalogueLoader.parseCatalogue( jsonReader );
+
+      Assert.assertEquals( 0, catalogue.getProductCount() );
+      Assert.assertEquals( 2, catalogue.getPayPalSupportedCurrencyCodes().size() );
+      Assert.assertEquals( "GBP", catalogue.getPayPalSupportedCurrencyCodes().get( 0 ) );
+      Assert.assertEquals( "#ff0000", catalogue.getUserConfigObject( "theme" ).optString( "primary" ) );
+      Assert.assertNotNull( catalogue.getCustomObject( "ignored" ) );
+      }
+    catch ( Exception exception )
+      {
+      Assert.fail( exception.getMessage() );
+      }
+    }
+
+
 
   ////////// Inner Class(es) //////////
 
   /*****************************************************
    *
-   * ...
+   * An unexpected error whilst parsing.
    *
    *****************************************************/
+  static private class ParseError extends Error
+    {
+    }
+
+
+  /*****************************************************
+   *
+   * Product JSON that fails whilst it is being parsed.
+   *
+   *****************************************************/
+  static private class FailingJSONObject extends JSONObject
+    {
+    @Override
+    public boolean optBoolean( String name, boolean fallback )
+      {
+      throw ( new ParseError() );
+      }
+    }
 
   }
 
@@ -46,6 +46,8 @@ import junit.framework.TestCase;
 
 import org.json.JSONObject;
 
+import ly.kite.journey.UserJourneyType;
+
 
 ///// Class Declaration /////
 
@@ -162,6 +164,138 @@ public class CatalogueTests extends TestCase
     }
 
 
+  /*****************************************************
+   *
+   * Product index tests.
+   *
+   *****************************************************/
+
+  public void testProductIndex1()
+    {
+    Catalogue catalogue = new Catalogue();
+
+    Product product1 = new Product( "product1", "product1", "Product 1", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 );
+    Product product2 = new Product( "product2", "product2", "Product 2", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 );
+    Product product3 = new Product( "product3", "product3", "Product 3", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 );
+
+    catalogue.addProduct( "Group B", null, product1 );
+    catalogue.addProduct( "Group A", null, product2 );
+    catalogue.addProduct( "Group B", null, product3 );
+
+    Assert.assertEquals( 3, catalogue.getProductCount() );
+    Assert.assertSame( product1, catalogue.getProduct( 0 ) );
+    Assert.assertSame( product2, catalogue.getProduct( 1 ) );
+    Assert.assertSame( product3, catalogue.getProduct( 2 ) );
+    Assert.assertNull( catalogue.getProduct( 3 ) );
+    Assert.assertNull( catalogue.getProduct( -1 ) );
+
+    Assert.assertEquals( 0, catalogue.getProductIndex( "product1" ) );
+    Assert.assertEquals( 2, catalogue.getProductIndex( "product3" ) );
+    Assert.assertEquals( -1, catalogue.getProductIndex( "product4" ) );
+
+    Assert.assertEquals( 2, catalogue.getProductsForGroup( "Group B" ).size() );
+    }
+
+  public void testProductIndex2()
+    {
+    Catalogue catalogue = new Catalogue();
+
+    Product product1  = new Product( "product1", "product1", "Product 1", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 );
+    Product product2  = new Product( "product2", "product2", "Product 2", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 );
+    Product product1b = new Product( "product1", "product1", "Product 1b", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 );
+
+    catalogue.addProduct( "Group A", null, product1 );
+    catalogue.addProduct( "Group A", null, product2 );
+    catalogue.addProduct( "Group A", null, product1b );
+
+    // A product with the same id replaces the original, in the same position
+    Assert.assertEquals( 2, catalogue.getProductCount() );
+    Assert.assertSame( product1b, catalogue.getProduct( 0 ) );
+    Assert.assertSame( product1b, catalogue.findProductById( "product1" ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Filter tests.
+   *
+   *****************************************************/
+
+  public void testCreateFiltered1()
+    {
+    Catalogue catalogue = new Catalogue();
+
+    catalogue.addProduct( "Group A", null, new Product( "product1", "product1", "Product 1", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 ) );
+    catalogue.addProduct( "Group A", null, new Product( "product2", "product2", "Product 2", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 ) );
+
+    Catalogue filteredCatalogue = catalogue.createFiltered( new String[] { "product2" } );
+
+    Assert.assertEquals( 1, filteredCatalogue.getProductCount() );
+    Assert.assertEquals( "product2", filteredCatalogue.getProduct( 0 ).getId() );
+    Assert.assertSame( filteredCatalogue, catalogue.createFiltered( new String[] { "product2" } ) );
+    Assert.assertNotSame( filteredCatalogue, catalogue.createFiltered( new String[] { "product1" } ) );
+    }
+
+  public void testCreateFiltered2() throws Exception
+    {
+    Catalogue catalogue = new Catalogue();
+
+    catalogue.addProduct( "Group A", null, new Product( "a, b", "product1", "Product 1", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 ) );
+    catalogue.addProduct( "Group A", null, new Product( "a", "product2", "Product 2", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 ) );
+    catalogue.addProduct( "Group A", null, new Product( "b", "product3", "Product 3", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 ) );
+
+    // Id lists that look the same when joined are still different filters
+
+    Catalogue filteredCatalogue1 = catalogue.createFiltered( new String[] { "a, b" } );
+    Catalogue filteredCatalogue2 = catalogue.createFiltered( new String[] { "a", "b" } );
+
+    Assert.assertNotSame( filteredCatalogue1, filteredCatalogue2 );
+    Assert.assertEquals( 1, filteredCatalogue1.getProductCount() );
+    Assert.assertEquals( 2, filteredCatalogue2.getProductCount() );
+
+
+    // Changing the catalogue discards any filtered catalogues
+
+    catalogue.setUserConfigData( new JSONObject( "{theme_colour_primary:\"#ff0000\"}" ) );
+
+    Catalogue filteredCatalogue3 = catalogue.createFiltered( new String[] { "a, b" } );
+
+    Assert.assertNotSame( filteredCatalogue1, filteredCatalogue3 );
+    Assert.assertEquals( 0xffff0000, filteredCatalogue3.getPrimaryThemeColour() );
+
+    catalogue.setCustomObject( "extra", new JSONObject( "{a:1}" ) );
+
+    Assert.assertNotSame( filteredCatalogue3, catalogue.createFiltered( new String[] { "a, b" } ) );
+    }
+
+  public void testCreateFiltered3()
+    {
+    Catalogue catalogue = new Catalogue();
+
+    catalogue.addProduct( "Group A", null, new Product( "product1", "product1", "Product 1", "Type", 0xff000000, UserJourneyType.RECTANGLE, 1 ) );
+
+    // Only a limited number of filtered catalogues are kept, dropping the least recently used
+
+    Catalogue firstFilteredCatalogue = catalogue.createFiltered( new String[] { "product1" } );
+
+    for ( int filterIndex = 0; filterIndex < 20; filterIndex ++ )
+      {
+      catalogue.createFiltered( new String[] { "product" + filterIndex, "product1" } );
+
+      Assert.assertSame( firstFilteredCatalogue, catalogue.createFiltered( new String[] { "product1" } ) );
+      }
+
+    Catalogue lastFilteredCatalogue = catalogue.createFiltered( new String[] { "product19", "product1" } );
+
+    for ( int filterIndex = 0; filterIndex < 20; filterIndex ++ )
+      {
+      catalogue.createFiltered( new String[] { "other" + filterIndex } );
+      }
+
+    Assert.assertNotSame( lastFilteredCatalogue, catalogue.createFiltered( new String[] { "product19", "product1" } ) );
+    }
+
+
   ////////// Inner Class(es) //////////
 
   /*****************************************************
@@ -0,0 +1,148 @@
+/*****************************************************
+ *
+ * BitmapPoolTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.image;
+
+
+///// Import(s) /////
+
+import android.graphics.Bitmap;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the bitmap pool class.
+ *
+ *****************************************************/
+public class BitmapPoolTests extends TestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "BitmapPoolTests";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Bytes per pixel tests.
+   *
+   *****************************************************/
+
+  public void testBytesPerPixel1()
+    {
+    Assert.assertEquals( 1, BitmapPool.bytesPerPixel( Bitmap.Config.ALPHA_8 ) );
+    Assert.assertEquals( 2, BitmapPool.bytesPerPixel( Bitmap.Config.RGB_565 ) );
+    Assert.assertEquals( 4, BitmapPool.bytesPerPixel( Bitmap.Config.ARGB_8888 ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Put / get tests.
+   *
+   *****************************************************/
+
+  public void testGet1()
+    {
+    if ( ! BitmapPool.isSupported() ) return;
+
+    BitmapPool pool = new BitmapPool( 1000 );
+
+    Bitmap bitmap = Bitmap.createBitmap( 10, 10, Bitmap.Config.ARGB_8888 );
+
+    pool.put( bitmap );
+
+    Assert.assertEquals( 400, pool.getSizeInBytes() );
+
+    // Wrong config
+    Assert.assertNull( pool.get( 10, 10, Bitmap.Config.RGB_565 ) );
+
+    // Too small
+    Assert.assertNull( pool.get( 11, 10, Bitmap.Config.ARGB_8888 ) );
+
+    // Too much bigger than needed
+    Assert.assertNull( pool.get( 5, 5, Bitmap.Config.ARGB_8888 ) );
+
+    Assert.assertSame( bitmap, pool.get( 8, 8, Bitmap.Config.ARGB_8888 ) );
+    Assert.assertEquals( 0, pool.getSizeInBytes() );
+    Assert.assertNull( pool.get( 8, 8, Bitmap.Config.ARGB_8888 ) );
+    }
+
+
+  public void testPut1()
+    {
+    if ( ! BitmapPool.isSupported() ) return;
+
+    BitmapPool pool = new BitmapPool( 1000 );
+
+    Bitmap smallBitmap = Bitmap.createBitmap( 10, 10, Bitmap.Config.ARGB_8888 );
+    Bitmap largeBitmap = Bitmap.createBitmap( 10, 20, Bitmap.Config.ARGB_8888 );
+    Bitmap newBitmap   = Bitmap.createBitmap( 10, 10, Bitmap.Config.ARGB_8888 );
+
+    pool.put( smallBitmap );
+    pool.put( largeBitmap );
+
+    // Going over capacity should drop the largest bitmap
+    pool.put( newBitmap );
+
+    Assert.assertEquals( 800, pool.getSizeInBytes() );
+    Assert.assertTrue( largeBitmap.isRecycled() );
+    Assert.assertFalse( smallBitmap.isRecycled() );
+    }
+
+  }
@@ -207,6 +207,248 @@ public class ImageCacheTests extends TestCase
     }
 
 
+  /*****************************************************
+   *
+   * Pinning tests.
+   *
+   *****************************************************/
+
+  public void testPin1()
+    {
+    ImageCache cache = new ImageCache( 150 );
+
+    Object key1    = new Object();
+    Bitmap bitmap1 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key2    = new Object();
+    Bitmap bitmap2 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key3    = new Object();
+    Bitmap bitmap3 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    cache.addImage( key1, bitmap1 );
+    cache.pinImage( key1 );
+    cache.addImage( key2, bitmap2 );
+    cache.getImage( key2 );
+
+    // Key 1 is the LRU image, but it is pinned, so key 2 should be evicted instead
+    cache.addImage( key3, bitmap3 );
+
+    Assert.assertEquals( bitmap1, cache.getImage( key1 ) );
+    Assert.assertEquals( null,    cache.getImage( key2 ) );
+    Assert.assertEquals( bitmap3, cache.getImage( key3 ) );
+    }
+
+  public void testPin2()
+    {
+    ImageCache cache = new ImageCache( 70 );
+
+    Object key1    = new Object();
+    Bitmap bitmap1 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key2    = new Object();
+    Bitmap bitmap2 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    cache.addImage( key1, bitmap1 );
+    cache.unpinImage( cache.pinImage( key1 ) );
+
+    // Once unpinned, the image should be evicted as normal
+    cache.addImage( key2, bitmap2 );
+
+    Assert.assertEquals( null,    cache.getImage( key1 ) );
+    Assert.assertEquals( bitmap2, cache.getImage( key2 ) );
+    }
+
+  public void testPin3()
+    {
+    ImageCache cache = new ImageCache( 70 );
+
+    Object key1    = new Object();
+    Bitmap bitmap1 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key2    = new Object();
+    Bitmap bitmap2 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    cache.addImage( key1, bitmap1 );
+    cache.pinImage( key1 );
+    cache.addImage( key2, bitmap2 );
+    cache.pinImage( key2 );
+
+    // The capacity is still enforced when everything is pinned
+    Assert.assertTrue( cache.getSizeInBytes() <= 70 );
+    }
+
+  public void testPin4()
+    {
+    ImageCache cache = new ImageCache( 70 );
+    BitmapPool pool  = new BitmapPool( 1000 );
+
+    cache.setBitmapPool( pool );
+
+    Object key1    = new Object();
+    Bitmap bitmap1 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key2    = new Object();
+    Bitmap bitmap2 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    // A reusable image added pinned should not be evicted in favour of an unpinned one
+    cache.addAndPinImage( key1, null, bitmap1, true );
+    cache.addImage( key2, null, bitmap2, true, false );
+
+    Assert.assertEquals( bitmap1, cache.getImage( key1, null, true ) );
+    Assert.assertEquals( null,    cache.getImage( key2, null, true ) );
+
+    // Even if it has to be evicted, it must not go to the pool
+    cache.clear();
+
+    Assert.assertFalse( bitmap1.isRecycled() );
+
+    Bitmap pooledBitmap;
+
+    while ( ( pooledBitmap = pool.get( 4, 4, Bitmap.Config.ARGB_8888 ) ) != null )
+      {
+      Assert.assertNotSame( bitmap1, pooledBitmap );
+      }
+    }
+
+  public void testGetAndPin1()
+    {
+    ImageCache cache = new ImageCache( 70 );
+
+    Object key1    = new Object();
+    Bitmap bitmap1 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key2    = new Object();
+    Bitmap bitmap2 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Assert.assertNull( cache.getAndPinImage( key1, null ) );
+
+    cache.addImage( key1, null, bitmap1, true );
+
+    Assert.assertEquals( bitmap1, cache.getAndPinImage( key1, null ).getBitmap() );
+
+    // Key 1 is pinned, so adding key 2 shouldn't evict it
+    cache.addImage( key2, bitmap2 );
+
+    Assert.assertEquals( bitmap1, cache.getImage( key1 ) );
+    Assert.assertNull( cache.pinImage( key2 ) );
+    }
+
+  public void testStalePin1()
+    {
+    ImageCache cache = new ImageCache( 70 );
+    BitmapPool pool  = new BitmapPool( 1000 );
+
+    cache.setBitmapPool( pool );
+
+    Object key1    = new Object();
+    Bitmap bitmap1 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+    Bitmap bitmap2 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key2    = new Object();
+    Bitmap bitmap3 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    // Pin an image, and then evict it whilst it is still pinned
+
+    ImageCache.Pin pin1 = cache.addAndPinImage( key1, null, bitmap1, true );
+
+    cache.clear();
+
+    // The same key is decoded again, and pinned by someone else
+
+    ImageCache.Pin pin2 = cache.addAndPinImage( key1, null, bitmap2, true );
+
+    Assert.assertSame( bitmap2, pin2.getBitmap() );
+
+    // Releasing the stale pin (twice) must not release the new image
+
+    cache.unpinImage( pin1 );
+    cache.unpinImage( pin1 );
+
+    cache.addImage( key2, null, bitmap3, true );
+
+    Assert.assertEquals( bitmap2, cache.getImage( key1, null, true ) );
+    Assert.assertNull( cache.getImage( key2, null, true ) );
+
+    Bitmap pooledBitmap;
+
+    while ( ( pooledBitmap = pool.get( 4, 4, Bitmap.Config.ARGB_8888 ) ) != null )
+      {
+      Assert.assertNotSame( bitmap1, pooledBitmap );
+      Assert.assertNotSame( bitmap2, pooledBitmap );
+      }
+    }
+
+  public void testStalePin2()
+    {
+    ImageCache cache = new ImageCache( 70 );
+
+    Object key1    = new Object();
+    Bitmap bitmap1 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+    Bitmap bitmap2 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key2    = new Object();
+    Bitmap bitmap3 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    // Pins on a replaced image stay with that image
+
+    ImageCache.Pin pin1 = cache.addAndPinImage( key1, null, bitmap1, true );
+
+    cache.addImage( key1, null, bitmap2, true );
+
+    ImageCache.Pin pin2 = cache.pinImage( key1 );
+
+    Assert.assertSame( bitmap1, pin1.getBitmap() );
+    Assert.assertSame( bitmap2, pin2.getBitmap() );
+
+    cache.unpinImage( pin1 );
+
+    // The new image is still pinned, so the unpinned image is evicted instead
+
+    cache.addImage( key2, bitmap3 );
+
+    Assert.assertEquals( bitmap2, cache.getImage( key1 ) );
+    Assert.assertNull( cache.getImage( key2 ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Statistics tests.
+   *
+   *****************************************************/
+
+  public void testStatistics1()
+    {
+    ImageCache cache = new ImageCache( 70 );
+
+    Object key1    = new Object();
+    Bitmap bitmap1 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Object key2    = new Object();
+    Bitmap bitmap2 = Bitmap.createBitmap( 4, 4, Bitmap.Config.ARGB_8888 );
+
+    Assert.assertEquals( null, cache.getImage( key1, "category1" ) );
+
+    cache.addImage( key1, "category1", bitmap1 );
+
+    Assert.assertEquals( bitmap1, cache.getImage( key1, "category1" ) );
+
+    cache.addImage( key2, "category2", bitmap2 );
+
+    ImageCache.Statistics statistics1 = cache.getStatistics( "category1" );
+    ImageCache.Statistics statistics2 = cache.getStatistics( "category2" );
+
+    Assert.assertEquals( 1, statistics1.getHitCount() );
+    Assert.assertEquals( 1, statistics1.getMissCount() );
+    Assert.assertEquals( 1, statistics1.getEvictionCount() );
+
+    Assert.assertEquals( 0, statistics2.getHitCount() );
+    Assert.assertEquals( 0, statistics2.getMissCount() );
+    Assert.assertEquals( 0, statistics2.getEvictionCount() );
+    }
+
+
   ////////// Inner Class(es) //////////
 
   /*****************************************************
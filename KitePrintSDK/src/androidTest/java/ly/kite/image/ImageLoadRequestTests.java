@@ -39,6 +39,8 @@ package ly.kite.image;
 
 ///// Import(s) /////
 
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.media.ExifInterface;
 
 import junit.framework.Assert;
@@ -146,4 +148,15 @@ public class ImageLoadRequestTests extends TestCase
     Assert.assertEquals(   1, ImageLoadRequest.sampleSizeForResize( 1024, 768,  -1,  -1 ) );
     }
 
+
+  public void testGetUnrotatedRegion()
+    {
+    RectF proportionalRectangle = new RectF( 0.25f, 0.1f, 0.5f, 0.6f );
+
+    Assert.assertEquals( new Rect( 100,  30, 200, 180 ), ImageLoadRequest.getUnrotatedRegion( 400, 300,   0, proportionalRectangle ) );
+    Assert.assertEquals( new Rect(  40, 150, 240, 225 ), ImageLoadRequest.getUnrotatedRegion( 400, 300,  90, proportionalRectangle ) );
+    Assert.assertEquals( new Rect( 200, 120, 300, 270 ), ImageLoadRequest.getUnrotatedRegion( 400, 300, 180, proportionalRectangle ) );
+    Assert.assertEquals( new Rect( 160,  75, 360, 150 ), ImageLoadRequest.getUnrotatedRegion( 400, 300, 270, proportionalRectangle ) );
+    }
+
   }
@@ -0,0 +1,512 @@
+/*****************************************************
+ *
+ * ImageRequestProcessorTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.image;
+
+
+///// Import(s) /////
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import junit.framework.Assert;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import ly.kite.KiteTestCase;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the image request processor class.
+ *
+ *****************************************************/
+public class ImageRequestProcessorTests extends KiteTestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "ImageRequestProcessorTests";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Creates a request with the supplied priority.
+   *
+   *****************************************************/
+  private ImageLoadRequest createRequest( ImageRequestProcessor.Priority priority )
+    {
+    ImageLoadRequest request = new ImageLoadRequest( getContext() );
+
+    request.setPriority( priority );
+
+    return ( request );
+    }
+
+
+  /*****************************************************
+   *
+   * Creates an image file of the supplied size, with a
+   * name unique to the test.
+   *
+   *****************************************************/
+  private File createImageFile( String name, int width, int height ) throws Exception
+    {
+    File file = new File( getContext().getCacheDir(), "ImageRequestProcessorTests-" + name + "-" + System.nanoTime() + ".png" );
+
+    FileOutputStream fos = new FileOutputStream( file );
+
+    try
+      {
+      Bitmap.createBitmap( width, height, Bitmap.Config.ARGB_8888 ).compress( Bitmap.CompressFormat.PNG, 100, fos );
+      }
+    finally
+      {
+      fos.close();
+      }
+
+    return ( file );
+    }
+
+
+  /*****************************************************
+   *
+   * Creates a request for an image file into an image
+   * view, without executing it.
+   *
+   *****************************************************/
+  private ImageLoadRequest createViewRequest( File file, ImageView imageView )
+    {
+    return ( new ImageLoadRequest( getContext() ).new Builder( new ImageLoadRequest.IExecutor()
+      {
+      @Override
+      public void execute( ImageLoadRequest imageLoadRequest )
+        {
+        // Requests are driven by the tests
+        }
+      } ).load( file ).into( imageView ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Runs something on the UI thread, and waits for it,
+   * and anything posted before it, to finish.
+   *
+   *****************************************************/
+  private void runOnMainThread( final Runnable runnable ) throws InterruptedException
+    {
+    final CountDownLatch latch = new CountDownLatch( 1 );
+
+    new Handler( Looper.getMainLooper() ).post( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        runnable.run();
+
+        latch.countDown();
+        }
+      } );
+
+    Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the bitmap displayed by an image view, or
+   * null if there isn't one.
+   *
+   *****************************************************/
+  private Bitmap getDisplayedBitmap( ImageView imageView )
+    {
+    Drawable drawable = imageView.getDrawable();
+
+    return ( drawable instanceof BitmapDrawable ? ( (BitmapDrawable)drawable ).getBitmap() : null );
+    }
+
+
+  /*****************************************************
+   *
+   * Loader count tests.
+   *
+   *****************************************************/
+
+  public void testLoaderCountForProcessors()
+    {
+    Assert.assertEquals( 2, ImageRequestProcessor.loaderCountForProcessors( 0 ) );
+    Assert.assertEquals( 2, ImageRequestProcessor.loaderCountForProcessors( 1 ) );
+    Assert.assertEquals( 2, ImageRequestProcessor.loaderCountForProcessors( 2 ) );
+    Assert.assertEquals( 4, ImageRequestProcessor.loaderCountForProcessors( 4 ) );
+    Assert.assertEquals( 8, ImageRequestProcessor.loaderCountForProcessors( 8 ) );
+    Assert.assertEquals( 8, ImageRequestProcessor.loaderCountForProcessors( 16 ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Priority tests.
+   *
+   *****************************************************/
+
+  public void testPriorityOrder()
+    {
+    Assert.assertTrue( ImageRequestProcessor.Priority.VISIBLE.ordinal()  < ImageRequestProcessor.Priority.PREFETCH.ordinal() );
+    Assert.assertTrue( ImageRequestProcessor.Priority.PREFETCH.ordinal() < ImageRequestProcessor.Priority.BACKGROUND.ordinal() );
+    }
+
+
+  /*****************************************************
+   *
+   * Routing tests.
+   *
+   *****************************************************/
+
+  public void testLoaderTaskCount()
+    {
+    RecordingExecutor     executor  = new RecordingExecutor();
+    ImageRequestProcessor processor = new ImageRequestProcessor( getContext(), 3, executor );
+
+    for ( int requestIndex = 0; requestIndex < 5; requestIndex ++ )
+      {
+      processor.process( createRequest( ImageRequestProcessor.Priority.VISIBLE ) );
+      }
+
+    // No more than the maximum number of loader tasks should have been started
+    Assert.assertEquals( 3, executor.mRunnableList.size() );
+    }
+
+
+  public void testLaneOrder()
+    {
+    ImageRequestProcessor processor = new ImageRequestProcessor( getContext(), 3, new RecordingExecutor() );
+
+    ImageLoadRequest backgroundRequest = createRequest( ImageRequestProcessor.Priority.BACKGROUND );
+    ImageLoadRequest prefetchRequest1  = createRequest( ImageRequestProcessor.Priority.PREFETCH );
+    ImageLoadRequest prefetchRequest2  = createRequest( ImageRequestProcessor.Priority.PREFETCH );
+    ImageLoadRequest visibleRequest1   = createRequest( ImageRequestProcessor.Priority.VISIBLE );
+    ImageLoadRequest visibleRequest2   = createRequest( ImageRequestProcessor.Priority.VISIBLE );
+
+    processor.process( backgroundRequest );
+    processor.process( prefetchRequest1 );
+    processor.process( prefetchRequest2 );
+    processor.process( visibleRequest1 );
+
+    // Visible requests come first, then each lane is processed latest-first
+    Assert.assertSame( visibleRequest1,  processor.nextRequest() );
+    Assert.assertSame( prefetchRequest2, processor.nextRequest() );
+    Assert.assertSame( prefetchRequest1, processor.nextRequest() );
+
+    // Two low priority requests are now running, so the last loader is kept
+    // free for visible requests.
+    Assert.assertNull( processor.nextRequest() );
+
+    processor.process( visibleRequest2 );
+
+    Assert.assertSame( visibleRequest2, processor.nextRequest() );
+    Assert.assertNull( processor.nextRequest() );
+    }
+
+
+  public void testCancelledRequestRemoved()
+    {
+    ImageRequestProcessor processor = new ImageRequestProcessor( getContext(), 3, new RecordingExecutor() );
+
+    ImageLoadRequest visibleRequest1 = createRequest( ImageRequestProcessor.Priority.VISIBLE );
+    ImageLoadRequest visibleRequest2 = createRequest( ImageRequestProcessor.Priority.VISIBLE );
+
+    processor.process( visibleRequest1 );
+    processor.process( visibleRequest2 );
+
+    processor.onRequestCancelled( visibleRequest2 );
+
+    Assert.assertSame( visibleRequest1, processor.nextRequest() );
+    Assert.assertNull( processor.nextRequest() );
+    }
+
+
+  /*****************************************************
+   *
+   * Rebind tests. Each request is driven through the
+   * same steps as the loader: it is bound to its view
+   * when executed, processed in the background, and then
+   * completed on the UI thread.
+   *
+   *****************************************************/
+
+  public void testRebindInFlight1() throws Exception
+    {
+    final ImageRequestProcessor processor = new ImageRequestProcessor( getContext(), 3, new RecordingExecutor() );
+
+    final File file1 = createImageFile( "rebind1", 8, 8 );
+    final File file2 = createImageFile( "rebind2", 16, 16 );
+
+    final ImageView[]        imageView = new ImageView[ 1 ];
+    final ImageLoadRequest[] requests  = new ImageLoadRequest[ 2 ];
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        imageView[ 0 ] = new ImageView( getContext() );
+        requests[ 0 ]  = createViewRequest( file1, imageView[ 0 ] );
+
+        processor.bindToView( imageView[ 0 ], requests[ 0 ] );
+        }
+      } );
+
+
+    // The first request is decoded, and its image pinned, but the view is
+    // rebound before the result reaches the UI thread.
+
+    requests[ 0 ].createKeysInBackground();
+
+    Assert.assertTrue( requests[ 0 ].processInBackground() );
+    Assert.assertTrue( requests[ 0 ].holdsPin() );
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        requests[ 1 ] = createViewRequest( file2, imageView[ 0 ] );
+
+        processor.bindToView( imageView[ 0 ], requests[ 1 ] );
+
+        requests[ 0 ].onProcessingComplete();
+        }
+      } );
+
+    // The old request is cancelled, never delivers, and its image wasn't
+    // displayed, so it is released straight away.
+    Assert.assertTrue( requests[ 0 ].isCancelled() );
+    Assert.assertNull( getDisplayedBitmap( imageView[ 0 ] ) );
+    Assert.assertFalse( requests[ 0 ].holdsPin() );
+    Assert.assertFalse( requests[ 1 ].holdsDisplayedImage() );
+
+
+    // The new request delivers as normal
+
+    requests[ 1 ].createKeysInBackground();
+
+    Assert.assertTrue( requests[ 1 ].processInBackground() );
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        requests[ 1 ].onProcessingComplete();
+        }
+      } );
+
+    Bitmap displayedBitmap = getDisplayedBitmap( imageView[ 0 ] );
+
+    Assert.assertNotNull( displayedBitmap );
+    Assert.assertEquals( 16, displayedBitmap.getWidth() );
+    Assert.assertTrue( requests[ 1 ].holdsPin() );
+
+    file1.delete();
+    file2.delete();
+    }
+
+
+  public void testRebindInFlight2() throws Exception
+    {
+    final ImageRequestProcessor processor = new ImageRequestProcessor( getContext(), 3, new RecordingExecutor() );
+
+    final File file1 = createImageFile( "rebind1", 8, 8 );
+    final File file2 = createImageFile( "rebind2", 16, 16 );
+
+    final ImageView[]        imageView = new ImageView[ 1 ];
+    final ImageLoadRequest[] requests  = new ImageLoadRequest[ 2 ];
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        imageView[ 0 ] = new ImageView( getContext() );
+        requests[ 0 ]  = createViewRequest( file1, imageView[ 0 ] );
+
+        processor.bindToView( imageView[ 0 ], requests[ 0 ] );
+        }
+      } );
+
+
+    // The first request delivers its image
+
+    requests[ 0 ].createKeysInBackground();
+
+    Assert.assertTrue( requests[ 0 ].processInBackground() );
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        requests[ 0 ].onProcessingComplete();
+
+        requests[ 1 ] = createViewRequest( file2, imageView[ 0 ] );
+
+        processor.bindToView( imageView[ 0 ], requests[ 1 ] );
+        }
+      } );
+
+    // The view carries on displaying the old image whilst the new request is
+    // in flight, so the old request is cancelled, but its pin is handed over
+    // to the new request rather than released.
+    Assert.assertTrue( requests[ 0 ].isCancelled() );
+    Assert.assertEquals( 8, getDisplayedBitmap( imageView[ 0 ] ).getWidth() );
+    Assert.assertTrue( requests[ 0 ].holdsPin() );
+    Assert.assertTrue( requests[ 1 ].holdsDisplayedImage() );
+
+
+    // Once the new request delivers, the old image is released
+
+    requests[ 1 ].createKeysInBackground();
+
+    Assert.assertTrue( requests[ 1 ].processInBackground() );
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        requests[ 1 ].onProcessingComplete();
+        }
+      } );
+
+    Assert.assertEquals( 16, getDisplayedBitmap( imageView[ 0 ] ).getWidth() );
+    Assert.assertFalse( requests[ 0 ].holdsPin() );
+    Assert.assertTrue( requests[ 1 ].holdsPin() );
+
+    file1.delete();
+    file2.delete();
+    }
+
+
+  public void testRebindBeforeStart1() throws Exception
+    {
+    final ImageRequestProcessor processor = new ImageRequestProcessor( getContext(), 3, new RecordingExecutor() );
+
+    final File file1 = createImageFile( "rebind1", 8, 8 );
+    final File file2 = createImageFile( "rebind2", 16, 16 );
+
+    final ImageView[]        imageView = new ImageView[ 1 ];
+    final ImageLoadRequest[] requests  = new ImageLoadRequest[ 2 ];
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        imageView[ 0 ] = new ImageView( getContext() );
+        requests[ 0 ]  = createViewRequest( file1, imageView[ 0 ] );
+
+        processor.bindToView( imageView[ 0 ], requests[ 0 ] );
+
+        requests[ 1 ] = createViewRequest( file2, imageView[ 0 ] );
+
+        processor.bindToView( imageView[ 0 ], requests[ 1 ] );
+        }
+      } );
+
+    // A request that is rebound before the loader reaches it is dropped
+    // without being decoded or pinning anything.
+
+    requests[ 0 ].createKeysInBackground();
+
+    Assert.assertTrue( requests[ 0 ].isCancelled() );
+    Assert.assertFalse( requests[ 0 ].processInBackground() );
+    Assert.assertFalse( requests[ 0 ].holdsPin() );
+
+    file1.delete();
+    file2.delete();
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * An executor that records tasks, but never runs them.
+   *
+   *****************************************************/
+  private class RecordingExecutor implements Executor
+    {
+    List<Runnable>  mRunnableList = new ArrayList<>();
+
+    @Override
+    public void execute( Runnable runnable )
+      {
+      mRunnableList.add( runnable );
+      }
+    }
+
+
+  }
@@ -0,0 +1,185 @@
+/*****************************************************
+ *
+ * ThumbnailCacheTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.image;
+
+
+///// Import(s) /////
+
+import java.io.File;
+
+import android.graphics.Bitmap;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the thumbnail cache class.
+ *
+ *****************************************************/
+public class ThumbnailCacheTests extends TestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "ThumbnailCacheTests";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+  private File  mDirectory;
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  @Override
+  protected void setUp() throws Exception
+    {
+    super.setUp();
+
+    mDirectory = new File( System.getProperty( "java.io.tmpdir" ), "ThumbnailCacheTests" );
+
+    new ThumbnailCache( mDirectory, 0 ).clear();
+    }
+
+
+  /*****************************************************
+   *
+   * File name tests.
+   *
+   *****************************************************/
+
+  public void testFileName1()
+    {
+    String fileName1 = ThumbnailCache.fileNameForKey( "file:/a/b.jpg@1:2|100x100|RGB_565||" );
+    String fileName2 = ThumbnailCache.fileNameForKey( "file:/a/b.jpg@1:2|100x100|RGB_565||" );
+    String fileName3 = ThumbnailCache.fileNameForKey( "file:/a/b.jpg@1:2|200x200|RGB_565||" );
+
+    Assert.assertEquals( fileName1, fileName2 );
+    Assert.assertFalse( fileName1.equals( fileName3 ) );
+    Assert.assertTrue( fileName1.matches( "[0-9a-f]{40}\\.img" ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Add / get tests.
+   *
+   *****************************************************/
+
+  public void testGet1()
+    {
+    ThumbnailCache cache = new ThumbnailCache( mDirectory, 1024 * 1024 );
+
+    Assert.assertNull( cache.getImage( "key1", Bitmap.Config.RGB_565 ) );
+
+    cache.addImage( "key1", Bitmap.createBitmap( 20, 10, Bitmap.Config.RGB_565 ) );
+
+    Bitmap bitmap = cache.getImage( "key1", Bitmap.Config.RGB_565 );
+
+    Assert.assertNotNull( bitmap );
+    Assert.assertEquals( 20, bitmap.getWidth() );
+    Assert.assertEquals( 10, bitmap.getHeight() );
+    Assert.assertTrue( cache.getSizeInBytes() > 0 );
+
+
+    // A new cache should pick up the existing files
+
+    cache = new ThumbnailCache( mDirectory, 1024 * 1024 );
+
+    Assert.assertNotNull( cache.getImage( "key1", Bitmap.Config.RGB_565 ) );
+    }
+
+
+  public void testTrim1()
+    {
+    ThumbnailCache cache = new ThumbnailCache( mDirectory, 1 );
+
+    cache.addImage( "key1", Bitmap.createBitmap( 20, 10, Bitmap.Config.RGB_565 ) );
+
+    // Nothing fits within the budget
+    Assert.assertNull( cache.getImage( "key1", Bitmap.Config.RGB_565 ) );
+    Assert.assertEquals( 0, cache.getSizeInBytes() );
+    }
+
+
+  /*****************************************************
+   *
+   * Temporary file tests.
+   *
+   *****************************************************/
+
+  public void testTemporaryFiles1() throws Exception
+    {
+    mDirectory.mkdirs();
+
+    File oldFile = new File( mDirectory, "tmp1.tmp" );
+    File newFile = new File( mDirectory, "tmp2.tmp" );
+
+    oldFile.createNewFile();
+    newFile.createNewFile();
+
+    oldFile.setLastModified( System.currentTimeMillis() - 2 * 60 * 60 * 1000 );
+
+
+    // Building the index should only delete the old file, because the new one
+    // may still be being written.
+
+    new ThumbnailCache( mDirectory, 1024 * 1024 ).getSizeInBytes();
+
+    Assert.assertFalse( oldFile.exists() );
+    Assert.assertTrue( newFile.exists() );
+
+    newFile.delete();
+    }
+
+  }
@@ -44,6 +44,7 @@ import android.test.AndroidTestCase;
 
 import junit.framework.Assert;
 
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -190,6 +191,108 @@ public class OrderingDatabaseAgentTests extends KiteTestCase
     }
 
 
+  public void testSaveMultipleItems()
+    {
+    OrderingDatabaseAgent databaseAgent = new OrderingDatabaseAgent( getContext(), null );
+
+    Product product = new Product( "product_id", "product_code", "Product Name", "Product Type", 0xff000000, UserJourneyType.RECTANGLE, 1 );
+
+    Catalogue catalogue = new Catalogue();
+    catalogue.addProduct( "Group Label", null, product );
+
+
+    databaseAgent.clearBasket( OrderingDataAgent.BASKET_ID_DEFAULT );
+
+
+    HashMap<String,String> optionsMap = new HashMap<>();
+    optionsMap.put( "Parameter1", "Alpha" );
+
+    RectF proportionalRectangle = new RectF( 0.0f, 0.0f, 1.0f, 1.0f );
+
+    List<ImageSpec> imageSpecList1 = new ArrayList<>();
+    imageSpecList1.add( new ImageSpec( createSessionAssetFile(), proportionalRectangle, "First border text", 1 ) );
+    imageSpecList1.add( null );
+
+    List<ImageSpec> imageSpecList2 = new ArrayList<>();
+    imageSpecList2.add( new ImageSpec( createSessionAssetFile(), proportionalRectangle, null, 3 ) );
+
+    List<List<ImageSpec>> imageSpecLists = new ArrayList<>();
+    imageSpecLists.add( imageSpecList1 );
+    imageSpecLists.add( imageSpecList2 );
+
+
+    databaseAgent.saveDefaultBasketItems( OrderingDataAgent.CREATE_NEW_ITEM_ID, product, optionsMap, imageSpecLists, 2 );
+
+
+    List<BasketItem> basketItemList = databaseAgent.loadDefaultBasket( getContext(), catalogue );
+
+    Assert.assertEquals( 2, basketItemList.size() );
+
+    BasketItem basketItem1 = basketItemList.get( 0 );
+    Assert.assertEquals( 2, basketItem1.getOrderQuantity() );
+    Assert.assertEquals( "Alpha", basketItem1.getOptionsMap().get( "Parameter1" ) );
+    Assert.assertEquals( 2, basketItem1.getImageSpecList().size() );
+    Assert.assertEquals( "First border text", basketItem1.getImageSpecList().get( 0 ).getBorderText() );
+    Assert.assertNull( basketItem1.getImageSpecList().get( 1 ) );
+
+    BasketItem basketItem2 = basketItemList.get( 1 );
+    Assert.assertEquals( "Alpha", basketItem2.getOptionsMap().get( "Parameter1" ) );
+    Assert.assertEquals( 1, basketItem2.getImageSpecList().size() );
+    Assert.assertEquals( 3, basketItem2.getImageSpecList().get( 0 ).getQuantity() );
+
+
+    databaseAgent.clearBasket( OrderingDataAgent.BASKET_ID_DEFAULT );
+    }
+
+
+
+  /*****************************************************
+   *
+   * Upload journal tests
+   *
+   *****************************************************/
+
+  public void testUploadJournal() throws Exception
+    {
+    OrderingDatabaseAgent databaseAgent = new OrderingDatabaseAgent( getContext(), null );
+
+    databaseAgent.deleteUploadJournalEntries( Long.MAX_VALUE );
+
+    URL previewURL1 = new URL( "https://s3.amazonaws.com/preview/1.jpg" );
+    URL previewURL2 = new URL( "https://s3.amazonaws.com/preview/2.jpg" );
+
+    databaseAgent.insertUploadJournalEntry( "key1", 101L, previewURL1, null, 1000L );
+    databaseAgent.insertUploadJournalEntry( "key2", 102L, previewURL2, null, 2000L );
+
+    // A later upload of the same image replaces the earlier one
+    databaseAgent.insertUploadJournalEntry( "key2", 103L, previewURL2, null, 3000L );
+
+
+    List<String> imageKeyList = new ArrayList<>();
+    imageKeyList.add( "key1" );
+    imageKeyList.add( "key2" );
+    imageKeyList.add( "key3" );
+
+    HashMap<String,UploadJournal.Entry> entryTable = databaseAgent.selectUploadJournalEntries( imageKeyList, 0L );
+
+    Assert.assertEquals( 2, entryTable.size() );
+    Assert.assertEquals( 101L, entryTable.get( "key1" ).getAssetId() );
+    Assert.assertEquals( previewURL1, entryTable.get( "key1" ).getPreviewURL() );
+    Assert.assertEquals( 103L, entryTable.get( "key2" ).getAssetId() );
+
+
+    // Old entries are ignored, and can be deleted
+
+    entryTable = databaseAgent.selectUploadJournalEntries( imageKeyList, 2500L );
+
+    Assert.assertEquals( 1, entryTable.size() );
+    Assert.assertNull( entryTable.get( "key1" ) );
+
+    databaseAgent.deleteUploadJournalEntries( 2500L );
+
+    Assert.assertEquals( 1, databaseAgent.selectUploadJournalEntries( imageKeyList, 0L ).size() );
+    }
+
 
 
   ////////// Inner Class(es) //////////
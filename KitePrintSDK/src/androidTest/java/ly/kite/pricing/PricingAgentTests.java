@@ -0,0 +1,112 @@
+/*****************************************************
+ *
+ * PricingAgentTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.pricing;
+
+
+///// Import(s) /////
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the pricing agent.
+ *
+ *****************************************************/
+public class PricingAgentTests extends TestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "PricingAgentTests";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Fingerprint tests.
+   *
+   *****************************************************/
+
+  public void testFingerprint1()
+    {
+    Assert.assertNull( PricingAgent.getRequestFingerprint( null ) );
+
+    // Job ids and parameter order should not matter
+
+    String fingerprint1 = PricingAgent.getRequestFingerprint( "{\"basket\":[{\"job_id\":\"A\",\"quantity\":1,\"template_id\":\"i6_case\",\"country_code\":\"GBR\"}],\"shipping_country_code\":\"GBR\",\"promo_code\":\"\",\"payment_gateway\":\"PAYPAL\",\"ship_to_store\":\"0\"}" );
+    String fingerprint2 = PricingAgent.getRequestFingerprint( "{\"ship_to_store\":\"0\",\"payment_gateway\":\"PAYPAL\",\"promo_code\":\"\",\"shipping_country_code\":\"GBR\",\"basket\":[{\"template_id\":\"i6_case\",\"quantity\":1,\"job_id\":\"B\",\"country_code\":\"GBR\"}]}" );
+
+    Assert.assertEquals( fingerprint1, fingerprint2 );
+    }
+
+  public void testFingerprint2()
+    {
+    String fingerprint1 = PricingAgent.getRequestFingerprint( "{\"basket\":[{\"job_id\":\"A\",\"quantity\":1,\"template_id\":\"i6_case\",\"country_code\":\"GBR\"}],\"shipping_country_code\":\"GBR\",\"promo_code\":\"\"}" );
+
+    // Anything that affects the price should give a different fingerprint
+
+    Assert.assertFalse( fingerprint1.equals( PricingAgent.getRequestFingerprint( "{\"basket\":[{\"job_id\":\"A\",\"quantity\":2,\"template_id\":\"i6_case\",\"country_code\":\"GBR\"}],\"shipping_country_code\":\"GBR\",\"promo_code\":\"\"}" ) ) );
+    Assert.assertFalse( fingerprint1.equals( PricingAgent.getRequestFingerprint( "{\"basket\":[{\"job_id\":\"A\",\"quantity\":1,\"template_id\":\"i5_case\",\"country_code\":\"GBR\"}],\"shipping_country_code\":\"GBR\",\"promo_code\":\"\"}" ) ) );
+    Assert.assertFalse( fingerprint1.equals( PricingAgent.getRequestFingerprint( "{\"basket\":[{\"job_id\":\"A\",\"quantity\":1,\"template_id\":\"i6_case\",\"country_code\":\"USA\"}],\"shipping_country_code\":\"USA\",\"promo_code\":\"\"}" ) ) );
+    Assert.assertFalse( fingerprint1.equals( PricingAgent.getRequestFingerprint( "{\"basket\":[{\"job_id\":\"A\",\"quantity\":1,\"template_id\":\"i6_case\",\"country_code\":\"GBR\"}],\"shipping_country_code\":\"GBR\",\"promo_code\":\"SAVE10\"}" ) ) );
+    Assert.assertFalse( fingerprint1.equals( PricingAgent.getRequestFingerprint( "{\"basket\":[{\"job_id\":\"A\",\"quantity\":1,\"template_id\":\"i6_case\",\"country_code\":\"GBR\"}],\"shipping_country_code\":\"GBR\",\"promo_code\":\"\",\"payment_gateway\":\"PAYPAL\"}" ) ) );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  }
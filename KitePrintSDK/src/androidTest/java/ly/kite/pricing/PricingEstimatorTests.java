@@ -0,0 +1,121 @@
+/*****************************************************
+ *
+ * PricingEstimatorTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.pricing;
+
+
+///// Import(s) /////
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import ly.kite.ordering.Order;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the pricing estimator.
+ *
+ *****************************************************/
+public class PricingEstimatorTests extends TestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "PricingEstimatorTests";
+
+  private static final String  PRICING_JSON_FORMAT_STRING = "{\"line_items\":[],\"total_product_cost\":{\"GBP\":%1$s,\"USD\":%2$s},\"total_shipping_cost\":{\"GBP\":0,\"USD\":0},\"total\":{\"GBP\":%1$s,\"USD\":%2$s}%3$s}";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Estimate tests.
+   *
+   *****************************************************/
+
+  public void testEstimate1()
+    {
+    // Nothing to estimate
+    Assert.assertNull( PricingEstimator.estimate( new Order(), null ) );
+
+    // Promo codes can't be estimated
+    Assert.assertNull( PricingEstimator.estimate( new Order(), "SAVE10" ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Reconciliation tests.
+   *
+   *****************************************************/
+
+  public void testTotalMatches1() throws Exception
+    {
+    OrderPricing estimatedPricing = new OrderPricing( String.format( PRICING_JSON_FORMAT_STRING, "6.25", "11", ",\"estimated\":true" ) );
+    OrderPricing actualPricing1   = new OrderPricing( String.format( PRICING_JSON_FORMAT_STRING, "6.250", "11.00", "" ) );
+    OrderPricing actualPricing2   = new OrderPricing( String.format( PRICING_JSON_FORMAT_STRING, "6.25", "12", "" ) );
+
+    Assert.assertTrue ( estimatedPricing.isEstimate() );
+    Assert.assertFalse( actualPricing1.isEstimate() );
+
+    Assert.assertTrue ( PricingEstimator.totalMatches( estimatedPricing, actualPricing1 ) );
+    Assert.assertFalse( PricingEstimator.totalMatches( estimatedPricing, actualPricing2 ) );
+    Assert.assertFalse( PricingEstimator.totalMatches( null, actualPricing1 ) );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  }
@@ -0,0 +1,417 @@
+/*****************************************************
+ *
+ * PricingPipelineTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.pricing;
+
+
+///// Import(s) /////
+
+import android.os.Handler;
+import android.os.Looper;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ly.kite.ordering.Order;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the pricing pipeline.
+ *
+ *****************************************************/
+public class PricingPipelineTests extends TestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG               = "PricingPipelineTests";
+
+  private static final long    DEBOUNCE_DELAY_MILLIS = 100L;
+
+  private static final String  PRICING_JSON          = "{ total: { GBP : 23.50 }, total_shipping_cost: { GBP : 2.99 }, total_product_cost : { GBP : 23.50 }, line_items: [ ] }";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Runs something on the UI thread, and waits for it,
+   * and anything posted before it, to finish.
+   *
+   *****************************************************/
+  private void runOnMainThread( final Runnable runnable ) throws InterruptedException
+    {
+    final CountDownLatch latch = new CountDownLatch( 1 );
+
+    new Handler( Looper.getMainLooper() ).post( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        runnable.run();
+
+        latch.countDown();
+        }
+      } );
+
+    Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Requests pricing on the UI thread, and returns what
+   * the pipeline returned.
+   *
+   *****************************************************/
+  private OrderPricing requestPricing( final PricingPipeline pricingPipeline, final Order order ) throws InterruptedException
+    {
+    final OrderPricing[] returnedPricing = new OrderPricing[ 1 ];
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        returnedPricing[ 0 ] = pricingPipeline.requestPricing( order, null, null );
+        }
+      } );
+
+    return ( returnedPricing[ 0 ] );
+    }
+
+
+  /*****************************************************
+   *
+   * Waits until any debounced request has been made.
+   *
+   *****************************************************/
+  private void waitForDebounce() throws InterruptedException
+    {
+    Thread.sleep( DEBOUNCE_DELAY_MILLIS * 3 );
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        }
+      } );
+    }
+
+
+  /*****************************************************
+   *
+   * Debounce tests.
+   *
+   *****************************************************/
+
+  public void testDebounce1() throws Exception
+    {
+    RecordingConsumer     consumer        = new RecordingConsumer();
+    StubPricingPipeline   pricingPipeline = new StubPricingPipeline( consumer, DEBOUNCE_DELAY_MILLIS );
+
+    Order order1 = new Order();
+    Order order2 = new Order();
+    Order order3 = new Order();
+    Order order4 = new Order();
+
+    // The first request isn't delayed
+
+    Assert.assertNull( requestPricing( pricingPipeline, order1 ) );
+
+    Assert.assertEquals( Arrays.asList( order1 ), pricingPipeline.startedOrderList );
+
+    // Rapid changes are coalesced into a single request for the latest order
+
+    Assert.assertNull( requestPricing( pricingPipeline, order2 ) );
+    Assert.assertNull( requestPricing( pricingPipeline, order3 ) );
+    Assert.assertNull( requestPricing( pricingPipeline, order4 ) );
+
+    Assert.assertEquals( Arrays.asList( order1 ), pricingPipeline.startedOrderList );
+
+    waitForDebounce();
+
+    Assert.assertEquals( Arrays.asList( order1, order4 ), pricingPipeline.startedOrderList );
+    Assert.assertEquals( Arrays.asList( 1, 4 ), pricingPipeline.startedRequestIdList );
+
+    // The first request was superseded whilst in progress
+
+    Assert.assertEquals( Arrays.asList( 1 ), pricingPipeline.cancelledRequestIdList );
+    }
+
+  public void testDebounce2() throws Exception
+    {
+    RecordingConsumer     consumer        = new RecordingConsumer();
+    StubPricingPipeline   pricingPipeline = new StubPricingPipeline( consumer, 0 );
+
+    Order order1 = new Order();
+    Order order2 = new Order();
+
+    // Without a delay, every request is made straight away
+
+    Assert.assertNull( requestPricing( pricingPipeline, order1 ) );
+    Assert.assertNull( requestPricing( pricingPipeline, order2 ) );
+
+    Assert.assertEquals( Arrays.asList( order1, order2 ), pricingPipeline.startedOrderList );
+    }
+
+
+  /*****************************************************
+   *
+   * Latest wins tests.
+   *
+   *****************************************************/
+
+  public void testLatestWins1() throws Exception
+    {
+    final RecordingConsumer    consumer        = new RecordingConsumer();
+    final StubPricingPipeline  pricingPipeline = new StubPricingPipeline( consumer, DEBOUNCE_DELAY_MILLIS );
+
+    final OrderPricing pricing1 = new OrderPricing( PRICING_JSON );
+    final OrderPricing pricing2 = new OrderPricing( PRICING_JSON );
+
+    requestPricing( pricingPipeline, new Order() );
+    requestPricing( pricingPipeline, new Order() );
+
+    waitForDebounce();
+
+    // Results for superseded requests are dropped, even if they arrive last
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        pricingPipeline.paOnSuccess( 2, pricing2 );
+        pricingPipeline.paOnSuccess( 1, pricing1 );
+        pricingPipeline.paOnError( 1, new Exception( "Superseded" ) );
+        }
+      } );
+
+    Assert.assertEquals( Arrays.asList( 2 ), consumer.successRequestIdList );
+    Assert.assertEquals( 1, consumer.pricingList.size() );
+    Assert.assertSame( pricing2, consumer.pricingList.get( 0 ) );
+    Assert.assertEquals( 0, consumer.errorRequestIdList.size() );
+    }
+
+
+  /*****************************************************
+   *
+   * Cancel tests.
+   *
+   *****************************************************/
+
+  public void testCancel1() throws Exception
+    {
+    RecordingConsumer          consumer        = new RecordingConsumer();
+    final StubPricingPipeline  pricingPipeline = new StubPricingPipeline( consumer, DEBOUNCE_DELAY_MILLIS );
+
+    Order order1 = new Order();
+    Order order2 = new Order();
+
+    requestPricing( pricingPipeline, order1 );
+    requestPricing( pricingPipeline, order2 );
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        pricingPipeline.cancel();
+        }
+      } );
+
+    waitForDebounce();
+
+    // The waiting request is never made, and the in-progress one is cancelled once
+
+    Assert.assertEquals( Arrays.asList( order1 ), pricingPipeline.startedOrderList );
+    Assert.assertEquals( Arrays.asList( 1 ), pricingPipeline.cancelledRequestIdList );
+    Assert.assertEquals( 0, consumer.successRequestIdList.size() );
+    }
+
+
+  /*****************************************************
+   *
+   * Cached pricing tests.
+   *
+   *****************************************************/
+
+  public void testCached1() throws Exception
+    {
+    RecordingConsumer    consumer        = new RecordingConsumer();
+    StubPricingPipeline  pricingPipeline = new StubPricingPipeline( consumer, DEBOUNCE_DELAY_MILLIS );
+
+    pricingPipeline.cachedPricing = new OrderPricing( PRICING_JSON );
+
+    // Cached pricing is returned straight away, without a request
+
+    Assert.assertSame( pricingPipeline.cachedPricing, requestPricing( pricingPipeline, new Order() ) );
+    Assert.assertSame( pricingPipeline.cachedPricing, requestPricing( pricingPipeline, new Order() ) );
+
+    waitForDebounce();
+
+    Assert.assertEquals( 0, pricingPipeline.startedOrderList.size() );
+    Assert.assertEquals( 0, consumer.successRequestIdList.size() );
+    }
+
+  public void testCached2() throws Exception
+    {
+    RecordingConsumer    consumer        = new RecordingConsumer();
+    StubPricingPipeline  pricingPipeline = new StubPricingPipeline( consumer, 0 );
+
+    // If the agent returns the pricing as soon as it is asked, it is returned to the
+    // caller, and the consumer is not called.
+
+    pricingPipeline.agentPricing = new OrderPricing( PRICING_JSON );
+
+    Assert.assertSame( pricingPipeline.agentPricing, requestPricing( pricingPipeline, new Order() ) );
+
+    waitForDebounce();
+
+    Assert.assertEquals( 1, pricingPipeline.startedOrderList.size() );
+    Assert.assertEquals( 0, consumer.successRequestIdList.size() );
+
+    // Nothing is in progress, so there is nothing to cancel
+
+    requestPricing( pricingPipeline, new Order() );
+
+    Assert.assertEquals( 0, pricingPipeline.cancelledRequestIdList.size() );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * A pricing pipeline that records requests rather than
+   * passing them to the pricing agent.
+   *
+   *****************************************************/
+  private static class StubPricingPipeline extends PricingPipeline
+    {
+    OrderPricing   cachedPricing;
+    OrderPricing   agentPricing;
+
+    List<Order>    startedOrderList       = new ArrayList<>();
+    List<Integer>  startedRequestIdList   = new ArrayList<>();
+    List<Integer>  cancelledRequestIdList = new ArrayList<>();
+
+
+    StubPricingPipeline( PricingAgent.IPricingConsumer consumer, long debounceDelayMillis )
+      {
+      super( null, consumer, debounceDelayMillis );
+      }
+
+
+    @Override
+    OrderPricing getCachedPricing( Order order, String promoCode )
+      {
+      return ( cachedPricing );
+      }
+
+
+    @Override
+    OrderPricing startPricingRequest( int requestId, Order order, String promoCode, List<String> payPalSupportedCurrencyCodeList )
+      {
+      startedOrderList.add( order );
+      startedRequestIdList.add( requestId );
+
+      return ( agentPricing );
+      }
+
+
+    @Override
+    void cancelPricingRequest( int requestId )
+      {
+      cancelledRequestIdList.add( requestId );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * A pricing consumer that records what it is passed.
+   *
+   *****************************************************/
+  private static class RecordingConsumer implements PricingAgent.IPricingConsumer
+    {
+    List<Integer>       successRequestIdList = new ArrayList<>();
+    List<OrderPricing>  pricingList          = new ArrayList<>();
+    List<Integer>       errorRequestIdList   = new ArrayList<>();
+
+
+    @Override
+    public void paOnSuccess( int requestId, OrderPricing pricing )
+      {
+      successRequestIdList.add( requestId );
+      pricingList.add( pricing );
+      }
+
+
+    @Override
+    public void paOnError( int requestId, Exception exception )
+      {
+      errorRequestIdList.add( requestId );
+      }
+    }
+
+  }
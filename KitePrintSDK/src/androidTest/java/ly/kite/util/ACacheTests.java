@@ -42,6 +42,8 @@ package ly.kite.util;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 
+import java.util.List;
+
 
 ///// Class Declaration /////
 
@@ -145,6 +147,85 @@ public class ACacheTests extends TestCase
     Assert.assertEquals( exception, consumer2.exception );
     }
 
+  public void testUnregister1()
+    {
+    Cache cache = new Cache();
+
+    Consumer consumer1 = new Consumer();
+    Consumer consumer2 = new Consumer();
+
+    cache.registerForValue( "key1", consumer1 );
+    cache.registerForValue( "key2", consumer1 );
+    cache.registerForValue( "key2", consumer2 );
+
+    // Only key1 is left with no consumers
+    List<String> abandonedKeyList = cache.unregisterFromAll( consumer1 );
+
+    Assert.assertEquals( 1, abandonedKeyList.size() );
+    Assert.assertEquals( "key1", abandonedKeyList.get( 0 ) );
+
+    Assert.assertEquals( false, cache.registerForValue( "key1", consumer2 ) );
+
+    cache.saveAndDistributeValue( "key2", "value2" );
+
+    Assert.assertEquals( null, consumer1.value );
+    Assert.assertEquals( "value2", consumer2.value );
+    }
+
+  public void testMaxEntryCount1()
+    {
+    Cache cache = new Cache( 2, ACache.NO_TIME_TO_LIVE );
+
+    cache.saveAndDistributeValue( "key1", "value1" );
+    cache.saveAndDistributeValue( "key2", "value2" );
+
+    // Use key1, so that key2 is the least recently used
+    Assert.assertEquals( "value1", cache.getCachedValue( "key1" ) );
+
+    cache.saveAndDistributeValue( "key3", "value3" );
+
+    Assert.assertEquals( 2, cache.getCachedValueCount() );
+    Assert.assertEquals( "value1", cache.getCachedValue( "key1" ) );
+    Assert.assertEquals( null, cache.getCachedValue( "key2" ) );
+    Assert.assertEquals( "value3", cache.getCachedValue( "key3" ) );
+    }
+
+  public void testTimeToLive1()
+    {
+    Cache cache = new Cache( ACache.NO_MAX_ENTRY_COUNT, 1000L );
+
+    cache.currentTimeMillis = 5000L;
+
+    cache.saveAndDistributeValue( "key", "value" );
+
+    cache.currentTimeMillis = 5999L;
+
+    Assert.assertEquals( "value", cache.getCachedValue( "key" ) );
+
+    cache.currentTimeMillis = 6000L;
+
+    Assert.assertEquals( null, cache.getCachedValue( "key" ) );
+    Assert.assertEquals( 0, cache.getCachedValueCount() );
+    }
+
+  public void testCanonicalKey1()
+    {
+    Cache cache = new Cache();
+
+    Consumer consumer1 = new Consumer();
+    Consumer consumer2 = new Consumer();
+
+    Assert.assertEquals( false, cache.registerForValue( "KEY", consumer1 ) );
+    Assert.assertEquals( true, cache.registerForValue( "key", consumer2 ) );
+
+    cache.saveAndDistributeValue( "Key", "value" );
+
+    Assert.assertEquals( "value", consumer1.value );
+    Assert.assertEquals( "value", consumer2.value );
+
+    Assert.assertEquals( "value", cache.getCachedValue( "kEY" ) );
+    }
+
 
   ////////// Inner Class(es) //////////
 
@@ -177,6 +258,32 @@ public class ACacheTests extends TestCase
    *****************************************************/
   private class Cache extends ACache<String,String,Consumer>
     {
+    long  currentTimeMillis;
+
+
+    Cache( int maxEntryCount, long timeToLiveMillis )
+      {
+      super( maxEntryCount, timeToLiveMillis );
+      }
+
+    Cache()
+      {
+      super();
+      }
+
+
+    @Override
+    protected String canonicaliseKey( String key )
+      {
+      return ( key != null ? key.toLowerCase() : null );
+      }
+
+    @Override
+    protected long getCurrentTimeMillis()
+      {
+      return ( currentTimeMillis );
+      }
+
     @Override
     protected void onValueAvailable( String value, Consumer consumer )
       {
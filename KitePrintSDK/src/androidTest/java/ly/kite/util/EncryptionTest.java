@@ -13,6 +13,10 @@ import android.test.AndroidTestCase;
 import junit.framework.Assert;
 import junit.framework.AssertionFailedError;
 
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
 import java.util.Random;
 
 import ly.kite.KiteSDK;
@@ -403,4 +407,75 @@ public class EncryptionTest extends AndroidTestCase{
         }
     }
 
+
+    /**************************************************************************
+    *                                                                         *
+    *        Test that shared instances are cached and batch conversions      *
+    *                          round-trip correctly                           *
+    *                                                                         *
+    **************************************************************************/
+
+    public void testSharedInstance()
+    {
+        Assert.assertSame(SecurePreferences.getInstance(ENCRYPTION_KEY), SecurePreferences.getInstance(ENCRYPTION_KEY));
+
+        SecurePreferences sharedPref = SecurePreferences.getInstance(ENCRYPTION_KEY);
+
+        String[] texts = { randomTextGenerator(), null, randomTextGenerator() };
+        String[] encryptedTexts = sharedPref.encryptAll(texts);
+
+        Assert.assertNull(encryptedTexts[1]);
+        Assert.assertEquals(pref.encrypt(texts[0]), encryptedTexts[0]);
+
+        String[] decryptedTexts = sharedPref.decryptAll(encryptedTexts);
+
+        Assert.assertEquals(texts[0], decryptedTexts[0]);
+        Assert.assertNull(decryptedTexts[1]);
+        Assert.assertEquals(texts[2], decryptedTexts[2]);
+    }
+
+
+    /**************************************************************************
+    *                                                                         *
+    *         Test that a failed decryption does not affect later ones        *
+    *                                                                         *
+    **************************************************************************/
+
+    public void testDecryptionFailure()
+    {
+        SecurePreferences sharedPref = SecurePreferences.getInstance(ENCRYPTION_KEY);
+
+        try {
+            sharedPref.decrypt("AAAA");  // Not a whole number of blocks
+            Assert.fail("Decryption of a partial block should fail");
+        } catch (SecurePreferences.SecurePreferencesException e) {
+        }
+
+        Assert.assertEquals(test_text, sharedPref.decrypt(encryptedText));
+    }
+
+
+    /**************************************************************************
+    *                                                                         *
+    *       Test that a subclass can still change the cipher set-up by        *
+    *                          overriding initCiphers                         *
+    *                                                                         *
+    **************************************************************************/
+
+    public void testInitCiphersOverride()
+    {
+        final String otherKey = "other" + ENCRYPTION_KEY;
+
+        SecurePreferences overridingPref = new SecurePreferences(ENCRYPTION_KEY) {
+            @Override
+            protected void initCiphers(String secureKey) throws UnsupportedEncodingException, NoSuchAlgorithmException, InvalidKeyException,
+                    InvalidAlgorithmParameterException {
+                super.initCiphers(otherKey);
+            }
+        };
+
+        Assert.assertEquals(new SecurePreferences(otherKey).encrypt(test_text), overridingPref.encrypt(test_text));
+        Assert.assertFalse(encryptedText.equals(overridingPref.encrypt(test_text)));
+    }
+
 }
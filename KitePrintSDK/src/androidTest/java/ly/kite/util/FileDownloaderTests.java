@@ -0,0 +1,744 @@
+/*****************************************************
+ *
+ * FileDownloaderTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.util;
+
+
+///// Import(s) /////
+
+import android.os.Handler;
+import android.os.Looper;
+
+import junit.framework.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import ly.kite.KiteTestCase;
+import ly.kite.image.ImageRequestProcessor;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the file downloader.
+ *
+ *****************************************************/
+public class FileDownloaderTests extends KiteTestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG     = "FileDownloaderTests";
+
+  private static final int     SOURCE_SIZE = 20000;
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns an empty test directory.
+   *
+   *****************************************************/
+  private File createDirectory( String name )
+    {
+    File directory = new File( System.getProperty( "java.io.tmpdir" ), name );
+
+    directory.mkdirs();
+
+    for ( File file : directory.listFiles() ) file.delete();
+
+    return ( directory );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the bytes of the remote test file.
+   *
+   *****************************************************/
+  private byte[] createSourceBytes()
+    {
+    byte[] sourceBytes = new byte[ SOURCE_SIZE ];
+
+    for ( int index = 0; index < sourceBytes.length; index ++ ) sourceBytes[ index ] = (byte)( index * 7 );
+
+    return ( sourceBytes );
+    }
+
+
+  /*****************************************************
+   *
+   * Writes bytes to a file.
+   *
+   *****************************************************/
+  private void writeFile( File file, byte[] bytes, int length ) throws IOException
+    {
+    FileOutputStream fileOutputStream = new FileOutputStream( file );
+    fileOutputStream.write( bytes, 0, length );
+    fileOutputStream.close();
+    }
+
+
+  /*****************************************************
+   *
+   * Reads the bytes of a file.
+   *
+   *****************************************************/
+  private byte[] readFile( File file ) throws IOException
+    {
+    byte[] bytes = new byte[ (int)file.length() ];
+
+    FileInputStream fileInputStream = new FileInputStream( file );
+
+    int byteCount = 0;
+    int numberOfBytesRead;
+
+    while ( byteCount < bytes.length && ( numberOfBytesRead = fileInputStream.read( bytes, byteCount, bytes.length - byteCount ) ) >= 0 )
+      {
+      byteCount += numberOfBytesRead;
+      }
+
+    fileInputStream.close();
+
+    return ( bytes );
+    }
+
+
+  /*****************************************************
+   *
+   * Creates a partial download of the first bytes of the
+   * source, with a validator.
+   *
+   *****************************************************/
+  private void createPartialFile( File targetFile, byte[] sourceBytes, int length, String validator ) throws IOException
+    {
+    writeFile( new File( targetFile.getPath() + ".part" ), sourceBytes, length );
+
+    if ( validator != null )
+      {
+      byte[] validatorBytes = validator.getBytes( "UTF-8" );
+
+      writeFile( new File( targetFile.getPath() + ".part.validator" ), validatorBytes, validatorBytes.length );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Checks that a download completed, and left no partial
+   * files behind.
+   *
+   *****************************************************/
+  private void assertDownloaded( File targetFile, byte[] sourceBytes ) throws IOException
+    {
+    Assert.assertTrue( Arrays.equals( sourceBytes, readFile( targetFile ) ) );
+
+    Assert.assertFalse( new File( targetFile.getPath() + ".part" ).exists() );
+    Assert.assertFalse( new File( targetFile.getPath() + ".part.validator" ).exists() );
+    }
+
+
+  /*****************************************************
+   *
+   * Runs something on the UI thread, and waits for it,
+   * and anything posted before it, to finish.
+   *
+   *****************************************************/
+  private void runOnMainThread( final Runnable runnable ) throws InterruptedException
+    {
+    final CountDownLatch latch = new CountDownLatch( 1 );
+
+    new Handler( Looper.getMainLooper() ).post( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        runnable.run();
+
+        latch.countDown();
+        }
+      } );
+
+    Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Requests a download on the UI thread. The target file
+   * already exists, so the download completes as soon as
+   * the task is run.
+   *
+   *****************************************************/
+  private URL requestDownload( final FileDownloader fileDownloader, final File targetDirectory, String urlString, final ImageRequestProcessor.Priority priority, final FileDownloader.ICallback callback ) throws Exception
+    {
+    final URL  sourceURL  = new URL( urlString );
+    final File targetFile = new File( targetDirectory, "target-" + System.nanoTime() + ".bin" );
+
+    targetFile.createNewFile();
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        fileDownloader.requestFileDownload( sourceURL, targetDirectory, targetFile, priority, callback );
+        }
+      } );
+
+    return ( sourceURL );
+    }
+
+  /*****************************************************
+   *
+   * Content range tests.
+   *
+   *****************************************************/
+
+  public void testContentRange1()
+    {
+    Assert.assertFalse( FileDownloader.isContentRangeFrom( null, 100 ) );
+    Assert.assertFalse( FileDownloader.isContentRangeFrom( "", 100 ) );
+    Assert.assertFalse( FileDownloader.isContentRangeFrom( "bytes 0-999/1000", 100 ) );
+    Assert.assertFalse( FileDownloader.isContentRangeFrom( "bytes 1000-1999/2000", 100 ) );
+
+    Assert.assertTrue ( FileDownloader.isContentRangeFrom( "bytes 100-999/1000", 100 ) );
+    Assert.assertTrue ( FileDownloader.isContentRangeFrom( " bytes 100-999/*", 100 ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Download tests.
+   *
+   *****************************************************/
+
+  public void testDownload1() throws Exception
+    {
+    File directory = new File( System.getProperty( "java.io.tmpdir" ), "FileDownloaderTests" );
+
+    directory.mkdirs();
+
+    File sourceFile = new File( directory, "source.bin" );
+    File targetFile = new File( directory, "target.bin" );
+
+    targetFile.delete();
+
+    byte[] sourceBytes = new byte[ 20000 ];
+
+    for ( int index = 0; index < sourceBytes.length; index ++ ) sourceBytes[ index ] = (byte)index;
+
+    FileOutputStream fileOutputStream = new FileOutputStream( sourceFile );
+    fileOutputStream.write( sourceBytes );
+    fileOutputStream.close();
+
+    long previousDownloadedByteCount = FileDownloader.getDownloadedByteCount();
+
+    Assert.assertNull( FileDownloader.download( sourceFile.toURI().toURL(), directory, targetFile ) );
+
+    Assert.assertEquals( sourceBytes.length, targetFile.length() );
+    Assert.assertEquals( sourceBytes.length, FileDownloader.getDownloadedByteCount() - previousDownloadedByteCount );
+    Assert.assertFalse( new File( targetFile.getPath() + ".part" ).exists() );
+
+    byte[] targetBytes = new byte[ sourceBytes.length ];
+
+    FileInputStream fileInputStream = new FileInputStream( targetFile );
+    Assert.assertEquals( targetBytes.length, fileInputStream.read( targetBytes ) );
+    fileInputStream.close();
+
+    for ( int index = 0; index < sourceBytes.length; index ++ ) Assert.assertEquals( sourceBytes[ index ], targetBytes[ index ] );
+
+    sourceFile.delete();
+    targetFile.delete();
+    }
+
+
+  /*****************************************************
+   *
+   * Resume tests.
+   *
+   *****************************************************/
+
+  public void testResume1() throws Exception
+    {
+    File   directory   = createDirectory( "FileDownloaderResumeTests" );
+    File   targetFile  = new File( directory, "target.bin" );
+    byte[] sourceBytes = createSourceBytes();
+
+    createPartialFile( targetFile, sourceBytes, 5000, "\"etag1\"" );
+
+    StubURLStreamHandler handler = new StubURLStreamHandler();
+
+    handler.addResponse( HttpURLConnection.HTTP_PARTIAL, sourceBytes, 5000, "Content-Range", "bytes 5000-19999/20000" );
+
+    long previousResumedByteCount = FileDownloader.getResumedByteCount();
+
+    Assert.assertNull( FileDownloader.download( handler.createURL(), directory, targetFile ) );
+
+    // Only the rest of the file is requested, as long as it hasn't changed
+
+    Assert.assertEquals( 1, handler.rangeList.size() );
+    Assert.assertEquals( "bytes=5000-", handler.rangeList.get( 0 ) );
+    Assert.assertEquals( "\"etag1\"", handler.ifRangeList.get( 0 ) );
+
+    Assert.assertEquals( 5000, FileDownloader.getResumedByteCount() - previousResumedByteCount );
+
+    assertDownloaded( targetFile, sourceBytes );
+    }
+
+  public void testResume2() throws Exception
+    {
+    File   directory   = createDirectory( "FileDownloaderResumeTests" );
+    File   targetFile  = new File( directory, "target.bin" );
+    byte[] sourceBytes = createSourceBytes();
+
+    // The remote file has changed, so the server ignores the range
+
+    createPartialFile( targetFile, sourceBytes, 5000, "\"etag1\"" );
+
+    StubURLStreamHandler handler = new StubURLStreamHandler();
+
+    handler.addResponse( HttpURLConnection.HTTP_OK, sourceBytes, 0, "ETag", "\"etag2\"" );
+
+    Assert.assertNull( FileDownloader.download( handler.createURL(), directory, targetFile ) );
+
+    Assert.assertEquals( "bytes=5000-", handler.rangeList.get( 0 ) );
+
+    assertDownloaded( targetFile, sourceBytes );
+    }
+
+  public void testResume3() throws Exception
+    {
+    File   directory   = createDirectory( "FileDownloaderResumeTests" );
+    File   targetFile  = new File( directory, "target.bin" );
+    byte[] sourceBytes = createSourceBytes();
+
+    // Without a validator, we can't tell whether the remote file has changed, so
+    // the partial file isn't used.
+
+    createPartialFile( targetFile, sourceBytes, 5000, null );
+
+    StubURLStreamHandler handler = new StubURLStreamHandler();
+
+    handler.addResponse( HttpURLConnection.HTTP_OK, sourceBytes, 0, "ETag", "\"etag1\"" );
+
+    Assert.assertNull( FileDownloader.download( handler.createURL(), directory, targetFile ) );
+
+    Assert.assertNull( handler.rangeList.get( 0 ) );
+    Assert.assertNull( handler.ifRangeList.get( 0 ) );
+
+    assertDownloaded( targetFile, sourceBytes );
+    }
+
+  public void testRangeNotSatisfiable1() throws Exception
+    {
+    File   directory   = createDirectory( "FileDownloaderResumeTests" );
+    File   targetFile  = new File( directory, "target.bin" );
+    byte[] sourceBytes = createSourceBytes();
+
+    createPartialFile( targetFile, sourceBytes, 5000, "\"etag1\"" );
+
+    StubURLStreamHandler handler = new StubURLStreamHandler();
+
+    handler.addResponse( 416, new byte[ 0 ], 0 );
+    handler.addResponse( HttpURLConnection.HTTP_OK, sourceBytes, 0, "ETag", "\"etag1\"" );
+
+    Assert.assertNull( FileDownloader.download( handler.createURL(), directory, targetFile ) );
+
+    // The partial file is discarded, and the retry starts from scratch
+
+    Assert.assertEquals( 2, handler.rangeList.size() );
+    Assert.assertEquals( "bytes=5000-", handler.rangeList.get( 0 ) );
+    Assert.assertNull( handler.rangeList.get( 1 ) );
+
+    assertDownloaded( targetFile, sourceBytes );
+    }
+
+  public void testContentRangeMismatch1() throws Exception
+    {
+    File   directory   = createDirectory( "FileDownloaderResumeTests" );
+    File   targetFile  = new File( directory, "target.bin" );
+    byte[] sourceBytes = createSourceBytes();
+
+    createPartialFile( targetFile, sourceBytes, 5000, "\"etag1\"" );
+
+    StubURLStreamHandler handler = new StubURLStreamHandler();
+
+    handler.addResponse( HttpURLConnection.HTTP_PARTIAL, sourceBytes, 0, "Content-Range", "bytes 0-19999/20000" );
+    handler.addResponse( HttpURLConnection.HTTP_OK, sourceBytes, 0, "ETag", "\"etag1\"" );
+
+    Assert.assertNull( FileDownloader.download( handler.createURL(), directory, targetFile ) );
+
+    // The range we didn't ask for isn't appended; the partial file is discarded, and
+    // the retry starts from scratch.
+
+    Assert.assertEquals( 2, handler.rangeList.size() );
+    Assert.assertEquals( "bytes=5000-", handler.rangeList.get( 0 ) );
+    Assert.assertNull( handler.rangeList.get( 1 ) );
+
+    assertDownloaded( targetFile, sourceBytes );
+    }
+
+
+  /*****************************************************
+   *
+   * Queue tests.
+   *
+   *****************************************************/
+
+  public void testLanes1() throws Exception
+    {
+    File              directory      = createDirectory( "FileDownloaderQueueTests" );
+    RecordingExecutor executor       = new RecordingExecutor();
+    RecordingCallback callback       = new RecordingCallback();
+    FileDownloader    fileDownloader = new FileDownloader( getContext(), executor );
+
+    URL background1 = requestDownload( fileDownloader, directory, "http://host1.example.com/b1.jpg", ImageRequestProcessor.Priority.BACKGROUND, callback );
+    URL background2 = requestDownload( fileDownloader, directory, "http://host2.example.com/b2.jpg", ImageRequestProcessor.Priority.BACKGROUND, callback );
+    URL background3 = requestDownload( fileDownloader, directory, "http://host3.example.com/b3.jpg", ImageRequestProcessor.Priority.BACKGROUND, callback );
+    URL background4 = requestDownload( fileDownloader, directory, "http://host4.example.com/b4.jpg", ImageRequestProcessor.Priority.BACKGROUND, callback );
+    URL prefetch1   = requestDownload( fileDownloader, directory, "http://host5.example.com/p1.jpg", ImageRequestProcessor.Priority.PREFETCH,   callback );
+    URL background5 = requestDownload( fileDownloader, directory, "http://host6.example.com/b5.jpg", ImageRequestProcessor.Priority.BACKGROUND, callback );
+    URL visible1    = requestDownload( fileDownloader, directory, "http://host7.example.com/v1.jpg", ImageRequestProcessor.Priority.VISIBLE,    callback );
+    URL visible2    = requestDownload( fileDownloader, directory, "http://host8.example.com/v2.jpg", ImageRequestProcessor.Priority.VISIBLE,    callback );
+
+    // Low priority downloads leave a slot free for the first visible download
+
+    Assert.assertEquals( 5, executor.runnableList.size() );
+
+    executor.runAll();
+
+    // Once slots become free, visible downloads go first, then prefetches, then
+    // background downloads.
+
+    Assert.assertEquals( Arrays.asList( background1, background2, background3, background4, visible1, visible2, prefetch1, background5 ), callback.succeededURLList );
+    }
+
+  public void testHostLimit1() throws Exception
+    {
+    File              directory      = createDirectory( "FileDownloaderQueueTests" );
+    RecordingExecutor executor       = new RecordingExecutor();
+    RecordingCallback callback       = new RecordingCallback();
+    FileDownloader    fileDownloader = new FileDownloader( getContext(), executor );
+
+    URL prefetch1 = requestDownload( fileDownloader, directory, "http://cdn.example.com/p1.jpg",   ImageRequestProcessor.Priority.PREFETCH, callback );
+    URL prefetch2 = requestDownload( fileDownloader, directory, "http://cdn.example.com/p2.jpg",   ImageRequestProcessor.Priority.PREFETCH, callback );
+    URL prefetch3 = requestDownload( fileDownloader, directory, "http://cdn.example.com/p3.jpg",   ImageRequestProcessor.Priority.PREFETCH, callback );
+    URL prefetch4 = requestDownload( fileDownloader, directory, "http://cdn.example.com/p4.jpg",   ImageRequestProcessor.Priority.PREFETCH, callback );
+
+    // Low priority downloads can't use all of a host's slots
+
+    Assert.assertEquals( 3, executor.runnableList.size() );
+
+    URL visible1 = requestDownload( fileDownloader, directory, "http://cdn.example.com/v1.jpg",   ImageRequestProcessor.Priority.VISIBLE, callback );
+
+    Assert.assertEquals( 4, executor.runnableList.size() );
+
+    // Visible downloads are still limited per host, but not overall
+
+    URL visible2 = requestDownload( fileDownloader, directory, "http://cdn.example.com/v2.jpg",   ImageRequestProcessor.Priority.VISIBLE, callback );
+
+    Assert.assertEquals( 4, executor.runnableList.size() );
+
+    URL visible3 = requestDownload( fileDownloader, directory, "http://other.example.com/v3.jpg", ImageRequestProcessor.Priority.VISIBLE, callback );
+
+    Assert.assertEquals( 5, executor.runnableList.size() );
+
+    executor.runAll();
+
+    Assert.assertEquals( Arrays.asList( prefetch1, prefetch2, prefetch3, visible1, visible3, visible2, prefetch4 ), callback.succeededURLList );
+    }
+
+  public void testClearPendingRequests1() throws Exception
+    {
+    File                    directory      = createDirectory( "FileDownloaderQueueTests" );
+    RecordingExecutor       executor       = new RecordingExecutor();
+    RecordingCallback       callback       = new RecordingCallback();
+    final FileDownloader    fileDownloader = new FileDownloader( getContext(), executor );
+
+    URL prefetch1 = requestDownload( fileDownloader, directory, "http://cdn.example.com/p1.jpg", ImageRequestProcessor.Priority.PREFETCH, callback );
+    URL prefetch2 = requestDownload( fileDownloader, directory, "http://cdn.example.com/p2.jpg", ImageRequestProcessor.Priority.PREFETCH, callback );
+    URL prefetch3 = requestDownload( fileDownloader, directory, "http://cdn.example.com/p3.jpg", ImageRequestProcessor.Priority.PREFETCH, callback );
+    URL prefetch4 = requestDownload( fileDownloader, directory, "http://cdn.example.com/p4.jpg", ImageRequestProcessor.Priority.PREFETCH, callback );
+
+    runOnMainThread( new Runnable()
+      {
+      @Override
+      public void run()
+        {
+        fileDownloader.clearPendingRequests();
+        }
+      } );
+
+    // Both running and queued downloads are reported as cancelled, and never complete
+
+    Assert.assertEquals( 4, callback.cancelledURLList.size() );
+    Assert.assertTrue( callback.cancelledURLList.containsAll( Arrays.asList( prefetch1, prefetch2, prefetch3, prefetch4 ) ) );
+
+    executor.runAll();
+
+    Assert.assertEquals( 0, callback.succeededURLList.size() );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * A URL stream handler that returns scripted responses,
+   * and records the range headers of each request.
+   *
+   *****************************************************/
+  private static class StubURLStreamHandler extends URLStreamHandler
+    {
+    private LinkedList<StubHttpURLConnection>  mConnectionList = new LinkedList<>();
+
+    List<String>                               rangeList       = new ArrayList<>();
+    List<String>                               ifRangeList     = new ArrayList<>();
+
+
+    URL createURL() throws IOException
+      {
+      return ( new URL( "http", "example.com", 80, "/image.jpg", this ) );
+      }
+
+
+    void addResponse( int responseCode, byte[] bytes, int offset, String... headerNamesAndValues ) throws IOException
+      {
+      StubHttpURLConnection connection = new StubHttpURLConnection( createURL(), responseCode, Arrays.copyOfRange( bytes, offset, bytes.length ) );
+
+      for ( int index = 0; index < headerNamesAndValues.length; index += 2 )
+        {
+        connection.mHeaderTable.put( headerNamesAndValues[ index ], headerNamesAndValues[ index + 1 ] );
+        }
+
+      mConnectionList.addLast( connection );
+      }
+
+
+    @Override
+    protected URLConnection openConnection( URL url )
+      {
+      StubHttpURLConnection connection = mConnectionList.removeFirst();
+
+      connection.mHandler = this;
+
+      return ( connection );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * An HTTP connection that returns a scripted response.
+   *
+   *****************************************************/
+  private static class StubHttpURLConnection extends HttpURLConnection
+    {
+    private StubURLStreamHandler     mHandler;
+    private int                      mResponseCode;
+    private byte[]                   mBodyBytes;
+    private HashMap<String,String>   mHeaderTable;
+
+
+    StubHttpURLConnection( URL url, int responseCode, byte[] bodyBytes )
+      {
+      super( url );
+
+      mResponseCode = responseCode;
+      mBodyBytes    = bodyBytes;
+      mHeaderTable  = new HashMap<>();
+      }
+
+
+    @Override
+    public int getResponseCode()
+      {
+      // The response is only requested once, so this is where the request is recorded
+      mHandler.rangeList.add( getRequestProperty( "Range" ) );
+      mHandler.ifRangeList.add( getRequestProperty( "If-Range" ) );
+
+      return ( mResponseCode );
+      }
+
+
+    @Override
+    public String getHeaderField( String name )
+      {
+      return ( mHeaderTable.get( name ) );
+      }
+
+
+    @Override
+    public InputStream getInputStream()
+      {
+      return ( new ByteArrayInputStream( mBodyBytes ) );
+      }
+
+
+    @Override
+    public void connect()
+      {
+      }
+
+
+    @Override
+    public void disconnect()
+      {
+      }
+
+
+    @Override
+    public boolean usingProxy()
+      {
+      return ( false );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * An executor that only runs tasks when asked to.
+   *
+   *****************************************************/
+  private class RecordingExecutor implements Executor
+    {
+    List<Runnable>  runnableList = new ArrayList<>();
+
+
+    @Override
+    public void execute( Runnable runnable )
+      {
+      runnableList.add( runnable );
+      }
+
+
+    /*****************************************************
+     *
+     * Runs tasks in the order they were started, waiting
+     * for each to finish on the UI thread before running
+     * the next.
+     *
+     *****************************************************/
+    void runAll() throws InterruptedException
+      {
+      for ( int runnableIndex = 0; runnableIndex < runnableList.size(); runnableIndex ++ )
+        {
+        Thread thread = new Thread( runnableList.get( runnableIndex ) );
+
+        thread.start();
+        thread.join();
+
+        runOnMainThread( new Runnable()
+          {
+          @Override
+          public void run()
+            {
+            }
+          } );
+        }
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * A callback that records successful and cancelled
+   * downloads.
+   *
+   *****************************************************/
+  private static class RecordingCallback implements FileDownloader.ICancellableCallback
+    {
+    List<URL>  succeededURLList = new ArrayList<>();
+    List<URL>  cancelledURLList = new ArrayList<>();
+
+
+    @Override
+    public void onDownloadSuccess( URL sourceURL, File targetDirectory, File targetFile )
+      {
+      succeededURLList.add( sourceURL );
+      }
+
+
+    @Override
+    public void onDownloadFailure( URL sourceURL, Exception exception )
+      {
+      Assert.fail( "Download failed: " + sourceURL );
+      }
+
+
+    @Override
+    public void onDownloadCancelled( URL sourceURL )
+      {
+      cancelledURLList.add( sourceURL );
+      }
+    }
+
+  }
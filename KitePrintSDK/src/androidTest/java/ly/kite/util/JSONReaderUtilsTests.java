@@ -0,0 +1,145 @@
+/*****************************************************
+ *
+ * JSONReaderUtilsTests.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.util;
+
+
+///// Import(s) /////
+
+import android.util.JsonReader;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.StringReader;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class tests the JSON reader utilities.
+ *
+ *****************************************************/
+public class JSONReaderUtilsTests extends TestCase
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "JSONReaderUtilsTests";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Parse number tests.
+   *
+   *****************************************************/
+
+  public void testParseNumber1()
+    {
+    Assert.assertEquals( 12, JSONReaderUtils.parseNumber( "12" ) );
+    Assert.assertEquals( -3, JSONReaderUtils.parseNumber( "-3" ) );
+    }
+
+  public void testParseNumber2()
+    {
+    Assert.assertEquals( 12345678901L, JSONReaderUtils.parseNumber( "12345678901" ) );
+    }
+
+  public void testParseNumber3()
+    {
+    Assert.assertEquals( 2.5, JSONReaderUtils.parseNumber( "2.5" ) );
+    Assert.assertEquals( 100.0, JSONReaderUtils.parseNumber( "1E2" ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Read object tests.
+   *
+   *****************************************************/
+
+  public void testReadObject1() throws Exception
+    {
+    JsonReader jsonReader = new JsonReader( new StringReader( "{}" ) );
+
+    JSONObject jsonObject = JSONReaderUtils.readObject( jsonReader );
+
+    Assert.assertEquals( 0, jsonObject.length() );
+    }
+
+  public void testReadObject2() throws Exception
+    {
+    JsonReader jsonReader = new JsonReader( new StringReader( "{\"a\":\"text\",\"b\":true,\"c\":null,\"d\":[1,2.5,{\"e\":\"f\"}]}" ) );
+
+    JSONObject jsonObject = JSONReaderUtils.readObject( jsonReader );
+
+    Assert.assertEquals( "text", jsonObject.getString( "a" ) );
+    Assert.assertEquals( true, jsonObject.getBoolean( "b" ) );
+    Assert.assertTrue( jsonObject.isNull( "c" ) );
+
+    JSONArray jsonArray = jsonObject.getJSONArray( "d" );
+
+    Assert.assertEquals( 3, jsonArray.length() );
+    Assert.assertEquals( 1, jsonArray.get( 0 ) );
+    Assert.assertEquals( 2.5, jsonArray.get( 1 ) );
+    Assert.assertEquals( "f", jsonArray.getJSONObject( 2 ).getString( "e" ) );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  }
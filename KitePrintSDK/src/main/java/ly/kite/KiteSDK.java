@@ -114,6 +114,7 @@ public class KiteSDK
 
   static public  final String IMAGE_CATEGORY_APP                                   = "app";
   static public  final String IMAGE_CATEGORY_PRODUCT_ITEM                          = "product_item";
+  static public  final String IMAGE_CATEGORY_PRODUCT_IMAGE                         = "product_image";
   static public  final String IMAGE_CATEGORY_SESSION_ASSET                         = "session_asset";
 
   static private final String SHARED_PREFERENCES_NAME_PERMANENT                    = "kite_permanent_shared_prefs";
@@ -281,13 +282,12 @@ public class KiteSDK
     String key = getParameterKey( prefix, name );
 
     ///////// Encryption initializer //////////
-    SecurePreferences pref = new SecurePreferences(ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(ENCRYPTION_KEY);
 
     scope.sharedPreferences( context )
             .edit()
             .putString( pref.encrypt(key), pref.encrypt(value))
             .apply();
-    pref.reset();
     }
 
 
@@ -299,7 +299,7 @@ public class KiteSDK
   static private String getStringParameter( Context context, Scope scope, String prefix, String name, String defaultValue )
     {
     ///////// Decryption initializer //////////
-    SecurePreferences pref = new SecurePreferences(ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(ENCRYPTION_KEY);
 
     String keyOriginal = getParameterKey( prefix, name );
     String keyEncrypted = pref.encrypt(keyOriginal);//Re-encrypt the key s.t. it will match the one stored in the preference files
@@ -316,7 +316,6 @@ public class KiteSDK
 
     try {
       String result = pref.decrypt(scope.sharedPreferences(context).getString(keyOriginal, notAvailable));
-      pref.reset();
       if(result != null && !result.equals(notAvailable)) {
         //un-ecrypted/corrupted, must replace with encrypted info
         if(SecurePreferences.encryptData) {
@@ -327,7 +326,6 @@ public class KiteSDK
       }
     } catch (Exception e) {
     }
-    pref.reset();
 
     String result = scope.sharedPreferences(context).getString(keyOriginal, notAvailable);
     if(!result.equals(notAvailable)) {
@@ -351,7 +349,7 @@ public class KiteSDK
     {
 
     //////// Encryption initializer //////////
-    SecurePreferences pref = new SecurePreferences(ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(ENCRYPTION_KEY);
 
     String key = pref.encrypt(getParameterKey( prefix, name ));
 
@@ -367,7 +365,6 @@ public class KiteSDK
         .putString( key, pref.encrypt(temp) )
       .apply();
 
-    pref.reset();
     }
 
 
@@ -378,7 +375,7 @@ public class KiteSDK
    *****************************************************/
   static private boolean getBooleanParameter( Context context, Scope scope, String prefix, String name, boolean defaultValue ) {
     //////// Decryption initializer //////////
-    SecurePreferences pref = new SecurePreferences(ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(ENCRYPTION_KEY);
     String keyOriginal = getParameterKey(prefix, name);
     String keyEncrypted = pref.encrypt(keyOriginal);//Re-encrypt the key s.t. it will match the one stored in the preference files
 
@@ -394,7 +391,6 @@ public class KiteSDK
     //un-ecrypted/corrupted, must replace with encrypted info
     try {
       String boolAsString = pref.decrypt(scope.sharedPreferences(context).getString(keyOriginal, notAvailable));
-      pref.reset();
       if (boolAsString != null && !boolAsString.equals(notAvailable)) {
         //un-ecrypted/corrupted, must replace with encrypted info
         if(SecurePreferences.encryptData) {
@@ -427,7 +423,7 @@ public class KiteSDK
     String key = getParameterKey( prefix, name );
 
       ///////// Encryption initializer //////////
-      SecurePreferences pref = new SecurePreferences(ENCRYPTION_KEY);
+      SecurePreferences pref = SecurePreferences.getInstance(ENCRYPTION_KEY);
 
       scope.sharedPreferences( context )
       .edit()
@@ -439,7 +435,6 @@ public class KiteSDK
         .putString( pref.encrypt(key + SHARED_PREFERENCES_KEY_SUFFIX_ZIP_OR_POSTAL_CODE), pref.encrypt(address.getZipOrPostalCode() ))
         .putString( pref.encrypt(key + SHARED_PREFERENCES_KEY_SUFFIX_COUNTRY_CODE),       pref.encrypt(address.getCountry().iso3Code() ))
       .apply();
-      pref.reset();
     }
 
 
@@ -451,7 +446,7 @@ public class KiteSDK
   static private Address getAddressParameter( Context context, Scope scope, String prefix, String name )
     {
     //////// Decryption initializer //////////
-    SecurePreferences pref = new SecurePreferences(ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(ENCRYPTION_KEY);
 
     String key = getParameterKey( prefix, name );
 
@@ -540,7 +535,6 @@ public class KiteSDK
       }
     }
 
-    pref.reset();
     if(hasToBeEncrypted) {
       clearAddressParameter(context, scope, prefix, name);
       setParameter(context, scope, prefix, name, result);
@@ -578,7 +572,7 @@ public class KiteSDK
     String key = getParameterKey( prefix, name );
 
     //////// Encryption initializer //////////
-    SecurePreferences pref = new SecurePreferences(ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(ENCRYPTION_KEY);
 
     if (stringSet == null) {
       scope.sharedPreferences( context )
@@ -597,7 +591,6 @@ public class KiteSDK
               .edit()
               .putStringSet(pref.encrypt(key), stringSetEncrypted)
               .apply();
-      pref.reset();
     }
     }
 
@@ -610,7 +603,7 @@ public class KiteSDK
   static private Set<String> getStringSetParameter( Context context, Scope scope, String prefix, String name )
     {
     //////// Decryption initializer //////////
-    SecurePreferences pref = new SecurePreferences(ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(ENCRYPTION_KEY);
 
     String originalKey = getParameterKey( prefix, name );
     String encryptedKey = pref.encrypt(originalKey);
@@ -647,7 +640,6 @@ public class KiteSDK
       }
     }
 
-    pref.reset();
     if (hasToBeEncypted) {
         removeParameter(context, scope, originalKey);
         setParameter(context, scope, prefix, name, returnedStringSet);
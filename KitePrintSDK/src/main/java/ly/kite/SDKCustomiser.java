@@ -267,6 +267,68 @@ public class SDKCustomiser
     }
 
 
+  /*****************************************************
+   *
+   * Returns the maximum number of images that are uploaded
+   * at the same time when an order is submitted.
+   *
+   *****************************************************/
+  public int getMaxConcurrentAssetUploads()
+    {
+    return ( 3 );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if the images in a newly retrieved catalogue
+   * should be downloaded in the background, before they are
+   * displayed.
+   *
+   *****************************************************/
+  public boolean prefetchCatalogueImages()
+    {
+    return ( true );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if all product images, rather than just
+   * the first image for each product, should be prefetched
+   * when the network connection is not metered.
+   *
+   *****************************************************/
+  public boolean prefetchAllProductImagesWhenUnmetered()
+    {
+    return ( true );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the timeout, in milliseconds, for making an
+   * HTTP connection.
+   *
+   *****************************************************/
+  public int getHTTPConnectionTimeoutMillis()
+    {
+    return ( 30000 );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the timeout, in milliseconds, for waiting for
+   * data on an HTTP connection.
+   *
+   *****************************************************/
+  public int getHTTPSocketTimeoutMillis()
+    {
+    return ( 60000 );
+    }
+
+
   /*****************************************************
    *
    * Returns a callback for successful order submission.
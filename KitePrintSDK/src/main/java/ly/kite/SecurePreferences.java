@@ -29,6 +29,8 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -48,13 +50,39 @@ public class SecurePreferences {
     private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
     private static final String SECRET_KEY_HASH_TRANSFORMATION = "SHA-256";
     private static final String CHARSET = "UTF-8";
+    private static final String IV_SOURCE = "CHANGE_ME_IF_YOU_WANT";
 
-    private Cipher writer;
-    private Cipher reader;
+    private static final Map<String, SecurePreferences> sInstanceTable = new HashMap<String, SecurePreferences>();
 
     public static boolean encryptData = true;
     private final String secureKey;
 
+    // The key and IV are derived once per instance. Cipher objects are not thread safe, so each
+    // thread gets its own pair, which is re-used for every value (doFinal leaves a cipher ready
+    // for the next value).
+    private SecretKeySpec secretKey;
+    private IvParameterSpec ivSpec;
+    private volatile ThreadLocal<Cipher> writer;
+    private volatile ThreadLocal<Cipher> reader;
+
+    /**
+     * Returns a shared instance for the supplied key. The key derivation and cipher set-up
+     * are only done once, so this should be preferred over creating new instances, especially
+     * when encrypting or decrypting inside loops.
+     * @param secureKey the key used for encryption
+     * @throws SecurePreferencesException
+     */
+    public static SecurePreferences getInstance(String secureKey) throws SecurePreferencesException {
+        synchronized (sInstanceTable) {
+            SecurePreferences instance = sInstanceTable.get(secureKey);
+            if (instance == null) {
+                instance = new SecurePreferences(secureKey);
+                sInstanceTable.put(secureKey, instance);
+            }
+            return instance;
+        }
+    }
+
     /**
      * This will initialize an instance of the SecurePreferences class
      * @param secureKey the key used for encryption, finding a good key scheme is hard.
@@ -71,10 +99,12 @@ public class SecurePreferences {
         reset();
     }
 
+    /**
+     * Re-initialises the ciphers, through {@link #initCiphers(String)}. This is no longer needed
+     * after a failed conversion; a cipher that throws is discarded automatically.
+     */
     public void reset() {
         try {
-            this.writer = Cipher.getInstance(TRANSFORMATION);
-            this.reader = Cipher.getInstance(TRANSFORMATION);
             initCiphers(this.secureKey);
         } catch (GeneralSecurityException e) {
             throw new SecurePreferencesException(e);
@@ -83,18 +113,33 @@ public class SecurePreferences {
         }
     }
 
+    /**
+     * Derives the key and IV, and discards any cached ciphers. Each thread's ciphers are then
+     * created on first use, by {@link #createCipher(int)}.
+     */
     protected void initCiphers(String secureKey) throws UnsupportedEncodingException, NoSuchAlgorithmException, InvalidKeyException,
             InvalidAlgorithmParameterException {
-        IvParameterSpec ivSpec = getIv();
-        SecretKeySpec secretKey = getSecretKey(secureKey);
+        this.secretKey = getSecretKey(secureKey);
+        this.ivSpec = getIv();
+        this.writer = new CipherThreadLocal(Cipher.ENCRYPT_MODE);
+        this.reader = new CipherThreadLocal(Cipher.DECRYPT_MODE);
+    }
 
-        writer.init(Cipher.ENCRYPT_MODE, secretKey, ivSpec);
-        reader.init(Cipher.DECRYPT_MODE, secretKey, ivSpec);
+    protected Cipher createCipher(int mode) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(mode, secretKey, ivSpec);
+        return cipher;
     }
 
     protected IvParameterSpec getIv() {
-        byte[] iv = new byte[writer.getBlockSize()];
-        System.arraycopy("CHANGE_ME_IF_YOU_WANT".getBytes(), 0, iv, 0, writer.getBlockSize());
+        int blockSize;
+        try {
+            blockSize = Cipher.getInstance(TRANSFORMATION).getBlockSize();
+        } catch (GeneralSecurityException e) {
+            throw new SecurePreferencesException(e);
+        }
+        byte[] iv = new byte[blockSize];
+        System.arraycopy(IV_SOURCE.getBytes(), 0, iv, 0, blockSize);
         return new IvParameterSpec(iv);
     }
 
@@ -144,12 +189,55 @@ public class SecurePreferences {
         }
     }
 
-    private static byte[] convert(Cipher cipher, byte[] bs) throws SecurePreferencesException {
+    /**
+     * Encrypts a number of values at once, using the same cipher. Null values stay null.
+     * @throws SecurePreferencesException if any of the values cannot be encrypted
+     */
+    public String[] encryptAll(String... values) throws SecurePreferencesException {
+        String[] secureValues = new String[values.length];
+        for (int index = 0; index < values.length; index++) {
+            secureValues[index] = encrypt(values[index]);
+        }
+        return secureValues;
+    }
+
+    /**
+     * Decrypts a number of values at once, using the same cipher. Null values stay null.
+     * @throws SecurePreferencesException if any of the values cannot be decrypted
+     */
+    public String[] decryptAll(String... securedEncodedValues) throws SecurePreferencesException {
+        String[] values = new String[securedEncodedValues.length];
+        for (int index = 0; index < securedEncodedValues.length; index++) {
+            values[index] = decrypt(securedEncodedValues[index]);
+        }
+        return values;
+    }
+
+    private static byte[] convert(ThreadLocal<Cipher> cipherLocal, byte[] bs) throws SecurePreferencesException {
         try {
-            return cipher.doFinal(bs);
+            return cipherLocal.get().doFinal(bs);
         }
         catch (Exception e) {
+            // The cipher may be left in an unknown state, so don't re-use it
+            cipherLocal.remove();
             throw new SecurePreferencesException(e);
         }
     }
-}
\ No newline at end of file
+
+    private class CipherThreadLocal extends ThreadLocal<Cipher> {
+        private final int mode;
+
+        CipherThreadLocal(int mode) {
+            this.mode = mode;
+        }
+
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return createCipher(mode);
+            } catch (GeneralSecurityException e) {
+                throw new SecurePreferencesException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*****************************************************
+ *
+ * AssetStreamEntity.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.api;
+
+
+///// Import(s) /////
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.content.Context;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import ly.kite.util.Asset;
+import ly.kite.util.AssetHelper;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class is an HTTP entity that streams the encoded
+ * data of an asset straight from its file, URI, or
+ * resource, so that the image never has to be held in
+ * memory.
+ *
+ * The entity is repeatable: the asset is opened again
+ * each time that it is written.
+ *
+ *****************************************************/
+class AssetStreamEntity extends AbstractHttpEntity
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG                = "AssetStreamEntity";
+
+  static private final int     BUFFER_SIZE_IN_BYTES   = 8192;  // 8 KB
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+  private Context  mContext;
+  private Asset    mAsset;
+  private long     mContentLength;
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+  /*****************************************************
+   *
+   * Creates a new entity. Must be called on a background
+   * thread, since it may need to query the content
+   * length.
+   *
+   *****************************************************/
+  AssetStreamEntity( Context context, Asset asset, String mimeType ) throws IOException
+    {
+    mContext       = context;
+    mAsset         = asset;
+    mContentLength = AssetHelper.getContentLength( context, asset );
+
+    setContentType( mimeType );
+    }
+
+
+  ////////// AbstractHttpEntity Method(s) //////////
+
+  @Override
+  public boolean isRepeatable()
+    {
+    return ( true );
+    }
+
+
+  @Override
+  public long getContentLength()
+    {
+    return ( mContentLength );
+    }
+
+
+  @Override
+  public InputStream getContent() throws IOException
+    {
+    return ( AssetHelper.openInputStream( mContext, mAsset ) );
+    }
+
+
+  @Override
+  public void writeTo( OutputStream outputStream ) throws IOException
+    {
+    InputStream inputStream = AssetHelper.openInputStream( mContext, mAsset );
+
+    try
+      {
+      byte[] buffer = new byte[ BUFFER_SIZE_IN_BYTES ];
+
+      int byteCount;
+
+      while ( ( byteCount = inputStream.read( buffer ) ) >= 0 )
+        {
+        outputStream.write( buffer, 0, byteCount );
+        }
+
+      outputStream.flush();
+      }
+    finally
+      {
+      inputStream.close();
+      }
+    }
+
+
+  @Override
+  public boolean isStreaming()
+    {
+    return ( false );
+    }
+
+  }
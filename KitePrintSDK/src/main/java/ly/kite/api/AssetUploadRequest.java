@@ -2,24 +2,32 @@ package ly.kite.api;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 
 import ly.kite.KiteSDK;
+import ly.kite.ordering.UploadJournal;
 import ly.kite.util.Asset;
 import ly.kite.util.AssetHelper;
+import ly.kite.util.HTTPClientAgent;
 import ly.kite.util.HTTPJSONRequest;
 import ly.kite.util.UploadableImage;
 
@@ -28,16 +36,40 @@ import ly.kite.util.UploadableImage;
  */
 public class AssetUploadRequest {
 
+    static private final String LOG_TAG = "AssetUploadRequest";
+
+    // Each asset upload is attempted this many times before the batch fails
+    static private final int MAX_UPLOAD_ATTEMPTS = 3;
+    static private final long RETRY_DELAY_MILLIS = 1000L;
+
     private Context mContext;
+    private int mMaxConcurrentUploads;
+    private Handler mHandler;
 
     private boolean cancelled;
     private KiteAPIRequest registerImageURLAssetsReq, signReq;
     private int numOutstandingAsyncOpertions = 0;
     private boolean notifiedUploadListenerOfOutcome = false;
 
+    // Images that are in the upload list, but aren't ready to be uploaded yet (e.g. because
+    // they are still being cropped), together with the MIME type they will have. These are
+    // keyed by identity, because preparing an image may change its asset.
+    private IdentityHashMap<UploadableImage,Asset.MIMEType> mPendingImageTable = new IdentityHashMap<>();
+    private IdentityHashMap<UploadableImage,Asset.MIMEType> mPreparedMIMETypeTable = new IdentityHashMap<>();
+    private IdentityHashMap<UploadableImage,UploadJournal.ImageKeys> mJournalKeysTable = new IdentityHashMap<>();
+
+    // Signed uploads that haven't been started yet, and those that are in progress
+    private List<SignedS3RequestUploadDetails> mUploadQueue;
+    private List<SignedS3RequestUploadDetails> mActiveUploads;
+    private List<UploadableImage> mUploadedImages;
+    private int mTotalAssetsToUpload;
+    private AssetUploadOrRegisterListener mS3UploadListener;
+
     public AssetUploadRequest( Context context )
         {
         mContext = context;
+        mMaxConcurrentUploads = Math.max( 1, KiteSDK.getInstance( context ).getCustomiser().getMaxConcurrentAssetUploads() );
+        mHandler = new Handler( Looper.getMainLooper() );
         }
 
     public void cancelUpload() {
@@ -61,12 +93,60 @@ public class AssetUploadRequest {
         uploadAssets(context, list, uploadListener);
     }
 
+    /*****************************************************
+     *
+     * Marks an image as not being ready for upload yet. The
+     * image must be included in the list passed to
+     * uploadAssets, and must be prepared as a file asset of
+     * the supplied MIME type. Its upload is signed straight
+     * away, but doesn't start until {@link #onAssetReady} is
+     * called.
+     *
+     * Must be called before uploadAssets.
+     *
+     *****************************************************/
+    public void addPendingAsset( UploadableImage uploadableImage, Asset.MIMEType mimeType ) {
+        mPendingImageTable.put( uploadableImage, mimeType );
+        mPreparedMIMETypeTable.put( uploadableImage, mimeType );
+    }
+
+    /*****************************************************
+     *
+     * Called when a pending image is ready to be uploaded.
+     *
+     *****************************************************/
+    public void onAssetReady( UploadableImage uploadableImage ) {
+        mPendingImageTable.remove( uploadableImage );
+
+        startQueuedUploads( mContext );
+    }
+
+    /*****************************************************
+     *
+     * Sets the upload journal keys for images, so that
+     * their uploads are recorded once complete.
+     *
+     * Must be called before uploadAssets.
+     *
+     *****************************************************/
+    public void setJournalKeys( IdentityHashMap<UploadableImage,UploadJournal.ImageKeys> imageKeysTable ) {
+        mJournalKeysTable.putAll( imageKeysTable );
+    }
+
+    private boolean isPending( UploadableImage uploadableImage ) {
+        return mPendingImageTable.containsKey( uploadableImage );
+    }
+
     public void uploadAssets( Context context, final List<UploadableImage> uploadableImages, final IProgressListener uploadListener) {
         ArrayList<UploadableImage> urlsToRegister = new ArrayList<>();
         ArrayList<UploadableImage> assetsToUpload = new ArrayList<>();
 
         for (UploadableImage uploadableImage : uploadableImages) {
-            if (uploadableImage.getType() == Asset.Type.REMOTE_URL) {
+            // Images that were uploaded by an earlier attempt don't need uploading again
+            if (uploadableImage.hasBeenUploaded()) continue;
+
+            // Pending images are always uploaded, since they will become file assets
+            if (uploadableImage.getType() == Asset.Type.REMOTE_URL && !isPending(uploadableImage)) {
                 urlsToRegister.add(uploadableImage);
             } else {
                 assetsToUpload.add(uploadableImage);
@@ -102,6 +182,11 @@ public class AssetUploadRequest {
             ++numOutstandingAsyncOpertions;
             registerImageURLs( context, urlsToRegister, listener);
         }
+
+        if (numOutstandingAsyncOpertions == 0) {
+            notifiedUploadListenerOfOutcome = true;
+            uploadListener.onUploadComplete( this, uploadableImages);
+        }
     }
 
     private void completedOutstandingAsyncOperation( List<UploadableImage> uploadableImages, Exception ex, IProgressListener listener) {
@@ -129,7 +214,10 @@ public class AssetUploadRequest {
                 mimeTypes.append(",");
             }
 
-            mimeTypes.append( AssetHelper.getMimeType( context, uploadableImage.getAsset() ).mimeTypeString());
+            Asset.MIMEType mimeType = mPreparedMIMETypeTable.get( uploadableImage );
+            if (mimeType == null) mimeType = AssetHelper.getMimeType( context, uploadableImage.getAsset() );
+
+            mimeTypes.append( mimeType.mimeTypeString());
         }
 
         String url = String.format("%s/asset/sign/?mime_types=%s&client_asset=true", KiteSDK.getInstance( context ).getAPIEndpoint(), mimeTypes.toString());
@@ -179,53 +267,152 @@ public class AssetUploadRequest {
         });
     }
 
-    private void uploadAssetToS3(Context context, final SignedS3RequestUploadDetails details, final byte[] bytes, final UploadToS3Listener listener) {
+    /*****************************************************
+     *
+     * Uploads an asset to S3. If bytes are supplied they
+     * are uploaded, otherwise the asset is streamed
+     * straight from its source.
+     *
+     *****************************************************/
+    void uploadAssetToS3(final Context context, final SignedS3RequestUploadDetails details, final byte[] bytes, final UploadToS3Listener listener) {
         if (Looper.myLooper() != Looper.getMainLooper()) {
             throw new IllegalStateException("Attempting to kick off asset upload on a thread that is not the main thread");
         }
 
-        final String mimeType = AssetHelper.getMimeType( context, details.uploadableImage.getAsset() ).mimeTypeString();
-        AsyncTask<Void, Void, Exception> uploadTask = new AsyncTask<Void, Void, Exception>() {
+        final Asset asset = details.uploadableImage.getAsset();
+        final String mimeType = AssetHelper.getMimeType( context, asset ).mimeTypeString();
+        AsyncTask<Void, Long, Exception> uploadTask = new AsyncTask<Void, Long, Exception>() {
+            private long contentLength;
+
             @Override
             protected Exception doInBackground(Void... voids) {
-                HttpClient httpclient = new DefaultHttpClient();
+                HttpClient httpclient = HTTPClientAgent.getHttpClient( context );
                 HttpPut request = new HttpPut(details.signedS3UploadReqURL.toString());
                 request.setHeader("Content-Type", mimeType);
                 request.setHeader("x-amz-acl", "private");
-                request.setEntity(new ByteArrayEntity(bytes));
 
                 try {
+                    HttpEntity entity;
+
+                    if (bytes != null) {
+                        entity = new ByteArrayEntity(bytes);
+                    } else {
+                        entity = new AssetStreamEntity(context, asset, mimeType);
+
+                        // S3 needs a content length, so if the source can't tell us what it
+                        // is we have no choice but to read the image into memory.
+                        if (entity.getContentLength() < 0) entity = new ByteArrayEntity(EntityUtils.toByteArray(entity));
+                    }
+
+                    contentLength = entity.getContentLength();
+
+                    request.setEntity(new ProgressReportingEntity(entity, new ProgressReportingEntity.IProgressListener() {
+                        @Override
+                        public void onBytesWritten(long totalBytesWritten) {
+                            publishProgress(totalBytesWritten);
+                        }
+                    }));
+
                     HttpResponse response = httpclient.execute(request);
                     int statusCode = response.getStatusLine().getStatusCode();
+
+                    // Read the response, so the connection can go back to the pool
+                    HttpEntity responseEntity = response.getEntity();
+                    if (responseEntity != null) responseEntity.consumeContent();
+
                     if (statusCode >= 200 && statusCode <= 299) {
                         return null;
                     } else {
-                        return new IllegalStateException("Failed to upload asset to amazon s3 with status code: " + statusCode);
+                        return new S3UploadException(statusCode);
                     }
                 } catch (Exception e) {
+                    // Don't return a connection in an unknown state to the pool
+                    request.abort();
                     return e;
                 }
             }
 
+            @Override
+            protected void onProgressUpdate(Long... totalBytesWritten) {
+                long bytesWritten = totalBytesWritten[totalBytesWritten.length - 1];
+                listener.onProgress(bytesWritten, bytesWritten, contentLength);
+            }
+
             @Override
             protected void onPostExecute(Exception ex) {
                 if (ex != null) {
                     listener.onError(ex);
                 } else {
-                    listener.onProgress(bytes.length, bytes.length, bytes.length); // TODO: do proper upload progress tracking rather than one off callback on completion
+                    listener.onProgress(contentLength, contentLength, contentLength);
                     listener.onUploadComplete();
                 }
             }
         };
 
-        uploadTask.execute();
+        // Use the thread pool so that concurrent uploads aren't serialised
+        uploadTask.executeOnExecutor( AsyncTask.THREAD_POOL_EXECUTOR );
+    }
+
+    /*****************************************************
+     *
+     * Starts as many queued uploads as we can, up to the
+     * concurrency limit. Uploads of images that are still
+     * pending are skipped until they are ready.
+     *
+     *****************************************************/
+    private void startQueuedUploads( final Context context ) {
+        if (cancelled || notifiedUploadListenerOfOutcome || mUploadQueue == null) return;
+
+        Iterator<SignedS3RequestUploadDetails> detailsIterator = mUploadQueue.iterator();
+
+        while (mActiveUploads.size() < mMaxConcurrentUploads && detailsIterator.hasNext()) {
+            SignedS3RequestUploadDetails details = detailsIterator.next();
+
+            if (isPending(details.uploadableImage)) continue;
+
+            detailsIterator.remove();
+
+            mActiveUploads.add( details );
+            uploadAssetToS3( context, details );
+        }
+    }
+
+    /*****************************************************
+     *
+     * Reports progress to the listener. The byte counts
+     * are aggregated across all the uploads that are in
+     * progress.
+     *
+     *****************************************************/
+    private void notifyProgress( long bytesWritten ) {
+        long totalAssetBytesWritten = 0;
+        long totalAssetBytesExpectedToWrite = 0;
+
+        for (SignedS3RequestUploadDetails details : mActiveUploads) {
+            totalAssetBytesWritten += details.bytesWritten;
+            totalAssetBytesExpectedToWrite += details.bytesExpectedToWrite;
+        }
+
+        mS3UploadListener.onProgress( mUploadedImages.size(), mTotalAssetsToUpload, bytesWritten, totalAssetBytesWritten, totalAssetBytesExpectedToWrite );
     }
 
-    private void uploadAssetsToS3( final Context context, final List<SignedS3RequestUploadDetails> remainingAssetsToUpload, final List<UploadableImage> uploadedAssetAccumulator, final AssetUploadOrRegisterListener listener) {
-        if (cancelled || notifiedUploadListenerOfOutcome) return;
+    /*****************************************************
+     *
+     * Uploads a single asset. Files, URIs, and resources
+     * are streamed from their source. Other assets are
+     * converted to bytes first, and the bytes are kept
+     * until the upload succeeds, so that a retry doesn't
+     * need to get them again.
+     *
+     *****************************************************/
+    private void uploadAssetToS3( final Context context, final SignedS3RequestUploadDetails assetToUploadDetails ) {
+        if ( assetToUploadDetails.bytes != null || AssetHelper.isStreamable( assetToUploadDetails.uploadableImage.getAsset() ) )
+            {
+            uploadAssetBodyToS3( context, assetToUploadDetails );
+
+            return;
+            }
 
-        final SignedS3RequestUploadDetails assetToUploadDetails = remainingAssetsToUpload.remove(0);
-        final int totalAssetsToUpload = uploadedAssetAccumulator.size() + remainingAssetsToUpload.size() + 1;
         AssetHelper.requestImageBytes( context, assetToUploadDetails.uploadableImage.getAsset(), new AssetHelper.IImageBytesConsumer()
         {
         @Override
@@ -233,58 +420,143 @@ public class AssetUploadRequest {
             {
             if ( cancelled || notifiedUploadListenerOfOutcome ) return;
 
-            listener.onProgress( uploadedAssetAccumulator.size(), totalAssetsToUpload, 0, 0, bytes.length );
-            uploadAssetToS3( context, assetToUploadDetails, bytes, new UploadToS3Listener()
+            assetToUploadDetails.bytes = bytes;
+            uploadAssetBodyToS3( context, assetToUploadDetails );
+            }
+
+        @Override
+        public void onAssetError( Asset asset, Exception ex )
             {
-            @Override
-            public void onProgress( long bytesWritten, long totalAssetBytesWritten, long totalAssetBytesExpectedToWrite )
+            if ( cancelled || notifiedUploadListenerOfOutcome ) return;
+            onUploadError( context, assetToUploadDetails, ex );
+            }
+        } );
+    }
+
+    private void uploadAssetBodyToS3( final Context context, final SignedS3RequestUploadDetails assetToUploadDetails ) {
+        // The expected size of a streamed asset isn't known until the upload starts
+        assetToUploadDetails.bytesWritten = 0;
+        assetToUploadDetails.bytesExpectedToWrite = ( assetToUploadDetails.bytes != null ? assetToUploadDetails.bytes.length : 0 );
+
+        notifyProgress( 0 );
+
+        uploadAssetToS3( context, assetToUploadDetails, assetToUploadDetails.bytes, new UploadToS3Listener()
+        {
+        @Override
+        public void onProgress( long bytesWritten, long totalAssetBytesWritten, long totalAssetBytesExpectedToWrite )
+            {
+            if ( cancelled || notifiedUploadListenerOfOutcome ) return;
+
+            long newBytesWritten = totalAssetBytesWritten - assetToUploadDetails.bytesWritten;
+            assetToUploadDetails.bytesWritten = totalAssetBytesWritten;
+            assetToUploadDetails.bytesExpectedToWrite = totalAssetBytesExpectedToWrite;
+
+            if ( newBytesWritten > 0 ) notifyProgress( newBytesWritten );
+            }
+
+        @Override
+        public void onUploadComplete()
+            {
+            if ( cancelled || notifiedUploadListenerOfOutcome ) return;
+
+            mActiveUploads.remove( assetToUploadDetails );
+            assetToUploadDetails.bytes = null;
+
+            UploadableImage uploadableImage = assetToUploadDetails.uploadableImage;
+            uploadableImage.markAsUploaded( assetToUploadDetails.assetId, assetToUploadDetails.s3AssetPreviewURL );
+            mUploadedImages.add( uploadableImage );
+
+            UploadJournal.ImageKeys journalKeys = mJournalKeysTable.get( uploadableImage );
+            if ( journalKeys != null )
                 {
-                if ( cancelled || notifiedUploadListenerOfOutcome ) return;
-                listener.onProgress( uploadedAssetAccumulator.size(), totalAssetsToUpload, bytesWritten, totalAssetBytesWritten, totalAssetBytesExpectedToWrite );
+                UploadJournal.recordUpload( context, journalKeys, assetToUploadDetails.assetId, assetToUploadDetails.s3AssetPreviewURL, assetToUploadDetails.signedS3UploadReqURL );
                 }
 
-            @Override
-            public void onUploadComplete()
+            if ( mUploadQueue.size() == 0 && mActiveUploads.size() == 0 )
                 {
-                if ( cancelled || notifiedUploadListenerOfOutcome ) return;
-
-                UploadableImage uploadableImage = assetToUploadDetails.uploadableImage;
-                uploadableImage.markAsUploaded( assetToUploadDetails.assetId, assetToUploadDetails.s3AssetPreviewURL );
-                uploadedAssetAccumulator.add( uploadableImage );
-                if ( remainingAssetsToUpload.size() == 0 )
-                    {
-                    listener.onSuccess();
-                    }
-                else
-                    {
-                    uploadAssetsToS3( context, remainingAssetsToUpload, uploadedAssetAccumulator, listener );
-                    }
+                mS3UploadListener.onSuccess();
                 }
-
-            @Override
-            public void onError( Exception ex )
+            else
                 {
-                if ( cancelled || notifiedUploadListenerOfOutcome ) return;
-                listener.onError( ex );
+                notifyProgress( 0 );
+                startQueuedUploads( context );
                 }
-            } );
             }
 
         @Override
-        public void onAssetError( Asset asset, Exception ex )
+        public void onError( Exception ex )
             {
             if ( cancelled || notifiedUploadListenerOfOutcome ) return;
-            listener.onError( ex );
+            onUploadError( context, assetToUploadDetails, ex );
             }
         } );
     }
 
+    /*****************************************************
+     *
+     * Called when a single asset upload fails. If the error
+     * looks temporary, the asset is retried after a delay,
+     * whilst the other uploads carry on. Otherwise the whole
+     * upload fails.
+     *
+     *****************************************************/
+    private void onUploadError( final Context context, final SignedS3RequestUploadDetails assetToUploadDetails, Exception ex ) {
+        if ( ++assetToUploadDetails.attemptCount >= MAX_UPLOAD_ATTEMPTS || !isRetryable( ex ) )
+            {
+            mS3UploadListener.onError( ex );
+
+            return;
+            }
+
+        Log.w( LOG_TAG, "Asset upload attempt " + assetToUploadDetails.attemptCount + " failed, retrying", ex );
+
+        // Back off a little more after each attempt
+        mHandler.postDelayed( new Runnable()
+            {
+            @Override
+            public void run()
+                {
+                if ( cancelled || notifiedUploadListenerOfOutcome ) return;
+                uploadAssetToS3( context, assetToUploadDetails );
+                }
+            }, getRetryDelayMillis( assetToUploadDetails.attemptCount ) );
+    }
+
+    /*****************************************************
+     *
+     * Returns the delay before an asset upload is tried
+     * again, after the supplied number of failed attempts.
+     *
+     *****************************************************/
+    long getRetryDelayMillis( int attemptCount ) {
+        return RETRY_DELAY_MILLIS * attemptCount;
+    }
+
+    /*****************************************************
+     *
+     * Returns true if an upload error may go away if the
+     * upload is tried again.
+     *
+     *****************************************************/
+    static boolean isRetryable( Exception ex ) {
+        if ( ex instanceof IOException ) return true;
+
+        if ( ex instanceof S3UploadException )
+            {
+            int statusCode = ( (S3UploadException) ex ).getStatusCode();
+
+            return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+            }
+
+        return false;
+    }
+
     private void uploadAssets( final Context context, final List<UploadableImage> uploadableImages, final AssetUploadOrRegisterListener listener) {
         getSignedS3UploadRequestURLs( context, uploadableImages, new SignS3UploadsRequestListener() {
 
             @Override
             public void onSuccess(ArrayList<SignedS3RequestUploadDetails> details) {
-                uploadAssetsToS3( context, details, new ArrayList<UploadableImage>(), listener);
+                startUploads( context, details, listener );
             }
 
             @Override
@@ -294,6 +566,22 @@ public class AssetUploadRequest {
         });
     }
 
+    /*****************************************************
+     *
+     * Starts uploading signed assets. Must be called on
+     * the main thread.
+     *
+     *****************************************************/
+    void startUploads( Context context, List<SignedS3RequestUploadDetails> details, AssetUploadOrRegisterListener listener ) {
+        mUploadQueue = details;
+        mActiveUploads = new ArrayList<>();
+        mUploadedImages = new ArrayList<>();
+        mTotalAssetsToUpload = details.size();
+        mS3UploadListener = listener;
+
+        startQueuedUploads( context );
+    }
+
     private void registerImageURLs( Context context, final List<UploadableImage> uploadableImages, final AssetUploadOrRegisterListener listener) {
         int c = 0;
         JSONObject jsonBody = new JSONObject();
@@ -361,14 +649,38 @@ public class AssetUploadRequest {
         });
     }
 
-    private static class SignedS3RequestUploadDetails {
+    static class SignedS3RequestUploadDetails {
         URL signedS3UploadReqURL;
         URL s3AssetPreviewURL;
         long assetId;
         UploadableImage uploadableImage;
+
+        // Upload state
+        byte[] bytes;
+        long bytesWritten;
+        long bytesExpectedToWrite;
+        int attemptCount;
+    }
+
+    /*****************************************************
+     *
+     * An error returned by S3 for an upload.
+     *
+     *****************************************************/
+    static class S3UploadException extends IllegalStateException {
+        private int mStatusCode;
+
+        S3UploadException( int statusCode ) {
+            super( "Failed to upload asset to amazon s3 with status code: " + statusCode );
+            mStatusCode = statusCode;
+        }
+
+        int getStatusCode() {
+            return mStatusCode;
+        }
     }
 
-    private static interface AssetUploadOrRegisterListener {
+    static interface AssetUploadOrRegisterListener {
         void onProgress(int totalAssetsUploaded, int totalAssetsToUpload, long bytesWritten, long totalAssetBytesWritten, long totalAssetBytesExpectedToWrite);
         void onSuccess();
         void onError(Exception ex);
@@ -379,7 +691,7 @@ public class AssetUploadRequest {
         void onError(Exception ex);
     }
 
-    private static interface UploadToS3Listener {
+    static interface UploadToS3Listener {
         void onProgress(long bytesWritten, long totalAssetBytesWritten, long totalAssetBytesExpectedToWrite);
         void onUploadComplete();
         void onError(Exception ex);
@@ -388,6 +700,9 @@ public class AssetUploadRequest {
 
   public interface IProgressListener
     {
+    // Several assets may be uploading at the same time, so bytesWritten is the number of
+    // new bytes written by any upload, and the total byte counts are aggregated across
+    // all the uploads that are currently in progress.
     void onProgress( AssetUploadRequest req, int totalAssetsUploaded, int totalAssetsToUpload, long bytesWritten, long totalAssetBytesWritten, long totalAssetBytesExpectedToWrite );
 
     void onUploadComplete( AssetUploadRequest req, List<UploadableImage> uploadableImages );
@@ -0,0 +1,174 @@
+/*****************************************************
+ *
+ * ProgressReportingEntity.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.api;
+
+
+///// Import(s) /////
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class wraps an HTTP entity, and reports how many
+ * bytes of it have been written as a request body.
+ *
+ * Writes are split into chunks, so that progress is
+ * reported even if the wrapped entity writes all of its
+ * content in one go.
+ *
+ *****************************************************/
+class ProgressReportingEntity extends HttpEntityWrapper
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG                = "ProgressReportingEntity";
+
+  static private final int     CHUNK_SIZE_IN_BYTES    = 32 * 1024;
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+  private IProgressListener  mProgressListener;
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+  ProgressReportingEntity( HttpEntity wrappedEntity, IProgressListener progressListener )
+    {
+    super( wrappedEntity );
+
+    mProgressListener = progressListener;
+    }
+
+
+  ////////// HttpEntityWrapper Method(s) //////////
+
+  /*****************************************************
+   *
+   * Writes the entity content, reporting progress.
+   *
+   *****************************************************/
+  @Override
+  public void writeTo( OutputStream outputStream ) throws IOException
+    {
+    super.writeTo( new ProgressOutputStream( outputStream ) );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * A listener for progress.
+   *
+   *****************************************************/
+  interface IProgressListener
+    {
+    /*****************************************************
+     *
+     * Called on the writing thread after each chunk has
+     * been written.
+     *
+     *****************************************************/
+    void onBytesWritten( long totalBytesWritten );
+    }
+
+
+  /*****************************************************
+   *
+   * An output stream that counts the bytes written to it.
+   *
+   *****************************************************/
+  private class ProgressOutputStream extends FilterOutputStream
+    {
+    private long  mTotalBytesWritten;
+
+
+    ProgressOutputStream( OutputStream outputStream )
+      {
+      super( outputStream );
+      }
+
+
+    @Override
+    public void write( int oneByte ) throws IOException
+      {
+      out.write( oneByte );
+
+      mTotalBytesWritten ++;
+
+      if ( ( mTotalBytesWritten % CHUNK_SIZE_IN_BYTES ) == 0 ) mProgressListener.onBytesWritten( mTotalBytesWritten );
+      }
+
+
+    @Override
+    public void write( byte[] buffer, int offset, int length ) throws IOException
+      {
+      while ( length > 0 )
+        {
+        int chunkLength = Math.min( length, CHUNK_SIZE_IN_BYTES );
+
+        out.write( buffer, offset, chunkLength );
+
+        offset             += chunkLength;
+        length             -= chunkLength;
+        mTotalBytesWritten += chunkLength;
+
+        mProgressListener.onBytesWritten( mTotalBytesWritten );
+        }
+      }
+    }
+
+  }
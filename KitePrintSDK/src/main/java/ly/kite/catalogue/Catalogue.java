@@ -45,9 +45,13 @@ import org.json.JSONObject;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 ///// Class Declaration /////
@@ -75,6 +79,8 @@ public class Catalogue
 
   static public  final int       NO_COLOUR                        = 0x000000;
 
+  static private final int       MAX_FILTERED_CATALOGUES          = 8;
+
 
   ////////// Static Variable(s) //////////
 
@@ -85,11 +91,22 @@ public class Catalogue
   private HashMap<String,JSONObject>    mCustomDataTable;
   private ArrayList<String>             mPayPalSupportedCurrencyCodes;
 
+  private int                           mPrimaryThemeColour;
+  private int                           mSecondaryThemeColour;
+
   private HashMap<String,ProductGroup>  mLabelGroupTable;
   private ArrayList<ProductGroup>       mGroupList;
   private HashMap<String,Product>       mIdProductTable;
   private HashMap<String,ProductGroup>  mProductIdGroupTable;
 
+  // Products in the order they were added, and their positions
+  private ArrayList<Product>            mProductList;
+  private List<Product>                 mUnmodifiableProductList;
+  private HashMap<String,Integer>       mIdProductIndexTable;
+
+  // Filtered copies of this catalogue, by product id list
+  private LinkedHashMap<List<String>,Catalogue>  mFilteredCatalogueTable;
+
   private HashMap<String,Product>       mIdDiscardedProductTable;
 
   private List<URL>                     mAllImagesURLList;
@@ -138,6 +155,16 @@ public class Catalogue
 
   public Catalogue()
     {
+    // Use access order, so that the least recently used filtered catalogue is dropped first
+    mFilteredCatalogueTable = new LinkedHashMap<List<String>,Catalogue>( 16, 0.75f, true )
+      {
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<List<String>,Catalogue> eldestEntry )
+        {
+        return ( size() > MAX_FILTERED_CATALOGUES );
+        }
+      };
+
     mCustomDataTable              = new HashMap<>();
     mPayPalSupportedCurrencyCodes = new ArrayList<>();
 
@@ -149,6 +176,10 @@ public class Catalogue
     mIdProductTable          = new HashMap<>();
     mProductIdGroupTable     = new HashMap<>();
 
+    mProductList             = new ArrayList<>();
+    mUnmodifiableProductList = Collections.unmodifiableList( mProductList );
+    mIdProductIndexTable     = new HashMap<>();
+
     mIdDiscardedProductTable = new HashMap<>();
 
     mAllImagesURLList        = new ArrayList<>();
@@ -167,6 +198,13 @@ public class Catalogue
     // Make sure we always have a JSON object, even if we weren't supplied one.
     mUserConfigJSONObject = ( userConfigJSONObject != null ? userConfigJSONObject
                                                            : new JSONObject() );
+
+    // The theme colours are requested whenever an item is displayed, so
+    // parse them now.
+    mPrimaryThemeColour   = parseThemeColour( JSON_NAME_THEME_COLOUR_PRIMARY );
+    mSecondaryThemeColour = parseThemeColour( JSON_NAME_THEME_COLOUR_SECONDARY );
+
+    mFilteredCatalogueTable.clear();
     }
 
 
@@ -200,6 +238,8 @@ public class Catalogue
   private void setCustomData( HashMap<String,JSONObject> customDataTable )
     {
     mCustomDataTable = customDataTable;
+
+    mFilteredCatalogueTable.clear();
     }
 
 
@@ -211,6 +251,8 @@ public class Catalogue
   void setCustomObject( String name, JSONObject customJSONObject )
     {
     mCustomDataTable.put( name, customJSONObject );
+
+    mFilteredCatalogueTable.clear();
     }
 
 
@@ -227,12 +269,12 @@ public class Catalogue
 
   /*****************************************************
    *
-   * Returns the primary theme colour.
+   * Parses a theme colour from the user config.
    *
    *****************************************************/
-  public int getPrimaryThemeColour()
+  private int parseThemeColour( String name )
     {
-    String colourString = getUserConfigString( JSON_NAME_THEME_COLOUR_PRIMARY );
+    String colourString = getUserConfigString( name );
 
     if ( colourString != null )
       {
@@ -245,19 +287,23 @@ public class Catalogue
 
   /*****************************************************
    *
-   * Returns the secondary theme colour.
+   * Returns the primary theme colour.
    *
    *****************************************************/
-  public int getSecondaryThemeColour()
+  public int getPrimaryThemeColour()
     {
-    String colourString = getUserConfigString( JSON_NAME_THEME_COLOUR_SECONDARY );
+    return ( mPrimaryThemeColour );
+    }
 
-    if ( colourString != null )
-      {
-      return ( colourFromString( colourString ) );
-      }
 
-    return ( NO_COLOUR );
+  /*****************************************************
+   *
+   * Returns the secondary theme colour.
+   *
+   *****************************************************/
+  public int getSecondaryThemeColour()
+    {
+    return ( mSecondaryThemeColour );
     }
 
 
@@ -269,6 +315,8 @@ public class Catalogue
   public void addPayPalSupportedCurrency( String currencyCode )
     {
     if ( currencyCode != null ) mPayPalSupportedCurrencyCodes.add( currencyCode );
+
+    mFilteredCatalogueTable.clear();
     }
 
 
@@ -316,8 +364,27 @@ public class Catalogue
     mIdProductTable.put( product.getId(), product );
     mProductIdGroupTable.put( product.getId(), productGroup );
 
+
+    // If we already have a product with the same id, it is replaced in the same position
+
+    Integer existingIndex = mIdProductIndexTable.get( product.getId() );
+
+    if ( existingIndex != null )
+      {
+      mProductList.set( existingIndex, product );
+      }
+    else
+      {
+      mIdProductIndexTable.put( product.getId(), mProductList.size() );
+
+      mProductList.add( product );
+      }
+
+
     product.appendAllImages( mAllImagesURLList );
 
+    mFilteredCatalogueTable.clear();
+
     return ( this );
     }
 
@@ -335,6 +402,8 @@ public class Catalogue
     mIdDiscardedProductTable.put( product.getId(), product );
 
     product.appendAllImages( mAllImagesURLList );
+
+    mFilteredCatalogueTable.clear();
     }
 
 
@@ -351,12 +420,13 @@ public class Catalogue
 
   /*****************************************************
    *
-   * Returns a list of products.
+   * Returns a list of products, in the order they were
+   * added. The list cannot be modified.
    *
    *****************************************************/
   public Collection<Product> getProducts()
     {
-    return ( mIdProductTable.values() );
+    return ( mUnmodifiableProductList );
     }
 
 
@@ -367,20 +437,23 @@ public class Catalogue
    *****************************************************/
   public Product getProduct( int soughtProductIndex )
     {
-    Collection<Product> productCollection = getProducts();
+    if ( soughtProductIndex < 0 || soughtProductIndex >= mProductList.size() ) return ( null );
 
-    if ( productCollection == null || soughtProductIndex >= productCollection.size() ) return ( null );
+    return ( mProductList.get( soughtProductIndex ) );
+    }
 
-    int productIndex = 0;
 
-    for ( Product product : productCollection )
-      {
-      if ( productIndex == soughtProductIndex ) return ( product );
-
-      productIndex ++;
-      }
+  /*****************************************************
+   *
+   * Returns the index of the product that has the supplied
+   * id, or -1 if there is no such product.
+   *
+   *****************************************************/
+  public int getProductIndex( String productId )
+    {
+    Integer productIndex = mIdProductIndexTable.get( productId );
 
-    return ( null );
+    return ( productIndex != null ? productIndex : -1 );
     }
 
 
@@ -488,12 +561,24 @@ public class Catalogue
    * If no product ids are supplied, the returned (filtered)
    * catalogue will contain no products.
    *
+   * The most recently used filtered catalogues are kept,
+   * so filtering by the same product ids again returns the
+   * same catalogue, until this catalogue is changed.
+   *
    *****************************************************/
   public Catalogue createFiltered( String[] productIds )
     {
+    // Copy the ids, in case the caller changes the array afterwards
+    List<String> filterKey = ( productIds != null ? new ArrayList<>( Arrays.asList( productIds ) ) : Collections.<String>emptyList() );
+
+    Catalogue filteredCatalogue = mFilteredCatalogueTable.get( filterKey );
+
+    if ( filteredCatalogue != null ) return ( filteredCatalogue );
+
+
     // Create a catalogue with the same custom and user config data
 
-    Catalogue filteredCatalogue = new Catalogue();
+    filteredCatalogue = new Catalogue();
 
     filteredCatalogue.setCustomData( mCustomDataTable );
     filteredCatalogue.setUserConfigData( mUserConfigJSONObject );
@@ -522,6 +607,8 @@ public class Catalogue
       }
 
 
+    mFilteredCatalogueTable.put( filterKey, filteredCatalogue );
+
     return ( filteredCatalogue );
     }
 
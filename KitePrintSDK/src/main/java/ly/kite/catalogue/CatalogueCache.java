@@ -0,0 +1,491 @@
+/*****************************************************
+ *
+ * CatalogueCache.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.catalogue;
+
+
+///// Import(s) /////
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class persists parsed catalogues to disk, so that
+ * a catalogue can be displayed as soon as the app starts,
+ * whilst a fresh copy is requested from the server.
+ *
+ * The file is a GZIP compressed stream of records; one
+ * for each product, and one for each of the other top-level
+ * items. The records are preceded by a header containing
+ * the API key, the request URL, and the validators used
+ * to make conditional requests.
+ *
+ *****************************************************/
+class CatalogueCache
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG                        = "CatalogueCache";
+
+  static private final String  FILE_NAME                      = "kite-catalogue.bin";
+  static private final String  TEMPORARY_FILE_SUFFIX          = ".tmp";
+
+  static private final int     FILE_MAGIC                     = 0x4b434154;  // "KCAT"
+  static private final int     FILE_FORMAT_VERSION            = 1;
+
+  static private final int     BUFFER_SIZE                    = 8 * 1024;
+
+  static private final byte    RECORD_TYPE_END                = 0;
+  static private final byte    RECORD_TYPE_USER_CONFIG        = 1;
+  static private final byte    RECORD_TYPE_PRODUCT            = 2;
+  static private final byte    RECORD_TYPE_PAYPAL_CURRENCIES  = 3;
+  static private final byte    RECORD_TYPE_CUSTOM_OBJECT      = 4;
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns the cache file.
+   *
+   *****************************************************/
+  static private File getFile( Context context )
+    {
+    return ( new File( context.getCacheDir(), FILE_NAME ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a writer for a new cache file, or null if
+   * the file could not be created. The new file only
+   * replaces any existing one when it is committed.
+   *
+   * Each writer has its own temporary file, so a writer
+   * that has been abandoned doesn't affect a newer one.
+   *
+   *****************************************************/
+  static Writer openWriter( Context context, String apiKey, String requestURLString, String eTag, String lastModified )
+    {
+    File file          = getFile( context );
+    File temporaryFile = null;
+
+    try
+      {
+      temporaryFile = File.createTempFile( FILE_NAME, TEMPORARY_FILE_SUFFIX, file.getParentFile() );
+
+      DataOutputStream dataOutputStream = new DataOutputStream( new GZIPOutputStream( new BufferedOutputStream( new FileOutputStream( temporaryFile ), BUFFER_SIZE ) ) );
+
+      dataOutputStream.writeInt( FILE_MAGIC );
+      dataOutputStream.writeInt( FILE_FORMAT_VERSION );
+      dataOutputStream.writeUTF( apiKey       != null ? apiKey       : "" );
+      dataOutputStream.writeUTF( requestURLString );
+      dataOutputStream.writeUTF( eTag         != null ? eTag         : "" );
+      dataOutputStream.writeUTF( lastModified != null ? lastModified : "" );
+
+      return ( new Writer( file, temporaryFile, dataOutputStream ) );
+      }
+    catch ( IOException ioe )
+      {
+      Log.e( LOG_TAG, "Unable to create catalogue cache file", ioe );
+
+      if ( temporaryFile != null ) temporaryFile.delete();
+
+      return ( null );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Reads the cached catalogue. Returns null if there is
+   * no cached catalogue, or it was saved for a different
+   * API key or request URL.
+   *
+   * This performs file I/O, so should not be called on
+   * the UI thread.
+   *
+   *****************************************************/
+  static Entry read( Context context, String apiKey, String requestURLString )
+    {
+    File file = getFile( context );
+
+    if ( ! file.exists() ) return ( null );
+
+    DataInputStream dataInputStream = null;
+
+    try
+      {
+      dataInputStream = new DataInputStream( new GZIPInputStream( new BufferedInputStream( new FileInputStream( file ), BUFFER_SIZE ) ) );
+
+      if ( dataInputStream.readInt() != FILE_MAGIC ||
+           dataInputStream.readInt() != FILE_FORMAT_VERSION ||
+           ! dataInputStream.readUTF().equals( apiKey != null ? apiKey : "" ) ||
+           ! dataInputStream.readUTF().equals( requestURLString ) )
+        {
+        return ( null );
+        }
+
+      String eTag         = dataInputStream.readUTF();
+      String lastModified = dataInputStream.readUTF();
+
+      Catalogue catalogue = new Catalogue();
+
+      HashMap<String,CatalogueLoader.ParsedProduct> parsedProductTable = new HashMap<>();
+
+      CatalogueLoader.ProductListParser productListParser = new CatalogueLoader.ProductListParser( catalogue, null, parsedProductTable );
+
+      byte recordType;
+
+      while ( ( recordType = dataInputStream.readByte() ) != RECORD_TYPE_END )
+        {
+        switch ( recordType )
+          {
+          case RECORD_TYPE_USER_CONFIG:
+            catalogue.setUserConfigData( new JSONObject( readJSONString( dataInputStream ) ) );
+            break;
+
+          case RECORD_TYPE_PRODUCT:
+            productListParser.add( new JSONObject( readJSONString( dataInputStream ) ) );
+            break;
+
+          case RECORD_TYPE_PAYPAL_CURRENCIES:
+            CatalogueLoader.parsePayPalSupportedCurrencies( new JSONArray( readJSONString( dataInputStream ) ), catalogue );
+            break;
+
+          case RECORD_TYPE_CUSTOM_OBJECT:
+            String name = dataInputStream.readUTF();
+            catalogue.setCustomObject( name, new JSONObject( readJSONString( dataInputStream ) ) );
+            break;
+
+          default:
+            throw ( new IOException( "Unknown record type: " + recordType ) );
+          }
+        }
+
+      productListParser.finish();
+
+      return ( new Entry( catalogue, parsedProductTable, eTag.length() > 0 ? eTag : null, lastModified.length() > 0 ? lastModified : null, file.lastModified() ) );
+      }
+    catch ( Exception exception )
+      {
+      Log.e( LOG_TAG, "Unable to read catalogue cache file", exception );
+
+      // Don't try to read a bad file again
+      file.delete();
+
+      return ( null );
+      }
+    finally
+      {
+      if ( dataInputStream != null )
+        {
+        try
+          {
+          dataInputStream.close();
+          }
+        catch ( IOException ignore )
+          {
+          }
+        }
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Reads a length-prefixed UTF-8 JSON string.
+   *
+   *****************************************************/
+  static private String readJSONString( DataInputStream dataInputStream ) throws IOException
+    {
+    byte[] bytes = new byte[ dataInputStream.readInt() ];
+
+    dataInputStream.readFully( bytes );
+
+    return ( new String( bytes, "UTF-8" ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Marks the cached catalogue as having been confirmed
+   * up to date by the server.
+   *
+   *****************************************************/
+  static void touch( Context context )
+    {
+    File file = getFile( context );
+
+    if ( file.exists() && ! file.setLastModified( System.currentTimeMillis() ) )
+      {
+      Log.w( LOG_TAG, "Unable to update catalogue cache file time" );
+      }
+    }
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * A catalogue read from the cache.
+   *
+   *****************************************************/
+  static class Entry
+    {
+    private Catalogue                                      mCatalogue;
+    private HashMap<String,CatalogueLoader.ParsedProduct>  mParsedProductTable;
+    private String                                         mETag;
+    private String                                         mLastModified;
+    private long                                           mSavedTimeMillis;
+
+
+    Entry( Catalogue catalogue, HashMap<String,CatalogueLoader.ParsedProduct> parsedProductTable, String eTag, String lastModified, long savedTimeMillis )
+      {
+      mCatalogue          = catalogue;
+      mParsedProductTable = parsedProductTable;
+      mETag               = eTag;
+      mLastModified       = lastModified;
+      mSavedTimeMillis    = savedTimeMillis;
+      }
+
+
+    Catalogue getCatalogue()
+      {
+      return ( mCatalogue );
+      }
+
+
+    HashMap<String,CatalogueLoader.ParsedProduct> getParsedProductTable()
+      {
+      return ( mParsedProductTable );
+      }
+
+
+    String getETag()
+      {
+      return ( mETag );
+      }
+
+
+    String getLastModified()
+      {
+      return ( mLastModified );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns the wall-clock time at which the catalogue
+     * was last saved, or confirmed up to date.
+     *
+     *****************************************************/
+    long getSavedTimeMillis()
+      {
+      return ( mSavedTimeMillis );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Writes catalogue records to a new cache file. Write
+   * failures are logged, but never thrown, so they don't
+   * affect the catalogue retrieval.
+   *
+   *****************************************************/
+  static class Writer
+    {
+    private File              mFile;
+    private File              mTemporaryFile;
+    private DataOutputStream  mDataOutputStream;
+
+    private boolean           mHasFailed;
+    private boolean           mIsCommitted;
+
+
+    private Writer( File file, File temporaryFile, DataOutputStream dataOutputStream )
+      {
+      mFile             = file;
+      mTemporaryFile    = temporaryFile;
+      mDataOutputStream = dataOutputStream;
+      }
+
+
+    void writeUserConfig( JSONObject userConfigJSONObject )
+      {
+      writeRecord( RECORD_TYPE_USER_CONFIG, null, userConfigJSONObject.toString() );
+      }
+
+
+    void writeProduct( JSONObject productJSONObject )
+      {
+      writeRecord( RECORD_TYPE_PRODUCT, null, productJSONObject.toString() );
+      }
+
+
+    void writePayPalSupportedCurrencies( JSONArray currenciesJSONArray )
+      {
+      writeRecord( RECORD_TYPE_PAYPAL_CURRENCIES, null, currenciesJSONArray.toString() );
+      }
+
+
+    void writeCustomObject( String name, JSONObject customJSONObject )
+      {
+      writeRecord( RECORD_TYPE_CUSTOM_OBJECT, name, customJSONObject.toString() );
+      }
+
+
+    /*****************************************************
+     *
+     * Writes a record.
+     *
+     *****************************************************/
+    private void writeRecord( byte recordType, String name, String jsonString )
+      {
+      if ( mHasFailed ) return;
+
+      try
+        {
+        byte[] jsonBytes = jsonString.getBytes( "UTF-8" );
+
+        mDataOutputStream.writeByte( recordType );
+
+        if ( name != null ) mDataOutputStream.writeUTF( name );
+
+        mDataOutputStream.writeInt( jsonBytes.length );
+        mDataOutputStream.write( jsonBytes );
+        }
+      catch ( IOException ioe )
+        {
+        Log.e( LOG_TAG, "Unable to write catalogue cache record", ioe );
+
+        mHasFailed = true;
+        }
+      }
+
+
+    /*****************************************************
+     *
+     * Completes the file, and replaces any existing cache
+     * file with it.
+     *
+     *****************************************************/
+    void commit()
+      {
+      if ( mHasFailed ) return;
+
+      try
+        {
+        mDataOutputStream.writeByte( RECORD_TYPE_END );
+        mDataOutputStream.close();
+
+        if ( mTemporaryFile.renameTo( mFile ) )
+          {
+          mIsCommitted = true;
+          }
+        else
+          {
+          Log.e( LOG_TAG, "Unable to rename catalogue cache file" );
+          }
+        }
+      catch ( IOException ioe )
+        {
+        Log.e( LOG_TAG, "Unable to complete catalogue cache file", ioe );
+
+        mHasFailed = true;
+        }
+      }
+
+
+    /*****************************************************
+     *
+     * Closes the writer. If the file was not committed, it
+     * is deleted.
+     *
+     *****************************************************/
+    void close()
+      {
+      if ( mIsCommitted ) return;
+
+      try
+        {
+        mDataOutputStream.close();
+        }
+      catch ( IOException ignore )
+        {
+        }
+
+      mTemporaryFile.delete();
+      }
+    }
+
+  }
@@ -0,0 +1,514 @@
+/*****************************************************
+ *
+ * CatalogueImagePrefetcher.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.catalogue;
+
+
+///// Import(s) /////
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.util.Pair;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import ly.kite.KiteSDK;
+import ly.kite.SDKCustomiser;
+import ly.kite.image.ImageAgent;
+import ly.kite.image.ImageRequestProcessor;
+import ly.kite.util.FileDownloader;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class downloads catalogue images in the background,
+ * so that they are already in the image cache when the
+ * user browses the catalogue.
+ *
+ * Images are ranked by how likely they are to be displayed:
+ * group images first, then product images, then the first
+ * image in each product's gallery, and finally (only on an
+ * unmetered connection) the rest of the gallery images.
+ *
+ * Prefetching starts once the UI thread has gone idle
+ * after a short delay, and only a small number of downloads
+ * are in progress at any time, so that images requested
+ * by views are not held up.
+ *
+ * All methods must be called on the UI thread.
+ *
+ *****************************************************/
+public class CatalogueImagePrefetcher implements FileDownloader.ICancellableCallback
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG                    = "CatalogueImagePrefetch";
+
+  static private final boolean DEBUGGING_ENABLED          = false;
+
+  static private final long    START_DELAY_MILLIS         = 2000L;
+
+  static private final int     MAX_CONCURRENT_DOWNLOADS   = 2;
+
+
+  ////////// Static Variable(s) //////////
+
+  static private CatalogueImagePrefetcher sCatalogueImagePrefetcher;
+
+
+  ////////// Member Variable(s) //////////
+
+  private Context                   mContext;
+  private Handler                   mHandler;
+
+  private LinkedList<PrefetchItem>  mPendingItemList;
+  private int                       mInProgressCount;
+
+  private StartRunnable             mStartRunnable;
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns an instance of the prefetcher.
+   *
+   *****************************************************/
+  static public CatalogueImagePrefetcher getInstance( Context context )
+    {
+    if ( sCatalogueImagePrefetcher == null )
+      {
+      sCatalogueImagePrefetcher = new CatalogueImagePrefetcher( context );
+      }
+
+    return ( sCatalogueImagePrefetcher );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a list of the images in a catalogue, in the
+   * order in which they should be prefetched.
+   *
+   *****************************************************/
+  static List<PrefetchItem> getRankedItemList( Catalogue catalogue, boolean includeAllProductImages )
+    {
+    List<PrefetchItem> itemList      = new ArrayList<>();
+    HashSet<String>    addedItemKeys = new HashSet<>();
+
+    List<ProductGroup> productGroupList = catalogue.getProductGroupList();
+
+
+    // Group images are shown first, so they are most likely to be displayed
+
+    for ( ProductGroup productGroup : productGroupList )
+      {
+      addItem( itemList, addedItemKeys, KiteSDK.IMAGE_CATEGORY_PRODUCT_ITEM, productGroup.getDisplayImageURL(), true );
+      }
+
+
+    // Product images are shown once a group has been chosen
+
+    for ( ProductGroup productGroup : productGroupList )
+      {
+      for ( Product product : productGroup.getProductList() )
+        {
+        addItem( itemList, addedItemKeys, KiteSDK.IMAGE_CATEGORY_PRODUCT_ITEM, product.getDisplayImageURL(), true );
+        }
+      }
+
+
+    // The first gallery image is shown on the product overview
+
+    for ( ProductGroup productGroup : productGroupList )
+      {
+      for ( Product product : productGroup.getProductList() )
+        {
+        List<URL> imageURLList = product.getImageURLList();
+
+        if ( imageURLList != null && imageURLList.size() > 0 )
+          {
+          addItem( itemList, addedItemKeys, KiteSDK.IMAGE_CATEGORY_PRODUCT_IMAGE, imageURLList.get( 0 ), true );
+          }
+        }
+      }
+
+
+    // The remaining gallery images are only shown if the user swipes through them
+
+    if ( includeAllProductImages )
+      {
+      for ( ProductGroup productGroup : productGroupList )
+        {
+        for ( Product product : productGroup.getProductList() )
+          {
+          List<URL> imageURLList = product.getImageURLList();
+
+          if ( imageURLList == null ) continue;
+
+          for ( int imageIndex = 1; imageIndex < imageURLList.size(); imageIndex ++ )
+            {
+            addItem( itemList, addedItemKeys, KiteSDK.IMAGE_CATEGORY_PRODUCT_IMAGE, imageURLList.get( imageIndex ), false );
+            }
+          }
+        }
+      }
+
+
+    return ( itemList );
+    }
+
+
+  /*****************************************************
+   *
+   * Adds an item to a list, if it hasn't already been added.
+   *
+   *****************************************************/
+  static private void addItem( List<PrefetchItem> itemList, HashSet<String> addedItemKeys, String imageCategory, URL imageURL, boolean isEssential )
+    {
+    if ( imageURL == null ) return;
+
+    if ( addedItemKeys.add( imageCategory + " " + imageURL.toString() ) )
+      {
+      itemList.add( new PrefetchItem( imageCategory, imageURL, isEssential ) );
+      }
+    }
+
+
+  ////////// Constructor(s) //////////
+
+  CatalogueImagePrefetcher( Context context )
+    {
+    mContext         = context.getApplicationContext();
+    mHandler         = new Handler( Looper.getMainLooper() );
+    mPendingItemList = new LinkedList<>();
+    }
+
+
+  ////////// FileDownloader.ICancellableCallback Method(s) //////////
+
+  /*****************************************************
+   *
+   * Called when an image has been downloaded.
+   *
+   *****************************************************/
+  @Override
+  public void onDownloadSuccess( URL sourceURL, File targetDirectory, File targetFile )
+    {
+    if ( DEBUGGING_ENABLED ) Log.d( LOG_TAG, "Prefetched " + sourceURL.toString() );
+
+    mInProgressCount --;
+
+    startDownloads();
+    }
+
+
+  /*****************************************************
+   *
+   * Called when an image could not be downloaded. We stop
+   * prefetching, since the network is probably unavailable,
+   * and the images will be downloaded when they are needed.
+   *
+   *****************************************************/
+  @Override
+  public void onDownloadFailure( URL sourceURL, Exception exception )
+    {
+    Log.e( LOG_TAG, "Unable to prefetch " + sourceURL.toString() + ", abandoning prefetch", exception );
+
+    mInProgressCount --;
+
+    mPendingItemList.clear();
+    }
+
+
+  /*****************************************************
+   *
+   * Called when a download was cancelled because pending
+   * requests were cleared. We carry on with any remaining
+   * images once the UI thread is idle again.
+   *
+   *****************************************************/
+  @Override
+  public void onDownloadCancelled( URL sourceURL )
+    {
+    if ( DEBUGGING_ENABLED ) Log.d( LOG_TAG, "Prefetch of " + sourceURL.toString() + " cancelled" );
+
+    mInProgressCount --;
+
+    if ( mPendingItemList.size() > 0 ) scheduleStart();
+    }
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Starts prefetching the images for a catalogue. Any
+   * images still waiting to be prefetched for a previous
+   * catalogue are dropped.
+   *
+   *****************************************************/
+  public void prefetch( Catalogue catalogue )
+    {
+    SDKCustomiser customiser = KiteSDK.getInstance( mContext ).getCustomiser();
+
+    if ( ! customiser.prefetchCatalogueImages() ) return;
+
+
+    setPendingItems( getRankedItemList( catalogue, customiser.prefetchAllProductImagesWhenUnmetered() ) );
+
+    scheduleStart();
+    }
+
+
+  /*****************************************************
+   *
+   * Starts prefetching after a short delay, once the UI
+   * thread is idle, superseding any earlier start.
+   *
+   *****************************************************/
+  private void scheduleStart()
+    {
+    // Don't compete with the first screen for the network; wait a short while, and
+    // then until the UI thread is idle, before starting.
+
+    if ( mStartRunnable != null ) mHandler.removeCallbacks( mStartRunnable );
+
+    mStartRunnable = new StartRunnable();
+
+    mHandler.postDelayed( mStartRunnable, START_DELAY_MILLIS );
+    }
+
+
+  /*****************************************************
+   *
+   * Replaces any images waiting to be prefetched.
+   *
+   *****************************************************/
+  void setPendingItems( List<PrefetchItem> itemList )
+    {
+    mPendingItemList.clear();
+    mPendingItemList.addAll( itemList );
+    }
+
+
+  /*****************************************************
+   *
+   * Starts prefetching the pending images, if the network
+   * allows it.
+   *
+   *****************************************************/
+  void start()
+    {
+    if ( checkNetwork() ) startDownloads();
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if there is a network connection.
+   *
+   *****************************************************/
+  boolean isNetworkConnected()
+    {
+    ConnectivityManager connectivityManager = (ConnectivityManager)mContext.getSystemService( Context.CONNECTIVITY_SERVICE );
+
+    if ( connectivityManager == null ) return ( true );
+
+    NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+
+    return ( networkInfo != null && networkInfo.isConnected() );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if the network connection is metered.
+   *
+   *****************************************************/
+  boolean isNetworkMetered()
+    {
+    if ( Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN ) return ( false );
+
+    ConnectivityManager connectivityManager = (ConnectivityManager)mContext.getSystemService( Context.CONNECTIVITY_SERVICE );
+
+    return ( connectivityManager != null && connectivityManager.isActiveNetworkMetered() );
+    }
+
+
+  /*****************************************************
+   *
+   * Checks the network, and drops any items that shouldn't
+   * be prefetched on it.
+   *
+   * @return true, if prefetching can continue.
+   *
+   *****************************************************/
+  private boolean checkNetwork()
+    {
+    if ( ! isNetworkConnected() )
+      {
+      if ( DEBUGGING_ENABLED ) Log.d( LOG_TAG, "No network connection, abandoning prefetch" );
+
+      mPendingItemList.clear();
+
+      return ( false );
+      }
+
+
+    // On a metered connection, only prefetch the images that are likely to be seen
+
+    if ( isNetworkMetered() )
+      {
+      for ( int itemIndex = mPendingItemList.size() - 1; itemIndex >= 0; itemIndex -- )
+        {
+        if ( ! mPendingItemList.get( itemIndex ).mIsEssential ) mPendingItemList.remove( itemIndex );
+        }
+      }
+
+    return ( true );
+    }
+
+
+  /*****************************************************
+   *
+   * Requests downloads until the maximum number are in
+   * progress.
+   *
+   * We don't check whether images are already cached here,
+   * because that would mean disk access on the UI thread.
+   * The file downloader checks in the background, and
+   * completes straight away for any image that is.
+   *
+   *****************************************************/
+  private void startDownloads()
+    {
+    ImageAgent imageAgent = ImageAgent.getInstance( mContext );
+
+    while ( mInProgressCount < MAX_CONCURRENT_DOWNLOADS && mPendingItemList.size() > 0 )
+      {
+      PrefetchItem item = mPendingItemList.removeFirst();
+
+      Pair<String,String> directoryAndFilePath = imageAgent.getImageCacheDirectoryAndFilePath( item.mImageCategory, item.mImageURL );
+
+      mInProgressCount ++;
+
+      requestDownload( item.mImageURL, new File( directoryAndFilePath.first ), new File( directoryAndFilePath.second ) );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Requests a download of an image, at prefetch priority.
+   *
+   *****************************************************/
+  void requestDownload( URL imageURL, File imageDirectory, File imageFile )
+    {
+    FileDownloader.getInstance( mContext ).requestFileDownload( imageURL, imageDirectory, imageFile, ImageRequestProcessor.Priority.PREFETCH, this );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * An image to be prefetched.
+   *
+   *****************************************************/
+  static class PrefetchItem
+    {
+    final String   mImageCategory;
+    final URL      mImageURL;
+    final boolean  mIsEssential;
+
+
+    PrefetchItem( String imageCategory, URL imageURL, boolean isEssential )
+      {
+      mImageCategory = imageCategory;
+      mImageURL      = imageURL;
+      mIsEssential   = isEssential;
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Starts prefetching once the UI thread is idle.
+   *
+   *****************************************************/
+  private class StartRunnable implements Runnable, MessageQueue.IdleHandler
+    {
+    @Override
+    public void run()
+      {
+      Looper.myQueue().addIdleHandler( this );
+      }
+
+
+    @Override
+    public boolean queueIdle()
+      {
+      // Make sure we haven't been superseded by a later catalogue
+      if ( mStartRunnable == this )
+        {
+        mStartRunnable = null;
+
+        start();
+        }
+
+      return ( false );
+      }
+    }
+
+  }
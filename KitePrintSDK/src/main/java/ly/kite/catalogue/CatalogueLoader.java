@@ -40,22 +40,35 @@ package ly.kite.catalogue;
 ///// Import(s) /////
 
 import android.content.Context;
+import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Currency;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import ly.kite.KiteSDKException;
 import ly.kite.KiteSDK;
@@ -63,6 +76,7 @@ import ly.kite.journey.creation.ProductCreationActivity;
 import ly.kite.journey.UserJourneyType;
 import ly.kite.util.AssetHelper;
 import ly.kite.util.HTTPJSONRequest;
+import ly.kite.util.JSONReaderUtils;
 import ly.kite.api.KiteAPIRequest;
 
 
@@ -90,6 +104,17 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
 
   static public  final long    ANY_AGE_OK                            = -1;
 
+  // A catalogue older than the requested age may still be returned immediately
+  // (whilst a fresh one is retrieved), as long as it is no older than this.
+  static private final long    MAX_STALE_CATALOGUE_AGE_MILLIS        = 1000 * 60 * 60 * 24;  // 1 day
+
+  static private final int     HTTP_STATUS_CODE_NOT_MODIFIED         = 304;
+
+  static private final String  HTTP_HEADER_ETAG                      = "ETag";
+  static private final String  HTTP_HEADER_IF_MODIFIED_SINCE         = "If-Modified-Since";
+  static private final String  HTTP_HEADER_IF_NONE_MATCH             = "If-None-Match";
+  static private final String  HTTP_HEADER_LAST_MODIFIED             = "Last-Modified";
+
   static private final String  TEMPLATE_REQUEST_FORMAT_STRING        = "%s/template/?limit=200";
 
   static private final String  JSON_NAME_ACTIVE                      = "active";
@@ -155,11 +180,17 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
 
   static private final String  COVER_PHOTO_VARIANT_ID_DEFAULT        = "default";
 
+  static private final int     PRODUCTS_PER_PARSING_TASK             = 8;
+  static private final int     MAX_PRODUCT_PARSING_THREADS           = 4;
+  static private final long    PRODUCT_PARSING_KEEP_ALIVE_SECS       = 30;
+
 
   ////////// Static Variable(s) //////////
 
   static private CatalogueLoader sCatalogueLoaderInstance;
 
+  static private ThreadPoolExecutor sProductParsingExecutor;
+
 
   ////////// Member Variable(s) //////////
 
@@ -168,13 +199,24 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
   private Handler                        mHandler;
 
   private KiteAPIRequest                 mHTTPJSONRequest;
+  private CatalogueParser                mCatalogueParser;
   private LinkedList<ICatalogueConsumer> mConsumerList;
   private String                         mRequestAPIKey;
+  private String                         mRequestURLString;
+
+  private CacheLoadTask                  mCacheLoadTask;
+  private boolean                        mCacheLoadAttempted;
 
   private Catalogue                      mLastRetrievedCatalogue;
   private String                         mLastRetrievedEnvironmentAPIKey;
+  private String                         mLastRetrievedURLString;
+  private String                         mLastRetrievedETag;
+  private String                         mLastRetrievedLastModified;
   private long                           mLastRetrievedElapsedRealtimeMillis;
 
+  // Previously parsed products, by a hash of their JSON
+  private HashMap<String,ParsedProduct>  mParsedProductTable;
+
 
   ////////// Static Initialiser(s) //////////
 
@@ -524,6 +566,28 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
     }
 
 
+  /****************************************************
+   *
+   * Returns the executor used to parse products in
+   * parallel. The threads are only kept whilst there is
+   * parsing to do.
+   *
+   ****************************************************/
+  static synchronized private ThreadPoolExecutor getProductParsingExecutor()
+    {
+    if ( sProductParsingExecutor == null )
+      {
+      int threadCount = Math.max( 1, Math.min( MAX_PRODUCT_PARSING_THREADS, Runtime.getRuntime().availableProcessors() ) );
+
+      sProductParsingExecutor = new ThreadPoolExecutor( threadCount, threadCount, PRODUCT_PARSING_KEEP_ALIVE_SECS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>() );
+
+      sProductParsingExecutor.allowCoreThreadTimeOut( true );
+      }
+
+    return ( sProductParsingExecutor );
+    }
+
+
   /****************************************************
    *
    * Parses a JSON products array.
@@ -533,206 +597,423 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
     {
     // Go through each JSON product
 
-    next_product: for ( int productIndex = 0; productIndex < productJSONArray.length(); productIndex ++ )
+    ProductListParser productListParser = new ProductListParser( catalogue, null, null );
+
+    try
+      {
+      for ( int productIndex = 0; productIndex < productJSONArray.length(); productIndex ++ )
+        {
+        productListParser.add( productJSONArray.optJSONObject( productIndex ) );
+        }
+
+      productListParser.finish();
+      }
+    catch ( InterruptedIOException iioe )
+      {
+      Log.e( LOG_TAG, "Interrupted whilst parsing products", iioe );
+      }
+
+
+    if ( DISPLAY_PRE_CACHING_INFO ) catalogue.displayPreCachingInfo();
+    }
+
+
+  /****************************************************
+   *
+   * Returns a hash of a JSON product, or null if one
+   * could not be calculated.
+   *
+   ****************************************************/
+  static private String getContentHash( JSONObject productJSONObject )
+    {
+    try
+      {
+      byte[] digestBytes = MessageDigest.getInstance( "SHA-1" ).digest( productJSONObject.toString().getBytes( "UTF-8" ) );
+
+      StringBuilder stringBuilder = new StringBuilder( digestBytes.length * 2 );
+
+      for ( byte digestByte : digestBytes )
+        {
+        stringBuilder.append( String.format( "%02x", digestByte & 0xff ) );
+        }
+
+      return ( stringBuilder.toString() );
+      }
+    catch ( Exception exception )
       {
-      // Parse the product data to create a Product object, and then add it to our list.
+      Log.e( LOG_TAG, "Unable to hash product JSON", exception );
+
+      return ( null );
+      }
+    }
+
+
+  /****************************************************
+   *
+   * Parses a JSON product, and adds it to the catalogue.
+   *
+   ****************************************************/
+  static void parseProduct( JSONObject productJSONObject, Catalogue catalogue )
+    {
+    ParsedProduct parsedProduct = parseProduct( productJSONObject );
+
+    if ( parsedProduct != null ) parsedProduct.addTo( catalogue );
+    }
 
-      JSONObject productJSONObject = null;
+
+  /****************************************************
+   *
+   * Parses a JSON product. The product is not added to
+   * a catalogue, so this may be called on any thread.
+   *
+   * @return The parsed product, or null if the product
+   *         could not be parsed.
+   *
+   ****************************************************/
+  static private ParsedProduct parseProduct( JSONObject productJSONObject )
+    {
+    // Parse the product data to create a Product object
+
+    try
+      {
+      if ( KiteSDK.DISPLAY_PRODUCT_JSON )
+        {
+        Log.d( LOG_TAG, "Product JSON:\n" + productJSONObject.toString() );
+        }
+
+      boolean                          active             = productJSONObject.optBoolean( JSON_NAME_ACTIVE,         false );
+      boolean                          productActive      = productJSONObject.optBoolean( JSON_NAME_PRODUCT_ACTIVE, false );
+
+      String                           productId          = productJSONObject.getString( JSON_NAME_PRODUCT_ID );
+      String                           productName        = productJSONObject.getString( JSON_NAME_PRODUCT_NAME );
+      String                           productDescription = productJSONObject.getString( JSON_NAME_DESCRIPTION );
+      String productCategory = productJSONObject.getString(JSON_NAME_CATEGORY);
+      int                              imagesPerPage      = productJSONObject.optInt( JSON_NAME_IMAGES_PER_PAGE, DEFAULT_IMAGES_PER_PAGE );
+      int                              gridCountX         = productJSONObject.optInt( JSON_NAME_GRID_COUNT_X, DEFAULT_GRID_SIZE );
+      int                              gridCountY         = productJSONObject.optInt( JSON_NAME_GRID_COUNT_Y, DEFAULT_GRID_SIZE );
+      MultipleCurrencyAmounts          cost               = parseCost( productJSONObject.getJSONArray( JSON_NAME_COST ) );
+      boolean                          printInStore       = productJSONObject.optBoolean( JSON_NAME_PRINT_IN_STORE, false );
+      MultipleDestinationShippingCosts shippingCosts      = parseShippingCosts( productJSONObject.getJSONObject( JSON_NAME_SHIPPING_COSTS ) );
+
+
+      // Get the product detail
+
+      JSONObject productDetailJSONObject = productJSONObject.getJSONObject( JSON_NAME_PRODUCT_DETAIL );
+
+      URL                    groupImageURL        = new URL( productDetailJSONObject.getString( JSON_NAME_GROUP_IMAGE ) );
+      //URL                    heroImageURL        = new URL( productDetailJSONObject.getString( JSON_NAME_PRODUCT_HERO_IMAGE ) );
+      int                    labelColour          = parseColour( productDetailJSONObject.getJSONArray( JSON_NAME_LABEL_COLOUR ) );
+      String                 groupLabel           = productDetailJSONObject.getString( JSON_NAME_GROUP_LABEL );
+      ArrayList<URL>         imageURLList         = parseProductShots( productDetailJSONObject.getJSONArray( JSON_NAME_PRODUCT_SHOTS ) );
+      //String                 productSubclass     = productDetailJSONObject.getString( JSON_NAME_PRODUCT_SUBCLASS );
+      String                 productType          = productDetailJSONObject.getString( JSON_NAME_PRODUCT_TYPE );
+      UserJourneyType        userJourneyType      = parseUserJourneyType( productDetailJSONObject.getString( JSON_NAME_PRODUCT_UI_CLASS ) );
+      String                 productCode          = productDetailJSONObject.getString( JSON_NAME_PRODUCT_CODE );
+      MultipleUnitSize       size                 = parseProductSize( productDetailJSONObject.getJSONObject( JSON_NAME_PRODUCT_SIZE ) );
+      //float                  imageAspectRatio     = (float)productDetailJSONObject.optDouble( JSON_NAME_IMAGE_ASPECT_RATIO, Product.DEFAULT_IMAGE_ASPECT_RATIO );
+      float imageAspectRatio = (float) productDetailJSONObject.optDouble(JSON_NAME_IMAGE_ASPECT_RATIO, Product.DEFAULT_IMAGE_ASPECT_RATIO);
+
+      //Check for posters or photo-books (use journey as localisation changes other values except product type)
+      if (userJourneyType.equals(UserJourneyType.POSTER)) {
+        //For picture collages on posters the aspect ration of each image should be one (square images)
+        //For ordinary posters the aspect ratio should be 0.707 (portrait ration)
+        imageAspectRatio = productType.contains("Collage")? 1f : 0.707f;
+      } else if (userJourneyType.equals(UserJourneyType.PHOTOBOOK)) {
+        //Add image count to title (there are multiple products with the same name but different image count)
+        productName += " (" + imagesPerPage + ")";
+        //Types of photo-books by layout: Square (1.0) , Landscape (1.33333...) and Portrait(0.75)
+        if(productType.contains("Landscape")) {
+          imageAspectRatio = 1.33333f;
+        } else if(productType.contains("Portrait")) {
+          imageAspectRatio = 0.75f;
+        } else {
+          imageAspectRatio = 1.0f;
+        }
+      }
+
+      boolean                supportsTextOnBorder = productDetailJSONObject.optBoolean( JSON_NAME_SUPPORTS_TEXT_ON_BORDER, false );
+
+      // Get the cover photo
+
+      JSONArray coverPhotoVariantsJSONArray = productDetailJSONObject.getJSONArray( JSON_NAME_COVER_PHOTO_VARIANTS );
+
+      URL coverPhotoURL = getCoverPhotoURL( coverPhotoVariantsJSONArray, COVER_PHOTO_VARIANT_ID_DEFAULT );
+
+
+      URL     maskURL     = null;
+      Bleed   maskBleed   = null;
+      BorderF imageBorder = null;
+
+      try
+        {
+        maskURL   = new URL( productDetailJSONObject.getString( JSON_NAME_MASK_URL ) );
+        maskBleed = parseBleed( productDetailJSONObject.getJSONArray( JSON_NAME_MASK_BLEED ) );
+        }
+      catch ( JSONException je )
+        {
+        // Ignore
+        }
 
       try
         {
-        // Get the product information
+        imageBorder = parseImageBorder( productDetailJSONObject.getJSONObject( JSON_NAME_IMAGE_BORDER ) );
+        }
+      catch ( JSONException je)
+        {
+        // Ignore
+        }
 
-        productJSONObject = productJSONArray.getJSONObject( productIndex );
 
-        if ( KiteSDK.DISPLAY_PRODUCT_JSON )
-          {
-          Log.d( LOG_TAG, "Product JSON:\n" + productJSONObject.toString() );
-          }
+      // Get any background / highlight images
 
-        boolean                          active             = productJSONObject.optBoolean( JSON_NAME_ACTIVE,         false );
-        boolean                          productActive      = productJSONObject.optBoolean( JSON_NAME_PRODUCT_ACTIVE, false );
-
-        String                           productId          = productJSONObject.getString( JSON_NAME_PRODUCT_ID );
-        String                           productName        = productJSONObject.getString( JSON_NAME_PRODUCT_NAME );
-        String                           productDescription = productJSONObject.getString( JSON_NAME_DESCRIPTION );
-        String productCategory = productJSONObject.getString(JSON_NAME_CATEGORY);
-        int                              imagesPerPage      = productJSONObject.optInt( JSON_NAME_IMAGES_PER_PAGE, DEFAULT_IMAGES_PER_PAGE );
-        int                              gridCountX         = productJSONObject.optInt( JSON_NAME_GRID_COUNT_X, DEFAULT_GRID_SIZE );
-        int                              gridCountY         = productJSONObject.optInt( JSON_NAME_GRID_COUNT_Y, DEFAULT_GRID_SIZE );
-        MultipleCurrencyAmounts          cost               = parseCost( productJSONObject.getJSONArray( JSON_NAME_COST ) );
-        boolean                          printInStore       = productJSONObject.optBoolean( JSON_NAME_PRINT_IN_STORE, false );
-        MultipleDestinationShippingCosts shippingCosts      = parseShippingCosts( productJSONObject.getJSONObject( JSON_NAME_SHIPPING_COSTS ) );
-
-
-        // Get the product detail
-
-        JSONObject productDetailJSONObject = productJSONObject.getJSONObject( JSON_NAME_PRODUCT_DETAIL );
-
-        URL                    groupImageURL        = new URL( productDetailJSONObject.getString( JSON_NAME_GROUP_IMAGE ) );
-        //URL                    heroImageURL        = new URL( productDetailJSONObject.getString( JSON_NAME_PRODUCT_HERO_IMAGE ) );
-        int                    labelColour          = parseColour( productDetailJSONObject.getJSONArray( JSON_NAME_LABEL_COLOUR ) );
-        String                 groupLabel           = productDetailJSONObject.getString( JSON_NAME_GROUP_LABEL );
-        ArrayList<URL>         imageURLList         = parseProductShots( productDetailJSONObject.getJSONArray( JSON_NAME_PRODUCT_SHOTS ) );
-        //String                 productSubclass     = productDetailJSONObject.getString( JSON_NAME_PRODUCT_SUBCLASS );
-        String                 productType          = productDetailJSONObject.getString( JSON_NAME_PRODUCT_TYPE );
-        UserJourneyType        userJourneyType      = parseUserJourneyType( productDetailJSONObject.getString( JSON_NAME_PRODUCT_UI_CLASS ) );
-        String                 productCode          = productDetailJSONObject.getString( JSON_NAME_PRODUCT_CODE );
-        MultipleUnitSize       size                 = parseProductSize( productDetailJSONObject.getJSONObject( JSON_NAME_PRODUCT_SIZE ) );
-        //float                  imageAspectRatio     = (float)productDetailJSONObject.optDouble( JSON_NAME_IMAGE_ASPECT_RATIO, Product.DEFAULT_IMAGE_ASPECT_RATIO );
-        float imageAspectRatio = (float) productDetailJSONObject.optDouble(JSON_NAME_IMAGE_ASPECT_RATIO, Product.DEFAULT_IMAGE_ASPECT_RATIO);
-
-        //Check for posters or photo-books (use journey as localisation changes other values except product type)
-        if (userJourneyType.equals(UserJourneyType.POSTER)) {
-          //For picture collages on posters the aspect ration of each image should be one (square images)
-          //For ordinary posters the aspect ratio should be 0.707 (portrait ration)
-          imageAspectRatio = productType.contains("Collage")? 1f : 0.707f;
-        } else if (userJourneyType.equals(UserJourneyType.PHOTOBOOK)) {
-          //Add image count to title (there are multiple products with the same name but different image count)
-          productName += " (" + imagesPerPage + ")";
-          //Types of photo-books by layout: Square (1.0) , Landscape (1.33333...) and Portrait(0.75)
-          if(productType.contains("Landscape")) {
-            imageAspectRatio = 1.33333f;
-          } else if(productType.contains("Portrait")) {
-            imageAspectRatio = 0.75f;
-          } else {
-            imageAspectRatio = 1.0f;
-          }
+      String backgroundImageURLString = productDetailJSONObject.optString( JSON_NAME_BACKGROUND_IMAGE_URL, null );
+      String highlightImageURLString  = productDetailJSONObject.optString( JSON_NAME_HIGHLIGHTS_URL,       null );
+
+
+      // Get any product options
+
+      JSONArray productOptionJSONArray = productDetailJSONObject.optJSONArray( JSON_NAME_SUPPORTED_OPTIONS );
+
+      List<ProductOption> productOptionList = parseProductOptions( productOptionJSONArray );
+
+
+      // Get any calendar assets
+
+      JSONArray calendarAssetsJSONArray = productJSONObject.optJSONArray( JSON_NAME_CALENDAR_ASSETS );
+
+      ArrayList<String> calendarImageURLStringList = parseCalendarAssets( calendarAssetsJSONArray );
+
+
+      // Create the product and display it
+
+      Product product = new Product( productId, productCode, productName, productType, labelColour, userJourneyType, imagesPerPage )
+              .setGridSize( gridCountX, gridCountY )
+              .setCost( cost )
+              .setDescription( productDescription )
+              .setShippingCosts( shippingCosts )
+              .setImageURLs( coverPhotoURL, imageURLList )
+              .setLabelColour( labelColour )
+              .setMask( maskURL, maskBleed )
+              .setSize( size )
+              .setCreationImage( imageAspectRatio, imageBorder )
+              .setProductOptions( productOptionList )
+              .setFlag( Product.Flag.PRINT_IN_STORE, printInStore )
+              .setFlag( Product.Flag.SUPPORTS_TEXT_ON_BORDER, supportsTextOnBorder )
+              .setCalendarImages( calendarImageURLStringList );
+
+
+      if ( backgroundImageURLString != null )
+        {
+        product.addUnderImage( new URL( backgroundImageURLString ) );
         }
 
-        boolean                supportsTextOnBorder = productDetailJSONObject.optBoolean( JSON_NAME_SUPPORTS_TEXT_ON_BORDER, false );
+      if ( highlightImageURLString != null )
+        {
+        product.addOverImage( new URL( highlightImageURLString ) );
+        }
 
-        // Get the cover photo
 
-        JSONArray coverPhotoVariantsJSONArray = productDetailJSONObject.getJSONArray( JSON_NAME_COVER_PHOTO_VARIANTS );
+      if ( KiteSDK.DISPLAY_PRODUCTS )
+        {
+        Log.i( LOG_TAG, "-- Found product --" );
+        Log.i( LOG_TAG, product.toLogString( groupLabel ) );
+        }
 
-        URL coverPhotoURL = getCoverPhotoURL( coverPhotoVariantsJSONArray, COVER_PHOTO_VARIANT_ID_DEFAULT );
 
+      // If the product doesn't have a supported user journey, then it
+      // is added to the catalogue as a discarded product.
 
-        URL     maskURL     = null;
-        Bleed   maskBleed   = null;
-        BorderF imageBorder = null;
+      boolean isDiscarded = true;
 
-        try
-          {
-          maskURL   = new URL( productDetailJSONObject.getString( JSON_NAME_MASK_URL ) );
-          maskBleed = parseBleed( productDetailJSONObject.getJSONArray( JSON_NAME_MASK_BLEED ) );
-          }
-        catch ( JSONException je )
-          {
-          // Ignore
-          }
+      if ( ! active )
+        {
+        Log.i( LOG_TAG, "-- Product ( " + groupLabel + " / " + productName + " ) discarded: inactive --" );
+        }
+      else if ( ! productActive )
+        {
+        Log.i( LOG_TAG, "-- Product ( " + groupLabel + " / " + productName + " ) discarded: product inactive --" );
+        }
+      else if ( ! ProductCreationActivity.isSupported( userJourneyType ) )
+        {
+        Log.i( LOG_TAG, "-- Product ( " + groupLabel + " / " + productName + " ) discarded: user journey type not supported: " + userJourneyType + " --" );
+        }
+      else if ( TEST_EMPTY_CATALOGUE )
+        {
+        Log.i( LOG_TAG, "-- Product ( " + groupLabel + " / " + productName + " ) discarded: testing empty catalogue --" );
+        }
+      else
+        {
+        isDiscarded = false;
+        }
 
-        try
-          {
-          imageBorder = parseImageBorder( productDetailJSONObject.getJSONObject( JSON_NAME_IMAGE_BORDER ) );
-          }
-        catch ( JSONException je)
-          {
-          // Ignore
-          }
+      return ( new ParsedProduct( product, groupLabel, groupImageURL, isDiscarded ) );
+      }
+    catch ( Exception exception )
+      {
+      // The product JSON is getting massive now, so display the exception separately
+      Log.e( LOG_TAG, "Unable to parse JSON product: " + productJSONObject );
+      Log.e( LOG_TAG, "Exception:", exception );
 
+      // Ignore individual errors - try and get as many products as possible
+      return ( null );
+      }
+    }
 
-        // Get any background / highlight images
 
-        String backgroundImageURLString = productDetailJSONObject.optString( JSON_NAME_BACKGROUND_IMAGE_URL, null );
-        String highlightImageURLString  = productDetailJSONObject.optString( JSON_NAME_HIGHLIGHTS_URL,       null );
+  /****************************************************
+   *
+   * Parses a JSON array of PayPal supported currencies.
+   *
+   ****************************************************/
+  static void parsePayPalSupportedCurrencies( JSONArray payPalSupportedCurrenciesJSONArray, Catalogue catalogue ) throws JSONException
+    {
+    for ( int index = 0; index < payPalSupportedCurrenciesJSONArray.length(); index ++ )
+      {
+      String   currencyCode = payPalSupportedCurrenciesJSONArray.getString( index );
+      Currency currency     = Currency.getInstance( currencyCode );
 
+      if ( currency != null ) catalogue.addPayPalSupportedCurrency( currencyCode );
+      else                    Log.e( LOG_TAG, "Unknown currency code: " + currencyCode );
+      }
+    }
 
-        // Get any product options
 
-        JSONArray productOptionJSONArray = productDetailJSONObject.optJSONArray( JSON_NAME_SUPPORTED_OPTIONS );
+  /****************************************************
+   *
+   * Parses a streamed catalogue. Each product is read and
+   * parsed in turn, so the whole catalogue is never held
+   * in memory as JSON.
+   *
+   ****************************************************/
+  static Catalogue parseCatalogue( JsonReader jsonReader ) throws IOException, JSONException
+    {
+    return ( parseCatalogue( jsonReader, null, null, null ) );
+    }
 
-        List<ProductOption> productOptionList = parseProductOptions( productOptionJSONArray );
 
+  /****************************************************
+   *
+   * Parses a streamed catalogue, also writing each item
+   * to the cache writer, if one is supplied.
+   *
+   * Products whose JSON hash is in the previous parsed
+   * product table are not parsed again; the previous
+   * product is re-used. Every product is added to the new
+   * parsed product table, if one is supplied.
+   *
+   ****************************************************/
+  static Catalogue parseCatalogue( JsonReader                     jsonReader,
+                                   CatalogueCache.Writer          cacheWriter,
+                                   HashMap<String,ParsedProduct>  previousParsedProductTable,
+                                   HashMap<String,ParsedProduct>  parsedProductTable ) throws IOException, JSONException
+    {
+    Catalogue catalogue = new Catalogue();
 
-        // Get any calendar assets
+    jsonReader.beginObject();
 
-        JSONArray calendarAssetsJSONArray = productJSONObject.optJSONArray( JSON_NAME_CALENDAR_ASSETS );
+    while ( jsonReader.hasNext() )
+      {
+      String topLevelKey = jsonReader.nextName();
 
-        ArrayList<String> calendarImageURLStringList = parseCalendarAssets( calendarAssetsJSONArray );
+      if ( topLevelKey == null || topLevelKey.trim().equals( "" ) )
+        {
+        jsonReader.skipValue();
 
+        continue;
+        }
 
-        // Create the product and display it
 
-        Product product = new Product( productId, productCode, productName, productType, labelColour, userJourneyType, imagesPerPage )
-                .setGridSize( gridCountX, gridCountY )
-                .setCost( cost )
-                .setDescription( productDescription )
-                .setShippingCosts( shippingCosts )
-                .setImageURLs( coverPhotoURL, imageURLList )
-                .setLabelColour( labelColour )
-                .setMask( maskURL, maskBleed )
-                .setSize( size )
-                .setCreationImage( imageAspectRatio, imageBorder )
-                .setProductOptions( productOptionList )
-                .setFlag( Product.Flag.PRINT_IN_STORE, printInStore )
-                .setFlag( Product.Flag.SUPPORTS_TEXT_ON_BORDER, supportsTextOnBorder )
-                .setCalendarImages( calendarImageURLStringList );
+      // Determine what type of data this is
 
+      if ( topLevelKey.equals( JSON_NAME_USER_CONFIG ) )
+        {
+        ///// User config data /////
 
-        if ( backgroundImageURLString != null )
-          {
-          product.addUnderImage( new URL( backgroundImageURLString ) );
-          }
+        JSONObject userConfigData = JSONReaderUtils.readObject( jsonReader );
 
-        if ( highlightImageURLString != null )
-          {
-          product.addOverImage( new URL( highlightImageURLString ) );
-          }
+        Log.i( LOG_TAG, "Storing user config data: " + userConfigData.toString() );
 
+        catalogue.setUserConfigData( userConfigData );
 
-        if ( KiteSDK.DISPLAY_PRODUCTS )
-          {
-          Log.i( LOG_TAG, "-- Found product --" );
-          Log.i( LOG_TAG, product.toLogString( groupLabel ) );
-          }
+        if ( cacheWriter != null ) cacheWriter.writeUserConfig( userConfigData );
+        }
 
+      else if ( topLevelKey.equals( JSON_NAME_PRODUCT_ARRAY ) )
+        {
+        ///// Product data /////
 
-        // Add the product to the catalogue. If it doesn't have a supported
-        // user journey, then we add it has a discarded product.
+        // Products are parsed in parallel whilst the rest of the array is read
 
-        if ( ! active )
-          {
-          Log.i( LOG_TAG, "-- Product ( " + groupLabel + " / " + productName + " ) discarded: inactive --" );
+        ProductListParser productListParser = new ProductListParser( catalogue, previousParsedProductTable, parsedProductTable );
 
-          catalogue.addDiscardedProduct( product );
-          }
-        else if ( ! productActive )
+        jsonReader.beginArray();
+
+        while ( jsonReader.hasNext() )
           {
-          Log.i( LOG_TAG, "-- Product ( " + groupLabel + " / " + productName + " ) discarded: product inactive --" );
+          if ( jsonReader.peek() == JsonToken.BEGIN_OBJECT )
+            {
+            JSONObject productJSONObject = JSONReaderUtils.readObject( jsonReader );
 
-          catalogue.addDiscardedProduct( product );
+            productListParser.add( productJSONObject );
+
+            if ( cacheWriter != null ) cacheWriter.writeProduct( productJSONObject );
+            }
+          else
+            {
+            Log.e( LOG_TAG, "Discarding product that is not an object" );
+
+            jsonReader.skipValue();
+            }
           }
-        else if ( ! ProductCreationActivity.isSupported( userJourneyType ) )
+
+        jsonReader.endArray();
+
+        productListParser.finish();
+
+        if ( DISPLAY_PRE_CACHING_INFO ) catalogue.displayPreCachingInfo();
+        }
+
+      else if ( topLevelKey.equals( JSON_NAME_PAYPAL_SUPPORTED_CURRENCIES ) )
+        {
+        ///// PayPal supported currencies /////
+
+        JSONArray currenciesJSONArray = JSONReaderUtils.readArray( jsonReader );
+
+        parsePayPalSupportedCurrencies( currenciesJSONArray, catalogue );
+
+        if ( cacheWriter != null ) cacheWriter.writePayPalSupportedCurrencies( currenciesJSONArray );
+        }
+
+      else
+        {
+        ///// Custom data /////
+
+        // Custom data could either be an object or an array
+
+        Object customData = JSONReaderUtils.readValue( jsonReader );
+
+        if ( customData instanceof JSONObject )
           {
-          Log.i( LOG_TAG, "-- Product ( " + groupLabel + " / " + productName + " ) discarded: user journey type not supported: " + userJourneyType + " --" );
+          Log.i( LOG_TAG, "Storing custom object: " + topLevelKey + " = " + customData.toString() );
 
-          catalogue.addDiscardedProduct( product );
+          catalogue.setCustomObject( topLevelKey, (JSONObject)customData );
+
+          if ( cacheWriter != null ) cacheWriter.writeCustomObject( topLevelKey, (JSONObject)customData );
           }
-        else if ( TEST_EMPTY_CATALOGUE )
+        else if ( customData instanceof JSONArray )
           {
-          Log.i( LOG_TAG, "-- Product ( " + groupLabel + " / " + productName + " ) discarded: testing empty catalogue --" );
-
-          catalogue.addDiscardedProduct( product );
+          Log.i( LOG_TAG, "Discarding custom array: " + topLevelKey + " = " + customData.toString() );
           }
         else
           {
-          catalogue.addProduct( groupLabel, groupImageURL, product );
+          Log.i( LOG_TAG, "Discarding custom data: " + topLevelKey + " = " + customData.toString() );
           }
         }
-      catch ( Exception exception )
-        {
-        // The product JSON is getting massive now, so display the exception separately
-        Log.e( LOG_TAG, "Unable to parse JSON product: " + productJSONObject );
-        Log.e( LOG_TAG, "Exception:", exception );
-
-        // Ignore individual errors - try and get as many products as possible
-        }
       }
 
+    jsonReader.endObject();
 
-    if ( DISPLAY_PRE_CACHING_INFO ) catalogue.displayPreCachingInfo();
+    return ( catalogue );
     }
 
 
@@ -761,7 +1042,31 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
 
     if ( httpStatusCode >= 200 && httpStatusCode <= 299 )
       {
-      onCatalogue( jsonData );
+      // The catalogue was parsed (and cached) as it was streamed
+
+      setLastRetrievedCatalogue(
+              mCatalogueParser.getCatalogue(),
+              mRequestAPIKey,
+              mRequestURLString,
+              mCatalogueParser.getETag(),
+              mCatalogueParser.getLastModified(),
+              SystemClock.elapsedRealtime() );
+
+      mParsedProductTable = mCatalogueParser.getParsedProductTable();
+
+      onCatalogue( mLastRetrievedCatalogue );
+      }
+    else if ( httpStatusCode == HTTP_STATUS_CODE_NOT_MODIFIED && isLastRetrievedCatalogueFor( mRequestAPIKey, mRequestURLString ) )
+      {
+      // The catalogue we already have is still up to date
+
+      if ( DISPLAY_DEBUGGING ) Log.d( LOG_TAG, "Catalogue not modified" );
+
+      mLastRetrievedElapsedRealtimeMillis = SystemClock.elapsedRealtime();
+
+      CatalogueCache.touch( mContext );
+
+      onCatalogue( mLastRetrievedCatalogue );
       }
     else
       {
@@ -793,6 +1098,18 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
   @Override
   public void onError( Exception exception )
     {
+    // If we couldn't reach the server, but we already have a catalogue (such as one
+    // loaded from the cache), return that rather than failing.
+
+    if ( isLastRetrievedCatalogueFor( mRequestAPIKey, mRequestURLString ) )
+      {
+      Log.w( LOG_TAG, "Unable to retrieve catalogue - returning previous catalogue", exception );
+
+      postCatalogueToConsumers( mLastRetrievedCatalogue );
+
+      return;
+      }
+
     postErrorToConsumers( exception );
     }
 
@@ -804,6 +1121,12 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
    * Retrieves a catalogue. This must be called on
    * the UI thread, and always returns products asynchronously.
    *
+   * A catalogue saved by a previous session is returned
+   * as soon as it has been loaded. A catalogue older than
+   * the maximum age, but less than a day old, is also
+   * returned immediately, whilst a fresh one is retrieved
+   * in the background.
+   *
    * @param maximumAgeMillis The maximum permitted time in milliseconds
    *                         since the last retrieval. If the value supplied
    *                         is < 0, there is no maximum age.
@@ -819,9 +1142,9 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
     if ( DISPLAY_DEBUGGING ) Log.d( LOG_TAG, "requestCatalogue( maximumAgeMillis = " + maximumAgeMillis + ", consumer = " + consumer + " )" );
 
 
-    // If there is currently a retrieval in progress, always wait for the result
+    // If the cached catalogue is being loaded, wait for it
 
-    if ( mHTTPJSONRequest != null )
+    if ( mCacheLoadTask != null )
       {
       mConsumerList.addLast( consumer );
 
@@ -829,45 +1152,119 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
       }
 
 
-    // There is no retrieval currently in progress. Check if there is a suitable
-    // cached list of products to return immediately. The conditions for such a
-    // list are:
-    //   - The were retrieved suitably recently
-    //   - The API key for the environment matches the current one
+    String currentAPIKey    = KiteSDK.getInstance( mContext ).getAPIKey();
+    String requestURLString = String.format( TEMPLATE_REQUEST_FORMAT_STRING, KiteSDK.getInstance( mContext ).getAPIEndpoint() );
+
 
-    String currentAPIKey = KiteSDK.getInstance( mContext ).getAPIKey();
+    // If we don't have a catalogue yet, try loading the one saved by a previous
+    // session before going to the network. The consumer will get either the
+    // cached catalogue, or the result of a new retrieval.
 
-    if ( mLastRetrievedEnvironmentAPIKey != null &&
-         mLastRetrievedEnvironmentAPIKey.equals( currentAPIKey ) &&
-         mLastRetrievedElapsedRealtimeMillis > 0 )
+    if ( mLastRetrievedCatalogue == null && ! mCacheLoadAttempted )
       {
-      long minAcceptableElapsedRealtimeMillis = (
-              maximumAgeMillis >= 0
-                      ? SystemClock.elapsedRealtime() - maximumAgeMillis
-                      : 0 );
+      mCacheLoadAttempted = true;
 
-      if ( mLastRetrievedElapsedRealtimeMillis >= minAcceptableElapsedRealtimeMillis )
-        {
-        postCatalogueToConsumer( mLastRetrievedCatalogue, consumer );
+      mConsumerList.addLast( consumer );
 
-        return ( true );
-        }
+      mCacheLoadTask = new CacheLoadTask( currentAPIKey, requestURLString );
+
+      mCacheLoadTask.execute();
+
+      return ( false );
+      }
+
+
+    // Check if there is a suitable cached catalogue to return immediately. The
+    // conditions for such a catalogue are:
+    //   - It was retrieved suitably recently
+    //   - The API key for the environment matches the current one
+
+    if ( isLastRetrievedCatalogueUsable( currentAPIKey, maximumAgeMillis ) )
+      {
+      postCatalogueToConsumer( mLastRetrievedCatalogue, consumer );
+
+      return ( true );
       }
 
 
-    // We need to perform a new retrieval. Create a new request, and consumer list containing the consumer.
+    // If the catalogue is older than requested, but not too old, return it
+    // immediately anyway, and retrieve a fresh one in the background.
+
+    if ( isLastRetrievedCatalogueUsable( currentAPIKey, MAX_STALE_CATALOGUE_AGE_MILLIS ) )
+      {
+      postCatalogueToConsumer( mLastRetrievedCatalogue, consumer );
+
+      if ( mHTTPJSONRequest == null ) startRetrieval( currentAPIKey, requestURLString );
+
+      return ( true );
+      }
 
-    String url = String.format( TEMPLATE_REQUEST_FORMAT_STRING, KiteSDK.getInstance( mContext ).getAPIEndpoint() );
 
-    mHTTPJSONRequest = new KiteAPIRequest( mContext, KiteAPIRequest.HttpMethod.GET, url, null, null );
+    // We need to wait for a retrieval, starting a new one if there isn't one in progress
+
     mConsumerList.addLast( consumer );
-    mRequestAPIKey = currentAPIKey;
+
+    if ( mHTTPJSONRequest == null ) startRetrieval( currentAPIKey, requestURLString );
+
+    return ( false );
+    }
+
+
+  /****************************************************
+   *
+   * Starts a new catalogue retrieval. If we already have
+   * the catalogue for the same API key and URL, the request
+   * is made conditional, so the server only needs to return
+   * the catalogue if it has changed.
+   *
+   ****************************************************/
+  private void startRetrieval( String apiKey, String requestURLString )
+    {
+    HashMap<String,String> headerMap = new HashMap<>();
+
+    if ( isLastRetrievedCatalogueFor( apiKey, requestURLString ) )
+      {
+      if ( mLastRetrievedETag         != null ) headerMap.put( HTTP_HEADER_IF_NONE_MATCH,     mLastRetrievedETag );
+      if ( mLastRetrievedLastModified != null ) headerMap.put( HTTP_HEADER_IF_MODIFIED_SINCE, mLastRetrievedLastModified );
+      }
+
+    mHTTPJSONRequest  = new KiteAPIRequest( mContext, KiteAPIRequest.HttpMethod.GET, requestURLString, headerMap, null );
+    mCatalogueParser  = new CatalogueParser( mHTTPJSONRequest, apiKey, requestURLString, mParsedProductTable );
+    mRequestAPIKey    = apiKey;
+    mRequestURLString = requestURLString;
 
 
     // Kick off the retrieval
-    mHTTPJSONRequest.start( this );
+    mHTTPJSONRequest.start( mCatalogueParser, this );
+    }
 
-    return ( false );
+
+  /****************************************************
+   *
+   * Returns true if the last retrieved catalogue was
+   * retrieved for the supplied API key and URL.
+   *
+   ****************************************************/
+  private boolean isLastRetrievedCatalogueFor( String apiKey, String requestURLString )
+    {
+    return ( mLastRetrievedCatalogue != null &&
+             apiKey != null && apiKey.equals( mLastRetrievedEnvironmentAPIKey ) &&
+             requestURLString != null && requestURLString.equals( mLastRetrievedURLString ) );
+    }
+
+
+  /****************************************************
+   *
+   * Returns true if the last retrieved catalogue is for
+   * the supplied API key, and no older than the maximum
+   * age.
+   *
+   ****************************************************/
+  private boolean isLastRetrievedCatalogueUsable( String apiKey, long maximumAgeMillis )
+    {
+    if ( mLastRetrievedCatalogue == null || mLastRetrievedEnvironmentAPIKey == null || ! mLastRetrievedEnvironmentAPIKey.equals( apiKey ) ) return ( false );
+
+    return ( maximumAgeMillis < 0 || SystemClock.elapsedRealtime() - mLastRetrievedElapsedRealtimeMillis <= maximumAgeMillis );
     }
 
 
@@ -965,16 +1362,7 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
           {
           ///// PayPal supported currencies /////
 
-          JSONArray payPalSupportedCurrenciesJSONArray = jsonData.getJSONArray( JSON_NAME_PAYPAL_SUPPORTED_CURRENCIES );
-
-          for ( int index = 0; index < payPalSupportedCurrenciesJSONArray.length(); index ++ )
-            {
-            String   currencyCode = payPalSupportedCurrenciesJSONArray.getString( index );
-            Currency currency     = Currency.getInstance( currencyCode );
-
-            if ( currency != null ) catalogue.addPayPalSupportedCurrency( currencyCode );
-            else                    Log.e( LOG_TAG, "Unknown currency code: " + currencyCode );
-            }
+          parsePayPalSupportedCurrencies( jsonData.getJSONArray( JSON_NAME_PAYPAL_SUPPORTED_CURRENCIES ), catalogue );
           }
 
         else
@@ -1004,18 +1392,9 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
         }
 
 
-      // Save the query result
-      mLastRetrievedCatalogue             = catalogue;
-      mLastRetrievedEnvironmentAPIKey     = mRequestAPIKey;
-      mLastRetrievedElapsedRealtimeMillis = SystemClock.elapsedRealtime();
-
-      // Choose and lock the currency
-      KiteSDK.getInstance( mContext ).chooseAndLockCurrency( catalogue );
-
-      // Expire old cached product images
-      AssetHelper.clearProductAssets( mContext, catalogue.getAllProductImageURLs() );
+      setLastRetrievedCatalogue( catalogue, mRequestAPIKey, mRequestURLString, null, null, SystemClock.elapsedRealtime() );
 
-      postCatalogueToConsumers( catalogue );
+      onCatalogue( catalogue );
       }
     catch ( JSONException je )
       {
@@ -1027,6 +1406,42 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
     }
 
 
+  /****************************************************
+   *
+   * Called when we have a new catalogue.
+   *
+   ****************************************************/
+  private void onCatalogue( Catalogue catalogue )
+    {
+    // Choose and lock the currency
+    KiteSDK.getInstance( mContext ).chooseAndLockCurrency( catalogue );
+
+    // Expire old cached product images
+    AssetHelper.clearProductAssets( mContext, catalogue.getAllProductImageURLs() );
+
+    postCatalogueToConsumers( catalogue );
+
+    // Download the images we are likely to need in the background
+    CatalogueImagePrefetcher.getInstance( mContext ).prefetch( catalogue );
+    }
+
+
+  /****************************************************
+   *
+   * Saves a retrieved catalogue.
+   *
+   ****************************************************/
+  private void setLastRetrievedCatalogue( Catalogue catalogue, String apiKey, String requestURLString, String eTag, String lastModified, long retrievedElapsedRealtimeMillis )
+    {
+    mLastRetrievedCatalogue             = catalogue;
+    mLastRetrievedEnvironmentAPIKey     = apiKey;
+    mLastRetrievedURLString             = requestURLString;
+    mLastRetrievedETag                  = eTag;
+    mLastRetrievedLastModified          = lastModified;
+    mLastRetrievedElapsedRealtimeMillis = retrievedElapsedRealtimeMillis;
+    }
+
+
   /****************************************************
    *
    * Returns any cached products if they are not too old.
@@ -1039,12 +1454,8 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
     {
     if ( DISPLAY_DEBUGGING ) Log.d( LOG_TAG, "getCachedCatalogue( maximumAgeMillis = " + maximumAgeMillis + " )" );
 
-    long minAcceptableElapsedRealtimeMillis = (
-            maximumAgeMillis >= 0
-                    ? SystemClock.elapsedRealtime() - maximumAgeMillis
-                    : 0 );
-
-    if ( mLastRetrievedElapsedRealtimeMillis >= minAcceptableElapsedRealtimeMillis )
+    if ( mLastRetrievedCatalogue != null &&
+         ( maximumAgeMillis < 0 || SystemClock.elapsedRealtime() - mLastRetrievedElapsedRealtimeMillis <= maximumAgeMillis ) )
       {
       return ( mLastRetrievedCatalogue );
       }
@@ -1141,6 +1552,387 @@ public class CatalogueLoader implements HTTPJSONRequest.IJSONResponseListener
 
   ////////// Inner Class(es) //////////
 
+  /*****************************************************
+   *
+   * Parses a streamed catalogue response on the request's
+   * background thread.
+   *
+   *****************************************************/
+  private class CatalogueParser implements HTTPJSONRequest.IJSONStreamParser
+    {
+    private HTTPJSONRequest                mRequest;
+    private String                         mAPIKey;
+    private String                         mRequestURLString;
+    private HashMap<String,ParsedProduct>  mPreviousParsedProductTable;
+
+    private Catalogue                      mCatalogue;
+    private String                         mETag;
+    private String                         mLastModified;
+    private HashMap<String,ParsedProduct>  mParsedProductTable;
+
+
+    CatalogueParser( HTTPJSONRequest request, String apiKey, String requestURLString, HashMap<String,ParsedProduct> previousParsedProductTable )
+      {
+      mRequest                    = request;
+      mAPIKey                     = apiKey;
+      mRequestURLString           = requestURLString;
+      mPreviousParsedProductTable = previousParsedProductTable;
+      mParsedProductTable         = new HashMap<>();
+      }
+
+
+    @Override
+    public void parseResponse( JsonReader jsonReader ) throws Exception
+      {
+      mETag         = mRequest.getResponseHeader( HTTP_HEADER_ETAG );
+      mLastModified = mRequest.getResponseHeader( HTTP_HEADER_LAST_MODIFIED );
+
+
+      // Write the catalogue to the cache as it is parsed
+
+      CatalogueCache.Writer cacheWriter = CatalogueCache.openWriter( mContext, mAPIKey, mRequestURLString, mETag, mLastModified );
+
+      try
+        {
+        mCatalogue = parseCatalogue( jsonReader, cacheWriter, mPreviousParsedProductTable, mParsedProductTable );
+
+        if ( cacheWriter != null ) cacheWriter.commit();
+        }
+      finally
+        {
+        if ( cacheWriter != null ) cacheWriter.close();
+        }
+      }
+
+
+    Catalogue getCatalogue()
+      {
+      return ( mCatalogue );
+      }
+
+
+    String getETag()
+      {
+      return ( mETag );
+      }
+
+
+    String getLastModified()
+      {
+      return ( mLastModified );
+      }
+
+
+    HashMap<String,ParsedProduct> getParsedProductTable()
+      {
+      return ( mParsedProductTable );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * A parsed product, waiting to be added to a catalogue.
+   * Parsed products are kept by the hash of their JSON, so
+   * unchanged products can be re-used by later catalogues.
+   *
+   *****************************************************/
+  static class ParsedProduct
+    {
+    private Product  mProduct;
+    private String   mGroupLabel;
+    private URL      mGroupImageURL;
+    private boolean  mIsDiscarded;
+
+    private String   mContentHash;
+
+
+    ParsedProduct( Product product, String groupLabel, URL groupImageURL, boolean isDiscarded )
+      {
+      mProduct       = product;
+      mGroupLabel    = groupLabel;
+      mGroupImageURL = groupImageURL;
+      mIsDiscarded   = isDiscarded;
+      }
+
+
+    void addTo( Catalogue catalogue )
+      {
+      if ( mIsDiscarded ) catalogue.addDiscardedProduct( mProduct );
+      else                catalogue.addProduct( mGroupLabel, mGroupImageURL, mProduct );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Parses a sequence of JSON products in parallel, in
+   * chunks. The products are added to the catalogue on the
+   * calling thread, in their original order, so the product
+   * groups are the same as if they were parsed sequentially.
+   *
+   *****************************************************/
+  static class ProductListParser
+    {
+    private Catalogue                                mCatalogue;
+    private HashMap<String,ParsedProduct>            mPreviousParsedProductTable;
+    private HashMap<String,ParsedProduct>            mParsedProductTable;
+
+    private ArrayList<JSONObject>                    mChunkJSONObjectList;
+    private LinkedList<Future<List<ParsedProduct>>>  mFutureList;
+
+    private int                                      mProductCount;
+    private int                                      mReusedProductCount;
+
+
+    /*****************************************************
+     *
+     * Creates a new product list parser.
+     *
+     * @param previousParsedProductTable Products that may be
+     *        re-used, if their JSON is unchanged. This must
+     *        not be modified whilst parsing.
+     * @param parsedProductTable The table to add the parsed
+     *        products to.
+     *
+     *****************************************************/
+    ProductListParser( Catalogue catalogue, HashMap<String,ParsedProduct> previousParsedProductTable, HashMap<String,ParsedProduct> parsedProductTable )
+      {
+      mCatalogue                  = catalogue;
+      mPreviousParsedProductTable = previousParsedProductTable;
+      mParsedProductTable         = parsedProductTable;
+      mChunkJSONObjectList        = new ArrayList<>( PRODUCTS_PER_PARSING_TASK );
+      mFutureList                 = new LinkedList<>();
+      }
+
+
+    /*****************************************************
+     *
+     * Adds a product to be parsed.
+     *
+     *****************************************************/
+    void add( JSONObject productJSONObject ) throws InterruptedIOException
+      {
+      if ( productJSONObject == null ) return;
+
+      mChunkJSONObjectList.add( productJSONObject );
+
+      if ( mChunkJSONObjectList.size() >= PRODUCTS_PER_PARSING_TASK )
+        {
+        submitChunk();
+
+
+        // Add any products that have already been parsed, so we don't keep
+        // more than we need to.
+
+        while ( mFutureList.size() > 0 && mFutureList.getFirst().isDone() )
+          {
+          addParsedProducts( mFutureList.removeFirst() );
+          }
+        }
+      }
+
+
+    /*****************************************************
+     *
+     * Waits for all the products to be parsed, and adds
+     * them to the catalogue.
+     *
+     *****************************************************/
+    void finish() throws InterruptedIOException
+      {
+      if ( mChunkJSONObjectList.size() > 0 ) submitChunk();
+
+      while ( mFutureList.size() > 0 )
+        {
+        addParsedProducts( mFutureList.removeFirst() );
+        }
+
+      if ( DISPLAY_DEBUGGING ) Log.d( LOG_TAG, "Re-used " + mReusedProductCount + " of " + mProductCount + " parsed products" );
+      }
+
+
+    /*****************************************************
+     *
+     * Submits the current chunk for parsing.
+     *
+     *****************************************************/
+    private void submitChunk()
+      {
+      final List<JSONObject>               chunkJSONObjectList        = mChunkJSONObjectList;
+      final HashMap<String,ParsedProduct>  previousParsedProductTable = mPreviousParsedProductTable;
+      final boolean                        hashProducts               = ( previousParsedProductTable != null || mParsedProductTable != null );
+
+      mChunkJSONObjectList = new ArrayList<>( PRODUCTS_PER_PARSING_TASK );
+
+      mFutureList.addLast( getProductParsingExecutor().submit( new Callable<List<ParsedProduct>>()
+        {
+        @Override
+        public List<ParsedProduct> call()
+          {
+          ArrayList<ParsedProduct> parsedProductList = new ArrayList<>( chunkJSONObjectList.size() );
+
+          for ( JSONObject productJSONObject : chunkJSONObjectList )
+            {
+            // If the product JSON hasn't changed since it was last parsed, re-use
+            // the previous product.
+
+            String        contentHash   = ( hashProducts ? getContentHash( productJSONObject ) : null );
+            ParsedProduct parsedProduct = ( contentHash != null && previousParsedProductTable != null ? previousParsedProductTable.get( contentHash ) : null );
+
+            if ( parsedProduct == null )
+              {
+              parsedProduct = parseProduct( productJSONObject );
+
+              if ( parsedProduct != null ) parsedProduct.mContentHash = contentHash;
+              }
+
+            if ( parsedProduct != null ) parsedProductList.add( parsedProduct );
+            }
+
+          return ( parsedProductList );
+          }
+        } ) );
+      }
+
+
+    /*****************************************************
+     *
+     * Waits for a chunk of products, and adds them to the
+     * catalogue.
+     *
+     *****************************************************/
+    private void addParsedProducts( Future<List<ParsedProduct>> future ) throws InterruptedIOException
+      {
+      try
+        {
+        for ( ParsedProduct parsedProduct : future.get() )
+          {
+          parsedProduct.addTo( mCatalogue );
+
+          mProductCount ++;
+
+
+          // Keep the product for re-use by later catalogues
+
+          if ( parsedProduct.mContentHash != null )
+            {
+            if ( mPreviousParsedProductTable != null && mPreviousParsedProductTable.get( parsedProduct.mContentHash ) == parsedProduct ) mReusedProductCount ++;
+
+            if ( mParsedProductTable != null ) mParsedProductTable.put( parsedProduct.mContentHash, parsedProduct );
+            }
+          }
+        }
+      catch ( InterruptedException ie )
+        {
+        // Don't leave any tasks running for a catalogue that nobody wants
+        cancelRemainingChunks();
+
+        throw ( new InterruptedIOException( "Interrupted whilst parsing products" ) );
+        }
+      catch ( ExecutionException ee )
+        {
+        // Products that can't be parsed are skipped by the task, so anything else is
+        // unexpected. It is passed on to the caller, as it would be from a sequential
+        // parse, rather than silently losing a whole chunk.
+
+        cancelRemainingChunks();
+
+        Throwable cause = ee.getCause();
+
+        if ( cause instanceof RuntimeException ) throw ( (RuntimeException)cause );
+        if ( cause instanceof Error )            throw ( (Error)cause );
+
+        throw ( new RuntimeException( "Unable to parse products", cause ) );
+        }
+      }
+
+
+    /*****************************************************
+     *
+     * Cancels any chunks that haven't been added yet.
+     *
+     *****************************************************/
+    private void cancelRemainingChunks()
+      {
+      for ( Future<List<ParsedProduct>> remainingFuture : mFutureList )
+        {
+        remainingFuture.cancel( true );
+        }
+
+      mFutureList.clear();
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Loads the catalogue saved by a previous session.
+   *
+   *****************************************************/
+  private class CacheLoadTask extends AsyncTask<Void,Void,CatalogueCache.Entry>
+    {
+    private String  mAPIKey;
+    private String  mRequestURLString;
+
+
+    CacheLoadTask( String apiKey, String requestURLString )
+      {
+      mAPIKey           = apiKey;
+      mRequestURLString = requestURLString;
+      }
+
+
+    @Override
+    protected CatalogueCache.Entry doInBackground( Void... params )
+      {
+      return ( CatalogueCache.read( mContext, mAPIKey, mRequestURLString ) );
+      }
+
+
+    @Override
+    protected void onPostExecute( CatalogueCache.Entry cacheEntry )
+      {
+      mCacheLoadTask = null;
+
+      if ( cacheEntry != null )
+        {
+        if ( DISPLAY_DEBUGGING ) Log.d( LOG_TAG, "Loaded cached catalogue saved at " + cacheEntry.getSavedTimeMillis() );
+
+        // Convert the saved time into the elapsed real-time clock, which will be
+        // negative if the device has been restarted since.
+
+        long ageMillis = Math.max( 0, System.currentTimeMillis() - cacheEntry.getSavedTimeMillis() );
+
+        setLastRetrievedCatalogue(
+                cacheEntry.getCatalogue(),
+                mAPIKey,
+                mRequestURLString,
+                cacheEntry.getETag(),
+                cacheEntry.getLastModified(),
+                SystemClock.elapsedRealtime() - ageMillis );
+
+        mParsedProductTable = cacheEntry.getParsedProductTable();
+
+
+        // If the cached catalogue isn't too old, return it to the waiting consumers
+        // straight away. Otherwise they wait for the retrieval, which can still be
+        // conditional on the cached catalogue.
+
+        if ( isLastRetrievedCatalogueUsable( mAPIKey, MAX_STALE_CATALOGUE_AGE_MILLIS ) )
+          {
+          onCatalogue( mLastRetrievedCatalogue );
+          }
+        }
+
+
+      // Always check for a newer catalogue
+
+      if ( mHTTPJSONRequest == null ) startRetrieval( mAPIKey, mRequestURLString );
+      }
+    }
+
+
   /*****************************************************
    *
    * This class consumes a catalogue, but then filters it
@@ -78,6 +78,11 @@ public class ProductGroup implements IGroupOrProduct
 
   private ArrayList<Product>  mProductList;
 
+  // The last display price, and what it was calculated for
+  private String              mDisplayPricePreferredCurrency;
+  private Locale              mDisplayPriceLocale;
+  private String              mDisplayPrice;
+
 
   ////////// Static Initialiser(s) //////////
 
@@ -175,6 +180,19 @@ public class ProductGroup implements IGroupOrProduct
     // in.
 
     Locale locale       = Locale.getDefault();
+
+
+    // The price is requested every time the group is displayed, so return the
+    // previous one if nothing has changed.
+
+    if ( mDisplayPrice != null &&
+         locale.equals( mDisplayPriceLocale ) &&
+         ( preferredCurrency != null ? preferredCurrency.equals( mDisplayPricePreferredCurrency ) : mDisplayPricePreferredCurrency == null ) )
+      {
+      return ( mDisplayPrice );
+      }
+
+
     String currencyCode = chooseBestCurrency( preferredCurrency );
 
     if ( currencyCode == null )
@@ -203,7 +221,15 @@ public class ProductGroup implements IGroupOrProduct
 
 
     // If we found a low price - return it as a string formatted for the current locale
-    if ( lowestSingleCurrencyCost != null ) return ( lowestSingleCurrencyCost.getDisplayAmountForLocale( locale ) );
+
+    if ( lowestSingleCurrencyCost != null )
+      {
+      mDisplayPricePreferredCurrency = preferredCurrency;
+      mDisplayPriceLocale            = locale;
+      mDisplayPrice                  = lowestSingleCurrencyCost.getDisplayAmountForLocale( locale );
+
+      return ( mDisplayPrice );
+      }
 
     return ( null );
     }
@@ -309,6 +335,8 @@ public class ProductGroup implements IGroupOrProduct
   void add( Product product )
     {
     mProductList.add( product );
+
+    mDisplayPrice = null;
     }
 
 
@@ -272,9 +272,9 @@ public class DefaultPaymentFragment extends APaymentFragment
   @Override
   public void onClick( View view )
     {
-    // Both payment methods depend on us having the order price
+    // Both payment methods depend on us having the actual order price
 
-    if ( mOrderPricing != null )
+    if ( mOrderPricing != null && ! mOrderPricing.isEstimate() )
       {
       if ( ( mPayPalTextView != null && view == mPayPalTextView ) ||
            ( mPayPalView     != null && view == mPayPalView     ) )
@@ -135,7 +135,7 @@ public class OrderPricingAdaptor extends BaseAdapter
 
       MultipleCurrencyAmounts itemCost = lineItem.getProductCost();
 
-      String itemCostString = itemCost.getDefaultDisplayAmountWithFallback();
+      String itemCostString = markIfEstimate( itemCost.getDefaultDisplayAmountWithFallback() );
 
       mItemList.add( new Item( description, itemCostString, false ) );
       }
@@ -151,7 +151,7 @@ public class OrderPricingAdaptor extends BaseAdapter
          ( shippingCostInSingleCurrency = shippingCost.getAmountsWithFallback( preferredCurrencyCode ) ) != null &&
          shippingCostInSingleCurrency.getAmount().compareTo( BigDecimal.ZERO ) > 0 )
       {
-      shippingCostString = shippingCostInSingleCurrency.getDisplayAmountForLocale( defaultLocale );
+      shippingCostString = markIfEstimate( shippingCostInSingleCurrency.getDisplayAmountForLocale( defaultLocale ) );
       }
     else
       {
@@ -172,7 +172,7 @@ public class OrderPricingAdaptor extends BaseAdapter
       if ( promoDiscountInSingleCurrency != null &&
            promoDiscountInSingleCurrency.getAmount().compareTo( BigDecimal.ZERO ) > 0 )
         {
-        mItemList.add( new Item( mContext.getString( R.string.Promotional_Discount ), promoDiscountInSingleCurrency.getDisplayAmountForLocale( defaultLocale ), false ) );
+        mItemList.add( new Item( mContext.getString( R.string.Promotional_Discount ), markIfEstimate( promoDiscountInSingleCurrency.getDisplayAmountForLocale( defaultLocale ) ), false ) );
         }
       }
 
@@ -185,7 +185,7 @@ public class OrderPricingAdaptor extends BaseAdapter
       {
       SingleCurrencyAmounts totalCostInSingleCurrency = totalCost.getAmountsWithFallback( preferredCurrencyCode );
 
-      mItemList.add( new Item( mContext.getString( R.string.Total ), totalCostInSingleCurrency.getDisplayAmountForLocale( defaultLocale ), true ) );
+      mItemList.add( new Item( mContext.getString( R.string.Total ), markIfEstimate( totalCostInSingleCurrency.getDisplayAmountForLocale( defaultLocale ) ), true ) );
       }
 
     }
@@ -272,7 +272,19 @@ public class OrderPricingAdaptor extends BaseAdapter
     }
 
 
-  ////////// BaseAdapter Method(s) //////////
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns a display amount, marked if the pricing is
+   * only an estimate.
+   *
+   *****************************************************/
+  private String markIfEstimate( String displayAmount )
+    {
+    return ( mPricing.isEstimate() ? mContext.getString( R.string.estimated_amount_format_string, displayAmount ) : displayAmount );
+    }
+
 
   /*****************************************************
    *
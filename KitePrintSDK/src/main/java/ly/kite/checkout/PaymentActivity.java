@@ -66,6 +66,7 @@ import ly.kite.analytics.Analytics;
 import ly.kite.catalogue.SingleCurrencyAmounts;
 import ly.kite.pricing.OrderPricing;
 import ly.kite.pricing.PricingAgent;
+import ly.kite.pricing.PricingPipeline;
 import ly.kite.KiteSDK;
 import ly.kite.catalogue.MultipleCurrencyAmounts;
 import ly.kite.ordering.Order;
@@ -114,6 +115,7 @@ public class PaymentActivity extends AOrderSubmissionActivity implements Pricing
   private ProgressBar          mProgressBar;
 
   private OrderPricing         mOrderPricing;
+  private PricingPipeline      mPricingPipeline;
 
   private boolean              mPromoActionClearsCode;
   private String               mLastSubmittedPromoCode;
@@ -169,6 +171,11 @@ public class PaymentActivity extends AOrderSubmissionActivity implements Pricing
     super.onCreate( savedInstanceState );
 
 
+    // Promo codes are only submitted when a button is pressed, so there's no need to
+    // debounce the requests, but we still only want the latest pricing.
+    mPricingPipeline = new PricingPipeline( this, this, 0 );
+
+
     // First look for a saved order (because it might have changed since we were first
     // created. If none if found - get it from the intent.
 
@@ -319,6 +326,8 @@ public class PaymentActivity extends AOrderSubmissionActivity implements Pricing
   @Override
   public void onDestroy()
     {
+    mPricingPipeline.cancel();
+
     stopService( new Intent( this, PayPalService.class ) );
     super.onDestroy();
     }
@@ -469,7 +478,7 @@ public class PaymentActivity extends AOrderSubmissionActivity implements Pricing
 
     if ( promoCode != null && promoCode.trim().equals( "" ) ) promoCode = null;
 
-    mOrderPricing = PricingAgent.getInstance().requestPricing( this, mOrder, mLastSubmittedPromoCode = promoCode, mPayPalSupportedCurrencyCodes, this );
+    mOrderPricing = mPricingPipeline.requestPricing( mOrder, mLastSubmittedPromoCode = promoCode, mPayPalSupportedCurrencyCodes );
 
 
     // If the pricing wasn't cached - disable the buttons, and show the progress spinner, whilst
@@ -483,6 +492,14 @@ public class PaymentActivity extends AOrderSubmissionActivity implements Pricing
 
       mProgressBar.setVisibility( View.VISIBLE );
 
+
+      // Display an estimated order summary, if we can, whilst we wait. The buttons stay
+      // disabled, because we can only take payment for the actual pricing.
+
+      OrderPricing estimatedPricing = mPricingPipeline.estimatePricing( mOrder, promoCode );
+
+      if ( estimatedPricing != null ) mOrderSummaryListView.setAdapter( new OrderPricingAdaptor( this, estimatedPricing ) );
+
       return;
       }
 
@@ -583,9 +600,11 @@ public class PaymentActivity extends AOrderSubmissionActivity implements Pricing
       }
 
 
+    // We can only take payment for the actual pricing, never an estimate
+
     if ( mPaymentFragment != null )
       {
-      mPaymentFragment.onEnableButtons( true );
+      mPaymentFragment.onEnableButtons( ! mOrderPricing.isEstimate() );
       }
 
 
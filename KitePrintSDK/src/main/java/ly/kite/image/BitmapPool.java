@@ -0,0 +1,257 @@
+/*****************************************************
+ *
+ * BitmapPool.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.image;
+
+
+///// Import(s) /////
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class is a pool of bitmaps that are no longer
+ * used, and may be re-used as decode buffers (using the
+ * inBitmap bitmap factory option).
+ *
+ * Bitmaps are bucketed by their allocation size. Re-using
+ * a bitmap for a decode of a different size is only
+ * supported from KitKat onwards, so on earlier versions
+ * the pool is always empty.
+ *
+ *****************************************************/
+public class BitmapPool
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG                = "BitmapPool";
+
+  // We don't want to use a bitmap that is much larger than we need,
+  // because that memory would be wasted for as long as the image is
+  // in use.
+  static private final int     MAX_OVERSIZE_MULTIPLE  = 2;
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+  private int                                   mCapacityInBytes;
+
+  private TreeMap<Integer,LinkedList<Bitmap>>   mBucketTable;
+  private int                                   mSizeInBytes;
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns true if bitmaps may be re-used for decodes of
+   * different sizes on this device.
+   *
+   *****************************************************/
+  static public boolean isSupported()
+    {
+    return ( Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the number of bytes per pixel for a bitmap
+   * config.
+   *
+   *****************************************************/
+  static int bytesPerPixel( Bitmap.Config bitmapConfig )
+    {
+    if ( bitmapConfig == Bitmap.Config.ALPHA_8 ) return ( 1 );
+
+    if ( bitmapConfig == Bitmap.Config.RGB_565 ||
+         bitmapConfig == Bitmap.Config.ARGB_4444 ) return ( 2 );
+
+    return ( 4 );
+    }
+
+
+  ////////// Constructor(s) //////////
+
+  public BitmapPool( int capacityInBytes )
+    {
+    mCapacityInBytes = capacityInBytes;
+    mBucketTable     = new TreeMap<>();
+    }
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns a bitmap to the pool. The caller must not use
+   * the bitmap again afterwards, and must be sure that
+   * nothing else (such as a view) is still using it.
+   *
+   *****************************************************/
+  @TargetApi( Build.VERSION_CODES.KITKAT )
+  public synchronized void put( Bitmap bitmap )
+    {
+    if ( bitmap == null || ! isSupported() || bitmap.isRecycled() || ! bitmap.isMutable() ) return;
+
+    int sizeInBytes = bitmap.getAllocationByteCount();
+
+    if ( sizeInBytes > mCapacityInBytes ) return;
+
+
+    LinkedList<Bitmap> bucket = mBucketTable.get( sizeInBytes );
+
+    if ( bucket == null )
+      {
+      bucket = new LinkedList<>();
+
+      mBucketTable.put( sizeInBytes, bucket );
+      }
+
+    bucket.addFirst( bitmap );
+
+    mSizeInBytes += sizeInBytes;
+
+
+    // If we have gone over capacity, drop bitmaps from the largest
+    // buckets first.
+
+    while ( mSizeInBytes > mCapacityInBytes )
+      {
+      Map.Entry<Integer,LinkedList<Bitmap>> largestEntry = mBucketTable.lastEntry();
+
+      Bitmap droppedBitmap = largestEntry.getValue().removeLast();
+
+      if ( largestEntry.getValue().isEmpty() ) mBucketTable.remove( largestEntry.getKey() );
+
+      mSizeInBytes -= largestEntry.getKey();
+
+      droppedBitmap.recycle();
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Removes and returns a bitmap that is large enough to
+   * be used as the decode buffer for an image of the
+   * supplied size, or null if there isn't one.
+   *
+   *****************************************************/
+  @TargetApi( Build.VERSION_CODES.KITKAT )
+  public synchronized Bitmap get( int width, int height, Bitmap.Config bitmapConfig )
+    {
+    if ( ! isSupported() || width < 1 || height < 1 ) return ( null );
+
+    int requiredSizeInBytes = width * height * bytesPerPixel( bitmapConfig );
+
+    // The decoded bitmap takes the config of the buffer, so we can only use
+    // bitmaps with the same config.
+
+    for ( Map.Entry<Integer,LinkedList<Bitmap>> entry : mBucketTable.subMap( requiredSizeInBytes, true, requiredSizeInBytes * MAX_OVERSIZE_MULTIPLE, true ).entrySet() )
+      {
+      Iterator<Bitmap> bitmapIterator = entry.getValue().iterator();
+
+      while ( bitmapIterator.hasNext() )
+        {
+        Bitmap bitmap = bitmapIterator.next();
+
+        if ( bitmap.getConfig() == bitmapConfig )
+          {
+          bitmapIterator.remove();
+
+          if ( entry.getValue().isEmpty() ) mBucketTable.remove( entry.getKey() );
+
+          mSizeInBytes -= entry.getKey();
+
+          return ( bitmap );
+          }
+        }
+      }
+
+    return ( null );
+    }
+
+
+  /*****************************************************
+   *
+   * Empties the pool.
+   *
+   *****************************************************/
+  public synchronized void clear()
+    {
+    for ( LinkedList<Bitmap> bucket : mBucketTable.values() )
+      {
+      for ( Bitmap bitmap : bucket ) bitmap.recycle();
+      }
+
+    mBucketTable.clear();
+
+    mSizeInBytes = 0;
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the total size of the pooled bitmaps.
+   *
+   *****************************************************/
+  public synchronized int getSizeInBytes()
+    {
+    return ( mSizeInBytes );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  }
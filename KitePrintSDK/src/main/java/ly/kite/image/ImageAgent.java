@@ -46,6 +46,7 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.net.Uri;
 import android.util.Pair;
+import android.widget.ImageView;
 
 import java.io.File;
 import java.net.MalformedURLException;
@@ -71,9 +72,9 @@ import ly.kite.util.FileDownloader;
  * the devices. This allows them to be cleared by clearing
  * the cache in the app manager.
  *
- * In-memory image caching has been removed completely. Due
- * to the stringent requirements of low-end devices, any caching
- * is best left to the caller.
+ * Decoded images are also kept in a memory cache, whose
+ * capacity is a fraction of the maximum heap size so that
+ * low-end devices are not starved of memory.
  *
  *****************************************************/
 public class ImageAgent
@@ -91,6 +92,12 @@ public class ImageAgent
 
   static private final int            MAX_FILE_NAME_LENGTH        = 200;
 
+  static private final int            MEMORY_CACHE_HEAP_DIVISOR   = 8;
+  static private final int            BITMAP_POOL_HEAP_DIVISOR    = 16;
+
+  static private final String         THUMBNAIL_CACHE_CATEGORY    = "thumbnail";
+  static private final long           THUMBNAIL_CACHE_CAPACITY    = 32L * 1024 * 1024;
+
 
   ////////// Static Variable(s) //////////
 
@@ -107,6 +114,10 @@ public class ImageAgent
   private FileDownloader           mFileDownloader;
   private ImageRequestProcessor    mImageRequestProcessor;
 
+  private ImageCache               mMemoryCache;
+  private BitmapPool               mBitmapPool;
+  private ThumbnailCache           mThumbnailCache;
+
 
   ////////// Static Initialiser(s) //////////
 
@@ -563,6 +574,13 @@ public class ImageAgent
 
     mFileDownloader        = FileDownloader.getInstance( applicationContext );
     mImageRequestProcessor = ImageRequestProcessor.getInstance( applicationContext );
+
+    mMemoryCache           = new ImageCache( (int)Math.min( Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_DIVISOR, Integer.MAX_VALUE ) );
+    mBitmapPool            = new BitmapPool( (int)Math.min( Runtime.getRuntime().maxMemory() / BITMAP_POOL_HEAP_DIVISOR, Integer.MAX_VALUE ) );
+
+    mMemoryCache.setBitmapPool( mBitmapPool );
+
+    mThumbnailCache        = new ThumbnailCache( new File( getImageCacheDirectoryForCategory( THUMBNAIL_CACHE_CATEGORY ) ), THUMBNAIL_CACHE_CAPACITY );
     }
 
 
@@ -637,6 +655,85 @@ public class ImageAgent
     }
 
 
+  /*****************************************************
+   *
+   * Clears an image view that images are loaded into,
+   * cancelling any outstanding request for it, and
+   * releasing any image that it was displaying so that the
+   * image may be evicted and re-used.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  public void clearImage( ImageView imageView )
+    {
+    mImageRequestProcessor.releaseView( imageView );
+
+    imageView.setImageDrawable( null );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the memory cache of decoded images.
+   *
+   *****************************************************/
+  public ImageCache getMemoryCache()
+    {
+    return ( mMemoryCache );
+    }
+
+
+  /*****************************************************
+   *
+   * Empties the memory cache. This may be called when the
+   * system is running low on memory.
+   *
+   *****************************************************/
+  public void clearMemoryCache()
+    {
+    mMemoryCache.clear();
+    mBitmapPool.clear();
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the persistent cache of downsampled images.
+   *
+   *****************************************************/
+  public ThumbnailCache getThumbnailCache()
+    {
+    return ( mThumbnailCache );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the pool of bitmaps that may be re-used for
+   * decoding.
+   *
+   *****************************************************/
+  public BitmapPool getBitmapPool()
+    {
+    return ( mBitmapPool );
+    }
+
+
+  /*****************************************************
+   *
+   * Frees up memory that is only being held for
+   * performance reasons: the bitmap pool is emptied and
+   * the memory cache is trimmed to half its current size.
+   *
+   *****************************************************/
+  public void trimMemory()
+    {
+    mMemoryCache.trimToSize( mMemoryCache.getSizeInBytes() / 2 );
+    mBitmapPool.clear();
+    }
+
+
   /*****************************************************
    *
    * Returns an image directory path.
@@ -42,7 +42,8 @@ package ly.kite.image;
 import android.graphics.Bitmap;
 
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 
 ///// Class Declaration /////
@@ -52,13 +53,33 @@ import java.util.LinkedList;
  * This class implements a MRU-LRU image cache, and
  * may be used as an intermediary image consumer.
  *
+ * The cache is thread-safe, and lookups, additions,
+ * pinning, and eviction are all O(1). Pinned images are
+ * kept in a separate table, so eviction never has to
+ * skip over them.
+ *
+ * Images may be pinned whilst they are on-screen, so that
+ * they are only evicted if there is nothing else left
+ * to evict. Each pin belongs to the image that was
+ * pinned, rather than to its key, so releasing a pin can
+ * never affect a different image that has since been
+ * cached under the same key.
+ *
+ * Hit, miss, and eviction counts are kept for each
+ * image category.
+ *
+ * If a bitmap pool is set, evicted images that are known
+ * not to be in use anywhere else are returned to it.
+ *
  *****************************************************/
 public class ImageCache implements IImageConsumer
   {
   ////////// Static Constant(s) //////////
 
   @SuppressWarnings( "unused" )
-  private static final String  LOG_TAG = "ImageCache";
+  private static final String  LOG_TAG                = "ImageCache";
+
+  static public  final String  UNCATEGORISED_CATEGORY = "uncategorised";
 
 
   ////////// Static Variable(s) //////////
@@ -68,18 +89,32 @@ public class ImageCache implements IImageConsumer
 
   private int                           mCapacityInBytes;
 
-  private HashMap<Object,Holder>        mHolderTable;
-  private LinkedList<Holder>            mHolderList;
+  private LinkedHashMap<Object,Holder>  mHolderTable;
+  private LinkedHashMap<Object,Holder>  mPinnedHolderTable;
   private int                           mSizeInBytes;
 
   private HashMap<Object,PendingImage>  mPendingTable;
 
+  private HashMap<String,Statistics>    mStatisticsTable;
+
+  private BitmapPool                    mBitmapPool;
+
 
   ////////// Static Initialiser(s) //////////
 
 
   ////////// Static Method(s) //////////
 
+  /*****************************************************
+   *
+   * Returns a non-null category.
+   *
+   *****************************************************/
+  static private String toCategory( String imageCategory )
+    {
+    return ( imageCategory != null ? imageCategory : UNCATEGORISED_CATEGORY );
+    }
+
 
   ////////// Constructor(s) //////////
 
@@ -87,11 +122,16 @@ public class ImageCache implements IImageConsumer
     {
     mCapacityInBytes = capacityInBytes;
 
-    mHolderTable     = new HashMap<>();
-    mHolderList      = new LinkedList<>();
-    mSizeInBytes     = 0;
+    // The holder tables are kept in access order, so iterating through them
+    // goes from the least to the most recently used image. Unpinned and pinned
+    // images are kept in separate tables.
+    mHolderTable       = new LinkedHashMap<>( 16, 0.75f, true );
+    mPinnedHolderTable = new LinkedHashMap<>( 16, 0.75f, true );
+    mSizeInBytes       = 0;
 
     mPendingTable    = new HashMap<>();
+
+    mStatisticsTable = new HashMap<>();
     }
 
 
@@ -110,7 +150,12 @@ public class ImageCache implements IImageConsumer
     {
     // Find the corresponding pending image
 
-    PendingImage pendingImage = mPendingTable.remove( key );
+    PendingImage pendingImage;
+
+    synchronized ( this )
+      {
+      pendingImage = mPendingTable.remove( key );
+      }
 
     if ( pendingImage == null ) return;
 
@@ -136,7 +181,12 @@ public class ImageCache implements IImageConsumer
     {
     // Find the corresponding pending image
 
-    PendingImage pendingImage = mPendingTable.remove( key );
+    PendingImage pendingImage;
+
+    synchronized ( this )
+      {
+      pendingImage = mPendingTable.remove( key );
+      }
 
     if ( pendingImage == null ) return;
 
@@ -163,7 +213,12 @@ public class ImageCache implements IImageConsumer
     {
     // Find the corresponding pending image
 
-    PendingImage pendingImage = mPendingTable.remove( key );
+    PendingImage pendingImage;
+
+    synchronized ( this )
+      {
+      pendingImage = mPendingTable.remove( key );
+      }
 
     if ( pendingImage == null ) return;
 
@@ -188,23 +243,91 @@ public class ImageCache implements IImageConsumer
    *****************************************************/
   public Bitmap getImage( Object key )
     {
-    // Try and find the image
+    return ( getImage( key, null ) );
+    }
 
-    Holder holder = mHolderTable.get( key );
 
-    if ( holder == null ) return ( null );
+  /*****************************************************
+   *
+   * Returns an image from the cache, and records a hit
+   * or miss against the supplied category.
+   *
+   * @param key The key object used to identify the image.
+   *
+   * @param imageCategory The category that the image
+   *                      belongs to. May be null.
+   *
+   * @return The cached bitmap, if it is in the cache,
+   *         null otherwise.
+   *
+   *****************************************************/
+  public Bitmap getImage( Object key, String imageCategory )
+    {
+    return ( getImage( key, imageCategory, false ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns an image from the cache.
+   *
+   * @param key The key object used to identify the image.
+   *
+   * @param imageCategory The category that the image
+   *                      belongs to. May be null.
+   *
+   * @param pinnedByCaller True if the caller will pin the
+   *                       image for as long as it uses
+   *                       it. Otherwise the image can no
+   *                       longer be re-used once evicted,
+   *                       because we can't tell when the
+   *                       caller has finished with it.
+   *
+   *****************************************************/
+  public synchronized Bitmap getImage( Object key, String imageCategory, boolean pinnedByCaller )
+    {
+    // Try and find the image. Because the table is kept in access order,
+    // this also moves the image to the MRU end.
+
+    Holder holder = getHolder( key );
+
+    Statistics statistics = getStatisticsHolder( holder != null ? holder.category : imageCategory );
+
+    if ( holder == null )
+      {
+      statistics.missCount ++;
 
+      return ( null );
+      }
 
-    // Move the image to the front of the MRU-LRU list before
-    // we return the bitmap.
+    statistics.hitCount ++;
 
-    mHolderList.remove( holder );
-    mHolderList.addFirst( holder );
+    if ( ! pinnedByCaller ) holder.reusable = false;
 
     return ( holder.bitmap );
     }
 
 
+  /*****************************************************
+   *
+   * Returns an image from the cache, and pins it, as a
+   * single operation. This means that the image can't be
+   * returned to the bitmap pool between the caller getting
+   * it and pinning it.
+   *
+   * @return A pin on the cached bitmap, if it is in the
+   *         cache, null otherwise. The caller must release
+   *         the pin by calling unpinImage.
+   *
+   *****************************************************/
+  public synchronized Pin getAndPinImage( Object key, String imageCategory )
+    {
+    if ( getImage( key, imageCategory, true ) == null ) return ( null );
+
+    return ( pinImage( key ) );
+    }
+
+
   /*****************************************************
    *
    * Stores a pending request.
@@ -217,7 +340,7 @@ public class ImageCache implements IImageConsumer
    *                 to the consumer.
    *
    *****************************************************/
-  public void addPendingImage( Object key, IImageConsumer consumer )
+  public synchronized void addPendingImage( Object key, IImageConsumer consumer )
     {
     mPendingTable.put( key, new PendingImage( key, consumer ) );
     }
@@ -235,36 +358,332 @@ public class ImageCache implements IImageConsumer
    *
    *****************************************************/
   public void addImage( Object key, Bitmap bitmap )
+    {
+    addImage( key, null, bitmap, false );
+    }
+
+
+  /*****************************************************
+   *
+   * Adds an image to the cache.
+   *
+   * @param key The key object used to identify the image.
+   *
+   * @param imageCategory The category that the image
+   *                      belongs to. May be null.
+   *
+   * @param bitmap The bitmap to be stored.
+   *
+   *****************************************************/
+  public void addImage( Object key, String imageCategory, Bitmap bitmap )
+    {
+    addImage( key, imageCategory, bitmap, false );
+    }
+
+
+  /*****************************************************
+   *
+   * Adds an image to the cache.
+   *
+   * @param key The key object used to identify the image.
+   *
+   * @param imageCategory The category that the image
+   *                      belongs to. May be null.
+   *
+   * @param bitmap The bitmap to be stored.
+   *
+   * @param reusable True if the bitmap is only used by
+   *                 callers that pin it for as long as
+   *                 they use it, which means it may be
+   *                 returned to the bitmap pool when it is
+   *                 evicted.
+   *
+   *****************************************************/
+  public synchronized void addImage( Object key, String imageCategory, Bitmap bitmap, boolean reusable )
+    {
+    putHolder( key, imageCategory, bitmap, reusable, false );
+    }
+
+
+  /*****************************************************
+   *
+   * Adds an image to the cache, and pins it. Adding and
+   * pinning the image as a single operation means that it
+   * can't be evicted and re-used before the caller gets
+   * the chance to pin it.
+   *
+   * @return A pin on the image. The caller must release
+   *         the pin by calling unpinImage.
+   *
+   *****************************************************/
+  public synchronized Pin addAndPinImage( Object key, String imageCategory, Bitmap bitmap, boolean reusable )
+    {
+    return ( new Pin( putHolder( key, imageCategory, bitmap, reusable, true ) ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Stores a new holder for an image, and returns it.
+   *
+   * Must be called with the cache locked.
+   *
+   *****************************************************/
+  private Holder putHolder( Object key, String imageCategory, Bitmap bitmap, boolean reusable, boolean pinned )
     {
     // Create a new holder for the image
-    Holder newHolder = new Holder( key, bitmap );
+    Holder newHolder = new Holder( key, toCategory( imageCategory ), bitmap, reusable );
+
+    if ( pinned ) newHolder.pinCount = 1;
+
+    // Store the holder in the table. If it replaces an existing image, account
+    // for the old size. Any pins stay with the old image, because they belong
+    // to whoever is still displaying it.
+
+    Holder oldHolder = mHolderTable.remove( key );
+
+    if ( oldHolder == null ) oldHolder = mPinnedHolderTable.remove( key );
+
+    if ( pinned ) mPinnedHolderTable.put( key, newHolder );
+    else          mHolderTable.put( key, newHolder );
+
+    if ( oldHolder != null )
+      {
+      // Callers may have used the old bitmap without pinning it, so we can't
+      // be sure who is using the new one.
+      newHolder.reusable  = false;
 
-    // Store the holder in the table and at the front of the list
-    mHolderTable.put( key, newHolder );
-    mHolderList.addFirst( newHolder );
+      mSizeInBytes       -= oldHolder.approximateSizeInBytes;
+      }
 
 
     // Calculate the new size after the image has been added. If the size
-    // exceeds the capacity, then remove images from the end until we get
+    // exceeds the capacity, then remove images from the LRU end until we get
     // back down within the capacity.
 
     mSizeInBytes += newHolder.approximateSizeInBytes;
 
-    while ( mSizeInBytes > mCapacityInBytes )
+    trimToSize( mCapacityInBytes );
+
+    return ( newHolder );
+    }
+
+
+  /*****************************************************
+   *
+   * Pins an image, if it is in the cache. Pinned images
+   * are only evicted once there are no unpinned images
+   * left to evict.
+   *
+   * Pins are counted, so each pin that is returned must
+   * be released by calling unpinImage.
+   *
+   * @return A pin on the image, or null if it is not in
+   *         the cache.
+   *
+   *****************************************************/
+  public synchronized Pin pinImage( Object key )
+    {
+    // Pinned images are on-screen, so it is correct for this to also
+    // move the image to the MRU end.
+    Holder holder = getHolder( key );
+
+    if ( holder == null ) return ( null );
+
+    // Move a newly pinned image out of the reach of eviction
+    if ( holder.pinCount ++ == 0 )
       {
-      // Get the least recently used image and remove it
+      mHolderTable.remove( key );
+      mPinnedHolderTable.put( key, holder );
+      }
+
+    return ( new Pin( holder ) );
+    }
 
-      Holder lruHolder = mHolderList.removeLast();
 
-      if ( lruHolder == null ) break;
+  /*****************************************************
+   *
+   * Releases a pin. Only the image that was pinned is
+   * affected, even if it has since been evicted or
+   * replaced. Releasing the same pin more than once has
+   * no further effect.
+   *
+   *****************************************************/
+  public synchronized void unpinImage( Pin pin )
+    {
+    if ( pin == null || pin.released ) return;
 
-      mHolderTable.remove( lruHolder.key );
+    pin.released = true;
 
-      mSizeInBytes -= lruHolder.approximateSizeInBytes;
+    Holder holder = pin.holder;
+
+    if ( holder.pinCount > 0 && -- holder.pinCount == 0 )
+      {
+      // If the image is still cached, it can be evicted again. Putting it back
+      // makes it the most recently used image.
+
+      if ( mPinnedHolderTable.get( holder.key ) == holder )
+        {
+        mPinnedHolderTable.remove( holder.key );
+        mHolderTable.put( holder.key, holder );
+        }
       }
     }
 
 
+  /*****************************************************
+   *
+   * Marks an image as being used by a caller that won't
+   * pin it, so that it is never returned to the bitmap
+   * pool.
+   *
+   *****************************************************/
+  public synchronized void markImageShared( Object key )
+    {
+    Holder holder = getHolder( key );
+
+    if ( holder != null ) holder.reusable = false;
+    }
+
+
+  /*****************************************************
+   *
+   * Sets a bitmap pool that evicted images may be returned
+   * to.
+   *
+   *****************************************************/
+  public synchronized void setBitmapPool( BitmapPool bitmapPool )
+    {
+    mBitmapPool = bitmapPool;
+    }
+
+
+  /*****************************************************
+   *
+   * Removes all images from the cache.
+   *
+   *****************************************************/
+  public synchronized void clear()
+    {
+    trimToSize( -1 );
+    }
+
+
+  /*****************************************************
+   *
+   * Evicts images until the cache is no larger than the
+   * supplied size.
+   *
+   *****************************************************/
+  public synchronized void trimToSize( int maxSizeInBytes )
+    {
+    // First evict unpinned images, LRU first
+
+    Iterator<Holder> holderIterator = mHolderTable.values().iterator();
+
+    while ( mSizeInBytes > maxSizeInBytes && holderIterator.hasNext() )
+      {
+      Holder holder = holderIterator.next();
+
+      holderIterator.remove();
+
+      onEvicted( holder );
+      }
+
+
+    // If we are still too big, we have to evict pinned images as well. This
+    // stops us from leaking pins indefinitely.
+
+    holderIterator = mPinnedHolderTable.values().iterator();
+
+    while ( mSizeInBytes > maxSizeInBytes && holderIterator.hasNext() )
+      {
+      Holder holder = holderIterator.next();
+
+      holderIterator.remove();
+
+      onEvicted( holder );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the holder for an image, whether it is pinned
+   * or not.
+   *
+   * Must be called with the cache locked.
+   *
+   *****************************************************/
+  private Holder getHolder( Object key )
+    {
+    Holder holder = mPinnedHolderTable.get( key );
+
+    return ( holder != null ? holder : mHolderTable.get( key ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the approximate size of the cached images.
+   *
+   *****************************************************/
+  public synchronized int getSizeInBytes()
+    {
+    return ( mSizeInBytes );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a snapshot of the statistics for a category.
+   *
+   *****************************************************/
+  public synchronized Statistics getStatistics( String imageCategory )
+    {
+    return ( new Statistics( getStatisticsHolder( imageCategory ) ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the live statistics for a category, creating
+   * them if necessary.
+   *
+   *****************************************************/
+  private Statistics getStatisticsHolder( String imageCategory )
+    {
+    imageCategory = toCategory( imageCategory );
+
+    Statistics statistics = mStatisticsTable.get( imageCategory );
+
+    if ( statistics == null )
+      {
+      statistics = new Statistics();
+
+      mStatisticsTable.put( imageCategory, statistics );
+      }
+
+    return ( statistics );
+    }
+
+
+  /*****************************************************
+   *
+   * Called (with the cache locked) after an image has
+   * been removed from the table.
+   *
+   *****************************************************/
+  private void onEvicted( Holder holder )
+    {
+    mSizeInBytes -= holder.approximateSizeInBytes;
+
+    getStatisticsHolder( holder.category ).evictionCount ++;
+
+    // If nothing else can be using the bitmap, it may be re-used
+    if ( mBitmapPool != null && holder.reusable && holder.pinCount == 0 ) mBitmapPool.put( holder.bitmap );
+    }
+
 
   ////////// Inner Class(es) //////////
 
@@ -274,17 +693,22 @@ public class ImageCache implements IImageConsumer
    * size.
    *
    *****************************************************/
-  private class Holder
+  static private class Holder
     {
     Object  key;
+    String  category;
     Bitmap  bitmap;
     int     approximateSizeInBytes;
+    int     pinCount;
+    boolean reusable;
 
 
-    Holder( Object key, Bitmap bitmap )
+    Holder( Object key, String category, Bitmap bitmap, boolean reusable )
       {
       this.key                    = key;
+      this.category               = category;
       this.bitmap                 = bitmap;
+      this.reusable               = reusable;
 
       // Calculate the approximate size in bytes. This only works if
       // the bitmap is not reconfigured.
@@ -293,6 +717,35 @@ public class ImageCache implements IImageConsumer
     }
 
 
+  /*****************************************************
+   *
+   * A single pin on a cached image.
+   *
+   *****************************************************/
+  static public final class Pin
+    {
+    private final Holder  holder;
+    private boolean       released;
+
+
+    private Pin( Holder holder )
+      {
+      this.holder = holder;
+      }
+
+
+    /*****************************************************
+     *
+     * Returns the pinned bitmap.
+     *
+     *****************************************************/
+    public Bitmap getBitmap()
+      {
+      return ( holder.bitmap );
+      }
+    }
+
+
   /*****************************************************
    *
    * A pending image request.
@@ -312,5 +765,55 @@ public class ImageCache implements IImageConsumer
 
     }
 
-  }
 
+  /*****************************************************
+   *
+   * Cache statistics for an image category.
+   *
+   *****************************************************/
+  static public class Statistics
+    {
+    private int  hitCount;
+    private int  missCount;
+    private int  evictionCount;
+
+
+    Statistics()
+      {
+      }
+
+
+    Statistics( Statistics sourceStatistics )
+      {
+      this.hitCount      = sourceStatistics.hitCount;
+      this.missCount     = sourceStatistics.missCount;
+      this.evictionCount = sourceStatistics.evictionCount;
+      }
+
+
+    public int getHitCount()
+      {
+      return ( hitCount );
+      }
+
+
+    public int getMissCount()
+      {
+      return ( missCount );
+      }
+
+
+    public int getEvictionCount()
+      {
+      return ( evictionCount );
+      }
+
+
+    @Override
+    public String toString()
+      {
+      return ( "hits = " + hitCount + ", misses = " + missCount + ", evictions = " + evictionCount );
+      }
+    }
+
+  }
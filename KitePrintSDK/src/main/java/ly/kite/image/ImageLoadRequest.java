@@ -43,15 +43,20 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 import android.content.Context;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Matrix;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
 import android.media.ExifInterface;
@@ -110,7 +115,23 @@ public class ImageLoadRequest
   private boolean             mOnlyScaleDown;
   private Bitmap.Config       mBitmapConfig;
 
+  private ImageRequestProcessor.Priority  mPriority;
+
+  private volatile boolean    mCancelled;
+
+  private String              mImageCategory;
+  private String              mRequestKey;
+  private String              mCacheKey;
+  private boolean             mKeysCreated;
+  private String              mThumbnailSourceKey;
+  private ImageCache.Pin      mPin;
+  private boolean             mDelivered;
+  private ImageLoadRequest    mReplacedRequest;
+
+  private List<ImageLoadRequest>  mFollowerList;
+
   private Size                mOriginalSize;
+  private RectF               mDecodeRegionRectangle;
   //private int                 mOriginalWidth;
   //private int                 mOriginalHeight;
   private Bitmap              mBitmap;
@@ -157,6 +178,41 @@ public class ImageLoadRequest
     }
 
 
+  /*****************************************************
+   *
+   * Converts a proportional rectangle within a rotated
+   * image into a pixel rectangle within the unrotated
+   * image. The rotation is the clockwise rotation that
+   * is applied to the unrotated image to display it.
+   *
+   * The pixel bounds are calculated in the same way as
+   * ImageAgent.crop, so a region decode produces the same
+   * pixels as a full decode followed by a crop.
+   *
+   *****************************************************/
+  static Rect getUnrotatedRegion( int unrotatedWidth, int unrotatedHeight, int rotation, RectF proportionalRectangle )
+    {
+    boolean isSideways = ( rotation == 90 || rotation == 270 );
+
+    int rotatedWidth  = ( isSideways ? unrotatedHeight : unrotatedWidth  );
+    int rotatedHeight = ( isSideways ? unrotatedWidth  : unrotatedHeight );
+
+    int left   = (int)( proportionalRectangle.left   * rotatedWidth );
+    int top    = (int)( proportionalRectangle.top    * rotatedHeight );
+    int right  = (int)( proportionalRectangle.right  * rotatedWidth );
+    int bottom = (int)( proportionalRectangle.bottom * rotatedHeight );
+
+    switch ( rotation )
+      {
+      case 90:  return ( new Rect( top,                     unrotatedHeight - right,  bottom,                 unrotatedHeight - left ) );
+      case 180: return ( new Rect( unrotatedWidth - right,  unrotatedHeight - bottom, unrotatedWidth - left,  unrotatedHeight - top  ) );
+      case 270: return ( new Rect( unrotatedWidth - bottom, left,                     unrotatedWidth - top,   right                  ) );
+      }
+
+    return ( new Rect( left, top, right, bottom ) );
+    }
+
+
   /*****************************************************
    *
    * Returns a bitmap options object with common options
@@ -314,6 +370,7 @@ public class ImageLoadRequest
     {
     mApplicationContext = context.getApplicationContext();
     mBitmapConfig       = Bitmap.Config.ARGB_8888;
+    mPriority           = ImageRequestProcessor.Priority.VISIBLE;
     }
 
 
@@ -358,6 +415,460 @@ public class ImageLoadRequest
     }
 
 
+  /*****************************************************
+   *
+   * Sets the processing priority of this request.
+   *
+   *****************************************************/
+  void setPriority( ImageRequestProcessor.Priority priority )
+    {
+    mPriority = priority;
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the processing priority of this request.
+   *
+   *****************************************************/
+  ImageRequestProcessor.Priority getPriority()
+    {
+    return ( mPriority );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the target view of this request, if it has one.
+   *
+   *****************************************************/
+  View getTargetView()
+    {
+    return ( mTarget != null ? mTarget.getView() : null );
+    }
+
+
+  /*****************************************************
+   *
+   * Cancels the request. Any queued request is removed
+   * from the processing queue, an in-flight request is
+   * abandoned at the next opportunity, and no result is
+   * delivered to the target.
+   *
+   * If the image has already been delivered to a view, the
+   * view carries on displaying it, so it stays pinned until
+   * the view is either rebound to a new request, or cleared
+   * using ImageAgent.clearImage.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  public void cancel()
+    {
+    synchronized ( this )
+      {
+      // Set the cancelled flag first, so that the loader won't pin an image for us
+      mCancelled = true;
+
+      // An image that hasn't been delivered isn't needed any more
+      if ( ! mDelivered ) releasePin();
+      }
+
+    markCancelled();
+    }
+
+
+  /*****************************************************
+   *
+   * Cancels the request because its view has been bound
+   * to a new request. The view carries on displaying our
+   * image until the new request delivers, so any pin is
+   * handed over to the new request, which releases it
+   * once it has replaced the image.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  void cancelForRebind( ImageLoadRequest newRequest )
+    {
+    synchronized ( this )
+      {
+      // Set the cancelled flag first, so that the loader won't pin an
+      // image for us once we have handed over
+      mCancelled = true;
+
+      if ( mPin != null && mDelivered )
+        {
+        newRequest.mReplacedRequest = this;
+        }
+      else
+        {
+        releasePin();
+
+        newRequest.mReplacedRequest = mReplacedRequest;
+        }
+
+      mReplacedRequest = null;
+      }
+
+    markCancelled();
+    }
+
+
+  /*****************************************************
+   *
+   * Cancels the request because its view has been
+   * cleared, and releases any images that were pinned for
+   * the view.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  void cancelForClear()
+    {
+    synchronized ( this )
+      {
+      mCancelled = true;
+
+      releasePin();
+      }
+
+    releaseReplacedRequestPin();
+
+    markCancelled();
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if the request is holding a pin on an
+   * image that its view may be displaying.
+   *
+   *****************************************************/
+  synchronized boolean holdsDisplayedImage()
+    {
+    return ( ( mPin != null && mDelivered ) || mReplacedRequest != null );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if the request is holding a pin on its
+   * loaded image.
+   *
+   *****************************************************/
+  synchronized boolean holdsPin()
+    {
+    return ( mPin != null );
+    }
+
+
+  /*****************************************************
+   *
+   * Marks the request as cancelled and removes it from
+   * the processor.
+   *
+   *****************************************************/
+  private void markCancelled()
+    {
+    if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Cancelling request for target: " + mTarget );
+
+    mCancelled = true;
+
+    ImageRequestProcessor.getInstance( mApplicationContext ).onRequestCancelled( this );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if the request has been cancelled.
+   *
+   *****************************************************/
+  public boolean isCancelled()
+    {
+    return ( mCancelled );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a key that identifies the image that this
+   * request will produce, or null if it cannot be
+   * identified.
+   *
+   * Images are keyed by the supplied source key, the
+   * resize size, the bitmap config, and any transformers.
+   * If a transformer cannot supply a key, the image cannot
+   * be identified.
+   *
+   *****************************************************/
+  private String createRequestKey( String sourceKey )
+    {
+    if ( mOnlyLoadBounds || sourceKey == null ) return ( null );
+
+    StringBuilder keyBuilder = new StringBuilder( sourceKey )
+            .append( '|' ).append( mResizeWidth ).append( 'x' ).append( mResizeHeight ).append( mOnlyScaleDown ? "<" : "" )
+            .append( '|' ).append( mBitmapConfig );
+
+    for ( IImageTransformer transformer : new IImageTransformer[] { mPreResizeTransformer, mPostResizeTransformer } )
+      {
+      keyBuilder.append( '|' );
+
+      if ( transformer == null ) continue;
+
+      if ( ! ( transformer instanceof ICacheableImageTransformer ) ) return ( null );
+
+      keyBuilder.append( ( (ICacheableImageTransformer)transformer ).getCacheKey() );
+      }
+
+    return ( keyBuilder.toString() );
+    }
+
+
+  /*****************************************************
+   *
+   * Creates the request and memory cache keys.
+   *
+   *****************************************************/
+  private void createKeys()
+    {
+    mRequestKey  = createRequestKey( mSource.getCacheKey() );
+
+    // Background requests are not cached, because they are used for
+    // processing rather than display.
+    mCacheKey    = ( mPriority != ImageRequestProcessor.Priority.BACKGROUND ? mRequestKey : null );
+
+    mKeysCreated = true;
+    }
+
+
+  /*****************************************************
+   *
+   * Creates the keys for a request whose source needs to
+   * read from disk to produce them. Called on the loader
+   * thread, before the request is checked against those
+   * in-flight.
+   *
+   *****************************************************/
+  void createKeysInBackground()
+    {
+    if ( mOnlyLoadBounds || mKeysCreated ) return;
+
+    createKeys();
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the key that identifies the image that this
+   * request will produce. Requests with the same key may
+   * share a single decode.
+   *
+   *****************************************************/
+  String getRequestKey()
+    {
+    return ( mRequestKey );
+    }
+
+
+  /*****************************************************
+   *
+   * Adds a request that is waiting for the same image as
+   * this one. It will be given the result of this request
+   * rather than being processed itself.
+   *
+   * Must be called with the request processor locked.
+   *
+   *****************************************************/
+  void addFollower( ImageLoadRequest followerRequest )
+    {
+    if ( mFollowerList == null ) mFollowerList = new ArrayList<>();
+
+    mFollowerList.add( followerRequest );
+    }
+
+
+  /*****************************************************
+   *
+   * Removes and returns all the follower requests.
+   *
+   * Must be called with the request processor locked.
+   *
+   *****************************************************/
+  List<ImageLoadRequest> removeFollowers()
+    {
+    List<ImageLoadRequest> followerList = mFollowerList;
+
+    mFollowerList = null;
+
+    return ( followerList );
+    }
+
+
+  /*****************************************************
+   *
+   * Takes the result from the request that we were
+   * following.
+   *
+   *****************************************************/
+  void copyResultFrom( ImageLoadRequest leaderRequest )
+    {
+    mOriginalSize = leaderRequest.mOriginalSize;
+    mBitmap       = leaderRequest.mBitmap;
+    mException    = leaderRequest.mException;
+
+    if ( mBitmap != null && leaderRequest.mCacheKey != null )
+      {
+      // If we are going to a view, pin the bitmap now, before it is delivered. Otherwise
+      // we are not going to pin it at all, so it must never be re-used.
+
+      if ( getTargetView() != null )
+        {
+        synchronized ( this )
+          {
+          if ( ! mCancelled && mPin == null && leaderRequest.mCacheKey.equals( mCacheKey ) ) pinLoadedImage();
+          }
+        }
+      else
+        {
+        getMemoryCache().markImageShared( leaderRequest.mCacheKey );
+        }
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the memory cache.
+   *
+   *****************************************************/
+  private ImageCache getMemoryCache()
+    {
+    return ( ImageAgent.getInstance( mApplicationContext ).getMemoryCache() );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the thumbnail cache.
+   *
+   *****************************************************/
+  private ThumbnailCache getThumbnailCache()
+    {
+    return ( ImageAgent.getInstance( mApplicationContext ).getThumbnailCache() );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns an image from the memory cache. If the image
+   * is going to a view, it is pinned at the same time, so
+   * that it can't be re-used before it is delivered.
+   *
+   *****************************************************/
+  private Bitmap getCachedImage()
+    {
+    if ( getTargetView() == null ) return ( getMemoryCache().getImage( mCacheKey, mImageCategory, false ) );
+
+    synchronized ( this )
+      {
+      // If we have been cancelled, the image won't be pinned, so it mustn't be re-used
+      if ( mCancelled || mPin != null ) return ( getMemoryCache().getImage( mCacheKey, mImageCategory, mPin != null ) );
+
+      mPin = getMemoryCache().getAndPinImage( mCacheKey, mImageCategory );
+
+      return ( mPin != null ? mPin.getBitmap() : null );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Pins the loaded image in the memory cache. The image
+   * cached under our key may have been replaced since it
+   * was loaded, in which case nothing is pinned.
+   *
+   * Must be called with the request locked.
+   *
+   *****************************************************/
+  private void pinLoadedImage()
+    {
+    ImageCache.Pin pin = getMemoryCache().pinImage( mCacheKey );
+
+    if ( pin != null && pin.getBitmap() != mBitmap )
+      {
+      getMemoryCache().unpinImage( pin );
+
+      pin = null;
+      }
+
+    mPin = pin;
+    }
+
+
+  /*****************************************************
+   *
+   * Called once a result has been delivered to the
+   * target. Makes sure the loaded image is pinned in the
+   * memory cache whilst it is displayed in a view, and
+   * releases the image that it replaced.
+   *
+   *****************************************************/
+  private void pinIfDisplayed()
+    {
+    synchronized ( this )
+      {
+      mDelivered = true;
+
+      if ( mCacheKey != null && mBitmap != null && mPin == null && getTargetView() != null )
+        {
+        pinLoadedImage();
+        }
+      }
+
+    releaseReplacedRequestPin();
+    }
+
+
+  /*****************************************************
+   *
+   * Releases the pin on any image that was displayed by
+   * the view before this request.
+   *
+   *****************************************************/
+  private void releaseReplacedRequestPin()
+    {
+    ImageLoadRequest replacedRequest;
+
+    synchronized ( this )
+      {
+      replacedRequest  = mReplacedRequest;
+
+      mReplacedRequest = null;
+      }
+
+    if ( replacedRequest != null ) replacedRequest.releasePin();
+    }
+
+
+  /*****************************************************
+   *
+   * Releases any pin on the loaded image. Only the image
+   * that we pinned is released, even if another image
+   * has since been cached under the same key.
+   *
+   *****************************************************/
+  private synchronized void releasePin()
+    {
+    if ( mPin != null )
+      {
+      getMemoryCache().unpinImage( mPin );
+
+      mPin = null;
+      }
+    }
+
+
   /*****************************************************
    *
    * Executes the request.
@@ -379,6 +890,38 @@ public class ImageLoadRequest
 
 
 
+    // If the target is a view, cancel any earlier request that is still
+    // outstanding for it.
+
+    View targetView = getTargetView();
+
+    if ( targetView != null ) ImageRequestProcessor.getInstance( mApplicationContext ).bindToView( targetView, this );
+
+
+    // If we already have the image in the memory cache, deliver it
+    // straight away. Working out the key for a file means reading its
+    // attributes, so for files we leave that, and the memory cache lookup,
+    // to the background loader.
+
+    if ( ! mOnlyLoadBounds )
+      {
+      mImageCategory = mSource.getImageCategory();
+
+      if ( ! mSource.cacheKeyNeedsDiskAccess() ) createKeys();
+
+      if ( mCacheKey != null && ( mBitmap = getCachedImage() ) != null )
+        {
+        if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Memory cache hit: " + mCacheKey );
+
+        mTarget.onImageAvailable( mBitmap );
+
+        pinIfDisplayed();
+
+        return;
+        }
+      }
+
+
     // Request an image load. If a bitmap is returned immediately, deliver it
     // to the target.
 
@@ -387,6 +930,8 @@ public class ImageLoadRequest
     if ( mBitmap != null )
       {
       mTarget.onImageAvailable( mBitmap );
+
+      pinIfDisplayed();
       }
     }
 
@@ -401,8 +946,33 @@ public class ImageLoadRequest
     {
     Bitmap bitmap = null;
 
+    // Drop the request if it has been cancelled since it was queued
+    if ( mCancelled ) return ( false );
+
     try
       {
+      // Another request may have loaded the same image since we were queued
+      if ( mCacheKey != null && ( mBitmap = getCachedImage() ) != null ) return ( true );
+
+
+      // If the image is a thumbnail that we have produced before, load it
+      // from the thumbnail cache rather than decoding the full size source.
+
+      if ( mCacheKey != null && mResizeWidth > 0 && mResizeHeight > 0 )
+        {
+        mThumbnailSourceKey = mSource.getThumbnailCacheKey();
+
+        String thumbnailCacheKey = createRequestKey( mThumbnailSourceKey );
+
+        if ( thumbnailCacheKey != null && ( bitmap = getThumbnailCache().getImage( thumbnailCacheKey, mBitmapConfig ) ) != null )
+          {
+          onBitmapLoaded( bitmap );
+
+          return ( true );
+          }
+        }
+
+
       // First decode the bitmap to get its size
 
       mOriginalSize = mSource.getSize( mApplicationContext );
@@ -421,10 +991,29 @@ public class ImageLoadRequest
       if ( mOnlyLoadBounds ) return ( true );
 
 
+      // Check again for cancellation before we do the expensive decode
+      if ( mCancelled ) return ( false );
+
+
+      // If we are cropping to an area within the image, and the source supports it,
+      // only decode that area.
+
+      int decodeWidth  = mOriginalSize.width;
+      int decodeHeight = mOriginalSize.height;
+
+      mDecodeRegionRectangle = getDecodeRegionRectangle();
+
+      if ( mDecodeRegionRectangle != null )
+        {
+        decodeWidth  = (int)( mDecodeRegionRectangle.width()  * decodeWidth );
+        decodeHeight = (int)( mDecodeRegionRectangle.height() * decodeHeight );
+        }
+
+
       // If resizing has been requested, sub-sample the bitmap to just larger
       // than the resize dimensions.
 
-      int sampleSize = sampleSizeForResize( mOriginalSize.width, mOriginalSize.height, mResizeWidth, mResizeHeight );
+      int sampleSize = sampleSizeForResize( decodeWidth, decodeHeight, mResizeWidth, mResizeHeight );
 
       if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Sample size for scaling to " + mResizeWidth + " x " + mResizeHeight + " = " + sampleSize );
 
@@ -438,7 +1027,7 @@ public class ImageLoadRequest
 
         if ( bitmap != null )
           {
-          mBitmap = bitmap;
+          onBitmapDecoded( bitmap );
 
           return ( true );
           }
@@ -451,7 +1040,31 @@ public class ImageLoadRequest
         }
 
 
-      // We ran out of memory. If we were using a larger colour space, try again
+      // We ran out of memory. Free up any memory that we are only holding on to
+      // for performance reasons, and try again without reducing the quality.
+
+      ImageAgent.getInstance( mApplicationContext ).trimMemory();
+
+      try
+        {
+        bitmap = getBitmap( mBitmapConfig, sampleSize );
+
+        if ( bitmap != null )
+          {
+          onBitmapDecoded( bitmap );
+
+          return ( true );
+          }
+        }
+      catch ( OutOfMemoryError oome )
+        {
+        if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Got out of memory error" );
+
+        // Fall through
+        }
+
+
+      // We still ran out of memory. If we were using a larger colour space, try again
       // using a lower one.
 
       if ( mBitmapConfig != Bitmap.Config.RGB_565 )
@@ -466,7 +1079,7 @@ public class ImageLoadRequest
 
           if ( bitmap != null )
             {
-            mBitmap = bitmap;
+            onBitmapDecoded( bitmap );
 
             return ( true );
             }
@@ -483,7 +1096,7 @@ public class ImageLoadRequest
       // We ran out of memory again. Try dropping the image size until we
       // succeed.
 
-      while ( sampleSize >= 1 && sampleSize < MAX_SUB_SAMPLE_SIZE )
+      while ( sampleSize >= 1 && sampleSize < MAX_SUB_SAMPLE_SIZE && ! mCancelled )
         {
         sampleSize <<= 1;  // * 2
 
@@ -495,7 +1108,7 @@ public class ImageLoadRequest
 
           if ( bitmap != null )
             {
-            mBitmap = bitmap;
+            onBitmapDecoded( bitmap );
 
             return ( true );
             }
@@ -521,6 +1134,144 @@ public class ImageLoadRequest
     }
 
 
+  /*****************************************************
+   *
+   * Stores a successfully loaded bitmap, and adds it to
+   * the memory cache.
+   *
+   * The bitmap may only be re-used once evicted from the
+   * cache if it is going to a view, because views pin it
+   * for as long as they display it. It is pinned as it is
+   * added, so that it can't be evicted and re-used before
+   * it has been delivered.
+   *
+   *****************************************************/
+  private void onBitmapLoaded( Bitmap bitmap )
+    {
+    mBitmap = bitmap;
+
+    if ( mCacheKey == null ) return;
+
+    if ( getTargetView() == null )
+      {
+      getMemoryCache().addImage( mCacheKey, mImageCategory, bitmap, false );
+
+      return;
+      }
+
+    synchronized ( this )
+      {
+      // If we have been cancelled, the bitmap won't be pinned, although any followers
+      // may still use it, so it mustn't be re-used.
+
+      if ( ! mCancelled && mPin == null ) mPin = getMemoryCache().addAndPinImage( mCacheKey, mImageCategory, bitmap, true );
+      else                                getMemoryCache().addImage( mCacheKey, mImageCategory, bitmap, ! mCancelled );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Called when a bitmap has been decoded from the
+   * source. If it is a thumbnail, it is also stored in
+   * the thumbnail cache.
+   *
+   *****************************************************/
+  private void onBitmapDecoded( Bitmap bitmap )
+    {
+    // Only store images that are smaller than their source, otherwise
+    // there is nothing to gain. The key is created now rather than
+    // re-using the one we looked up, because we may have dropped to a
+    // smaller bitmap config while decoding.
+
+    String thumbnailCacheKey = createRequestKey( mThumbnailSourceKey );
+
+    if ( thumbnailCacheKey != null &&
+         mOriginalSize != null &&
+         bitmap.getWidth() * bitmap.getHeight() < mOriginalSize.width * mOriginalSize.height )
+      {
+      getThumbnailCache().addImage( thumbnailCacheKey, bitmap );
+      }
+
+    onBitmapLoaded( bitmap );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns an intermediate bitmap to the bitmap pool,
+   * if it has been replaced by a new one.
+   *
+   *****************************************************/
+  private void releaseIntermediateBitmap( Bitmap oldBitmap, Bitmap newBitmap )
+    {
+    if ( oldBitmap != null && oldBitmap != newBitmap )
+      {
+      ImageAgent.getInstance( mApplicationContext ).getBitmapPool().put( oldBitmap );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Loads a bitmap from the source, using a bitmap from
+   * the pool as the decode buffer if there is a suitable
+   * one.
+   *
+   *****************************************************/
+  private Bitmap loadFromSource( BitmapFactory.Options bitmapFactoryOptions ) throws Exception
+    {
+    if ( mOriginalSize != null && mSource.ownsLoadedBitmap() )
+      {
+      int sampleSize    = Math.max( 1, bitmapFactoryOptions.inSampleSize );
+      int decodedWidth  = ( mOriginalSize.width  + sampleSize - 1 ) / sampleSize;
+      int decodedHeight = ( mOriginalSize.height + sampleSize - 1 ) / sampleSize;
+
+      bitmapFactoryOptions.inBitmap = ImageAgent.getInstance( mApplicationContext ).getBitmapPool().get( decodedWidth, decodedHeight, bitmapFactoryOptions.inPreferredConfig );
+      }
+
+    try
+      {
+      return ( mSource.load( mApplicationContext, bitmapFactoryOptions ) );
+      }
+    catch ( IllegalArgumentException iae )
+      {
+      // If the decoder couldn't use the pooled bitmap, try again without it
+      if ( bitmapFactoryOptions.inBitmap == null ) throw ( iae );
+
+      if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Unable to decode into pooled bitmap" );
+
+      bitmapFactoryOptions.inBitmap = null;
+
+      return ( mSource.load( mApplicationContext, bitmapFactoryOptions ) );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the proportional rectangle to decode, if the
+   * image is being cropped to an area completely within
+   * it and the source supports region decoding. Otherwise
+   * returns null, and the whole image is decoded.
+   *
+   *****************************************************/
+  private RectF getDecodeRegionRectangle()
+    {
+    if ( ! ( mPreResizeTransformer instanceof CropImageTransformer ) || ! mSource.supportsRegionDecoding() ) return ( null );
+
+    RectF cropRectangle = ( (CropImageTransformer)mPreResizeTransformer ).getProportionalCropRectangle();
+
+    // Crops that extend outside the image are filled in by the crop transformer
+    if ( cropRectangle.left  < 0.0f || cropRectangle.top    < 0.0f ||
+         cropRectangle.right > 1.0f || cropRectangle.bottom > 1.0f ||
+         cropRectangle.isEmpty() ||
+         cropRectangle.equals( ImageAgent.FULL_PROPORTIONAL_RECTANGLE ) ) return ( null );
+
+    return ( cropRectangle );
+    }
+
+
   /*****************************************************
    *
    * Loads, transforms, and resizes a bitmap.
@@ -535,18 +1286,48 @@ public class ImageLoadRequest
 
     BitmapFactory.Options bitmapFactoryOptions = getFullBitmapOptions( bitmapConfig, sampleSize );
 
-    Bitmap bitmap = mSource.load( mApplicationContext, bitmapFactoryOptions );
+    Bitmap  bitmap        = null;
+    boolean regionDecoded = false;
+
+    if ( mDecodeRegionRectangle != null )
+      {
+      try
+        {
+        bitmap = mSource.loadRegion( mApplicationContext, mDecodeRegionRectangle, bitmapFactoryOptions );
+        }
+      catch ( IOException ioe )
+        {
+        // The region decoder doesn't support every image format, so fall back to a full decode
+        if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Unable to decode region", ioe );
+        }
+
+      regionDecoded = ( bitmap != null );
+      }
+
+    if ( ! regionDecoded ) bitmap = loadFromSource( bitmapFactoryOptions );
+
+    if ( bitmap == null ) return ( null );
 
     if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Bitmap loaded: " + bitmap.getWidth() + " x " + bitmap.getHeight() + ", config = " + bitmap.getConfig() );
 
+    // Intermediate bitmaps may only be re-used if we created them
+    boolean ownsBitmap = mSource.ownsLoadedBitmap();
 
-    // Apply any pre-resize transformation
 
-    if ( mPreResizeTransformer != null )
+    // Apply any pre-resize transformation. If we decoded a region, the image
+    // has already been cropped.
+
+    if ( mPreResizeTransformer != null && ! regionDecoded )
       {
       if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Applying pre-resize transformer: " + mPreResizeTransformer );
 
-      bitmap = mPreResizeTransformer.getTransformedBitmap( bitmap );
+      Bitmap transformedBitmap = mPreResizeTransformer.getTransformedBitmap( bitmap );
+
+      // Only cacheable transformers are guaranteed not to hold on to the original bitmap
+      if ( ownsBitmap && mPreResizeTransformer instanceof ICacheableImageTransformer ) releaseIntermediateBitmap( bitmap, transformedBitmap );
+      else                                                                              ownsBitmap = ( transformedBitmap != bitmap );
+
+      bitmap = transformedBitmap;
 
       if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Bitmap transformed: " + bitmap.getWidth() + " x " + bitmap.getHeight() );
       }
@@ -556,7 +1337,11 @@ public class ImageLoadRequest
 
     if ( mResizeWidth > 0 && mResizeHeight > 0 )
       {
-      bitmap = ImageAgent.scaleBitmap( bitmap, mResizeWidth, mResizeHeight, mOnlyScaleDown );
+      Bitmap scaledBitmap = ImageAgent.scaleBitmap( bitmap, mResizeWidth, mResizeHeight, mOnlyScaleDown );
+
+      if ( ownsBitmap ) releaseIntermediateBitmap( bitmap, scaledBitmap );
+
+      bitmap = scaledBitmap;
 
       if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Bitmap scaled: " + bitmap.getWidth() + " x " + bitmap.getHeight() );
       }
@@ -586,6 +1371,9 @@ public class ImageLoadRequest
    *****************************************************/
   void onProcessingComplete()
     {
+    // Don't deliver anything if the request was cancelled while it was in-flight
+    if ( mCancelled ) return;
+
     // Check for a size consumer
     if ( mImageSizeConsumer != null )
       {
@@ -596,8 +1384,18 @@ public class ImageLoadRequest
     // Check for a target
     if ( mTarget != null )
       {
-      if      ( mBitmap    != null ) mTarget.onImageAvailable( mBitmap );
-      else if ( mException != null ) mTarget.onImageUnavailable( mException );
+      if ( mBitmap != null )
+        {
+        mTarget.onImageAvailable( mBitmap );
+
+        pinIfDisplayed();
+        }
+      else if ( mException != null )
+        {
+        mTarget.onImageUnavailable( mException );
+
+        pinIfDisplayed();
+        }
       }
     }
 
@@ -643,6 +1441,72 @@ public class ImageLoadRequest
       }
 
 
+    /*****************************************************
+     *
+     * Returns a key that identifies the source for caching
+     * purposes, or null if it cannot be cached.
+     *
+     *****************************************************/
+    String getCacheKey()
+      {
+      return ( null );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns true if working out the cache key means
+     * accessing the disk, in which case it is left to the
+     * loader thread.
+     *
+     *****************************************************/
+    boolean cacheKeyNeedsDiskAccess()
+      {
+      return ( false );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns a key that identifies the source across
+     * restarts, for the thumbnail cache, or null if it
+     * shouldn't be stored there. The key must change if the
+     * image does.
+     *
+     * Called on a background thread.
+     *
+     *****************************************************/
+    String getThumbnailCacheKey()
+      {
+      return ( null );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns true if bitmaps returned by the load method
+     * were created by the source, and so may be re-used
+     * once they are no longer needed.
+     *
+     *****************************************************/
+    boolean ownsLoadedBitmap()
+      {
+      return ( true );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns the category of image that the source
+     * provides.
+     *
+     *****************************************************/
+    String getImageCategory()
+      {
+      return ( KiteSDK.IMAGE_CATEGORY_SESSION_ASSET );
+      }
+
+
     /*****************************************************
      *
      * Returns the size of an image, keeping in consideration
@@ -671,6 +1535,102 @@ public class ImageLoadRequest
       }
 
 
+    /*****************************************************
+     *
+     * Returns a cache key for a file, which includes its
+     * last modified time and length, so that a file that is
+     * re-written in place is not served from the cache.
+     *
+     *****************************************************/
+    protected String getFileCacheKey( File file )
+      {
+      return ( "file:" + file.getPath() + "@" + file.lastModified() + ":" + file.length() );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns a thumbnail cache key for a file, or null if
+     * the file does not exist.
+     *
+     *****************************************************/
+    protected String getFileThumbnailCacheKey( File file )
+      {
+      if ( file.lastModified() == 0 ) return ( null );
+
+      return ( getFileCacheKey( file ) );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns true if the source can create a region
+     * decoder.
+     *
+     *****************************************************/
+    boolean supportsRegionDecoding()
+      {
+      return ( false );
+      }
+
+
+    /*****************************************************
+     *
+     * Called on a background thread to create a region
+     * decoder for the image.
+     *
+     *****************************************************/
+    BitmapRegionDecoder newRegionDecoder( Context context ) throws IOException
+      {
+      return ( null );
+      }
+
+
+    /*****************************************************
+     *
+     * Called on a background thread to return the clockwise
+     * rotation that is applied to the image when it is
+     * loaded.
+     *
+     *****************************************************/
+    int getRotation( Context context )
+      {
+      return ( 0 );
+      }
+
+
+    /*****************************************************
+     *
+     * Called on a background thread to decode just the part
+     * of the image within a proportional rectangle of the
+     * rotated image. Returns null if the source doesn't
+     * support region decoding.
+     *
+     *****************************************************/
+    Bitmap loadRegion( Context context, RectF proportionalRectangle, BitmapFactory.Options bitmapFactoryOptions ) throws IOException
+      {
+      BitmapRegionDecoder regionDecoder = newRegionDecoder( context );
+
+      if ( regionDecoder == null ) return ( null );
+
+      try
+        {
+        int  rotation     = getRotation( context );
+        Rect decodeRegion = getUnrotatedRegion( regionDecoder.getWidth(), regionDecoder.getHeight(), rotation, proportionalRectangle );
+
+        if ( decodeRegion.isEmpty() ) return ( null );
+
+        if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Decoding region " + decodeRegion + " of " + regionDecoder.getWidth() + " x " + regionDecoder.getHeight() + ", rotation = " + rotation );
+
+        return ( rotate( regionDecoder.decodeRegion( decodeRegion, bitmapFactoryOptions ), rotation ) );
+        }
+      finally
+        {
+        regionDecoder.recycle();
+        }
+      }
+
+
     /*****************************************************
      *
      * Performs any rotation to the image.
@@ -692,7 +1652,12 @@ public class ImageLoadRequest
 
         matrix.preRotate( rotation );
 
-        bitmap = Bitmap.createBitmap( bitmap, 0, 0, targetWidth, targetHeight, matrix, true );
+        Bitmap rotatedBitmap = Bitmap.createBitmap( bitmap, 0, 0, targetWidth, targetHeight, matrix, true );
+
+        // The unrotated bitmap is no longer needed
+        releaseIntermediateBitmap( bitmap, rotatedBitmap );
+
+        bitmap = rotatedBitmap;
         }
 
       return ( bitmap );
@@ -751,6 +1716,20 @@ public class ImageLoadRequest
       return ( BitmapFactory.decodeByteArray( mSourceBitmapBytes, 0, mSourceBitmapBytes.length, bitmapFactoryOptions ) );
       }
 
+
+    @Override
+    boolean supportsRegionDecoding()
+      {
+      return ( true );
+      }
+
+
+    @Override
+    BitmapRegionDecoder newRegionDecoder( Context context ) throws IOException
+      {
+      return ( BitmapRegionDecoder.newInstance( mSourceBitmapBytes, 0, mSourceBitmapBytes.length, false ) );
+      }
+
     }
 
 
@@ -787,6 +1766,14 @@ public class ImageLoadRequest
       }
 
 
+    @Override
+    boolean ownsLoadedBitmap()
+      {
+      // The bitmap belongs to the caller
+      return ( false );
+      }
+
+
     @Override
     Bitmap load( Context context, BitmapFactory.Options bitmapFactoryOptions )
       {
@@ -816,6 +1803,27 @@ public class ImageLoadRequest
       }
 
 
+    @Override
+    String getCacheKey()
+      {
+      return ( getFileCacheKey( mSourceFile ) );
+      }
+
+
+    @Override
+    boolean cacheKeyNeedsDiskAccess()
+      {
+      return ( true );
+      }
+
+
+    @Override
+    String getThumbnailCacheKey()
+      {
+      return ( getFileThumbnailCacheKey( mSourceFile ) );
+      }
+
+
     @Override
     Size getSize( Context context )
       {
@@ -834,12 +1842,33 @@ public class ImageLoadRequest
 
       if ( bitmap != null )
         {
-        bitmap = rotate( bitmap, getRotationForImage( context, Uri.fromFile( mSourceFile ) ) );
+        bitmap = rotate( bitmap, getRotation( context ) );
         }
 
       return ( bitmap );
       }
 
+
+    @Override
+    boolean supportsRegionDecoding()
+      {
+      return ( true );
+      }
+
+
+    @Override
+    BitmapRegionDecoder newRegionDecoder( Context context ) throws IOException
+      {
+      return ( BitmapRegionDecoder.newInstance( mSourceFile.getPath(), false ) );
+      }
+
+
+    @Override
+    int getRotation( Context context )
+      {
+      return ( getRotationForImage( context, Uri.fromFile( mSourceFile ) ) );
+      }
+
     }
 
 
@@ -861,6 +1890,27 @@ public class ImageLoadRequest
       }
 
 
+    @Override
+    String getCacheKey()
+      {
+      return ( "url:" + mSourceURL.toString() );
+      }
+
+
+    @Override
+    String getThumbnailCacheKey()
+      {
+      return ( getCacheKey() );
+      }
+
+
+    @Override
+    String getImageCategory()
+      {
+      return ( mImageCategory );
+      }
+
+
     ////////// ASource Method(s) //////////
 
     @Override
@@ -916,7 +1966,7 @@ public class ImageLoadRequest
         if ( mTarget != null ) mTarget.onImageDownloading();
 
         // Make a request to download the image, and use us as the callback.
-        FileDownloader.getInstance( mApplicationContext ).requestFileDownload( mSourceURL, imageDirectory, imageFile, this );
+        FileDownloader.getInstance( mApplicationContext ).requestFileDownload( mSourceURL, imageDirectory, imageFile, mPriority, this );
         }
 
 
@@ -949,6 +1999,9 @@ public class ImageLoadRequest
     @Override
     public void onDownloadSuccess( URL sourceURL, File targetDirectory, File targetFile )
       {
+      // If the request was cancelled while downloading, don't go any further
+      if ( mCancelled ) return;
+
       // Replace this source with a file source
 
       FileSource newSource = new FileSource( targetFile );
@@ -972,7 +2025,7 @@ public class ImageLoadRequest
     @Override
     public void onDownloadFailure( URL sourceURL, Exception exception )
       {
-      if ( mTarget != null ) mTarget.onImageUnavailable( exception );
+      if ( mTarget != null && ! mCancelled ) mTarget.onImageUnavailable( exception );
       }
 
     }
@@ -994,6 +2047,38 @@ public class ImageLoadRequest
       }
 
 
+    @Override
+    String getCacheKey()
+      {
+      // File URIs may be changed in place, so we need to check the file
+      if ( "file".equals( mSourceURI.getScheme() ) && mSourceURI.getPath() != null )
+        {
+        return ( getFileCacheKey( new File( mSourceURI.getPath() ) ) );
+        }
+
+      return ( "uri:" + mSourceURI.toString() );
+      }
+
+
+    @Override
+    boolean cacheKeyNeedsDiskAccess()
+      {
+      return ( "file".equals( mSourceURI.getScheme() ) && mSourceURI.getPath() != null );
+      }
+
+
+    @Override
+    String getThumbnailCacheKey()
+      {
+      if ( "file".equals( mSourceURI.getScheme() ) && mSourceURI.getPath() != null )
+        {
+        return ( getFileThumbnailCacheKey( new File( mSourceURI.getPath() ) ) );
+        }
+
+      return ( getCacheKey() );
+      }
+
+
     @Override
     Size getSize( Context context ) throws FileNotFoundException
       {
@@ -1014,12 +2099,44 @@ public class ImageLoadRequest
 
       if ( bitmap != null )
         {
-        bitmap = rotate( bitmap, getRotationForImage( context, mSourceURI ) );
+        bitmap = rotate( bitmap, getRotation( context ) );
         }
 
       return ( bitmap );
       }
 
+
+    @Override
+    boolean supportsRegionDecoding()
+      {
+      return ( true );
+      }
+
+
+    @Override
+    BitmapRegionDecoder newRegionDecoder( Context context ) throws IOException
+      {
+      InputStream inputStream = context.getContentResolver().openInputStream( mSourceURI );
+
+      if ( inputStream == null ) return ( null );
+
+      try
+        {
+        return ( BitmapRegionDecoder.newInstance( inputStream, false ) );
+        }
+      finally
+        {
+        inputStream.close();
+        }
+      }
+
+
+    @Override
+    int getRotation( Context context )
+      {
+      return ( getRotationForImage( context, mSourceURI ) );
+      }
+
     }
 
 
@@ -1039,6 +2156,20 @@ public class ImageLoadRequest
       }
 
 
+    @Override
+    String getCacheKey()
+      {
+      return ( "resource:" + mSourceResourceId );
+      }
+
+
+    @Override
+    String getImageCategory()
+      {
+      return ( KiteSDK.IMAGE_CATEGORY_APP );
+      }
+
+
     @Override
     Size getSize( Context context )
       {
@@ -1066,6 +2197,11 @@ public class ImageLoadRequest
    *****************************************************/
   private abstract class ATarget
     {
+    View getView()
+      {
+      return ( null );
+      }
+
     abstract void onImageDownloading();
     abstract void onImageAvailable( Bitmap bitmap );
     abstract void onImageUnavailable( Exception exception );
@@ -1090,6 +2226,12 @@ public class ImageLoadRequest
       }
 
 
+    @Override
+    View getView()
+      {
+      return ( mImageView );
+      }
+
     @Override
     void onImageDownloading()
       {
@@ -1556,6 +2698,20 @@ public class ImageLoadRequest
       }
 
 
+    /*****************************************************
+     *
+     * Sets the processing priority. Requests default to
+     * visible priority.
+     *
+     *****************************************************/
+    public Builder priority( ImageRequestProcessor.Priority priority )
+      {
+      mPriority = priority;
+
+      return ( this );
+      }
+
+
     /*****************************************************
      *
      * Transforms an image after it is resized.
@@ -1586,6 +2742,10 @@ public class ImageLoadRequest
      *
      * Sets the target of the image as an image view.
      *
+     * Any earlier request for the same image view that is
+     * still outstanding is cancelled. The returned request
+     * may also be used to cancel this one.
+     *
      *****************************************************/
     public ImageLoadRequest into( ImageView imageView, Object keyTag )
       {
@@ -1663,7 +2823,7 @@ public class ImageLoadRequest
    * An image crop transformer.
    *
    *****************************************************/
-  static public class CropImageTransformer implements IImageTransformer
+  static public class CropImageTransformer implements ICacheableImageTransformer
     {
     private RectF  mProportionalCropRectangle;
 
@@ -1674,11 +2834,24 @@ public class ImageLoadRequest
       }
 
 
+    public RectF getProportionalCropRectangle()
+      {
+      return ( mProportionalCropRectangle );
+      }
+
+
     @Override
     public Bitmap getTransformedBitmap( Bitmap originalBitmap )
       {
       return ( ImageAgent.crop( originalBitmap, mProportionalCropRectangle ) );
       }
+
+
+    @Override
+    public String getCacheKey()
+      {
+      return ( "crop(" + mProportionalCropRectangle.left + "," + mProportionalCropRectangle.top + "," + mProportionalCropRectangle.right + "," + mProportionalCropRectangle.bottom + ")" );
+      }
     }
   }
 
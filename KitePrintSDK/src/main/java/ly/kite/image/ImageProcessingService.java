@@ -224,7 +224,9 @@ public class ImageProcessingService extends Service
 
           if ( KiteSDK.DEBUG_IMAGE_PROCESSING ) Log.i( LOG_TAG, "Received CROP_TO_BOUNDS message: responseMessenger = " + responseMessenger + ", sourceAsset = " + sourceAsset + ", targetAsset = " + targetAsset );
 
-          transformer = new CropToBoundsTransformer( cropBounds );
+          // Use the standard crop transformer, so that the request can decode just the
+          // region within the bounds.
+          transformer = new ImageLoadRequest.CropImageTransformer( cropBounds );
 
           break;
 
@@ -241,6 +243,7 @@ public class ImageProcessingService extends Service
       ImageAgent.with( ImageProcessingService.this )
               .load( sourceAsset )
               .transformBeforeResize( transformer )
+              .priority( ImageRequestProcessor.Priority.BACKGROUND )
               .into( consumer, null );
       }
     }
@@ -323,37 +326,6 @@ public class ImageProcessingService extends Service
     }
 
 
-  /*****************************************************
-   *
-   * A crop to bounds transformer.
-   *
-   *****************************************************/
-  private class CropToBoundsTransformer implements IImageTransformer
-    {
-    private RectF  mCropBounds;
-
-
-    CropToBoundsTransformer( RectF cropBounds )
-      {
-      mCropBounds = cropBounds;
-      }
-
-
-    /*****************************************************
-     *
-     * Called on a background thread to transform a bitmap.
-     * We use this to crop the bitmap, and create a file-backed
-     * asset from it.
-     *
-     *****************************************************/
-    @Override
-    public Bitmap getTransformedBitmap( Bitmap bitmap )
-      {
-      return ( ImageAgent.crop( bitmap, mCropBounds ) );
-      }
-    }
-
-
   /*****************************************************
    *
    * The image consumer that receives the transformed image,
@@ -39,10 +39,18 @@ package ly.kite.image;
 
 ///// Import(s) /////
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import android.content.Context;
 import android.os.AsyncTask;
+import android.view.View;
+
+import ly.kite.R;
 
 
 ///// Class Declaration /////
@@ -51,6 +59,17 @@ import android.os.AsyncTask;
  *
  * This class processes image requests.
  *
+ * Requests are placed into one of a number of priority
+ * lanes, and are processed by a bounded pool of loader
+ * tasks, sized according to the number of available
+ * processors. Within each lane, the most recent request
+ * is processed first.
+ *
+ * If a request is started whilst an identical request
+ * (i.e. one for the same image) is already in-flight, it
+ * is not processed. Instead it is given the result of
+ * the in-flight request when that completes.
+ *
  *****************************************************/
 public class ImageRequestProcessor
   {
@@ -59,6 +78,9 @@ public class ImageRequestProcessor
   @SuppressWarnings( "unused" )
   static private final String  LOG_TAG              = "ImageRequestProcessor";
 
+  static private final int     MIN_CONCURRENT_LOADS = 2;
+  static private final int     MAX_CONCURRENT_LOADS = 8;
+
 
   ////////// Static Variable(s) //////////
 
@@ -67,11 +89,17 @@ public class ImageRequestProcessor
 
   ////////// Member Variable(s) //////////
 
-  private Context                   mApplicationContext;
+  private Context                                mApplicationContext;
+
+  private ArrayList<LinkedList<ImageLoadRequest>>  mRequestLanes;
 
-  private LinkedList<ImageLoadRequest>  mRequestQueue;
+  private int                                    mMaxLoaderCount;
+  private Executor                               mThreadPoolExecutor;
 
-  private LoaderTask                mLoaderTask;
+  private int                                    mLoaderCount;
+  private int                                    mLowPriorityLoadCount;
+
+  private HashMap<String,ImageLoadRequest>         mInFlightRequestTable;
 
 
   ////////// Static Initialiser(s) //////////
@@ -95,12 +123,48 @@ public class ImageRequestProcessor
     }
 
 
+  /*****************************************************
+   *
+   * Returns the number of concurrent loads to use for
+   * the supplied number of processors.
+   *
+   *****************************************************/
+  static int loaderCountForProcessors( int processorCount )
+    {
+    return ( Math.max( MIN_CONCURRENT_LOADS, Math.min( processorCount, MAX_CONCURRENT_LOADS ) ) );
+    }
+
+
   ////////// Constructor(s) //////////
 
   private ImageRequestProcessor( Context context )
+    {
+    this( context, loaderCountForProcessors( Runtime.getRuntime().availableProcessors() ), null );
+    }
+
+
+  /*****************************************************
+   *
+   * Creates a processor with a fixed number of loaders.
+   * If no executor is supplied, a fixed thread pool is
+   * created for the loaders.
+   *
+   *****************************************************/
+  ImageRequestProcessor( Context context, int maxLoaderCount, Executor executor )
     {
     mApplicationContext = context.getApplicationContext();
-    mRequestQueue       = new LinkedList<>();
+
+    mRequestLanes       = new ArrayList<>();
+
+    for ( int laneIndex = 0; laneIndex < Priority.values().length; laneIndex ++ )
+      {
+      mRequestLanes.add( new LinkedList<ImageLoadRequest>() );
+      }
+
+    mInFlightRequestTable = new HashMap<>();
+
+    mMaxLoaderCount     = maxLoaderCount;
+    mThreadPoolExecutor = ( executor != null ? executor : Executors.newFixedThreadPool( mMaxLoaderCount ) );
     }
 
 
@@ -113,9 +177,99 @@ public class ImageRequestProcessor
    *****************************************************/
   public void clearPendingRequests()
     {
-    synchronized ( mRequestQueue )
+    synchronized ( mRequestLanes )
+      {
+      for ( LinkedList<ImageLoadRequest> requestLane : mRequestLanes )
+        {
+        requestLane.clear();
+        }
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Binds a request to its target view, cancelling any
+   * earlier request for the same view. This means that when
+   * a view is recycled, any work for its previous image is
+   * dropped before it is decoded, and any previous image is
+   * no longer pinned in the memory cache once the new one
+   * has been delivered.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  void bindToView( View view, ImageLoadRequest request )
+    {
+    Object previousRequestObject = view.getTag( R.id.image_load_request );
+
+    view.setTag( R.id.image_load_request, request );
+
+    if ( previousRequestObject != null && previousRequestObject != request )
+      {
+      ( (ImageLoadRequest)previousRequestObject ).cancelForRebind( request );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Removes the binding between a view and a request, if
+   * the request is still the one bound to the view.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  void unbindFromView( View view, ImageLoadRequest request )
+    {
+    if ( view.getTag( R.id.image_load_request ) == request )
+      {
+      view.setTag( R.id.image_load_request, null );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Clears the binding between a view and its request,
+   * and releases any images pinned for the view. Called
+   * when the view no longer displays the image.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  void releaseView( View view )
+    {
+    Object requestObject = view.getTag( R.id.image_load_request );
+
+    view.setTag( R.id.image_load_request, null );
+
+    if ( requestObject != null ) ( (ImageLoadRequest)requestObject ).cancelForClear();
+    }
+
+
+  /*****************************************************
+   *
+   * Called when a request has been cancelled. Removes the
+   * request from its lane, if it hasn't been started yet.
+   *
+   * If the request is still holding on to an image that
+   * its view is displaying, it stays bound to the view, so
+   * that the image is released when the view is rebound
+   * or cleared.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  void onRequestCancelled( ImageLoadRequest request )
+    {
+    View targetView = request.getTargetView();
+
+    if ( targetView != null && ! request.holdsDisplayedImage() ) unbindFromView( targetView, request );
+
+    synchronized ( mRequestLanes )
       {
-      mRequestQueue.clear();
+      mRequestLanes.get( request.getPriority().ordinal() ).remove( request );
       }
     }
 
@@ -129,26 +283,77 @@ public class ImageRequestProcessor
    *****************************************************/
   void process( ImageLoadRequest request )
     {
-    synchronized ( mRequestQueue )
+    synchronized ( mRequestLanes )
       {
-      // Add the request to the queue
-      mRequestQueue.addFirst( request );
+      // Add the request to the front of its lane
+      mRequestLanes.get( request.getPriority().ordinal() ).addFirst( request );
 
-      // If the downloader task is already running - do nothing more
-      if ( mLoaderTask != null ) return;
+      // If we are already running the maximum number of loader tasks - do nothing more
+      if ( mLoaderCount >= mMaxLoaderCount ) return;
+
+      mLoaderCount ++;
       }
 
 
-    // Create and start a new downloader task
+    // Create and start a new loader task
+
+    new LoaderTask().executeOnExecutor( mThreadPoolExecutor );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the next request to process, or null if there
+   * are no more requests that may be processed by the
+   * calling loader task.
+   *
+   * We always leave one loader free for visible requests,
+   * so that on-screen images are never stuck behind
+   * prefetch or background work.
+   *
+   * Must be called with the request lanes locked.
+   *
+   *****************************************************/
+  ImageLoadRequest nextRequest()
+    {
+    int maxLowPriorityLoadCount = Math.max( 1, mMaxLoaderCount - 1 );
+
+    for ( Priority priority : Priority.values() )
+      {
+      LinkedList<ImageLoadRequest> requestLane = mRequestLanes.get( priority.ordinal() );
+
+      if ( requestLane.isEmpty() ) continue;
+
+      if ( priority != Priority.VISIBLE )
+        {
+        if ( mLowPriorityLoadCount >= maxLowPriorityLoadCount ) return ( null );
 
-    mLoaderTask = new LoaderTask();
+        mLowPriorityLoadCount ++;
+        }
 
-    mLoaderTask.executeOnExecutor( AsyncTask.SERIAL_EXECUTOR );
+      return ( requestLane.removeFirst() );
+      }
+
+    return ( null );
     }
 
 
   ////////// Inner Class(es) //////////
 
+  /*****************************************************
+   *
+   * The priority of a request. Lanes are processed in
+   * declaration order.
+   *
+   *****************************************************/
+  public enum Priority
+    {
+    VISIBLE,      // Images that are currently on-screen
+    PREFETCH,     // Images that are likely to be on-screen soon
+    BACKGROUND    // Images used for processing, uploading etc.
+    }
+
+
   /*****************************************************
    *
    * The loader task.
@@ -167,28 +372,103 @@ public class ImageRequestProcessor
       {
       // Keep going until we run out of requests
 
+      ImageLoadRequest request = null;
+
       while ( true )
         {
-        ImageLoadRequest request = null;
-
-        synchronized ( mRequestQueue )
+        synchronized ( mRequestLanes )
           {
-          request = mRequestQueue.poll();
+          // If the previous request was a low priority one, it has now finished
+          if ( request != null && request.getPriority() != Priority.VISIBLE ) mLowPriorityLoadCount --;
+
+          request = nextRequest();
 
           if ( request == null )
             {
-            mLoaderTask = null;
+            mLoaderCount --;
 
             return ( null );
             }
           }
 
 
-        // Process the request. If we get true back, do something with it on
-        // the UI thread.
+        // Keys for file images come from the file's attributes, so
+        // they are created here rather than on the UI thread.
+
+        request.createKeysInBackground();
+
+
+        synchronized ( mRequestLanes )
+          {
+          // If an identical request is already in-flight, attach this one to it and
+          // move on. Otherwise mark this one as in-flight.
+
+          String requestKey = request.getRequestKey();
+
+          if ( requestKey != null )
+            {
+            ImageLoadRequest inFlightRequest = mInFlightRequestTable.get( requestKey );
+
+            if ( inFlightRequest != null )
+              {
+              inFlightRequest.addFollower( request );
+
+              continue;
+              }
+
+            mInFlightRequestTable.put( requestKey, request );
+            }
+          }
+
+
+        // Process the request
+
+        boolean deliverResult = request.processInBackground();
+
+
+        // Get any requests that were waiting on the result
+
+        List<ImageLoadRequest> followerList;
 
-        if ( request.processInBackground() )
+        synchronized ( mRequestLanes )
           {
+          String requestKey = request.getRequestKey();
+
+          if ( requestKey != null ) mInFlightRequestTable.remove( requestKey );
+
+          followerList = request.removeFollowers();
+
+
+          // If the request was cancelled before it produced anything, any followers
+          // need to be processed in their own right.
+
+          if ( ! deliverResult && followerList != null )
+            {
+            for ( ImageLoadRequest followerRequest : followerList )
+              {
+              if ( ! followerRequest.isCancelled() ) mRequestLanes.get( followerRequest.getPriority().ordinal() ).addFirst( followerRequest );
+              }
+
+            followerList = null;
+            }
+          }
+
+
+        // If we get true back, do something with the request, and any followers,
+        // on the UI thread.
+
+        if ( deliverResult )
+          {
+          if ( followerList != null )
+            {
+            for ( ImageLoadRequest followerRequest : followerList )
+              {
+              followerRequest.copyResultFrom( request );
+
+              publishProgress( followerRequest );
+              }
+            }
+
           publishProgress( request );
           }
         }
@@ -215,4 +495,3 @@ public class ImageRequestProcessor
     }
 
   }
-
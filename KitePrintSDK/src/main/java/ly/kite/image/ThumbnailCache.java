@@ -0,0 +1,402 @@
+/*****************************************************
+ *
+ * ThumbnailCache.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.image;
+
+
+///// Import(s) /////
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import ly.kite.KiteSDK;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class implements a persistent LRU cache of
+ * already-downsampled images. It sits behind the memory
+ * cache, so that images that have been decoded and
+ * resized once don't need to be decoded from their
+ * full-size sources again, even after the app has been
+ * restarted.
+ *
+ * Files are named from a hash of the cache key, and the
+ * cache is trimmed to its byte budget whenever an image
+ * is added. The last modified time of each file records
+ * when it was last used, so the LRU order survives a
+ * restart.
+ *
+ * The cache is thread-safe. File I/O is performed
+ * outside the lock.
+ *
+ *****************************************************/
+public class ThumbnailCache
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG                = "ThumbnailCache";
+
+  static private final String  FILE_SUFFIX            = ".img";
+  static private final String  TEMPORARY_FILE_PREFIX  = "tmp";
+  static private final String  TEMPORARY_FILE_SUFFIX  = ".tmp";
+
+  // Temporary files younger than this may still be being written
+  static private final long    TEMPORARY_FILE_MAX_AGE_IN_MILLIS = 60 * 60 * 1000;  // 1 hour
+
+  static private final int     JPEG_QUALITY           = 90;
+
+  static private final char[]  HEX_DIGITS             = "0123456789abcdef".toCharArray();
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+  private File                        mDirectory;
+  private long                        mCapacityInBytes;
+
+  // File name -> file size, kept in access order
+  private LinkedHashMap<String,Long>  mFileSizeTable;
+  private long                        mSizeInBytes;
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns the file name for a cache key.
+   *
+   *****************************************************/
+  static String fileNameForKey( String key )
+    {
+    try
+      {
+      byte[] digestBytes = MessageDigest.getInstance( "SHA-1" ).digest( key.getBytes( "UTF-8" ) );
+
+      char[] hexChars = new char[ digestBytes.length * 2 ];
+
+      for ( int index = 0; index < digestBytes.length; index ++ )
+        {
+        hexChars[ index * 2     ] = HEX_DIGITS[ ( digestBytes[ index ] >> 4 ) & 0x0f ];
+        hexChars[ index * 2 + 1 ] = HEX_DIGITS[   digestBytes[ index ]         & 0x0f ];
+        }
+
+      return ( new String( hexChars ) + FILE_SUFFIX );
+      }
+    catch ( Exception exception )
+      {
+      // Every platform supports SHA-1 and UTF-8, but fall back to a safe version of the key
+      return ( ImageAgent.toSafeString( key ) + FILE_SUFFIX );
+      }
+    }
+
+
+  ////////// Constructor(s) //////////
+
+  public ThumbnailCache( File directory, long capacityInBytes )
+    {
+    mDirectory       = directory;
+    mCapacityInBytes = capacityInBytes;
+    }
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns an image from the cache, decoded using the
+   * supplied config, or null if the image is not cached.
+   *
+   *****************************************************/
+  public Bitmap getImage( String key, Bitmap.Config bitmapConfig )
+    {
+    String fileName = fileNameForKey( key );
+    File   file     = new File( mDirectory, fileName );
+
+    synchronized ( this )
+      {
+      loadIndex();
+
+      // Accessing the entry moves it to the MRU end
+      if ( mFileSizeTable.get( fileName ) == null ) return ( null );
+      }
+
+
+    BitmapFactory.Options bitmapFactoryOptions = new BitmapFactory.Options();
+
+    bitmapFactoryOptions.inPreferredConfig = bitmapConfig;
+    bitmapFactoryOptions.inMutable         = true;
+
+    Bitmap bitmap = BitmapFactory.decodeFile( file.getPath(), bitmapFactoryOptions );
+
+    if ( bitmap == null )
+      {
+      // The file has been evicted in the meantime, or is damaged
+      synchronized ( this )
+        {
+        removeFile( fileName );
+        }
+
+      return ( null );
+      }
+
+    // Record the use so that the order is kept across restarts
+    file.setLastModified( System.currentTimeMillis() );
+
+    if ( KiteSDK.DEBUG_IMAGE_LOADING ) Log.d( LOG_TAG, "Thumbnail cache hit: " + key );
+
+    return ( bitmap );
+    }
+
+
+  /*****************************************************
+   *
+   * Adds an image to the cache, evicting the least
+   * recently used images if we go over budget.
+   *
+   *****************************************************/
+  public void addImage( String key, Bitmap bitmap )
+    {
+    String fileName = fileNameForKey( key );
+
+    File temporaryFile = null;
+
+    try
+      {
+      if ( ! mDirectory.exists() && ! mDirectory.mkdirs() ) return;
+
+      // Write to a temporary file first, so that a partly written file is never
+      // found in the cache.
+
+      temporaryFile = File.createTempFile( TEMPORARY_FILE_PREFIX, TEMPORARY_FILE_SUFFIX, mDirectory );
+
+      FileOutputStream fos = new FileOutputStream( temporaryFile );
+
+      try
+        {
+        if ( bitmap.hasAlpha() ) bitmap.compress( Bitmap.CompressFormat.PNG,  100,          fos );
+        else                     bitmap.compress( Bitmap.CompressFormat.JPEG, JPEG_QUALITY, fos );
+        }
+      finally
+        {
+        fos.close();
+        }
+
+
+      synchronized ( this )
+        {
+        loadIndex();
+
+        File file = new File( mDirectory, fileName );
+
+        removeFile( fileName );
+
+        if ( ! temporaryFile.renameTo( file ) ) return;
+
+        temporaryFile = null;
+
+        long fileSize = file.length();
+
+        mFileSizeTable.put( fileName, fileSize );
+        mSizeInBytes += fileSize;
+
+        trimToSize( mCapacityInBytes );
+        }
+      }
+    catch ( IOException ioe )
+      {
+      Log.e( LOG_TAG, "Unable to add image to thumbnail cache", ioe );
+      }
+    finally
+      {
+      if ( temporaryFile != null ) temporaryFile.delete();
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Deletes every image in the cache.
+   *
+   *****************************************************/
+  public synchronized void clear()
+    {
+    loadIndex();
+
+    trimToSize( -1 );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the total size of the cached images.
+   *
+   *****************************************************/
+  public synchronized long getSizeInBytes()
+    {
+    loadIndex();
+
+    return ( mSizeInBytes );
+    }
+
+
+  /*****************************************************
+   *
+   * Builds the index from the cache directory, if it
+   * hasn't been built yet. Also deletes any temporary
+   * files left behind by an earlier process. Recent ones
+   * are kept, because another thread or process may still
+   * be writing them.
+   *
+   *****************************************************/
+  private void loadIndex()
+    {
+    if ( mFileSizeTable != null ) return;
+
+    long temporaryFileCutoffMillis = System.currentTimeMillis() - TEMPORARY_FILE_MAX_AGE_IN_MILLIS;
+
+    mFileSizeTable = new LinkedHashMap<>( 16, 0.75f, true );
+    mSizeInBytes   = 0;
+
+    File[] files = mDirectory.listFiles();
+
+    if ( files == null ) return;
+
+    // Add the files in order of last use
+    Arrays.sort( files, new LastModifiedComparator() );
+
+    for ( File file : files )
+      {
+      String fileName = file.getName();
+
+      if ( fileName.endsWith( FILE_SUFFIX ) )
+        {
+        long fileSize = file.length();
+
+        mFileSizeTable.put( fileName, fileSize );
+        mSizeInBytes += fileSize;
+        }
+      else if ( fileName.endsWith( TEMPORARY_FILE_SUFFIX ) && file.lastModified() < temporaryFileCutoffMillis )
+        {
+        file.delete();
+        }
+      }
+
+    trimToSize( mCapacityInBytes );
+    }
+
+
+  /*****************************************************
+   *
+   * Deletes the least recently used images until the
+   * cache is no larger than the supplied size.
+   *
+   *****************************************************/
+  private void trimToSize( long maxSizeInBytes )
+    {
+    Iterator<Map.Entry<String,Long>> entryIterator = mFileSizeTable.entrySet().iterator();
+
+    while ( mSizeInBytes > maxSizeInBytes && entryIterator.hasNext() )
+      {
+      Map.Entry<String,Long> entry = entryIterator.next();
+
+      entryIterator.remove();
+
+      mSizeInBytes -= entry.getValue();
+
+      new File( mDirectory, entry.getKey() ).delete();
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Removes a single file from the cache.
+   *
+   *****************************************************/
+  private void removeFile( String fileName )
+    {
+    Long fileSize = mFileSizeTable.remove( fileName );
+
+    if ( fileSize != null )
+      {
+      mSizeInBytes -= fileSize;
+
+      new File( mDirectory, fileName ).delete();
+      }
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * Orders files by their last modified time, oldest
+   * first.
+   *
+   *****************************************************/
+  static private class LastModifiedComparator implements Comparator<File>
+    {
+    @Override
+    public int compare( File leftFile, File rightFile )
+      {
+      long leftLastModified  = leftFile.lastModified();
+      long rightLastModified = rightFile.lastModified();
+
+      return ( leftLastModified < rightLastModified ? -1 : ( leftLastModified > rightLastModified ? 1 : 0 ) );
+      }
+    }
+
+  }
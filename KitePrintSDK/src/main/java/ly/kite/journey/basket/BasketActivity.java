@@ -66,6 +66,7 @@ import ly.kite.ordering.OrderingDataAgent;
 import ly.kite.ordering.BasketItem;
 import ly.kite.catalogue.Catalogue;
 import ly.kite.catalogue.ICatalogueConsumer;
+import ly.kite.catalogue.MultipleCurrencyAmounts;
 import ly.kite.catalogue.Product;
 import ly.kite.checkout.AShippingActivity;
 import ly.kite.image.ImageAgent;
@@ -76,6 +77,7 @@ import ly.kite.ordering.Job;
 import ly.kite.ordering.Order;
 import ly.kite.pricing.OrderPricing;
 import ly.kite.pricing.PricingAgent;
+import ly.kite.pricing.PricingPipeline;
 import ly.kite.util.AssetFragment;
 
 
@@ -135,7 +137,7 @@ public class BasketActivity extends AKiteActivity implements ICatalogueConsumer,
 
   private BasketAdaptor           mBasketAdaptor;
 
-  private int                     mPricingRequestId;
+  private PricingPipeline         mPricingPipeline;
 
 
   ////////// Static Initialiser(s) //////////
@@ -254,6 +256,8 @@ public class BasketActivity extends AKiteActivity implements ICatalogueConsumer,
     mContinueShoppingView       = findViewById( R.id.continue_shopping_view );
     mPayAmountTextView          = (TextView)findViewById( R.id.pay_amount_text_view );
 
+    mPricingPipeline            = new PricingPipeline( this, this );
+
     KiteSDK kiteSDK = KiteSDK.getInstance( this );
 
 
@@ -315,6 +319,21 @@ public class BasketActivity extends AKiteActivity implements ICatalogueConsumer,
     }
 
 
+  /*****************************************************
+   *
+   * Called when the activity stops.
+   *
+   *****************************************************/
+  @Override
+  public void onStop()
+    {
+    super.onStop();
+
+    // Prices are re-requested once the catalogue has been loaded again in onStart
+    mPricingPipeline.cancel();
+    }
+
+
   /*****************************************************
    *
    * Called when back is pressed.
@@ -573,11 +592,8 @@ public class BasketActivity extends AKiteActivity implements ICatalogueConsumer,
   @Override
   public void paOnSuccess( int requestId, OrderPricing pricing )
     {
-    // We only use the pricing if it matches the last request we made
-    if ( requestId == mPricingRequestId )
-      {
-      setOrderPricing( pricing );
-      }
+    // The pricing pipeline only returns the pricing for the last request we made
+    setOrderPricing( pricing );
     }
 
 
@@ -591,6 +607,9 @@ public class BasketActivity extends AKiteActivity implements ICatalogueConsumer,
     {
     Log.e( LOG_TAG, "Unable to get pricing", exception );
 
+    // The payment screen retrieves the pricing itself, so don't leave the user stuck here
+    setCheckoutEnabled( true );
+
     Toast.makeText( this, "Unable to get pricing: " + exception.getMessage(), Toast.LENGTH_SHORT ).show();
     }
 
@@ -739,35 +758,88 @@ public class BasketActivity extends AKiteActivity implements ICatalogueConsumer,
     if ( mBasketItemList != null && mBasketItemList.size() > 0 )
       {
       // Re-request the pricing if the shipping address changes, as the shipping price may
-      // have changed.
+      // have changed. Quantity changes are debounced by the pricing pipeline, so we don't
+      // make a request for every tap.
+
+      Order order = getOrder();
+
+      // Don't allow checkout until we have the actual pricing
+      setCheckoutEnabled( false );
 
-      OrderPricing pricing = PricingAgent.getInstance().requestPricing( this, getOrder(), NO_PROMO_CODE_YET, mCatalogue.getPayPalSupportedCurrencyCodes(), this, ++ mPricingRequestId );
+      OrderPricing pricing = mPricingPipeline.requestPricing( order, NO_PROMO_CODE_YET, mCatalogue.getPayPalSupportedCurrencyCodes() );
 
       if ( pricing != null )
         {
         setOrderPricing( pricing );
         }
+      else
+        {
+        // Display an estimate from the catalogue until the actual pricing arrives
+
+        OrderPricing estimatedPricing = mPricingPipeline.estimatePricing( order, NO_PROMO_CODE_YET );
+
+        if ( estimatedPricing != null ) setOrderPricing( estimatedPricing );
+        }
+      }
+    else
+      {
+      // Make sure the prices for a non-empty basket don't turn up later
+      mPricingPipeline.cancel();
       }
     }
 
 
   /*****************************************************
    *
-   * Sets the order pricing.
+   * Sets the order pricing. Estimated prices are marked
+   * as such, and checkout is only enabled for the actual
+   * pricing.
    *
    *****************************************************/
   private void setOrderPricing( OrderPricing orderPricing )
     {
+    boolean isEstimate = orderPricing.isEstimate();
+
+
     // Display the shipping & total prices
 
-    mTotalShippingPriceTextView.setText( orderPricing.getTotalShippingCost().getDefaultDisplayAmountWithFallback() );
+    mTotalShippingPriceTextView.setText( getDisplayAmount( orderPricing.getTotalShippingCost(), isEstimate ) );
 
 
-    String displayTotalCost = orderPricing.getTotalCost().getDefaultDisplayAmountWithFallback();
+    String displayTotalCost = getDisplayAmount( orderPricing.getTotalCost(), isEstimate );
 
     if ( mTotalPriceTextView != null ) mTotalPriceTextView.setText( getString( R.string.Total ) + " " + displayTotalCost );
 
     if ( mPayAmountTextView  != null ) mPayAmountTextView.setText( getString( R.string.Pay ) + " " + displayTotalCost );
+
+
+    setCheckoutEnabled( ! isEstimate );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns an amount for display, marked if it is only
+   * an estimate.
+   *
+   *****************************************************/
+  private String getDisplayAmount( MultipleCurrencyAmounts amounts, boolean isEstimate )
+    {
+    String displayAmount = amounts.getDefaultDisplayAmountWithFallback();
+
+    return ( isEstimate ? getString( R.string.estimated_amount_format_string, displayAmount ) : displayAmount );
+    }
+
+
+  /*****************************************************
+   *
+   * Enables or disables the buttons that start checkout.
+   *
+   *****************************************************/
+  private void setCheckoutEnabled( boolean enabled )
+    {
+    setRightEnabled( enabled );
+    setEnabled( mPayAmountTextView, enabled );
     }
 
 
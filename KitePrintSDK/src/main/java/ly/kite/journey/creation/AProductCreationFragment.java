@@ -71,6 +71,7 @@ import ly.kite.journey.AKiteFragment;
 import ly.kite.journey.IImageSpecStore;
 import ly.kite.catalogue.Product;
 import ly.kite.image.ImageAgent;
+import ly.kite.image.ImageRequestProcessor;
 import ly.kite.widget.ExtendedRecyclerView;
 import ly.kite.widget.PromptTextFrame;
 
@@ -728,6 +729,7 @@ abstract public class AProductCreationFragment extends    AKiteFragment
     {
     ImageAgent.with( mKiteActivity )
             .loadSizeOf( imageSpec.getAssetFragment().getAsset() )
+            .priority( ImageRequestProcessor.Priority.BACKGROUND )
             .into( new ImageCropCallback( imageSpec ) );
     }
 
@@ -232,6 +232,8 @@ abstract public class AGroupOrProductFragment extends AProductSelectionFragment
     private int                              mActualItemCount;
     private int                              mApparentItemCount;
 
+    private String                           mLockedCurrencyCode;
+
     private LayoutInflater                   mLayoutInflator;
 
 
@@ -253,6 +255,10 @@ abstract public class AGroupOrProductFragment extends AProductSelectionFragment
       mLayoutInflator     = LayoutInflater.from( context );
 
       mActualItemCount    = mGroupOrProductList.size();
+
+      // The currency is locked when the catalogue is loaded, so get it once rather
+      // than every time an item is displayed.
+      mLockedCurrencyCode = KiteSDK.getInstance( context ).getLockedCurrencyCode();
       }
 
 
@@ -430,7 +436,7 @@ abstract public class AGroupOrProductFragment extends AProductSelectionFragment
           if ( this.descriptionTextView != null ) this.descriptionTextView.setText( groupOrProduct.getDescription() );
 
           // Populate any price overlay
-          String displayPrice = groupOrProduct.getDisplayPrice( KiteSDK.getInstance( getActivity() ).getLockedCurrencyCode() );
+          String displayPrice = groupOrProduct.getDisplayPrice( mLockedCurrencyCode );
 
 
           // We only display the price overlay if there's a display price. In the case of a product group
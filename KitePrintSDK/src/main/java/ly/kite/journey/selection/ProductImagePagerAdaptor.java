@@ -48,6 +48,7 @@ import android.view.ViewGroup;
 import java.net.URL;
 import java.util.List;
 
+import ly.kite.KiteSDK;
 import ly.kite.R;
 import ly.kite.image.ImageAgent;
 import ly.kite.widget.LabelledImageView;
@@ -68,7 +69,7 @@ public class ProductImagePagerAdaptor extends PagerAdapter
   @SuppressWarnings( "unused" )
   private static final String  LOG_TAG              = "ProductImageAdaptor";
 
-  private static final String  IMAGE_CLASS_STRING   = "product_image";
+  private static final String  IMAGE_CLASS_STRING   = KiteSDK.IMAGE_CATEGORY_PRODUCT_IMAGE;
 
 
   ////////// Static Variable(s) //////////
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
@@ -70,8 +71,8 @@ public class Order implements Parcelable /* , Serializable */
     // Transient values solely used during order submission
     private boolean                      userSubmittedForPrinting;
     private AssetUploadRequest           assetUploadReq;
-    private int                          mImagesToCropCount;
     private List<UploadableImage>        mImagesToUpload;
+    private IdentityHashMap<UploadableImage,UploadableImage>  mDuplicateImageTable;
     private boolean                      assetUploadComplete;
     private SubmitOrderRequest           printOrderReq;
     private Date                         lastPrintSubmissionDate;
@@ -650,45 +651,70 @@ public class Order implements Parcelable /* , Serializable */
       mImagesToUpload = getImagesToUpload();
 
 
+      final AssetUploadRequest assetUploadRequest = new AssetUploadRequest( context );
+
+      assetUploadReq = assetUploadRequest;
+
+
+      // Skip any images that were uploaded by an earlier attempt or order, even if the
+      // process has been killed since. The remaining images are recorded as they are
+      // uploaded. Images with the same content as another image are only uploaded once.
+
+      UploadJournal.findUploadedImages( context, mImagesToUpload, new UploadJournal.IFindListener()
+        {
+        @Override
+        public void onUploadedImagesFound( IdentityHashMap<UploadableImage,UploadJournal.ImageKeys> imageKeysTable, IdentityHashMap<UploadableImage,UploadableImage> duplicateImageTable )
+          {
+          // Ignore the results if the upload has been abandoned in the meantime
+          if ( assetUploadRequest != assetUploadReq ) return;
+
+          mDuplicateImageTable = duplicateImageTable;
+
+          assetUploadRequest.setJournalKeys( imageKeysTable );
+
+          startAssetUpload( context, assetUploadRequest );
+          }
+        } );
+      }
+
+
+    private void startAssetUpload( Context context, AssetUploadRequest assetUploadRequest )
+      {
       // Crop any images where the the asset fragment is a sub-section of the original
-      // asset.
+      // asset. The crops and uploads are pipelined: each cropped image is uploaded
+      // as soon as it is ready, whilst any others are still being cropped.
 
-      mImagesToCropCount = 0;
+      List<UploadableImage> uploadableImageList = new ArrayList<>( mImagesToUpload.size() );
 
       for ( UploadableImage uploadableImage : mImagesToUpload )
         {
+        if ( mDuplicateImageTable.containsKey( uploadableImage ) ) continue;
+
+        uploadableImageList.add( uploadableImage );
+
+        if ( uploadableImage.hasBeenUploaded() ) continue;
+
         AssetFragment assetFragment = uploadableImage.getAssetFragment();
         Asset          asset        = uploadableImage.getAsset();
 
 
         // If this asset fragment is not full size then it needs to be cropped before
-        // it can be uploaded.
+        // it can be uploaded. Cropped images are always saved as JPEGs.
 
         if ( !assetFragment.isFullSize() )
           {
-          mImagesToCropCount++;
+          assetUploadRequest.addPendingAsset( uploadableImage, Asset.MIMEType.JPEG );
 
           ImageAgent.with( context )
                   .transform( asset )
                   .byCroppingTo( assetFragment.getProportionalRectangle() )
                   .intoNewAsset()
-                  .thenNotify( new ImageCroppedCallback( context, uploadableImage ) );
+                  .thenNotify( new ImageCroppedCallback( assetUploadRequest, uploadableImage ) );
           }
         }
 
 
-      // If there are no images to crop - start the upload immediately
-      if ( mImagesToCropCount < 1 ) startAssetUploadRequest( context );
-      }
-
-
-    private void startAssetUploadRequest( Context context )
-      {
-      final boolean[] previousError = { false };
-      final int[] outstandingLengthCallbacks = { mImagesToUpload.size() };
-
-      assetUploadReq = new AssetUploadRequest( context );
-      assetUploadReq.uploadAssets( context, mImagesToUpload, new MyAssetUploadRequestListener( context ) );
+      assetUploadRequest.uploadAssets( context, uploadableImageList, new MyAssetUploadRequestListener( context ) );
       }
 
 
@@ -1031,9 +1057,16 @@ public class Order implements Parcelable /* , Serializable */
         // we optimize the asset upload to avoid uploading assets that are considered to have
         // duplicate contents.
 
+        for ( UploadableImage duplicateImage : mDuplicateImageTable.keySet() )
+          {
+          UploadableImage originalImage = mDuplicateImageTable.get( duplicateImage );
+
+          duplicateImage.markAsUploaded( originalImage.getUploadedAssetId(), originalImage.getPreviewURL() );
+          }
+
         for ( Job job : jobs )
           {
-          for ( UploadableImage uploadedImage : uploadedImages )
+          for ( UploadableImage uploadedImage : mImagesToUpload )
             {
             for ( UploadableImage jobUploadableImage : job.getImagesForUploading() )
               {
@@ -1100,14 +1133,14 @@ public class Order implements Parcelable /* , Serializable */
 
     private class ImageCroppedCallback implements ImageProcessingRequest.ICallback
       {
-      private Context          mContext;
-      private UploadableImage  mUploadableImage;
+      private AssetUploadRequest  mAssetUploadRequest;
+      private UploadableImage     mUploadableImage;
 
 
-      ImageCroppedCallback( Context context, UploadableImage uploadableImage )
+      ImageCroppedCallback( AssetUploadRequest assetUploadRequest, UploadableImage uploadableImage )
         {
-        mContext         = context;
-        mUploadableImage = uploadableImage;
+        mAssetUploadRequest = assetUploadRequest;
+        mUploadableImage    = uploadableImage;
         }
 
 
@@ -1117,12 +1150,10 @@ public class Order implements Parcelable /* , Serializable */
         // Replace the previous asset fragment with the entire area of the cropped asset
         mUploadableImage.setImage( targetAsset );
 
-        mImagesToCropCount --;
-
-        // If all the images have been cropped - start the upload
-        if ( mImagesToCropCount < 1 )
+        // Let the upload start, unless the upload has been abandoned in the meantime
+        if ( mAssetUploadRequest == assetUploadReq )
           {
-          startAssetUploadRequest( mContext );
+          mAssetUploadRequest.onAssetReady( mUploadableImage );
           }
         }
 
@@ -1130,6 +1161,11 @@ public class Order implements Parcelable /* , Serializable */
       @Override
       public void ipcOnImageUnavailable()
         {
+        // Ignore the failure if the upload has already been abandoned
+        if ( mAssetUploadRequest != assetUploadReq ) return;
+
+        mAssetUploadRequest.cancelUpload();
+
         assetUploadReq  = null;
         mImagesToUpload = null;
 
@@ -45,6 +45,7 @@ package ly.kite.ordering;
 import android.content.Context;
 import android.os.AsyncTask;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -112,6 +113,17 @@ public class OrderingDataAgent
 
   ////////// Method(s) //////////
 
+  /*****************************************************
+   *
+   * Returns the database agent.
+   *
+   *****************************************************/
+  OrderingDatabaseAgent getDatabaseAgent()
+    {
+    return ( mOrderingDatabaseAgent );
+    }
+
+
   /*****************************************************
    *
    * Clears a basket.
@@ -217,21 +229,22 @@ public class OrderingDataAgent
       {
       // Each list of image specs now corresponds to a basket item
 
+      List<List<ImageSpec>> basketImageSpecLists = new ArrayList<>( splitImageSpecLists.size() );
+
       for ( List<ImageSpec> itemImageSpecList : splitImageSpecLists )
         {
         if ( itemImageSpecList != null )
           {
           // Move any referenced assets to the basket (if they are not already in)
-          itemImageSpecList = AssetHelper.createAsBasketAssets( mApplicationContext, BASKET_ID_DEFAULT, itemImageSpecList );
-
-          // Create or replace the basket item
-          mOrderingDatabaseAgent.saveDefaultBasketItem( itemId, product, optionsMap, itemImageSpecList, orderQuantity );
-
-          // If we were supplied an item id then this is an update. However, if more images were
-          // subsequently added whilst editing the item - additional jobs are inserted as new ones.
-          itemId = CREATE_NEW_ITEM_ID;
+          basketImageSpecLists.add( AssetHelper.createAsBasketAssets( mApplicationContext, BASKET_ID_DEFAULT, itemImageSpecList ) );
           }
         }
+
+
+      // Create or replace all the basket items in one go. If we were supplied an item id then
+      // the first item is an update. However, if more images were subsequently added whilst
+      // editing the item - additional jobs are inserted as new ones.
+      mOrderingDatabaseAgent.saveDefaultBasketItems( itemId, product, optionsMap, basketImageSpecLists, orderQuantity );
       }
     }
 
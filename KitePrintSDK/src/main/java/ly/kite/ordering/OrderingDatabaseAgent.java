@@ -47,14 +47,17 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.RectF;
 import android.util.Log;
 import android.util.SparseArray;
 
 import org.json.JSONObject;
 
+import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -86,7 +89,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
   static private final String LOG_TAG                                        = "OrderingDatabaseAgent";
 
   static private final String DATABASE_NAME                                  = "ordering.db";
-  static private final int    DATABASE_VERSION                               = 3;
+  static private final int    DATABASE_VERSION                               = 4;
 
   static private final String TABLE_ADDRESS                                  = "Address";
   static private final String TABLE_BASKET                                   = "Basket";
@@ -97,6 +100,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
   static private final String TABLE_OPTION                                   = "Option";
   static private final String TABLE_ORDER                                    = "_Order";
   static private final String TABLE_ORDER_ADDITIONAL_PARAMETER               = "OrderAdditionalParameter";
+  static private final String TABLE_UPLOAD_JOURNAL                           = "UploadJournal";
 
   static private final String COLUMN_IMAGE_SPEC_ID                           = "image_spec_id";
 
@@ -230,6 +234,36 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
           "CREATE UNIQUE INDEX OrderAdditionalParameterIndex1 ON " + TABLE_ORDER_ADDITIONAL_PARAMETER + " ( order_id, name )";
 
 
+  // The upload journal records images that have already been uploaded, so that an
+  // interrupted submission can be resumed without uploading them again.
+  static private final String SQL_CREATE_UPLOAD_JOURNAL_TABLE =
+          "CREATE TABLE " + TABLE_UPLOAD_JOURNAL +
+                  " ( " +
+                  "image_key            TEXT    PRIMARY KEY," +
+                  "asset_id             INTEGER NOT NULL," +
+                  "preview_url          TEXT    NOT NULL," +
+                  "signed_upload_url    TEXT        NULL," +
+                  "upload_time          INTEGER NOT NULL" +
+                  " )";
+
+
+  // Pre-compiled inserts used when saving basket items
+  static private final String SQL_INSERT_ITEM =
+          "INSERT INTO " + TABLE_ITEM + " ( id, basket_id, product_id, order_quantity ) VALUES ( ?, ?, ?, ? )";
+
+  static private final String SQL_INSERT_OPTION =
+          "INSERT INTO " + TABLE_OPTION + " ( item_id, name, value ) VALUES ( ?, ?, ? )";
+
+  static private final String SQL_INSERT_IMAGE_SPEC =
+          "INSERT INTO " + TABLE_IMAGE_SPEC + " ( image_file_name, left, top, right, bottom, quantity ) VALUES ( ?, ?, ?, ?, ?, ? )";
+
+  static private final String SQL_INSERT_IMAGE_SPEC_ADDITIONAL_PARAMETER =
+          "INSERT INTO " + TABLE_IMAGE_SPEC_ADDITIONAL_PARAMETER + " ( image_spec_id, name, value ) VALUES ( ?, ?, ? )";
+
+  static private final String SQL_INSERT_ITEM_IMAGE_SPEC =
+          "INSERT INTO " + TABLE_ITEM_IMAGE_SPEC + " ( item_id, image_spec_index, " + COLUMN_IMAGE_SPEC_ID + " ) VALUES ( ?, ?, ? )";
+
+
   ////////// Static Variable(s) //////////
 
 
@@ -302,6 +336,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     database.execSQL( SQL_CREATE_ITEM_IMAGE_SPEC_TABLE );
     database.execSQL( SQL_CREATE_OPTION_TABLE );
     database.execSQL( SQL_CREATE_ORDER_ADDITIONAL_PARAMETER_TABLE );
+    database.execSQL( SQL_CREATE_UPLOAD_JOURNAL_TABLE );
 
     database.execSQL( SQL_CREATE_IMAGE_SPEC_ADDITIONAL_PARAMETER_INDEX_1 );
     database.execSQL( SQL_CREATE_ITEM_INDEX_1 );
@@ -323,10 +358,20 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
   @Override
   public void onUpgrade( SQLiteDatabase database, int oldVersionNumber, int newVersionNumber )
     {
-    if ( oldVersionNumber == 2 && newVersionNumber == 3 )
+    // Versions from 2 onwards can be upgraded by adding the tables that are missing
+
+    if ( oldVersionNumber >= 2 )
       {
-      database.execSQL( SQL_CREATE_IMAGE_SPEC_ADDITIONAL_PARAMETER_TABLE );
-      database.execSQL( SQL_CREATE_IMAGE_SPEC_ADDITIONAL_PARAMETER_INDEX_1 );
+      if ( oldVersionNumber < 3 )
+        {
+        database.execSQL( SQL_CREATE_IMAGE_SPEC_ADDITIONAL_PARAMETER_TABLE );
+        database.execSQL( SQL_CREATE_IMAGE_SPEC_ADDITIONAL_PARAMETER_INDEX_1 );
+        }
+
+      if ( oldVersionNumber < 4 )
+        {
+        database.execSQL( SQL_CREATE_UPLOAD_JOURNAL_TABLE );
+        }
       }
     else
       {
@@ -372,12 +417,11 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     ContentValues contentValues = new ContentValues();
 
      //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
     contentValues.put( "date",         pref.encrypt(getDateString() ));  // e.g. 02 June 2016
     contentValues.put( "description",  pref.encrypt(description ));
 
-    pref.reset();
     return ( contentValues );
     }
 
@@ -394,12 +438,11 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     ContentValues contentValues = getOrderContentValues( description );
 
     //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
     contentValues.put( "pricing_json", pref.encrypt(pricingJSON) );
     contentValues.put( "receipt",      pref.encrypt(receipt) );
 
-    pref.reset();
     return ( insertOrder( contentValues ) );
     }
 
@@ -409,7 +452,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
    *
    *****************************************************/
   private void updateOrderHistoryItem (OrderHistoryItem orderHistoryItem, SQLiteDatabase database) {
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
     StringBuilder sqlStringBuilder = new StringBuilder()
         .append( "UPDATE " ).append( TABLE_ORDER )
@@ -424,7 +467,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
         .append(        "receipt             = '" ).append( pref.encrypt(orderHistoryItem.getReceipt())).append( "'" )
         .append( " WHERE id = " ).append( orderHistoryItem.getOrderId() );
 
-    pref.reset();
     if ( database == null )
     {
       Log.e( LOG_TAG, "Unable to get writable database" );
@@ -440,7 +482,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
    *
    *****************************************************/
   private void updateOrderAdditionalParameters(HashMap<String,String> additionalParametersMap, Long orderId, SQLiteDatabase database) {
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
     String sqlDelete = "DELETE FROM " + TABLE_ORDER_ADDITIONAL_PARAMETER + " WHERE order_id = " + orderId;
 
@@ -457,7 +499,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
       contentValues.put("value", pref.encrypt(additionalParametersMap.get(name)));
       database.insert( TABLE_ORDER_ADDITIONAL_PARAMETER, null, contentValues );
     }
-    pref.reset();
   }
 
   /*****************************************************
@@ -466,7 +507,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
    *
    *****************************************************/
   private void updateAddress(Long addressId, Address address, SQLiteDatabase database) {
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
     StringBuilder sqlStringBuilder = new StringBuilder()
         .append( "UPDATE " ).append( TABLE_ADDRESS )
@@ -479,7 +520,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
         .append(        "country_iso2_code   = '" ).append( pref.encrypt(address.getCountry().iso2Code())).append("'")
         .append( " WHERE id = " ).append( addressId );
 
-    pref.reset();
     if ( database == null )
     {
       Log.e( LOG_TAG, "Unable to get writable database" );
@@ -504,12 +544,11 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
        return;
     }
 
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
     database.execSQL( "UPDATE " + TABLE_ITEM + " SET product_id = '" +  pref.encrypt(productId) + "' WHERE id = " + itemId );
     database.close();
 
-    pref.reset();
     }
 
    /*****************************************************
@@ -519,7 +558,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     *****************************************************/
     public void updateBasketOption( long itemId, String name, String value, SQLiteDatabase database)
     {
-      SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+      SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
       StringBuilder sqlStringBuilder = new StringBuilder()
           .append( "UPDATE " ).append( TABLE_OPTION )
@@ -527,7 +566,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
           .append(        "value               = '" ).append( pref.encrypt(value)).append("'")
           .append( " WHERE item_id = " ).append( itemId );
 
-      pref.reset();
       if ( database == null )
       {
         Log.e( LOG_TAG, "Unable to get writable database" );
@@ -549,9 +587,8 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
         return;
       }
 
-      SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+      SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
       database.execSQL( "UPDATE " + TABLE_IMAGE_SPEC + " SET image_file_name = '" +  pref.encrypt(image_file_name) + "' WHERE id = " + id );
-      pref.reset();
     }
 
   /*****************************************************
@@ -569,7 +606,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
       return;
     }
 
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
     database.execSQL(sqlDelete);
     for ( String name : additionalParametersMap.keySet() ) {
       ContentValues contentValues = new ContentValues();
@@ -578,7 +615,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
       contentValues.put("value", pref.encrypt(additionalParametersMap.get(name)));
       database.insert( TABLE_IMAGE_SPEC_ADDITIONAL_PARAMETER, null, contentValues );
     }
-    pref.reset();
   }
 
   /*****************************************************
@@ -593,7 +629,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     ContentValues contentValues = getOrderContentValues( order.getItemsDescription() );
 
     //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
 
     // Create a shipping address
@@ -638,7 +674,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
         }
       }
 
-    pref.reset();
     return ( orderId );
     }
 
@@ -704,7 +739,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
 
 
     //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
     try
       {
       // Go through each of the options
@@ -729,7 +764,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
       }
     finally
       {
-      pref.reset();
       if ( database != null ) database.close();
       }
     }
@@ -796,46 +830,69 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
    *****************************************************/
   public void saveDefaultBasketItem( long itemId, Product product, HashMap<String,String> optionsMap, List<ImageSpec> imageSpecList, int orderQuantity )
     {
-    // Create the item and product options
-
-    itemId = newBasketItem( itemId, OrderingDataAgent.BASKET_ID_DEFAULT, product, optionsMap, orderQuantity );
-
-    if ( itemId < 0 ) return;
-
-
-    // Create the image specs
-
-    long[] imageSpecIds = insertImageSpecs( imageSpecList );
-
-    if ( imageSpecIds == null ) return;
+    List<List<ImageSpec>> imageSpecLists = new ArrayList<>( 1 );
 
+    imageSpecLists.add( imageSpecList );
 
-    // Create item image specs
-    insertItemImageSpecs( itemId, imageSpecIds );
+    saveDefaultBasketItems( itemId, product, optionsMap, imageSpecLists, orderQuantity );
     }
 
 
   /*****************************************************
    *
-   * Inserts an item and its options.
+   * Saves a set of items, each with its own list of image
+   * specs, to the default basket. The first item is saved
+   * with the supplied item id; any further items are created
+   * as new ones.
    *
-   * @return The (primary key /) id of the new job, or -1,
-   *         if the job could not be created.
+   * All the items are written in a single transaction using
+   * pre-compiled statements, so either all of them are saved,
+   * or none of them are.
    *
    *****************************************************/
-  private long newBasketItem( long itemId, long basketId, Product product, HashMap<String,String> optionsMap, int orderQuantity )
+  public void saveDefaultBasketItems( long firstItemId, Product product, HashMap<String,String> optionsMap, List<List<ImageSpec>> imageSpecLists, int orderQuantity )
     {
-    // Insert the item
+    SQLiteDatabase database = getWritableDatabase();
+
+    if ( database == null )
+      {
+      Log.e( LOG_TAG, "Unable to get writable database" );
+
+      return;
+      }
+
+
+    BasketItemWriter basketItemWriter = null;
+
+    database.beginTransaction();
 
-    itemId = insertBasketItem( itemId, basketId, product, orderQuantity );
+    try
+      {
+      basketItemWriter = new BasketItemWriter( database );
 
-    if ( itemId < 0 ) return ( itemId );
+      long itemId = firstItemId;
 
+      for ( List<ImageSpec> imageSpecList : imageSpecLists )
+        {
+        if ( basketItemWriter.insertItem( itemId, OrderingDataAgent.BASKET_ID_DEFAULT, product, optionsMap, imageSpecList, orderQuantity ) < 0 ) return;
 
-    // Insert any options
-    if ( optionsMap != null ) insertOptions( itemId, optionsMap );
+        itemId = OrderingDataAgent.CREATE_NEW_ITEM_ID;
+        }
+
+      database.setTransactionSuccessful();
+      }
+    catch ( Exception exception )
+      {
+      Log.e( LOG_TAG, "Unable to save basket items", exception );
+      }
+    finally
+      {
+      if ( basketItemWriter != null ) basketItemWriter.close();
 
-    return ( itemId );
+      database.endTransaction();
+
+      database.close();
+      }
     }
 
 
@@ -904,66 +961,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     }
 
 
-  /*****************************************************
-   *
-   * Inserts an item.
-   *
-   * @return The (primary key /) id of the new item, or -1,
-   *         if the item could not be created.
-   *
-   *****************************************************/
-  private long insertBasketItem( long itemId, long basketId, Product product, int orderQuantity )
-    {
-    SQLiteDatabase database = getWritableDatabase();
-
-    if ( database == null )
-      {
-      Log.e( LOG_TAG, "Unable to get writable database" );
-
-      return ( -1 );
-      }
-
-
-    // Create the values to be inserted. We don't specify the item id because
-    // we want the database to auto-generate it for us.
-
-    ContentValues contentValues = new ContentValues();
-
-    //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
-
-    if ( itemId >= 0 ) contentValues.put( "id", itemId );
-    contentValues.put( "basket_id",      basketId );
-    contentValues.put( "product_id",     pref.encrypt(product.getId()) );
-    contentValues.put( "order_quantity", orderQuantity );
-
-    // Try to insert the new item
-
-    try
-      {
-      itemId = database.insert( TABLE_ITEM, null, contentValues );
-
-      if ( itemId < 0 )
-        {
-        Log.e( LOG_TAG, "Unable to insert new item" );
-        }
-
-      return ( itemId );
-      }
-    catch ( Exception exception )
-      {
-      Log.e( LOG_TAG, "Unable to insert new item", exception );
-
-      return ( -1 );
-      }
-    finally
-      {
-        pref.reset();
-        if ( database != null ) database.close();
-      }
-    }
-
-
   /*****************************************************
    *
    * Updates a previously failed order that is now successful.
@@ -1026,269 +1023,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     }
 
 
-  /*****************************************************
-   *
-   * Inserts a map of options.
-   *
-   * @return The (primary keys /) ids of the inserted assets,
-   *         or null, if any of the assets could not be created.
-   *
-   *****************************************************/
-  private void insertOptions( long itemId, HashMap<String,String> optionsMap )
-    {
-    SQLiteDatabase database = getWritableDatabase();
-
-    if ( database == null )
-      {
-      Log.e( LOG_TAG, "Unable to get writable database" );
-
-      return;
-      }
-
-    //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
-
-    try
-      {
-      // Go through each of the options
-
-      for ( String name : optionsMap.keySet() )
-        {
-        // Create and try to insert the new option
-
-        ContentValues contentValues = new ContentValues();
-
-        contentValues.put( "item_id", itemId );
-        contentValues.put( "name",    pref.encrypt(name) );
-        contentValues.put( "value",   pref.encrypt(optionsMap.get( name )) );
-
-        database.insert( TABLE_OPTION, null, contentValues );
-        }
-      }
-    catch ( Exception exception )
-      {
-      Log.e( LOG_TAG, "Unable to insert option", exception );
-      }
-    finally
-      {
-      pref.reset();
-      if ( database != null ) database.close();
-      }
-    }
-
-
-  /*****************************************************
-   *
-   * Inserts a list of image specs.
-   *
-   * @return The (primary keys /) ids of the inserted assets,
-   *         or null, if any of the assets could not be created.
-   *
-   *****************************************************/
-  private long[] insertImageSpecs( List<ImageSpec> imageSpecList )
-    {
-    ImageSpec[] imageSpecArray = new ImageSpec[ imageSpecList.size() ];
-
-    imageSpecList.toArray( imageSpecArray );
-
-    return ( insertImageSpecs( imageSpecArray ) );
-    }
-
-
-  /*****************************************************
-   *
-   * Inserts an array of image specs.
-   *
-   * @return The (primary keys /) ids of the inserted assets,
-   *         or null, if any of the assets could not be created.
-   *
-   *****************************************************/
-  private long[] insertImageSpecs( ImageSpec... imageSpecs )
-    {
-    SQLiteDatabase database = getWritableDatabase();
-
-    if ( database == null )
-      {
-      Log.e( LOG_TAG, "Unable to get writable database" );
-
-      return ( null );
-      }
-
-
-    // Create a return array
-    long[] imageSpecIds = new long[ imageSpecs.length ];
-
-    //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
-
-    try
-      {
-      // Go through each of the image specs in order
-
-      int imageSpecIndex = 0;
-
-      for ( ImageSpec imageSpec : imageSpecs )
-        {
-        // If the image spec is null, we use a placeholder value of -1 for the id.
-
-        long imageSpecId;
-
-        if ( imageSpec != null )
-          {
-          // Create and try to insert the new image spec
-
-          AssetFragment assetFragment         = imageSpec.getAssetFragment();
-          Asset         asset                 = assetFragment.getAsset();
-          RectF         proportionalRectangle = assetFragment.getProportionalRectangle();
-
-          ContentValues contentValues = new ContentValues();
-
-          // If the asset isn't an image file, this should throw an exception, which is what we want.
-          contentValues.put( "image_file_name", pref.encrypt(asset.getImageFileName()));
-          contentValues.put( "left",            proportionalRectangle.left );
-          contentValues.put( "top",             proportionalRectangle.top );
-          contentValues.put( "right",           proportionalRectangle.right );
-          contentValues.put( "bottom",          proportionalRectangle.bottom );
-          contentValues.put( "quantity",        imageSpec.getQuantity() );
-
-          imageSpecId = database.insert( TABLE_IMAGE_SPEC, null, contentValues );
-
-          if ( imageSpecId < 0 )
-            {
-            Log.e( LOG_TAG, "Unable to insert new image spec" );
-
-            return ( null );
-            }
-
-
-          // Insert any image spec additional parameters
-
-          String borderText = imageSpec.getBorderText();
-
-          if ( borderText != null )
-            {
-            insertImageSpecAdditionalParameter( database, imageSpecId, IMAGE_SPEC_ADDITIONAL_PARAMETER_NAME_BORDER_TEXT, borderText );
-            }
-          }
-        else
-          {
-          imageSpecId = -1;
-          }
-
-
-        // Save the asset id
-        imageSpecIds[ imageSpecIndex ++ ] = imageSpecId;
-        }
-
-
-      return ( imageSpecIds );
-      }
-    catch ( Exception exception )
-      {
-      Log.e( LOG_TAG, "Unable to insert new image spec", exception );
-
-      return ( null );
-      }
-    finally
-      {
-      pref.reset();
-      if ( database != null ) database.close();
-      }
-    }
-
-
-  /*****************************************************
-   *
-   * Inserts a set of item / image spec mappings.
-   *
-   *****************************************************/
-  private void insertItemImageSpecs( long itemId, long[] imageSpecIds )
-    {
-    SQLiteDatabase database = getWritableDatabase();
-
-    if ( database == null )
-      {
-      Log.e( LOG_TAG, "Unable to get writable database" );
-
-      return;
-      }
-
-
-    try
-      {
-      // Go through each of the image spec ids. We create a row for blank (< 0) asset
-      // ids.
-
-      int imageSpecIndex = 0;
-
-      for ( long imageSpecId : imageSpecIds )
-        {
-        // Create and try to insert the new item image spec
-
-        ContentValues contentValues = new ContentValues();
-
-        contentValues.put( "item_id",          itemId );
-        contentValues.put( "image_spec_index", imageSpecIndex ++ );
-
-        putImageSpecId( contentValues, imageSpecId );
-
-        database.insert( TABLE_ITEM_IMAGE_SPEC, null, contentValues );
-        }
-      }
-    catch ( Exception exception )
-      {
-      Log.e( LOG_TAG, "Unable to insert new item image spec", exception );
-      }
-    finally
-      {
-      if ( database != null ) database.close();
-      }
-    }
-
-
-  /*****************************************************
-   *
-   * Inserts an image spec additional parameter.
-   *
-   * @return The (primary key /) id of the new item, or -1,
-   *         if the item could not be created.
-   *
-   *****************************************************/
-  private long insertImageSpecAdditionalParameter( SQLiteDatabase database, long imageSpecId, String name, String value )
-    {
-    ContentValues contentValues = new ContentValues();
-
-    //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
-
-    contentValues.put( "image_spec_id", imageSpecId );
-    contentValues.put( "name",          pref.encrypt(name) );
-    contentValues.put( "value",         pref.encrypt(value) );
-
-    pref.reset();
-
-    // Try to insert the new parameter
-
-    try
-      {
-      long id = database.insert( TABLE_IMAGE_SPEC_ADDITIONAL_PARAMETER, null, contentValues );
-
-      if ( id < 0 )
-        {
-        Log.e( LOG_TAG, "Unable to insert new image spec parameter" );
-        }
-
-      return ( id );
-      }
-    catch ( Exception exception )
-      {
-      Log.e( LOG_TAG, "Unable to insert new image spec parameter", exception );
-
-      return ( -1 );
-      }
-    }
-
-
   /*****************************************************
    *
    * Inserts an address.
@@ -1311,7 +1045,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     ContentValues contentValues = new ContentValues();
 
     //////// Encryption initialiser //////////
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
     putStringOrNull( contentValues, "recipient_name",     pref.encrypt (address.getRecipientName() ));
     putStringOrNull( contentValues, "line1",              pref.encrypt (address.getLine1() ));
@@ -1321,7 +1055,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     putStringOrNull( contentValues, "zip_or_postal_code", pref.encrypt (address.getZipOrPostalCode() ));
     putStringOrNull( contentValues, "country_iso2_code",  pref.encrypt (address.getCountry().iso2Code() ));
 
-    pref.reset();
     // Try to insert the new address
 
     try
@@ -1348,32 +1081,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     }
 
 
-  /*****************************************************
-   *
-   * Puts an image spec id into a content value, for
-   * the supplied key. If the asset id < 0 then a null is
-   * put instead.
-   *
-   *****************************************************/
-  private void putImageSpecId( ContentValues contentValues, String key, long imageSpecId )
-    {
-    if ( imageSpecId >= 0 ) contentValues.put( key, imageSpecId );
-    else                    contentValues.putNull( key );
-    }
-
-
-  /*****************************************************
-   *
-   * Puts an image spec id into a content value. If the
-   * asset id < 0 then a null is put instead.
-   *
-   *****************************************************/
-  private void putImageSpecId( ContentValues contentValues, long imageSpecId )
-    {
-    putImageSpecId( contentValues, COLUMN_IMAGE_SPEC_ID, imageSpecId );
-    }
-
-
   /*****************************************************
    *
    * Puts a string into a content value, for the supplied
@@ -1433,13 +1140,13 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
       List<OrderHistoryItem> orderHistoryItemList = new ArrayList<>();
 
       //////// Decryption initialiser //////////
+      SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
 
       // Process every row
 
       while ( cursor.moveToNext() )
         {
-          SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
           boolean hasToBeEncrypted = false;
           long orderId;
           String dateString;
@@ -1514,7 +1221,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
                     proofOfPayment,
                     receipt);
 
-          pref.reset();
           if(hasToBeEncrypted && SecurePreferences.encryptData) {
             updateOrderHistoryItem(orderHistoryItem, database);
           }
@@ -1633,7 +1339,7 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
     // Initialise the database and cursor
     SQLiteDatabase database = null;
     Cursor         cursor   = null;
-    SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+    SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
 
     try
       {
@@ -1686,7 +1392,6 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
 
         additionalParametersMap.put( name, value );
         }
-      pref.reset();
       if(SecurePreferences.encryptData) {
         for (int i = 0; i < toBeEncrypted.size(); i++) {
           Long key = toBeEncrypted.get(i);
@@ -1749,6 +1454,9 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
 
       SparseArray<Address> shippingAddressSparseArray = new SparseArray<>();
 
+      //////// Decryption initialiser //////////
+      SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
+
 
       // Process every row; each row corresponds to an additional parameter
 
@@ -1768,16 +1476,22 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
         String countryISO2Code;
 
         try {
-          SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
           addressId = cursor.getLong(cursor.getColumnIndex("id"));
-          recipientName = pref.decrypt(getStringOrNull(cursor, "recipient_name"));
-          line1 = pref.decrypt(getStringOrNull(cursor, "line1"));
-          line2 = pref.decrypt(getStringOrNull(cursor, "line2"));
-          city = pref.decrypt(getStringOrNull(cursor, "city"));
-          stateOrCounty = pref.decrypt(getStringOrNull(cursor, "state_or_county"));
-          zipOrPostalCode = pref.decrypt(getStringOrNull(cursor, "zip_or_postal_code"));
-          countryISO2Code = pref.decrypt(getStringOrNull(cursor, "country_iso2_code"));
-          pref.reset();
+          String[] decryptedValues = pref.decryptAll(
+                  getStringOrNull(cursor, "recipient_name"),
+                  getStringOrNull(cursor, "line1"),
+                  getStringOrNull(cursor, "line2"),
+                  getStringOrNull(cursor, "city"),
+                  getStringOrNull(cursor, "state_or_county"),
+                  getStringOrNull(cursor, "zip_or_postal_code"),
+                  getStringOrNull(cursor, "country_iso2_code"));
+          recipientName = decryptedValues[0];
+          line1 = decryptedValues[1];
+          line2 = decryptedValues[2];
+          city = decryptedValues[3];
+          stateOrCounty = decryptedValues[4];
+          zipOrPostalCode = decryptedValues[5];
+          countryISO2Code = decryptedValues[6];
         } catch (Exception e) {
           hasToBeEncrypted = true;
           addressId = cursor.getLong(cursor.getColumnIndex("id"));
@@ -1892,9 +1606,8 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
         long itemId = itemContentValues.getAsLong("item_id");
         String productId;
         try {
-          SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+          SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
           productId = pref.decrypt(itemContentValues.getAsString("product_id"));
-          pref.reset();
         } catch (Exception e) {
           productId = itemContentValues.getAsString("product_id");
           if(SecurePreferences.encryptData) {
@@ -2102,10 +1815,9 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
         String name;
         String value;
         try {
-          SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+          SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
           name = pref.decrypt(cursor.getString(cursor.getColumnIndex("name")));
           value = pref.decrypt(cursor.getString(cursor.getColumnIndex("value")));
-          pref.reset();
         } catch (Exception e) {
           name = cursor.getString(cursor.getColumnIndex("name"));
           value = cursor.getString(cursor.getColumnIndex("value"));
@@ -2209,9 +1921,8 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
           String imageFileName;
           try {
             //////// Decryption initialiser //////////
-            SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+            SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
             imageFileName = pref.decrypt(cursor.getString(cursor.getColumnIndex("image_file_name")));
-            pref.reset();
           } catch (Exception e) {
             imageFileName = cursor.getString(cursor.getColumnIndex("image_file_name"));
             if(SecurePreferences.encryptData) {
@@ -2313,10 +2024,9 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
         String name;
         String value;
         try {
-          SecurePreferences pref = new SecurePreferences(KiteSDK.ENCRYPTION_KEY);
+          SecurePreferences pref = SecurePreferences.getInstance(KiteSDK.ENCRYPTION_KEY);
           name = pref.decrypt(cursor.getString(cursor.getColumnIndex("name")));
           value = pref.decrypt(cursor.getString(cursor.getColumnIndex("value")));
-          pref.reset();
         } catch (Exception e) {
           if(!toBeEncrypted.contains(imageSpecId)) {
             toBeEncrypted.add(imageSpecId);
@@ -2823,12 +2533,342 @@ public class OrderingDatabaseAgent extends SQLiteOpenHelper
 
 
 
+  /*****************************************************
+   *
+   * Records an uploaded image in the upload journal,
+   * replacing any previous entry for the same image.
+   *
+   *****************************************************/
+  public void insertUploadJournalEntry( String imageKey, long assetId, URL previewURL, URL signedUploadURL, long uploadTime )
+    {
+    ContentValues contentValues = new ContentValues();
+
+    contentValues.put( "image_key",   imageKey );
+    contentValues.put( "asset_id",    assetId );
+    contentValues.put( "preview_url", previewURL.toString() );
+    contentValues.put( "upload_time", uploadTime );
+
+    putStringOrNull( contentValues, "signed_upload_url", ( signedUploadURL != null ? signedUploadURL.toString() : null ) );
+
+
+    SQLiteDatabase database = null;
+
+    try
+      {
+      database = getWritableDatabase();
+
+      if ( database.insertWithOnConflict( TABLE_UPLOAD_JOURNAL, null, contentValues, SQLiteDatabase.CONFLICT_REPLACE ) < 0 )
+        {
+        Log.e( LOG_TAG, "Unable to insert upload journal entry" );
+        }
+      }
+    catch ( Exception exception )
+      {
+      Log.e( LOG_TAG, "Unable to insert upload journal entry", exception );
+      }
+    finally
+      {
+      if ( database != null ) database.close();
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the upload journal entries for the supplied
+   * image keys, ignoring any that were uploaded before the
+   * earliest upload time. Keys without an entry are not
+   * included in the returned table.
+   *
+   *****************************************************/
+  public HashMap<String,UploadJournal.Entry> selectUploadJournalEntries( Collection<String> imageKeys, long earliestUploadTime )
+    {
+    HashMap<String,UploadJournal.Entry> entryTable = new HashMap<>();
+
+    if ( imageKeys.size() < 1 ) return ( entryTable );
+
+
+    SQLiteDatabase database = null;
+    Cursor         cursor   = null;
+
+    try
+      {
+      database = getWritableDatabase();
+
+      // Each key is a primary key lookup, so there's no need to build one
+      // large query.
+      for ( String imageKey : imageKeys )
+        {
+        cursor = database.rawQuery( "SELECT asset_id, preview_url FROM " + TABLE_UPLOAD_JOURNAL + " WHERE image_key = ? AND upload_time >= ?",
+                new String[] { imageKey, String.valueOf( earliestUploadTime ) } );
+
+        if ( cursor.moveToFirst() )
+          {
+          long assetId    = cursor.getLong( cursor.getColumnIndex( "asset_id" ) );
+          URL  previewURL = new URL( cursor.getString( cursor.getColumnIndex( "preview_url" ) ) );
+
+          entryTable.put( imageKey, new UploadJournal.Entry( assetId, previewURL ) );
+          }
+
+        cursor.close();
+        cursor = null;
+        }
+      }
+    catch ( Exception exception )
+      {
+      Log.e( LOG_TAG, "Unable to select upload journal entries", exception );
+      }
+    finally
+      {
+      if ( cursor != null ) cursor.close();
+
+      if ( database != null ) database.close();
+      }
+
+    return ( entryTable );
+    }
+
+
+  /*****************************************************
+   *
+   * Deletes any upload journal entries that were uploaded
+   * before the earliest upload time.
+   *
+   *****************************************************/
+  public void deleteUploadJournalEntries( long earliestUploadTime )
+    {
+    SQLiteDatabase database = null;
+
+    try
+      {
+      database = getWritableDatabase();
+
+      database.delete( TABLE_UPLOAD_JOURNAL, "upload_time < ?", new String[] { String.valueOf( earliestUploadTime ) } );
+      }
+    catch ( Exception exception )
+      {
+      Log.e( LOG_TAG, "Unable to delete upload journal entries", exception );
+      }
+    finally
+      {
+      if ( database != null ) database.close();
+      }
+    }
+
+
   ////////// Inner Class(es) //////////
 
   /*****************************************************
    *
-   * ...
+   * Writes basket items to an open database, using
+   * statements that are compiled once and re-used for every
+   * row. The caller is responsible for the transaction, and
+   * must close the writer when it has finished.
+   *
+   * Values that are likely to be repeated across items (the
+   * product id, options, and parameter names) are only
+   * encrypted once.
    *
    *****************************************************/
+  static private class BasketItemWriter
+    {
+    private SecurePreferences        mSecurePreferences;
+    private HashMap<String,String>   mEncryptedValueTable;
+
+    private SQLiteStatement          mItemStatement;
+    private SQLiteStatement          mOptionStatement;
+    private SQLiteStatement          mImageSpecStatement;
+    private SQLiteStatement          mImageSpecAdditionalParameterStatement;
+    private SQLiteStatement          mItemImageSpecStatement;
+
+
+    BasketItemWriter( SQLiteDatabase database )
+      {
+      mSecurePreferences   = SecurePreferences.getInstance( KiteSDK.ENCRYPTION_KEY );
+      mEncryptedValueTable = new HashMap<>();
+
+      mItemStatement                         = database.compileStatement( SQL_INSERT_ITEM );
+      mOptionStatement                       = database.compileStatement( SQL_INSERT_OPTION );
+      mImageSpecStatement                    = database.compileStatement( SQL_INSERT_IMAGE_SPEC );
+      mImageSpecAdditionalParameterStatement = database.compileStatement( SQL_INSERT_IMAGE_SPEC_ADDITIONAL_PARAMETER );
+      mItemImageSpecStatement                = database.compileStatement( SQL_INSERT_ITEM_IMAGE_SPEC );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns the encrypted form of a value that is likely
+     * to be repeated.
+     *
+     *****************************************************/
+    private String encryptRepeated( String value )
+      {
+      String encryptedValue = mEncryptedValueTable.get( value );
+
+      if ( encryptedValue == null )
+        {
+        encryptedValue = mSecurePreferences.encrypt( value );
+
+        mEncryptedValueTable.put( value, encryptedValue );
+        }
+
+      return ( encryptedValue );
+      }
+
+
+    /*****************************************************
+     *
+     * Inserts an item, together with its options and image
+     * specs.
+     *
+     * @return The (primary key /) id of the new item, or -1,
+     *         if the item could not be created.
+     *
+     *****************************************************/
+    long insertItem( long itemId, long basketId, Product product, HashMap<String,String> optionsMap, List<ImageSpec> imageSpecList, int orderQuantity )
+      {
+      // Insert the item. If we weren't supplied an item id, we let the
+      // database auto-generate it for us.
+
+      mItemStatement.clearBindings();
+
+      if ( itemId >= 0 ) mItemStatement.bindLong( 1, itemId );
+      else               mItemStatement.bindNull( 1 );
+
+      mItemStatement.bindLong  ( 2, basketId );
+      mItemStatement.bindString( 3, encryptRepeated( product.getId() ) );
+      mItemStatement.bindLong  ( 4, orderQuantity );
+
+      itemId = mItemStatement.executeInsert();
+
+      if ( itemId < 0 )
+        {
+        Log.e( LOG_TAG, "Unable to insert new item" );
+
+        return ( -1 );
+        }
+
+
+      // Insert any options
+
+      if ( optionsMap != null )
+        {
+        for ( String name : optionsMap.keySet() )
+          {
+          String value = optionsMap.get( name );
+
+          // Options are not nullable, so skip any that don't have a value
+          if ( value == null ) continue;
+
+          mOptionStatement.clearBindings();
+
+          mOptionStatement.bindLong  ( 1, itemId );
+          mOptionStatement.bindString( 2, encryptRepeated( name ) );
+          mOptionStatement.bindString( 3, encryptRepeated( value ) );
+
+          mOptionStatement.executeInsert();
+          }
+        }
+
+
+      // Insert the image specs, and the item / image spec mappings. We create a
+      // mapping with a null image spec id for blank image specs.
+
+      int imageSpecIndex = 0;
+
+      for ( ImageSpec imageSpec : imageSpecList )
+        {
+        long imageSpecId = ( imageSpec != null ? insertImageSpec( imageSpec ) : -1 );
+
+        if ( imageSpec != null && imageSpecId < 0 ) return ( -1 );
+
+        mItemImageSpecStatement.clearBindings();
+
+        mItemImageSpecStatement.bindLong( 1, itemId );
+        mItemImageSpecStatement.bindLong( 2, imageSpecIndex ++ );
+
+        if ( imageSpecId >= 0 ) mItemImageSpecStatement.bindLong( 3, imageSpecId );
+        else                    mItemImageSpecStatement.bindNull( 3 );
+
+        mItemImageSpecStatement.executeInsert();
+        }
+
+
+      return ( itemId );
+      }
+
+
+    /*****************************************************
+     *
+     * Inserts an image spec, and any additional parameters.
+     *
+     * @return The (primary key /) id of the new image spec,
+     *         or -1, if the image spec could not be created.
+     *
+     *****************************************************/
+    private long insertImageSpec( ImageSpec imageSpec )
+      {
+      AssetFragment assetFragment         = imageSpec.getAssetFragment();
+      Asset         asset                 = assetFragment.getAsset();
+      RectF         proportionalRectangle = assetFragment.getProportionalRectangle();
+
+      mImageSpecStatement.clearBindings();
+
+      // If the asset isn't an image file, this should throw an exception, which is what we want.
+      mImageSpecStatement.bindString( 1, mSecurePreferences.encrypt( asset.getImageFileName() ) );
+      mImageSpecStatement.bindDouble( 2, proportionalRectangle.left );
+      mImageSpecStatement.bindDouble( 3, proportionalRectangle.top );
+      mImageSpecStatement.bindDouble( 4, proportionalRectangle.right );
+      mImageSpecStatement.bindDouble( 5, proportionalRectangle.bottom );
+      mImageSpecStatement.bindLong  ( 6, imageSpec.getQuantity() );
+
+      long imageSpecId = mImageSpecStatement.executeInsert();
+
+      if ( imageSpecId < 0 )
+        {
+        Log.e( LOG_TAG, "Unable to insert new image spec" );
+
+        return ( -1 );
+        }
+
+
+      // Insert any image spec additional parameters
+
+      String borderText = imageSpec.getBorderText();
+
+      if ( borderText != null )
+        {
+        mImageSpecAdditionalParameterStatement.clearBindings();
+
+        mImageSpecAdditionalParameterStatement.bindLong  ( 1, imageSpecId );
+        mImageSpecAdditionalParameterStatement.bindString( 2, encryptRepeated( IMAGE_SPEC_ADDITIONAL_PARAMETER_NAME_BORDER_TEXT ) );
+        mImageSpecAdditionalParameterStatement.bindString( 3, mSecurePreferences.encrypt( borderText ) );
+
+        if ( mImageSpecAdditionalParameterStatement.executeInsert() < 0 )
+          {
+          Log.e( LOG_TAG, "Unable to insert new image spec parameter" );
+          }
+        }
+
+
+      return ( imageSpecId );
+      }
+
+
+    /*****************************************************
+     *
+     * Releases the compiled statements.
+     *
+     *****************************************************/
+    void close()
+      {
+      mItemStatement.close();
+      mOptionStatement.close();
+      mImageSpecStatement.close();
+      mImageSpecAdditionalParameterStatement.close();
+      mItemImageSpecStatement.close();
+      }
+
+    }
 
   }
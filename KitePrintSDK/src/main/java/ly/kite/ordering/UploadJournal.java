@@ -0,0 +1,678 @@
+/*****************************************************
+ *
+ * UploadJournal.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.ordering;
+
+
+///// Import(s) /////
+
+import android.content.Context;
+import android.graphics.RectF;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.File;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import ly.kite.KiteSDK;
+import ly.kite.util.Asset;
+import ly.kite.util.AssetFragment;
+import ly.kite.util.AssetHelper;
+import ly.kite.util.UploadableImage;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class records images that have been uploaded, so
+ * that an order submission that is interrupted (even by
+ * the process being killed) can be resumed without
+ * uploading them again.
+ *
+ * Images are identified by keys derived from their
+ * source and crop, rather than from the upload itself,
+ * because cropped images are re-created on each attempt.
+ * An image may have three keys: one from where it is
+ * stored, which is cheap to find, one from its size, and
+ * one from its content, which also matches copies of the
+ * same image in other baskets and orders. Reading the
+ * content of an image is expensive, so it is only done
+ * up front when the size key shows that the content may
+ * match. Otherwise the content key is worked out once
+ * the image has been uploaded.
+ *
+ *****************************************************/
+public class UploadJournal
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG               = "UploadJournal";
+
+  // Entries expire after this time, in case the uploaded assets are removed
+  static private final long    MAX_ENTRY_AGE_MILLIS  = 7L * 24L * 60L * 60L * 1000L;  // 7 days
+
+  static private final char[]  HEX_DIGITS            = "0123456789abcdef".toCharArray();
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns the journal key for an image, or null if the
+   * image can't be reliably identified between sessions.
+   *
+   * Must not be called on the UI thread, because file
+   * images are checked on the filesystem.
+   *
+   *****************************************************/
+  static public String getImageKey( Context context, UploadableImage uploadableImage )
+    {
+    AssetFragment assetFragment = uploadableImage.getAssetFragment();
+    Asset         asset         = assetFragment.getAsset();
+
+    // Asset ids are only valid for the API key they were uploaded with
+    StringBuilder keyStringBuilder = new StringBuilder()
+            .append( KiteSDK.getInstance( context ).getAPIKey() )
+            .append( '|' );
+
+    switch ( asset.getType() )
+      {
+      case IMAGE_FILE:
+
+        File imageFile = asset.getImageFile();
+
+        if ( ! imageFile.exists() ) return ( null );
+
+        // Basket files have unique names, but move directory when an order fails, so
+        // they are identified by their name rather than their path.
+        keyStringBuilder
+                .append( "file:" ).append( imageFile.getName() )
+                .append( '@' ).append( imageFile.lastModified() )
+                .append( ':' ).append( imageFile.length() );
+
+        break;
+
+      case IMAGE_URI:
+
+        keyStringBuilder.append( asset.getImageURI().toString() );
+
+        break;
+
+      default:
+
+        // Remote URLs are only registered, and any other images have no
+        // persistent identity.
+        return ( null );
+      }
+
+    keyStringBuilder.append( getFragmentString( assetFragment ) );
+
+
+    // Only store a digest, so that no API keys or file details are stored in the journal
+
+    try
+      {
+      MessageDigest messageDigest = MessageDigest.getInstance( "SHA-1" );
+
+      return ( toHexString( messageDigest.digest( keyStringBuilder.toString().getBytes( "UTF-8" ) ) ) );
+      }
+    catch ( Exception exception )
+      {
+      // Every platform supports SHA-1 and UTF-8
+      Log.e( LOG_TAG, "Unable to create digest", exception );
+
+      return ( null );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the journal key for the size of an image, or
+   * null if its size can't be found without reading it.
+   * Images with different sizes can't have the same
+   * content, so this key is used to decide whether an
+   * image is worth reading in full.
+   *
+   * Must not be called on the UI thread.
+   *
+   *****************************************************/
+  static public String getSizeKey( Context context, AssetFragment assetFragment )
+    {
+    Asset asset = assetFragment.getAsset();
+
+    try
+      {
+      if ( asset.getType() != Asset.Type.IMAGE_BYTES && ! AssetHelper.isStreamable( asset ) ) return ( null );
+
+      long contentLength = AssetHelper.getContentLength( context, asset );
+
+      if ( contentLength < 0 ) return ( null );
+
+      MessageDigest messageDigest = MessageDigest.getInstance( "SHA-1" );
+
+      String keyString = KiteSDK.getInstance( context ).getAPIKey() + "|size:" + contentLength + getFragmentString( assetFragment );
+
+      return ( toHexString( messageDigest.digest( keyString.getBytes( "UTF-8" ) ) ) );
+      }
+    catch ( Exception exception )
+      {
+      Log.e( LOG_TAG, "Unable to create size digest", exception );
+
+      return ( null );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the journal key for the content of an image,
+   * or null if the image has no encoded content of its
+   * own.
+   *
+   * Must not be called on the UI thread, because all the
+   * image data is read.
+   *
+   *****************************************************/
+  static public String getContentKey( Context context, UploadableImage uploadableImage )
+    {
+    return ( getContentKey( context, uploadableImage.getAssetFragment() ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the journal key for the content of an asset
+   * fragment, or null if the asset has no encoded content
+   * of its own.
+   *
+   * Must not be called on the UI thread, because all the
+   * image data is read.
+   *
+   *****************************************************/
+  static public String getContentKey( Context context, AssetFragment assetFragment )
+    {
+    try
+      {
+      MessageDigest messageDigest = MessageDigest.getInstance( "SHA-1" );
+
+      messageDigest.update( ( KiteSDK.getInstance( context ).getAPIKey() + "|content:" ).getBytes( "UTF-8" ) );
+
+      if ( ! AssetHelper.updateDigest( context, assetFragment.getAsset(), messageDigest ) ) return ( null );
+
+      messageDigest.update( getFragmentString( assetFragment ).getBytes( "UTF-8" ) );
+
+      return ( toHexString( messageDigest.digest() ) );
+      }
+    catch ( Exception exception )
+      {
+      Log.e( LOG_TAG, "Unable to create content digest", exception );
+
+      return ( null );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a string identifying the area of an asset
+   * fragment, or an empty string for a full size fragment.
+   *
+   *****************************************************/
+  static private String getFragmentString( AssetFragment assetFragment )
+    {
+    if ( assetFragment.isFullSize() ) return ( "" );
+
+    RectF proportionalRectangle = assetFragment.getProportionalRectangle();
+
+    return ( "#" + proportionalRectangle.left + "," + proportionalRectangle.top + "," + proportionalRectangle.right + "," + proportionalRectangle.bottom );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a digest as a hex string.
+   *
+   *****************************************************/
+  static private String toHexString( byte[] digestBytes )
+    {
+    char[] hexChars = new char[ digestBytes.length * 2 ];
+
+    for ( int index = 0; index < digestBytes.length; index ++ )
+      {
+      hexChars[ index * 2     ] = HEX_DIGITS[ ( digestBytes[ index ] >> 4 ) & 0x0f ];
+      hexChars[ index * 2 + 1 ] = HEX_DIGITS[   digestBytes[ index ]         & 0x0f ];
+      }
+
+    return ( new String( hexChars ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Finds any images that have already been uploaded,
+   * and marks them as uploaded. The listener is then
+   * called on the UI thread with the keys of the images
+   * that still need uploading, so that their uploads can
+   * be recorded, and any images that are duplicates of
+   * others in the list.
+   *
+   *****************************************************/
+  static public void findUploadedImages( Context context, List<UploadableImage> uploadableImageList, IFindListener listener )
+    {
+    new FindTask( context, uploadableImageList, listener ).execute();
+    }
+
+
+  /*****************************************************
+   *
+   * Records an uploaded image, under each of its keys, in
+   * the background. If the content key of the image hasn't
+   * been worked out yet, it is worked out first.
+   *
+   * The database agent opens and closes the database for
+   * each operation, so the journal entries are written on
+   * the serial executor, in the same way as the journal is
+   * read. Otherwise one write could close the database
+   * whilst another is still using it.
+   *
+   *****************************************************/
+  static public void recordUpload( Context context, ImageKeys imageKeys, long assetId, URL previewURL, URL signedUploadURL )
+    {
+    // The image may need to be read, so don't hold up any other serial tasks
+    new RecordTask( context, imageKeys, assetId, previewURL, signedUploadURL ).executeOnExecutor( AsyncTask.THREAD_POOL_EXECUTOR );
+    }
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * An upload journal entry.
+   *
+   *****************************************************/
+  static public class Entry
+    {
+    private long  mAssetId;
+    private URL   mPreviewURL;
+
+
+    Entry( long assetId, URL previewURL )
+      {
+      mAssetId    = assetId;
+      mPreviewURL = previewURL;
+      }
+
+
+    public long getAssetId()
+      {
+      return ( mAssetId );
+      }
+
+
+    public URL getPreviewURL()
+      {
+      return ( mPreviewURL );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * The journal keys for an image.
+   *
+   *****************************************************/
+  static public class ImageKeys
+    {
+    private String         mImageKey;
+    private String         mSizeKey;
+    private String         mContentKey;
+
+    // The source of a content key that hasn't been worked out yet
+    private AssetFragment  mContentSource;
+
+
+    ImageKeys()
+      {
+      }
+
+
+    /*****************************************************
+     *
+     * Returns the keys that have been worked out.
+     *
+     *****************************************************/
+    List<String> getKeyList()
+      {
+      List<String> keyList = new ArrayList<>( 3 );
+
+      if ( mImageKey   != null ) keyList.add( mImageKey );
+      if ( mSizeKey    != null ) keyList.add( mSizeKey );
+      if ( mContentKey != null ) keyList.add( mContentKey );
+
+      return ( keyList );
+      }
+
+
+    /*****************************************************
+     *
+     * Returns true if the image can't be journalled.
+     *
+     *****************************************************/
+    boolean isEmpty()
+      {
+      return ( mImageKey == null && mSizeKey == null && mContentKey == null && mContentSource == null );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * A listener for the results of a find.
+   *
+   *****************************************************/
+  public interface IFindListener
+    {
+    /*****************************************************
+     *
+     * Called with a table of journal keys for the images
+     * that still need uploading, and a table of duplicate
+     * images to the images they duplicate. Duplicate images
+     * don't need uploading; they can use the results of
+     * the images they duplicate. Images that can't be
+     * journalled are not included in either table.
+     *
+     *****************************************************/
+    public void onUploadedImagesFound( IdentityHashMap<UploadableImage,ImageKeys> imageKeysTable, IdentityHashMap<UploadableImage,UploadableImage> duplicateImageTable );
+    }
+
+
+  /*****************************************************
+   *
+   * Task for looking up images in the journal. Expired
+   * entries are removed, and then the images are looked
+   * up by where they are stored, and by their size. Only
+   * images that aren't found, and whose size matches a
+   * journal entry or another image in the list, are read
+   * in full and looked up by their content.
+   *
+   * Tasks are run on the serial executor, so a find
+   * doesn't overlap any other serial database tasks.
+   *
+   *****************************************************/
+  static private class FindTask extends AsyncTask<Void,Void,HashMap<String,Entry>>
+    {
+    private Context                                            mApplicationContext;
+    private List<UploadableImage>                              mUploadableImageList;
+    private IFindListener                                      mListener;
+
+    private IdentityHashMap<UploadableImage,ImageKeys>         mImageKeysTable;
+    private IdentityHashMap<UploadableImage,UploadableImage>   mDuplicateImageTable;
+
+
+    FindTask( Context context, List<UploadableImage> uploadableImageList, IFindListener listener )
+      {
+      mApplicationContext  = context.getApplicationContext();
+      mUploadableImageList = uploadableImageList;
+      mListener            = listener;
+
+      mImageKeysTable      = new IdentityHashMap<>();
+      mDuplicateImageTable = new IdentityHashMap<>();
+      }
+
+
+    @Override
+    protected HashMap<String,Entry> doInBackground( Void... params )
+      {
+      OrderingDatabaseAgent databaseAgent = OrderingDataAgent.getInstance( mApplicationContext ).getDatabaseAgent();
+
+      long earliestUploadTime = System.currentTimeMillis() - MAX_ENTRY_AGE_MILLIS;
+
+      databaseAgent.deleteUploadJournalEntries( earliestUploadTime );
+
+
+      // Look the images up by where they are stored first, since that is cheap. Also
+      // count the images of each size, since only images of the same size can be
+      // duplicates.
+
+      List<String>             imageKeyList       = new ArrayList<>();
+      HashMap<String,Integer>  sizeKeyCountTable  = new HashMap<>();
+
+      for ( UploadableImage uploadableImage : mUploadableImageList )
+        {
+        if ( uploadableImage.hasBeenUploaded() ) continue;
+
+        ImageKeys imageKeys = new ImageKeys();
+
+        imageKeys.mImageKey = getImageKey( mApplicationContext, uploadableImage );
+        imageKeys.mSizeKey  = getSizeKey( mApplicationContext, uploadableImage.getAssetFragment() );
+
+        if ( imageKeys.mImageKey != null ) imageKeyList.add( imageKeys.mImageKey );
+
+        if ( imageKeys.mSizeKey != null )
+          {
+          Integer count = sizeKeyCountTable.get( imageKeys.mSizeKey );
+
+          sizeKeyCountTable.put( imageKeys.mSizeKey, count != null ? count + 1 : 1 );
+          }
+
+        mImageKeysTable.put( uploadableImage, imageKeys );
+        }
+
+      HashMap<String,Entry> entryTable     = databaseAgent.selectUploadJournalEntries( imageKeyList, earliestUploadTime );
+      HashMap<String,Entry> sizeEntryTable = databaseAgent.selectUploadJournalEntries( sizeKeyCountTable.keySet(), earliestUploadTime );
+
+
+      // Look any remaining images up by their content, if it might match. This also
+      // finds any images that are duplicates of others in the list. The content of
+      // any other images is left until they have been uploaded.
+
+      HashMap<String,UploadableImage> contentKeyImageTable = new HashMap<>();
+
+      for ( UploadableImage uploadableImage : mUploadableImageList )
+        {
+        ImageKeys imageKeys = mImageKeysTable.get( uploadableImage );
+
+        if ( imageKeys == null || entryTable.containsKey( imageKeys.mImageKey ) ) continue;
+
+        String sizeKey = imageKeys.mSizeKey;
+
+        if ( sizeKey != null && sizeKeyCountTable.get( sizeKey ) < 2 && ! sizeEntryTable.containsKey( sizeKey ) )
+          {
+          imageKeys.mContentSource = uploadableImage.getAssetFragment();
+
+          continue;
+          }
+
+        String contentKey = getContentKey( mApplicationContext, uploadableImage );
+
+        if ( contentKey == null ) continue;
+
+        UploadableImage originalUploadableImage = contentKeyImageTable.get( contentKey );
+
+        if ( originalUploadableImage != null )
+          {
+          mDuplicateImageTable.put( uploadableImage, originalUploadableImage );
+          mImageKeysTable.remove( uploadableImage );
+          }
+        else
+          {
+          imageKeys.mContentKey = contentKey;
+
+          contentKeyImageTable.put( contentKey, uploadableImage );
+          }
+        }
+
+      entryTable.putAll( databaseAgent.selectUploadJournalEntries( contentKeyImageTable.keySet(), earliestUploadTime ) );
+
+      return ( entryTable );
+      }
+
+
+    @Override
+    protected void onPostExecute( HashMap<String,Entry> entryTable )
+      {
+      Iterator<Map.Entry<UploadableImage,ImageKeys>> imageKeysIterator = mImageKeysTable.entrySet().iterator();
+
+      while ( imageKeysIterator.hasNext() )
+        {
+        Map.Entry<UploadableImage,ImageKeys> imageKeysEntry = imageKeysIterator.next();
+
+        ImageKeys imageKeys = imageKeysEntry.getValue();
+
+        // Size keys are shared by different images, so they never identify an upload
+        Entry entry = entryTable.get( imageKeys.mImageKey );
+
+        if ( entry == null ) entry = entryTable.get( imageKeys.mContentKey );
+
+        if ( entry != null )
+          {
+          imageKeysEntry.getKey().markAsUploaded( entry.getAssetId(), entry.getPreviewURL() );
+
+          imageKeysIterator.remove();
+          }
+
+        // Images that can't be journalled don't need to be returned
+        else if ( imageKeys.isEmpty() )
+          {
+          imageKeysIterator.remove();
+          }
+        }
+
+
+      // Duplicates of images that were found are also uploaded
+
+      Iterator<Map.Entry<UploadableImage,UploadableImage>> duplicateImageIterator = mDuplicateImageTable.entrySet().iterator();
+
+      while ( duplicateImageIterator.hasNext() )
+        {
+        Map.Entry<UploadableImage,UploadableImage> duplicateImageEntry = duplicateImageIterator.next();
+
+        UploadableImage originalUploadableImage = duplicateImageEntry.getValue();
+
+        if ( originalUploadableImage.hasBeenUploaded() )
+          {
+          duplicateImageEntry.getKey().markAsUploaded( originalUploadableImage.getUploadedAssetId(), originalUploadableImage.getPreviewURL() );
+
+          duplicateImageIterator.remove();
+          }
+        }
+
+      mListener.onUploadedImagesFound( mImageKeysTable, mDuplicateImageTable );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Task for recording an upload.
+   *
+   *****************************************************/
+  static private class RecordTask extends AsyncTask<Void,Void,Void>
+    {
+    private Context       mApplicationContext;
+    private ImageKeys     mImageKeys;
+    private long          mAssetId;
+    private URL           mPreviewURL;
+    private URL           mSignedUploadURL;
+
+
+    RecordTask( Context context, ImageKeys imageKeys, long assetId, URL previewURL, URL signedUploadURL )
+      {
+      mApplicationContext = context.getApplicationContext();
+      mImageKeys          = imageKeys;
+      mAssetId            = assetId;
+      mPreviewURL         = previewURL;
+      mSignedUploadURL    = signedUploadURL;
+      }
+
+
+    @Override
+    protected Void doInBackground( Void... params )
+      {
+      final OrderingDatabaseAgent databaseAgent = OrderingDataAgent.getInstance( mApplicationContext ).getDatabaseAgent();
+
+      final long uploadTime = System.currentTimeMillis();
+
+      // Work out the content key now if the find didn't need it
+      if ( mImageKeys.mContentKey == null && mImageKeys.mContentSource != null )
+        {
+        mImageKeys.mContentKey = getContentKey( mApplicationContext, mImageKeys.mContentSource );
+        }
+
+      final List<String> imageKeyList = mImageKeys.getKeyList();
+
+      AsyncTask.SERIAL_EXECUTOR.execute( new Runnable()
+        {
+        @Override
+        public void run()
+          {
+          for ( String imageKey : imageKeyList )
+            {
+            databaseAgent.insertUploadJournalEntry( imageKey, mAssetId, mPreviewURL, mSignedUploadURL, uploadTime );
+            }
+          }
+        } );
+
+      return ( null );
+      }
+    }
+
+  }
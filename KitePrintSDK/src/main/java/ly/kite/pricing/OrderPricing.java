@@ -69,6 +69,7 @@ public class OrderPricing implements Parcelable
 
   private static final String  JSON_NAME_DESCRIPTION         = "description";
   private static final String  JSON_NAME_DISCOUNT            = "discount";
+  private static final String  JSON_NAME_ESTIMATED           = "estimated";
   private static final String  JSON_NAME_INVALID_MESSAGE     = "invalid_message";
   private static final String  JSON_NAME_LINE_ITEMS          = "line_items";
   private static final String  JSON_NAME_PRODUCT_COST        = "product_cost";
@@ -104,6 +105,8 @@ public class OrderPricing implements Parcelable
 
   private JSONObject              mOrderPricingJSONObject;
 
+  private boolean                 mIsEstimate;
+
   private String                  mPromoCodeInvalidMessage;
   private MultipleCurrencyAmounts mPromoCodeDiscount;
 
@@ -217,6 +220,9 @@ public class OrderPricing implements Parcelable
     {
     mOrderPricingJSONObject = orderPricingJSONObject;
 
+    // Estimates are created locally, and never come from the server
+    mIsEstimate = orderPricingJSONObject.optBoolean( JSON_NAME_ESTIMATED, false );
+
     // Get the top level items
     JSONObject promoCodeJSONObject         = orderPricingJSONObject.optJSONObject( JSON_NAME_PROMO_CODE );
     JSONObject totalProductCostJSONObject  = orderPricingJSONObject.getJSONObject( JSON_NAME_TOTAL_PRODUCT_COST );
@@ -290,6 +296,8 @@ public class OrderPricing implements Parcelable
     try
       {
       mOrderPricingJSONObject = new JSONObject( parcel.readString() );
+
+      mIsEstimate             = mOrderPricingJSONObject.optBoolean( JSON_NAME_ESTIMATED, false );
       }
     catch ( JSONException je )
       {
@@ -375,6 +383,19 @@ public class OrderPricing implements Parcelable
     }
 
 
+  /*****************************************************
+   *
+   * Returns true if this pricing is a local estimate,
+   * rather than the pricing returned by the server. An
+   * estimate must never be used to take payment.
+   *
+   *****************************************************/
+  public boolean isEstimate()
+    {
+    return ( mIsEstimate );
+    }
+
+
   /*****************************************************
    *
    * Returns any promo code invalid message, or null, if
@@ -40,13 +40,17 @@ package ly.kite.pricing;
 ///// Import(s) /////
 
 import android.content.Context;
+import android.util.JsonReader;
 import android.util.Log;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 
 import ly.kite.KiteSDK;
@@ -54,6 +58,7 @@ import ly.kite.address.Address;
 import ly.kite.address.Country;
 import ly.kite.util.ACache;
 import ly.kite.util.HTTPJSONRequest;
+import ly.kite.util.JSONReaderUtils;
 import ly.kite.api.KiteAPIRequest;
 import ly.kite.ordering.Order;
 
@@ -77,6 +82,12 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
   static private final String  JSON_NAME_BASKET                = "basket";
   static private final String  JSON_NAME_SHIPPING_COUNTRY_CODE = "shipping_country_code";
   static private final String  JSON_NAME_PROMO_CODE            = "promo_code";
+  static private final String  JSON_NAME_QUANTITY              = "quantity";
+  static private final String  JSON_NAME_TEMPLATE_ID           = "template_id";
+  static private final String  JSON_NAME_COUNTRY_CODE          = "country_code";
+
+  static private final int     MAX_CACHED_PRICING_COUNT        = 32;
+  static private final long    PRICING_TIME_TO_LIVE_MILLIS     = 30L * 60 * 1000;  // 30 minutes
 
 
   ////////// Static Variable(s) //////////
@@ -86,6 +97,8 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
 
   ////////// Member Variable(s) //////////
 
+  private HashMap<String,KiteAPIRequest>  mInFlightRequestTable;
+
 
   ////////// Static Initialiser(s) //////////
 
@@ -108,11 +121,139 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
     }
 
 
+  /*****************************************************
+   *
+   * Returns the country that an order will be shipped to,
+   * for pricing purposes.
+   *
+   *****************************************************/
+  static Country getShippingCountry( Order order )
+    {
+    Address  shippingAddress;
+    Country  country;
+
+    if ( ( shippingAddress = order.getShippingAddress()   ) != null &&
+         ( country         = shippingAddress.getCountry() ) != null )
+      {
+      return ( country );
+      }
+
+    return ( Country.getInstance() );
+    }
+
+
   ////////// Constructor(s) //////////
 
   private PricingAgent()
     {
-    super();
+    super( MAX_CACHED_PRICING_COUNT, PRICING_TIME_TO_LIVE_MILLIS );
+
+    mInFlightRequestTable = new HashMap<>();
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a fingerprint of a pricing request body, which
+   * is the same for any two requests that will return the
+   * same price.
+   *
+   * Job ids are left out, since they don't affect the price,
+   * and any additional parameters are sorted by name.
+   *
+   * Fingerprints are returned unchanged.
+   *
+   *****************************************************/
+  static String getRequestFingerprint( String requestBodyString )
+    {
+    if ( requestBodyString == null ) return ( null );
+
+    // Request bodies are always JSON objects, so anything else is already a fingerprint
+    if ( ! requestBodyString.startsWith( "{" ) ) return ( requestBodyString );
+
+    try
+      {
+      JSONObject bodyJSONObject = new JSONObject( requestBodyString );
+
+      StringBuilder fingerprintBuilder = new StringBuilder();
+
+      fingerprintBuilder
+        .append( bodyJSONObject.optString( JSON_NAME_SHIPPING_COUNTRY_CODE ) )
+        .append( '|' )
+        .append( bodyJSONObject.optString( JSON_NAME_PROMO_CODE ) );
+
+
+      // Basket items are kept in order, since the line items are returned in the same order
+
+      JSONArray basketJSONArray = bodyJSONObject.optJSONArray( JSON_NAME_BASKET );
+
+      if ( basketJSONArray != null )
+        {
+        for ( int itemIndex = 0; itemIndex < basketJSONArray.length(); itemIndex ++ )
+          {
+          JSONObject itemJSONObject = basketJSONArray.getJSONObject( itemIndex );
+
+          fingerprintBuilder
+            .append( '|' )
+            .append( itemJSONObject.optString( JSON_NAME_TEMPLATE_ID ) )
+            .append( '*' )
+            .append( itemJSONObject.optInt( JSON_NAME_QUANTITY ) )
+            .append( '@' )
+            .append( itemJSONObject.optString( JSON_NAME_COUNTRY_CODE ) );
+          }
+        }
+
+
+      // Add any additional parameters in a fixed order
+
+      List<String> parameterNameList = new ArrayList<>();
+
+      Iterator<String> keyIterator = bodyJSONObject.keys();
+
+      while ( keyIterator.hasNext() )
+        {
+        String key = keyIterator.next();
+
+        if ( ! key.equals( JSON_NAME_BASKET ) && ! key.equals( JSON_NAME_SHIPPING_COUNTRY_CODE ) && ! key.equals( JSON_NAME_PROMO_CODE ) )
+          {
+          parameterNameList.add( key );
+          }
+        }
+
+      Collections.sort( parameterNameList );
+
+      for ( String parameterName : parameterNameList )
+        {
+        fingerprintBuilder
+          .append( '|' )
+          .append( parameterName )
+          .append( '=' )
+          .append( bodyJSONObject.optString( parameterName ) );
+        }
+
+
+      return ( fingerprintBuilder.toString() );
+      }
+    catch ( JSONException je )
+      {
+      Log.e( LOG_TAG, "Unable to create fingerprint for request body: " + requestBodyString, je );
+
+      return ( requestBodyString );
+      }
+    }
+
+
+  ////////// ACache Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns the cache key for a request body.
+   *
+   *****************************************************/
+  @Override
+  protected String canonicaliseKey( String requestBodyString )
+    {
+    return ( getRequestFingerprint( requestBodyString ) );
     }
 
 
@@ -127,9 +268,10 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
    *****************************************************/
   public OrderPricing requestPricing( Context context, Order order, String promoCode, List<String> payPalSupportedCurrencyCodeList, IPricingConsumer consumer, int requestId )
     {
-    // Get the request body first, because we also use it as the caching key
+    // Get the request body first, because we also use it (in canonical form) as the caching key
 
     String requestBodyString = getRequestBody( context, order, promoCode );
+    String pricingKey        = canonicaliseKey( requestBodyString );
 
     if ( KiteSDK.DEBUG_PRICING ) Log.d( LOG_TAG, "Request body:\n" + requestBodyString );
 
@@ -140,7 +282,7 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
 
     // If we already have the price information cached from a previous retrieval - return it now
 
-    OrderPricing cachedPricing = getCachedValue( requestBodyString );
+    OrderPricing cachedPricing = getCachedValue( pricingKey );
 
     if ( cachedPricing != null ) return ( cachedPricing );
 
@@ -149,7 +291,7 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
     // add this consumer to the list of consumers waiting for the result. Otherwise start
     // a new request.
 
-    if ( ! registerForValue( requestBodyString, new ConsumerHolder( consumer, requestId ) ) )
+    if ( ! registerForValue( pricingKey, new ConsumerHolder( consumer, requestId ) ) )
       {
       KiteSDK kiteSDK = KiteSDK.getInstance( context );
 
@@ -157,7 +299,11 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
 
       KiteAPIRequest request = new KiteAPIRequest( context, KiteAPIRequest.HttpMethod.POST, requestURLString, null, requestBodyString );
 
-      request.start( new PriceRequestListener( context, requestBodyString, payPalSupportedCurrencyCodeList ) );
+      PriceRequestListener priceRequestListener = new PriceRequestListener( context, requestBodyString, pricingKey, request, payPalSupportedCurrencyCodeList );
+
+      mInFlightRequestTable.put( pricingKey, request );
+
+      request.start( priceRequestListener, priceRequestListener );
       }
 
 
@@ -191,19 +337,7 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
     JSONObject bodyJSONObject = new JSONObject();
 
 
-    Address  shippingAddress;
-    Country  country;
-    String   shippingCountryCode;
-
-    if ( ( shippingAddress = order.getShippingAddress()   ) != null &&
-         ( country         = shippingAddress.getCountry() ) != null )
-      {
-      shippingCountryCode = country.iso3Code();
-      }
-    else
-      {
-      shippingCountryCode = Country.getInstance().iso3Code();
-      }
+    String shippingCountryCode = getShippingCountry( order ).iso3Code();
 
     if ( promoCode == null ) promoCode = "";
 
@@ -256,6 +390,53 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
     }
 
 
+  /*****************************************************
+   *
+   * Returns the cached price information for an order, or
+   * null if there isn't any.
+   *
+   *****************************************************/
+  public OrderPricing getCachedPricing( Context context, Order order, String promoCode )
+    {
+    return ( getCachedValue( getRequestBody( context, order, promoCode ) ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Cancels a pricing request. The consumer will not be
+   * called for the request, and if no other consumers are
+   * waiting for the same pricing, the API request is
+   * cancelled.
+   *
+   *****************************************************/
+  public void cancelPricing( IPricingConsumer consumer, int requestId )
+    {
+    for ( String pricingKey : unregisterFromAll( new ConsumerHolder( consumer, requestId ) ) )
+      {
+      KiteAPIRequest request = mInFlightRequestTable.remove( pricingKey );
+
+      if ( request != null )
+        {
+        if ( KiteSDK.DEBUG_PRICING ) Log.d( LOG_TAG, "Cancelling pricing request: " + pricingKey );
+
+        request.cancel();
+        }
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Called when an API request has finished.
+   *
+   *****************************************************/
+  private void onRequestFinished( String pricingKey, KiteAPIRequest request )
+    {
+    if ( mInFlightRequestTable.get( pricingKey ) == request ) mInFlightRequestTable.remove( pricingKey );
+    }
+
+
   /*****************************************************
    *
    * Distributes a value to a callback.
@@ -303,29 +484,66 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
       this.consumer  = consumer;
       this.requestId = requestId;
       }
+
+
+    @Override
+    public boolean equals( Object otherObject )
+      {
+      if ( ! ( otherObject instanceof ConsumerHolder ) ) return ( false );
+
+      ConsumerHolder otherConsumerHolder = (ConsumerHolder)otherObject;
+
+      return ( otherConsumerHolder.consumer == consumer && otherConsumerHolder.requestId == requestId );
+      }
+
+
+    @Override
+    public int hashCode()
+      {
+      return ( System.identityHashCode( consumer ) * 31 + requestId );
+      }
     }
 
 
   /*****************************************************
    *
-   * The callback for a price request.
+   * The callback for a price request. Successful responses
+   * are parsed on the request's background thread.
    *
    *****************************************************/
-  private class PriceRequestListener implements HTTPJSONRequest.IJSONResponseListener
+  private class PriceRequestListener implements HTTPJSONRequest.IJSONStreamParser, HTTPJSONRequest.IJSONResponseListener
     {
-    private Context       mContext;
-    private String        mRequestBodyString;
-    private List<String>  mPayPalSupportedCurrencyCodeList;
+    private Context         mContext;
+    private String          mRequestBodyString;
+    private String          mPricingKey;
+    private KiteAPIRequest  mRequest;
+    private List<String>    mPayPalSupportedCurrencyCodeList;
+
+    private OrderPricing    mOrderPricing;
 
 
-    PriceRequestListener( Context context, String requestBodyString, List<String> payPalSupportedCurrencyCodeList )
+    PriceRequestListener( Context context, String requestBodyString, String pricingKey, KiteAPIRequest request, List<String> payPalSupportedCurrencyCodeList )
       {
       mContext                         = context;
       mRequestBodyString               = requestBodyString;
+      mPricingKey                      = pricingKey;
+      mRequest                         = request;
       mPayPalSupportedCurrencyCodeList = payPalSupportedCurrencyCodeList;
       }
 
 
+    /*****************************************************
+     *
+     * Parses a successful response.
+     *
+     *****************************************************/
+    @Override
+    public void parseResponse( JsonReader jsonReader ) throws Exception
+      {
+      mOrderPricing = new OrderPricing( JSONReaderUtils.readObject( jsonReader ) );
+      }
+
+
     /*****************************************************
      *
      * Called when the price request returns successfully.
@@ -334,19 +552,33 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
     @Override
     public void onSuccess( int httpStatusCode, JSONObject jsonObject )
       {
+      onRequestFinished( mPricingKey, mRequest );
+
+      if ( mOrderPricing != null )
+        {
+        if ( KiteSDK.DEBUG_PRICING ) Log.d( LOG_TAG, "Request body: " + mRequestBodyString + "\nReturned JSON: " + mOrderPricing.getPricingJSONString() );
+
+        PricingAgent.this.saveAndDistributeValue( mPricingKey, mOrderPricing );
+
+        return;
+        }
+
+
+      // Unsuccessful responses aren't parsed
+
       if ( KiteSDK.DEBUG_PRICING ) Log.d( LOG_TAG, "Request body: " + mRequestBodyString + "\nReturned JSON: " + jsonObject.toString() );
 
       try
         {
         OrderPricing orderPricing = new OrderPricing( jsonObject );
 
-        PricingAgent.this.saveAndDistributeValue( mRequestBodyString, orderPricing );
+        PricingAgent.this.saveAndDistributeValue( mPricingKey, orderPricing );
         }
       catch ( Exception exception )
         {
         Log.e( LOG_TAG, "Unable to get pricing:\nRequest body: " + mRequestBodyString + "\nReturned JSON: " + jsonObject.toString(), exception );
 
-        PricingAgent.this.onError( mRequestBodyString, exception );
+        PricingAgent.this.onError( mPricingKey, exception );
         }
       }
 
@@ -359,7 +591,9 @@ public class PricingAgent extends ACache<String,OrderPricing,PricingAgent.Consum
     @Override
     public void onError( Exception exception )
       {
-      PricingAgent.this.onError( mRequestBodyString, exception );
+      onRequestFinished( mPricingKey, mRequest );
+
+      PricingAgent.this.onError( mPricingKey, exception );
       }
 
     }
@@ -0,0 +1,283 @@
+/*****************************************************
+ *
+ * PricingEstimator.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.pricing;
+
+
+///// Import(s) /////
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ly.kite.address.Country;
+import ly.kite.catalogue.MultipleCurrencyAmounts;
+import ly.kite.catalogue.Product;
+import ly.kite.ordering.Job;
+import ly.kite.ordering.Order;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class estimates the pricing for an order from the
+ * product and shipping costs in the catalogue, so that
+ * prices can be displayed straight away, whilst the actual
+ * pricing is retrieved from the server.
+ *
+ * An estimate assumes that shipping is charged per item,
+ * and cannot account for promo codes, so it is always
+ * replaced by the server pricing once that arrives.
+ *
+ *****************************************************/
+public class PricingEstimator
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG                        = "PricingEstimator";
+
+  static private final String  JSON_NAME_DESCRIPTION          = "description";
+  static private final String  JSON_NAME_ESTIMATED            = "estimated";
+  static private final String  JSON_NAME_LINE_ITEMS           = "line_items";
+  static private final String  JSON_NAME_PRODUCT_COST         = "product_cost";
+  static private final String  JSON_NAME_QUANTITY             = "quantity";
+  static private final String  JSON_NAME_SHIPPING_COST        = "shipping_cost";
+  static private final String  JSON_NAME_TEMPLATE_ID          = "template_id";
+  static private final String  JSON_NAME_TOTAL                = "total";
+  static private final String  JSON_NAME_TOTAL_PRODUCT_COST   = "total_product_cost";
+  static private final String  JSON_NAME_TOTAL_SHIPPING_COST  = "total_shipping_cost";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns an estimate of the pricing for an order, or
+   * null if one cannot be made. An estimate cannot be
+   * made if there is a promo code, or if the catalogue
+   * doesn't have costs for every product in a common
+   * currency.
+   *
+   *****************************************************/
+  static public OrderPricing estimate( Order order, String promoCode )
+    {
+    // We can't know what discount a promo code will give
+    if ( promoCode != null && promoCode.trim().length() > 0 ) return ( null );
+
+    List<Job> jobList = order.getJobs();
+
+    if ( jobList == null || jobList.size() < 1 ) return ( null );
+
+    Country country = PricingAgent.getShippingCountry( order );
+
+
+    // Find the currencies that all the costs are available in
+
+    Set<String> currencyCodeSet = null;
+
+    for ( Job job : jobList )
+      {
+      Product                 product      = job.getProduct();
+      MultipleCurrencyAmounts productCost  = ( product != null ? product.getCost()                  : null );
+      MultipleCurrencyAmounts shippingCost = ( product != null ? product.getShippingCost( country ) : null );
+
+      if ( productCost == null || shippingCost == null ) return ( null );
+
+      if ( currencyCodeSet == null ) currencyCodeSet = new HashSet<>( productCost.getAllCurrencyCodes() );
+      else                           currencyCodeSet.retainAll( productCost.getAllCurrencyCodes() );
+
+      currencyCodeSet.retainAll( shippingCost.getAllCurrencyCodes() );
+      }
+
+    if ( currencyCodeSet.isEmpty() ) return ( null );
+
+
+    try
+      {
+      // Create a line item for each job, and add up the totals
+
+      HashMap<String,BigDecimal> totalProductCostTable  = new HashMap<>();
+      HashMap<String,BigDecimal> totalShippingCostTable = new HashMap<>();
+
+      JSONArray lineItemsJSONArray = new JSONArray();
+
+      for ( Job job : jobList )
+        {
+        Product                 product       = job.getProduct();
+        int                     orderQuantity = job.getOrderQuantity();
+        MultipleCurrencyAmounts shippingCost  = product.getShippingCost( country );
+
+
+        // Get the cost of one of each job from the job itself, because it knows how it is
+        // charged (e.g. an images job is charged per sheet, not per product).
+
+        HashMap<String,BigDecimal> jobCostTable      = new HashMap<>();
+        HashMap<String,BigDecimal> shippingCostTable = new HashMap<>();
+
+        for ( String currencyCode : currencyCodeSet )
+          {
+          jobCostTable.put( currencyCode, job.getCost( currencyCode ) );
+          shippingCostTable.put( currencyCode, shippingCost.get( currencyCode ).getAmount() );
+          }
+
+
+        JSONObject lineItemJSONObject = new JSONObject();
+
+        lineItemJSONObject.put( JSON_NAME_TEMPLATE_ID,   product.getId() );
+        lineItemJSONObject.put( JSON_NAME_DESCRIPTION,   product.getName() );
+        lineItemJSONObject.put( JSON_NAME_QUANTITY,      orderQuantity );
+        lineItemJSONObject.put( JSON_NAME_PRODUCT_COST,  toJSONObject( jobCostTable, orderQuantity, totalProductCostTable ) );
+        lineItemJSONObject.put( JSON_NAME_SHIPPING_COST, toJSONObject( shippingCostTable, orderQuantity, totalShippingCostTable ) );
+
+        lineItemsJSONArray.put( lineItemJSONObject );
+        }
+
+
+      JSONObject totalProductCostJSONObject  = new JSONObject();
+      JSONObject totalShippingCostJSONObject = new JSONObject();
+      JSONObject totalJSONObject             = new JSONObject();
+
+      for ( String currencyCode : currencyCodeSet )
+        {
+        BigDecimal totalProductCost  = totalProductCostTable.get( currencyCode );
+        BigDecimal totalShippingCost = totalShippingCostTable.get( currencyCode );
+
+        totalProductCostJSONObject.put( currencyCode, totalProductCost.toPlainString() );
+        totalShippingCostJSONObject.put( currencyCode, totalShippingCost.toPlainString() );
+        totalJSONObject.put( currencyCode, totalProductCost.add( totalShippingCost ).toPlainString() );
+        }
+
+
+      JSONObject orderPricingJSONObject = new JSONObject();
+
+      orderPricingJSONObject.put( JSON_NAME_ESTIMATED,           true );
+      orderPricingJSONObject.put( JSON_NAME_LINE_ITEMS,          lineItemsJSONArray );
+      orderPricingJSONObject.put( JSON_NAME_TOTAL_PRODUCT_COST,  totalProductCostJSONObject );
+      orderPricingJSONObject.put( JSON_NAME_TOTAL_SHIPPING_COST, totalShippingCostJSONObject );
+      orderPricingJSONObject.put( JSON_NAME_TOTAL,               totalJSONObject );
+
+      return ( new OrderPricing( orderPricingJSONObject ) );
+      }
+    catch ( JSONException je )
+      {
+      Log.e( LOG_TAG, "Unable to create pricing estimate", je );
+      }
+
+    return ( null );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a cost (in each currency) multiplied by a
+   * quantity, as JSON, and adds it to the running totals.
+   *
+   *****************************************************/
+  static private JSONObject toJSONObject( HashMap<String,BigDecimal> costTable, int quantity, HashMap<String,BigDecimal> totalTable ) throws JSONException
+    {
+    JSONObject costJSONObject = new JSONObject();
+
+    BigDecimal quantityBigDecimal = BigDecimal.valueOf( quantity );
+
+    for ( String currencyCode : costTable.keySet() )
+      {
+      BigDecimal amount = costTable.get( currencyCode ).multiply( quantityBigDecimal );
+
+      costJSONObject.put( currencyCode, amount.toPlainString() );
+
+      BigDecimal total = totalTable.get( currencyCode );
+
+      totalTable.put( currencyCode, ( total != null ? total.add( amount ) : amount ) );
+      }
+
+    return ( costJSONObject );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if an estimate has the same total as the
+   * actual pricing, in every currency that was estimated.
+   *
+   *****************************************************/
+  static public boolean totalMatches( OrderPricing estimatedPricing, OrderPricing actualPricing )
+    {
+    if ( estimatedPricing == null || actualPricing == null ) return ( false );
+
+    MultipleCurrencyAmounts estimatedTotal = estimatedPricing.getTotalCost();
+    MultipleCurrencyAmounts actualTotal    = actualPricing.getTotalCost();
+
+    if ( estimatedTotal == null || actualTotal == null ) return ( false );
+
+    for ( String currencyCode : estimatedTotal.getAllCurrencyCodes() )
+      {
+      if ( ! actualTotal.contains( currencyCode ) ||
+           estimatedTotal.get( currencyCode ).getAmount().compareTo( actualTotal.get( currencyCode ).getAmount() ) != 0 ) return ( false );
+      }
+
+    return ( true );
+    }
+
+
+  ////////// Constructor(s) //////////
+
+  private PricingEstimator()
+    {
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  }
@@ -0,0 +1,350 @@
+/*****************************************************
+ *
+ * PricingPipeline.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.pricing;
+
+
+///// Import(s) /////
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+
+import ly.kite.KiteSDK;
+import ly.kite.ordering.Order;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class sits between a screen and the pricing agent,
+ * for screens where the order may change rapidly (e.g. a
+ * user tapping quantity buttons).
+ *
+ * Requests after the first are debounced, so that only
+ * the order as it stands once the user pauses is priced,
+ * and each new request cancels any earlier one that is
+ * still waiting or in progress. Only the result for the
+ * newest request is ever passed to the consumer.
+ *
+ * The pipeline can also supply an estimate of the pricing,
+ * calculated from the catalogue, to display whilst the
+ * actual pricing is retrieved.
+ *
+ * All methods must be called on the UI thread.
+ *
+ *****************************************************/
+public class PricingPipeline implements PricingAgent.IPricingConsumer
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG                       = "PricingPipeline";
+
+  static public  final long    DEFAULT_DEBOUNCE_DELAY_MILLIS = 400L;
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+  private Context                        mContext;
+  private PricingAgent.IPricingConsumer  mConsumer;
+  private long                           mDebounceDelayMillis;
+
+  private Handler                        mHandler;
+
+  private int                            mLatestRequestId;
+  private RequestRunnable                mPendingRequestRunnable;
+  private boolean                        mLatestRequestInProgress;
+
+  private OrderPricing                   mLatestEstimatedPricing;
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+
+  ////////// Constructor(s) //////////
+
+  public PricingPipeline( Context context, PricingAgent.IPricingConsumer consumer, long debounceDelayMillis )
+    {
+    mContext             = context;
+    mConsumer            = consumer;
+    mDebounceDelayMillis = debounceDelayMillis;
+
+    mHandler             = new Handler( Looper.getMainLooper() );
+    }
+
+
+  public PricingPipeline( Context context, PricingAgent.IPricingConsumer consumer )
+    {
+    this( context, consumer, DEFAULT_DEBOUNCE_DELAY_MILLIS );
+    }
+
+
+  ////////// PricingAgent.IPricingConsumer Method(s) //////////
+
+  /*****************************************************
+   *
+   * Called when the pricing agent returns the pricing.
+   *
+   *****************************************************/
+  @Override
+  public void paOnSuccess( int requestId, OrderPricing pricing )
+    {
+    if ( requestId != mLatestRequestId ) return;
+
+    mLatestRequestInProgress = false;
+
+    if ( KiteSDK.DEBUG_PRICING && mLatestEstimatedPricing != null && ! PricingEstimator.totalMatches( mLatestEstimatedPricing, pricing ) )
+      {
+      Log.d( LOG_TAG, "Estimated total " + mLatestEstimatedPricing.getTotalCost() + " does not match actual total " + pricing.getTotalCost() );
+      }
+
+    mLatestEstimatedPricing = null;
+
+    mConsumer.paOnSuccess( requestId, pricing );
+    }
+
+
+  /*****************************************************
+   *
+   * Called when the pricing agent returns an error.
+   *
+   *****************************************************/
+  @Override
+  public void paOnError( int requestId, Exception exception )
+    {
+    if ( requestId != mLatestRequestId ) return;
+
+    mLatestRequestInProgress = false;
+
+    mConsumer.paOnError( requestId, exception );
+    }
+
+
+  ////////// Method(s) //////////
+
+  /*****************************************************
+   *
+   * Requests the pricing for an order, superseding any
+   * earlier request.
+   *
+   * The first request is made straight away, so that the
+   * initial pricing isn't held up by the debounce delay.
+   *
+   * @return The pricing, if it is already cached, in which
+   *         case the consumer will not be called. Otherwise
+   *         null, and the consumer will be called once the
+   *         pricing has been retrieved, unless the request is
+   *         superseded first. The consumer is never called
+   *         before this method returns.
+   *
+   *****************************************************/
+  public OrderPricing requestPricing( Order order, String promoCode, List<String> payPalSupportedCurrencyCodeList )
+    {
+    cancel();
+
+    mLatestRequestId ++;
+
+    mLatestEstimatedPricing = null;
+
+
+    // If we already have the pricing there's no need to wait
+
+    OrderPricing cachedPricing = getCachedPricing( order, promoCode );
+
+    if ( cachedPricing != null ) return ( cachedPricing );
+
+
+    // Only debounce once there has been an earlier request, i.e. the user is changing
+    // the order. If we make the request now, any pricing that the agent returns straight
+    // away is passed back to the caller rather than the consumer.
+
+    if ( mDebounceDelayMillis <= 0 || mLatestRequestId <= 1 )
+      {
+      return ( startRequest( mLatestRequestId, order, promoCode, payPalSupportedCurrencyCodeList ) );
+      }
+
+    mPendingRequestRunnable = new RequestRunnable( mLatestRequestId, order, promoCode, payPalSupportedCurrencyCodeList );
+
+    mHandler.postDelayed( mPendingRequestRunnable, mDebounceDelayMillis );
+
+    return ( null );
+    }
+
+
+  /*****************************************************
+   *
+   * Makes a request to the pricing agent.
+   *
+   * @return The pricing, if the agent already had it, or
+   *         null if the consumer will be called.
+   *
+   *****************************************************/
+  private OrderPricing startRequest( int requestId, Order order, String promoCode, List<String> payPalSupportedCurrencyCodeList )
+    {
+    mLatestRequestInProgress = true;
+
+    OrderPricing pricing = startPricingRequest( requestId, order, promoCode, payPalSupportedCurrencyCodeList );
+
+    if ( pricing != null ) mLatestRequestInProgress = false;
+
+    return ( pricing );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns an estimate of the pricing for the order in the
+   * latest request, or null if one cannot be made. The
+   * estimate should be displayed until the consumer is
+   * called with the actual pricing, but must never be used
+   * to take payment.
+   *
+   *****************************************************/
+  public OrderPricing estimatePricing( Order order, String promoCode )
+    {
+    mLatestEstimatedPricing = PricingEstimator.estimate( order, promoCode );
+
+    return ( mLatestEstimatedPricing );
+    }
+
+
+  /*****************************************************
+   *
+   * Cancels any waiting or in-progress request. This should
+   * be called when the consumer is going away.
+   *
+   *****************************************************/
+  public void cancel()
+    {
+    if ( mPendingRequestRunnable != null )
+      {
+      mHandler.removeCallbacks( mPendingRequestRunnable );
+
+      mPendingRequestRunnable = null;
+      }
+
+    if ( mLatestRequestInProgress )
+      {
+      cancelPricingRequest( mLatestRequestId );
+
+      mLatestRequestInProgress = false;
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns any cached pricing for an order.
+   *
+   *****************************************************/
+  OrderPricing getCachedPricing( Order order, String promoCode )
+    {
+    return ( PricingAgent.getInstance().getCachedPricing( mContext, order, promoCode ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Asks the pricing agent for the pricing of an order.
+   *
+   *****************************************************/
+  OrderPricing startPricingRequest( int requestId, Order order, String promoCode, List<String> payPalSupportedCurrencyCodeList )
+    {
+    return ( PricingAgent.getInstance().requestPricing( mContext, order, promoCode, payPalSupportedCurrencyCodeList, this, requestId ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Cancels a request to the pricing agent.
+   *
+   *****************************************************/
+  void cancelPricingRequest( int requestId )
+    {
+    PricingAgent.getInstance().cancelPricing( this, requestId );
+    }
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * Makes a request once the debounce delay has passed.
+   *
+   *****************************************************/
+  private class RequestRunnable implements Runnable
+    {
+    private int           mRequestId;
+    private Order         mOrder;
+    private String        mPromoCode;
+    private List<String>  mPayPalSupportedCurrencyCodeList;
+
+
+    RequestRunnable( int requestId, Order order, String promoCode, List<String> payPalSupportedCurrencyCodeList )
+      {
+      mRequestId                       = requestId;
+      mOrder                           = order;
+      mPromoCode                       = promoCode;
+      mPayPalSupportedCurrencyCodeList = payPalSupportedCurrencyCodeList;
+      }
+
+
+    @Override
+    public void run()
+      {
+      if ( mPendingRequestRunnable != this ) return;
+
+      mPendingRequestRunnable = null;
+
+      OrderPricing pricing = startRequest( mRequestId, mOrder, mPromoCode, mPayPalSupportedCurrencyCodeList );
+
+      // The pricing may have been cached by another request in the meantime
+      if ( pricing != null ) paOnSuccess( mRequestId, pricing );
+      }
+    }
+
+  }
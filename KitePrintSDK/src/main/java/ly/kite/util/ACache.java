@@ -39,8 +39,14 @@ package ly.kite.util;
 
 ///// Import(s) /////
 
+import android.os.SystemClock;
+
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 
 ///// Class Declaration /////
@@ -51,13 +57,23 @@ import java.util.HashMap;
  * agents, and assists with distributing values or errors
  * to consumers.
  *
+ * The cache may be limited to a maximum number of values,
+ * in which case the least recently used value is evicted
+ * first, and values may expire after a time to live.
+ * Subclasses may also canonicalise keys, so that keys that
+ * differ only in ways that don't affect the value share
+ * the same entry.
+ *
  *****************************************************/
 abstract public class ACache<K,V,C>
   {
   ////////// Static Constant(s) //////////
 
   @SuppressWarnings( "unused" )
-  private static final String  LOG_TAG = "ACache";
+  private static final String  LOG_TAG             = "ACache";
+
+  static public  final int     NO_MAX_ENTRY_COUNT  = 0;
+  static public  final long    NO_TIME_TO_LIVE     = 0L;
 
 
   ////////// Static Variable(s) //////////
@@ -65,8 +81,11 @@ abstract public class ACache<K,V,C>
 
   ////////// Member Variable(s) //////////
 
-  private HashMap<K,V>             mCacheMap;
-  private HashMap<K,ArrayList<C>>  mConsumerMap;
+  private final int                          mMaxEntryCount;
+  private final long                         mTimeToLiveMillis;
+
+  private LinkedHashMap<K,CacheEntry<V>>     mCacheMap;
+  private HashMap<K,ArrayList<C>>            mConsumerMap;
 
 
   ////////// Static Initialiser(s) //////////
@@ -77,13 +96,31 @@ abstract public class ACache<K,V,C>
 
   ////////// Constructor(s) //////////
 
-  protected ACache()
+  protected ACache( int maxEntryCount, long timeToLiveMillis )
     {
-    mCacheMap    = new HashMap<>();
+    mMaxEntryCount    = maxEntryCount;
+    mTimeToLiveMillis = timeToLiveMillis;
+
+    // Use access order, so that the eldest entry is the least recently used one
+    mCacheMap = new LinkedHashMap<K,CacheEntry<V>>( 16, 0.75f, true )
+      {
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<K,CacheEntry<V>> eldestEntry )
+        {
+        return ( mMaxEntryCount > NO_MAX_ENTRY_COUNT && size() > mMaxEntryCount );
+        }
+      };
+
     mConsumerMap = new HashMap<>();
     }
 
 
+  protected ACache()
+    {
+    this( NO_MAX_ENTRY_COUNT, NO_TIME_TO_LIVE );
+    }
+
+
   ////////// Method(s) //////////
 
   /*****************************************************
@@ -94,7 +131,78 @@ abstract public class ACache<K,V,C>
    *****************************************************/
   protected V getCachedValue( K key )
     {
-    return ( mCacheMap.get( key ) );
+    key = canonicaliseKey( key );
+
+    CacheEntry<V> cacheEntry = mCacheMap.get( key );
+
+    if ( cacheEntry == null ) return ( null );
+
+
+    // Check whether the value has expired
+
+    if ( mTimeToLiveMillis > NO_TIME_TO_LIVE && getCurrentTimeMillis() - cacheEntry.mSavedTimeMillis >= mTimeToLiveMillis )
+      {
+      mCacheMap.remove( key );
+
+      return ( null );
+      }
+
+
+    return ( cacheEntry.mValue );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the number of cached values, including any
+   * that have expired but not yet been removed.
+   *
+   *****************************************************/
+  protected int getCachedValueCount()
+    {
+    return ( mCacheMap.size() );
+    }
+
+
+  /*****************************************************
+   *
+   * Clears all cached values. Any consumers waiting for
+   * values are left registered.
+   *
+   *****************************************************/
+  protected void clearCachedValues()
+    {
+    mCacheMap.clear();
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the canonical form of a key. The default
+   * implementation returns the key unchanged; subclasses
+   * should override this if different keys can refer to
+   * the same value.
+   *
+   * Canonicalising a key that is already canonical must
+   * return it unchanged, since subclasses may pass in keys
+   * that they have already canonicalised.
+   *
+   *****************************************************/
+  protected K canonicaliseKey( K key )
+    {
+    return ( key );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the current time, in milliseconds, used to
+   * expire values. Only differences between times are used.
+   *
+   *****************************************************/
+  protected long getCurrentTimeMillis()
+    {
+    return ( SystemClock.elapsedRealtime() );
     }
 
 
@@ -108,6 +216,8 @@ abstract public class ACache<K,V,C>
    *****************************************************/
   protected boolean registerForValue( K key, C consumer )
     {
+    key = canonicaliseKey( key );
+
     // If we don't already have an entry for the key - create a new list
     // containing just this one callback.
 
@@ -134,6 +244,40 @@ abstract public class ACache<K,V,C>
     }
 
 
+  /*****************************************************
+   *
+   * Withdraws a consumer's interest in the values for any
+   * keys.
+   *
+   * @return A list of the keys that no longer have any
+   *         consumers, so that the subclass may cancel any
+   *         work being done to retrieve their values.
+   *
+   *****************************************************/
+  protected List<K> unregisterFromAll( C consumer )
+    {
+    List<K> abandonedKeyList = new ArrayList<>();
+
+    Iterator<Map.Entry<K,ArrayList<C>>> consumerEntryIterator = mConsumerMap.entrySet().iterator();
+
+    while ( consumerEntryIterator.hasNext() )
+      {
+      Map.Entry<K,ArrayList<C>> consumerEntry = consumerEntryIterator.next();
+
+      ArrayList<C> consumerList = consumerEntry.getValue();
+
+      if ( consumerList.remove( consumer ) && consumerList.isEmpty() )
+        {
+        consumerEntryIterator.remove();
+
+        abandonedKeyList.add( consumerEntry.getKey() );
+        }
+      }
+
+    return ( abandonedKeyList );
+    }
+
+
   /*****************************************************
    *
    * Stores the value in the cache, and distributes it to
@@ -142,8 +286,10 @@ abstract public class ACache<K,V,C>
    *****************************************************/
   protected void saveAndDistributeValue( K key, V value )
     {
+    key = canonicaliseKey( key );
+
     // Cache the value
-    mCacheMap.put( key, value );
+    mCacheMap.put( key, new CacheEntry<V>( value, getCurrentTimeMillis() ) );
 
 
     // Remove the list of consumers, and supply the value to each one in turn.
@@ -176,6 +322,8 @@ abstract public class ACache<K,V,C>
    *****************************************************/
   protected void onError( K key, Exception exception )
     {
+    key = canonicaliseKey( key );
+
     // Remove the consumer list, and supply the error to them.
 
     ArrayList<C> consumerList = mConsumerMap.remove( key );
@@ -201,5 +349,23 @@ abstract public class ACache<K,V,C>
 
   ////////// Inner Class(es) //////////
 
+  /*****************************************************
+   *
+   * A cached value, and the time it was saved.
+   *
+   *****************************************************/
+  static private class CacheEntry<V>
+    {
+    final V     mValue;
+    final long  mSavedTimeMillis;
+
+
+    CacheEntry( V value, long savedTimeMillis )
+      {
+      mValue           = value;
+      mSavedTimeMillis = savedTimeMillis;
+      }
+    }
+
   }
 
@@ -41,6 +41,7 @@ package ly.kite.util;
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
@@ -54,11 +55,13 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -69,6 +72,7 @@ import ly.kite.KiteSDK;
 import ly.kite.image.IImageConsumer;
 import ly.kite.image.ImageAgent;
 import ly.kite.image.ImageLoadRequest;
+import ly.kite.image.ImageRequestProcessor;
 import ly.kite.ordering.ImageSpec;
 import ly.kite.util.Asset.Type;
 import ly.kite.util.Asset.MIMEType;
@@ -925,6 +929,166 @@ public class AssetHelper
     }
 
 
+  /*****************************************************
+   *
+   * Returns true if the encoded data for an asset can be
+   * read as a stream, without loading it all into memory.
+   *
+   *****************************************************/
+  static public boolean isStreamable( Asset asset )
+    {
+    switch ( asset.getType() )
+      {
+      case IMAGE_URI:
+      case IMAGE_FILE:
+      case BITMAP_RESOURCE_ID:
+
+        return ( true );
+      }
+
+    return ( false );
+    }
+
+
+  /*****************************************************
+   *
+   * Opens a stream of the encoded data for a streamable
+   * asset. The encoding matches the MIME type returned by
+   * {@link #getMimeType}. The caller must close the
+   * stream.
+   *
+   *****************************************************/
+  static public InputStream openInputStream( Context context, Asset asset ) throws IOException
+    {
+    switch ( asset.getType() )
+      {
+      case IMAGE_URI:
+
+        InputStream inputStream = context.getContentResolver().openInputStream( asset.getImageURI() );
+
+        if ( inputStream == null ) throw ( new IOException( "Unable to open image URI: " + asset.getImageURI() ) );
+
+        return ( inputStream );
+
+
+      case IMAGE_FILE:
+
+        return ( new FileInputStream( asset.getImageFilePath() ) );
+
+
+      case BITMAP_RESOURCE_ID:
+
+        return ( context.getResources().openRawResource( asset.getBitmapResourceId() ) );
+      }
+
+    throw ( new UnsupportedOperationException( "Cannot stream asset type: " + asset.getType() ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the length of the encoded data for a
+   * streamable or image bytes asset, or -1 if it can't be
+   * determined without reading the data.
+   *
+   *****************************************************/
+  static public long getContentLength( Context context, Asset asset ) throws IOException
+    {
+    AssetFileDescriptor assetFileDescriptor = null;
+
+    switch ( asset.getType() )
+      {
+      case IMAGE_BYTES:
+
+        return ( asset.getImageBytes().length );
+
+
+      case IMAGE_URI:
+
+        assetFileDescriptor = context.getContentResolver().openAssetFileDescriptor( asset.getImageURI(), "r" );
+
+        break;
+
+
+      case IMAGE_FILE:
+
+        File file = new File( asset.getImageFilePath() );
+
+        if ( ! file.exists() ) throw ( new FileNotFoundException( "Image file does not exist: " + file ) );
+
+        return ( file.length() );
+
+
+      case BITMAP_RESOURCE_ID:
+
+        // Returns null if the resource is compressed
+        assetFileDescriptor = context.getResources().openRawResourceFd( asset.getBitmapResourceId() );
+
+        break;
+
+
+      default:
+
+        throw ( new UnsupportedOperationException( "Cannot stream asset type: " + asset.getType() ) );
+      }
+
+
+    if ( assetFileDescriptor == null ) return ( -1 );
+
+    try
+      {
+      long length = assetFileDescriptor.getLength();
+
+      return ( length >= 0 ? length : -1 );
+      }
+    finally
+      {
+      assetFileDescriptor.close();
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Feeds the encoded data for an asset into a message
+   * digest. Returns false, without updating the digest,
+   * if the asset has no encoded data of its own (i.e.
+   * bitmaps and remote URLs).
+   *
+   *****************************************************/
+  static public boolean updateDigest( Context context, Asset asset, MessageDigest messageDigest ) throws IOException
+    {
+    if ( asset.getType() == Type.IMAGE_BYTES )
+      {
+      messageDigest.update( asset.getImageBytes() );
+
+      return ( true );
+      }
+
+    if ( ! isStreamable( asset ) ) return ( false );
+
+
+    InputStream inputStream = openInputStream( context, asset );
+
+    try
+      {
+      byte[] buffer = new byte[ 32 * 1024 ];
+      int    byteCount;
+
+      while ( ( byteCount = inputStream.read( buffer ) ) >= 0 )
+        {
+        messageDigest.update( buffer, 0, byteCount );
+        }
+
+      return ( true );
+      }
+    finally
+      {
+      inputStream.close();
+      }
+    }
+
+
   /*****************************************************
    *
    * Makes a request for this asset to be returned
@@ -961,6 +1125,7 @@ public class AssetHelper
 
         ImageAgent.with( context )
                 .load( asset )
+                .priority( ImageRequestProcessor.Priority.BACKGROUND )
                 .into( convertorTask, asset );
         //ImageAgent.getInstance( context ).requestImage( IMAGE_CATEGORY_SESSION_ASSET, , asset.getRemoteURL(), convertorTask );
 
@@ -31,7 +31,6 @@
  * THE SOFTWARE.
  *
  *****************************************************/
-
 ///// Package Declaration /////
 
 package ly.kite.util;
@@ -47,48 +46,103 @@ import android.os.AsyncTask;
 import android.util.Log;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ly.kite.KiteSDK;
+import ly.kite.SDKCustomiser;
+import ly.kite.image.ImageRequestProcessor;
 
 /*****************************************************
  *
  * This class downloads images.
  *
+ * Requests are queued in priority lanes, so that images
+ * that are on-screen are downloaded before prefetched or
+ * background images, and the number of downloads from any
+ * one host is limited.
+ *
+ * Downloads are written to a partial file alongside the
+ * target file. If a download fails part way through, it
+ * is resumed using an HTTP range request, both when it is
+ * retried and the next time the file is requested. Only
+ * one download at a time may use the partial file for a
+ * target file.
+ *
  *****************************************************/
 public class FileDownloader
   {
   ////////// Static Constant(s) //////////
 
   @SuppressWarnings( "unused" )
-  static private final String  LOG_TAG                  = "FileDownloader";
+  static private final String  LOG_TAG                           = "FileDownloader";
+
+  static private final boolean DEBUGGING_ENABLED                 = false;
+
+  static private final int     BUFFER_SIZE_IN_BYTES              = 8192;  // 8 KB
+
+  static private final int     MAX_CONCURRENT_DOWNLOADS          = 5;
+  static private final int     MAX_CONCURRENT_DOWNLOADS_PER_HOST = 4;
 
-  static private final boolean DEBUGGING_ENABLED        = false;
+  // Prefetch and background downloads always leave a slot free on each host for visible downloads
+  static private final int     MAX_LOW_PRIORITY_DOWNLOADS_PER_HOST = MAX_CONCURRENT_DOWNLOADS_PER_HOST - 1;
 
-  static private final int     BUFFER_SIZE_IN_BYTES     = 8192;  // 8 KB
+  static private final int     MAX_DOWNLOAD_ATTEMPTS             = 3;
+  static private final long    RETRY_DELAY_MILLIS                = 1000L;
 
-  static private final int     MAX_CONCURRENT_DOWNLOADS = 5;
+  static private final int     DEFAULT_CONNECT_TIMEOUT_MILLIS    = 30000;
+  static private final int     DEFAULT_READ_TIMEOUT_MILLIS       = 60000;
+
+  static private final String  PARTIAL_FILE_SUFFIX               = ".part";
+  static private final String  VALIDATOR_FILE_SUFFIX             = ".validator";
+
+  static private final String  HEADER_NAME_RANGE                 = "Range";
+  static private final String  HEADER_NAME_IF_RANGE              = "If-Range";
+  static private final String  HEADER_NAME_CONTENT_RANGE         = "Content-Range";
+  static private final String  HEADER_NAME_ETAG                  = "ETag";
+  static private final String  HEADER_NAME_LAST_MODIFIED         = "Last-Modified";
+
+  static private final int     HTTP_STATUS_CODE_RANGE_NOT_SATISFIABLE = 416;
 
 
   ////////// Static Variable(s) //////////
 
   private static FileDownloader sImageDownloader;
 
+  static private AtomicLong     sDownloadedByteCount = new AtomicLong();
+  static private AtomicLong     sResumedByteCount    = new AtomicLong();
+
+  // Locks for the target files that are being downloaded, by path
+  static private final HashMap<String,TargetFileLock> sTargetFileLockTable = new HashMap<>();
+
 
   ////////// Member Variable(s) //////////
 
-  private Context                     mContext;
+  private Context                              mContext;
+
+  private Executor                             mThreadPoolExecutor;
 
-  private Executor                    mThreadPoolExecutor;
+  private Map<URL, DownloaderTask>             mInProgressDownloadTasks;
 
-  private Map<URL, DownloaderTask>    mInProgressDownloadTasks;
+  private ArrayList<LinkedList<DownloaderTask>>  mTaskLanes;
+
+  private int                                  mRunningCount;
+  private int                                  mLowPriorityRunningCount;
+  private HashMap<String,Integer>              mHostRunningCountTable;
 
 
   ////////// Static Initialiser(s) //////////
@@ -122,104 +176,465 @@ public class FileDownloader
    *****************************************************/
   static public Exception download( URL sourceURL, File targetDirectory, File targetFile )
     {
-    // Make sure the directory exists
-    targetDirectory.mkdirs();
+    return ( download( sourceURL, targetDirectory, targetFile, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS ) );
+    }
 
 
-    // Retrieve the image
+  /*****************************************************
+   *
+   * Downloads a file from a remote URL to a local file,
+   * retrying - and resuming from where it left off - if
+   * the download fails part way through.
+   *
+   * @return null, if the file was downloaded successfully
+   * @return Exception, if an exception was thrown
+   *
+   *****************************************************/
+  static public Exception download( URL sourceURL, File targetDirectory, File targetFile, int connectTimeoutMillis, int readTimeoutMillis )
+    {
+    // A download that has been cancelled may still be running, so make sure that we
+    // have the partial file to ourselves.
 
-    InputStream      inputStream      = null;
-    FileOutputStream fileOutputStream = null;
+    TargetFileLock targetFileLock = acquireTargetFileLock( targetFile );
 
-    // Use temp file as initial download target as elsewhere i.e. ImageAgent.requestImage we
-    // assume file existence means completed download and this download likely occurs on a different
-    // thread.
+    try
+      {
+      synchronized ( targetFileLock )
+        {
+        return ( downloadLocked( sourceURL, targetDirectory, targetFile, connectTimeoutMillis, readTimeoutMillis ) );
+        }
+      }
+    finally
+      {
+      releaseTargetFileLock( targetFile, targetFileLock );
+      }
+    }
 
-    File tempTargetFile = null;
 
-    try
+  /*****************************************************
+   *
+   * Returns the lock for a target file, creating it if
+   * necessary.
+   *
+   *****************************************************/
+  static private TargetFileLock acquireTargetFileLock( File targetFile )
+    {
+    String path = targetFile.getAbsolutePath();
+
+    synchronized ( sTargetFileLockTable )
       {
-      Log.i( LOG_TAG, "Downloading: " + sourceURL.toString() + " -> " + targetFile.getPath() );
+      TargetFileLock targetFileLock = sTargetFileLockTable.get( path );
 
-      tempTargetFile = File.createTempFile( targetFile.getName(), ".tmp" );
+      if ( targetFileLock == null )
+        {
+        targetFileLock = new TargetFileLock();
 
-      inputStream = sourceURL.openStream();
+        sTargetFileLockTable.put( path, targetFileLock );
+        }
 
-      fileOutputStream = new FileOutputStream( tempTargetFile );
+      targetFileLock.mUserCount ++;
 
-      byte[] downloadBuffer = new byte[ BUFFER_SIZE_IN_BYTES ];
+      return ( targetFileLock );
+      }
+    }
 
-      int numberOfBytesRead;
-      int totalBytesRead = 0;
 
-      while ( ( numberOfBytesRead = inputStream.read( downloadBuffer ) ) >= 0 )
+  /*****************************************************
+   *
+   * Releases the lock for a target file, removing it once
+   * nobody is using it.
+   *
+   *****************************************************/
+  static private void releaseTargetFileLock( File targetFile, TargetFileLock targetFileLock )
+    {
+    synchronized ( sTargetFileLockTable )
+      {
+      if ( -- targetFileLock.mUserCount <= 0 ) sTargetFileLockTable.remove( targetFile.getAbsolutePath() );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Downloads a file, whilst holding the lock for the
+   * target file.
+   *
+   *****************************************************/
+  static private Exception downloadLocked( URL sourceURL, File targetDirectory, File targetFile, int connectTimeoutMillis, int readTimeoutMillis )
+    {
+    // Make sure the directory exists
+    targetDirectory.mkdirs();
+
+
+    // Download into a partial file, because elsewhere (i.e. ImageAgent.requestImage) we
+    // assume that file existence means the download has completed. The partial file has
+    // a fixed name, so that an interrupted download can be resumed.
+
+    File partialFile   = new File( targetFile.getPath() + PARTIAL_FILE_SUFFIX );
+    File validatorFile = new File( targetFile.getPath() + PARTIAL_FILE_SUFFIX + VALIDATOR_FILE_SUFFIX );
+
+    IOException lastIOException = null;
+
+    for ( int attempt = 1; attempt <= MAX_DOWNLOAD_ATTEMPTS; attempt ++ )
+      {
+      if ( attempt > 1 )
+        {
+        try
+          {
+          Thread.sleep( RETRY_DELAY_MILLIS * ( attempt - 1 ) );
+          }
+        catch ( InterruptedException ie )
+          {
+          return ( lastIOException );
+          }
+        }
+
+      try
         {
-        fileOutputStream.write( downloadBuffer, 0, numberOfBytesRead );
+        downloadToPartialFile( sourceURL, partialFile, validatorFile, connectTimeoutMillis, readTimeoutMillis );
+
+        if ( DEBUGGING_ENABLED ) Log.d( LOG_TAG, "Renaming " + partialFile.getAbsolutePath() + " -> " + targetFile.getAbsolutePath() );
+
+        validatorFile.delete();
+
+        if ( ! partialFile.renameTo( targetFile ) )
+          {
+          throw ( new IOException( "Unable to rename " + partialFile.getPath() + " to " + targetFile.getPath() ) );
+          }
 
-        totalBytesRead += numberOfBytesRead;
+        return ( null );
         }
+      catch ( NonRetryableIOException nrioe )
+        {
+        Log.e( LOG_TAG, "Unable to download to file", nrioe );
+
+        partialFile.delete();
+        validatorFile.delete();
 
-      if ( DEBUGGING_ENABLED )
+        return ( nrioe );
+        }
+      catch ( IOException ioe )
         {
-        Log.d( LOG_TAG, "Downloaded " + totalBytesRead + " bytes" );
-        Log.d( LOG_TAG, "Renaming " + tempTargetFile.getAbsolutePath() + " -> " + targetFile.getAbsolutePath() );
+        Log.e( LOG_TAG, "Unable to download to file (attempt " + attempt + " of " + MAX_DOWNLOAD_ATTEMPTS + ")", ioe );
+
+        lastIOException = ioe;
         }
+      }
 
-      tempTargetFile.renameTo( targetFile );
 
-      return ( null );
+    // Leave any partial file in place, so the download can be resumed the next time
+    // the file is requested. Make sure there is no damaged target file though.
+
+    targetFile.delete();
+
+    return ( lastIOException );
+    }
+
+
+  /*****************************************************
+   *
+   * Makes one attempt at downloading a file into a partial
+   * file. If the partial file already contains data, and
+   * we know how to check that the remote file hasn't changed,
+   * the download is resumed with a range request.
+   *
+   *****************************************************/
+  static private void downloadToPartialFile( URL sourceURL, File partialFile, File validatorFile, int connectTimeoutMillis, int readTimeoutMillis ) throws IOException
+    {
+    long   existingByteCount = partialFile.length();
+    String validator         = ( existingByteCount > 0 ? readValidator( validatorFile ) : null );
+
+    if ( validator == null ) existingByteCount = 0;
+
+
+    Log.i( LOG_TAG, "Downloading: " + sourceURL.toString() + " -> " + partialFile.getPath() + ( existingByteCount > 0 ? " from byte " + existingByteCount : "" ) );
+
+    URLConnection urlConnection = sourceURL.openConnection();
+
+    urlConnection.setConnectTimeout( connectTimeoutMillis );
+    urlConnection.setReadTimeout( readTimeoutMillis );
+
+    if ( existingByteCount > 0 )
+      {
+      urlConnection.setRequestProperty( HEADER_NAME_RANGE, "bytes=" + existingByteCount + "-" );
+      urlConnection.setRequestProperty( HEADER_NAME_IF_RANGE, validator );
       }
-    catch ( IOException ioe )
+
+
+    InputStream      inputStream      = null;
+    FileOutputStream fileOutputStream = null;
+
+    try
       {
-      Log.e( LOG_TAG, "Unable to download to file", ioe );
+      boolean append = false;
+
+      if ( urlConnection instanceof HttpURLConnection )
+        {
+        int httpStatusCode = ( (HttpURLConnection)urlConnection ).getResponseCode();
 
-      // Clean up any damaged files
+        if ( httpStatusCode == HttpURLConnection.HTTP_PARTIAL )
+          {
+          if ( existingByteCount <= 0 || ( ! isContentRangeFrom( urlConnection.getHeaderField( HEADER_NAME_CONTENT_RANGE ), existingByteCount ) ) )
+            {
+            // We didn't get the range we asked for, so start again from scratch
+            partialFile.delete();
+            validatorFile.delete();
 
-      if ( tempTargetFile != null ) tempTargetFile.delete();
+            throw ( new IOException( "Unexpected content range: " + urlConnection.getHeaderField( HEADER_NAME_CONTENT_RANGE ) ) );
+            }
 
-      targetFile.delete();
+          append = true;
 
+          sResumedByteCount.addAndGet( existingByteCount );
+          }
+        else if ( httpStatusCode == HTTP_STATUS_CODE_RANGE_NOT_SATISFIABLE )
+          {
+          // Our partial file doesn't match the remote file, so start again from scratch
+          partialFile.delete();
+          validatorFile.delete();
 
-      return ( ioe );
+          throw ( new IOException( "Requested range not satisfiable" ) );
+          }
+        else if ( httpStatusCode < 200 || httpStatusCode > 299 )
+          {
+          throw ( new NonRetryableIOException( "Unexpected HTTP status code: " + httpStatusCode ) );
+          }
+        }
+
+
+      // If we're not appending, save what we need to resume this download if it fails
+
+      if ( ! append )
+        {
+        writeValidator( validatorFile, getValidator( urlConnection ) );
+        }
+
+
+      inputStream      = urlConnection.getInputStream();
+      fileOutputStream = new FileOutputStream( partialFile, append );
+
+      byte[] downloadBuffer = new byte[ BUFFER_SIZE_IN_BYTES ];
+
+      int  numberOfBytesRead;
+      long totalBytesRead = 0;
+
+      try
+        {
+        while ( ( numberOfBytesRead = inputStream.read( downloadBuffer ) ) >= 0 )
+          {
+          // Stop promptly if the download has been cancelled, so that we don't hold
+          // on to the partial file.
+          if ( Thread.currentThread().isInterrupted() ) throw ( new InterruptedIOException( "Download interrupted" ) );
+
+          fileOutputStream.write( downloadBuffer, 0, numberOfBytesRead );
+
+          totalBytesRead += numberOfBytesRead;
+          }
+        }
+      finally
+        {
+        sDownloadedByteCount.addAndGet( totalBytesRead );
+        }
+
+      if ( DEBUGGING_ENABLED ) Log.d( LOG_TAG, "Downloaded " + totalBytesRead + " bytes" );
       }
     finally
       {
       // Make sure the streams are closed before we finish
 
       if ( fileOutputStream != null )
+        {
+        fileOutputStream.close();
+        }
+
+      if ( inputStream != null )
         {
         try
           {
-          fileOutputStream.close();
+          inputStream.close();
           }
         catch ( IOException ioe )
           {
-          return ( ioe );
+          // Ignore
           }
         }
 
-      if ( inputStream != null )
+      if ( urlConnection instanceof HttpURLConnection )
+        {
+        ( (HttpURLConnection)urlConnection ).disconnect();
+        }
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns true if a content range header value starts
+   * at the supplied byte.
+   *
+   *****************************************************/
+  static boolean isContentRangeFrom( String contentRange, long firstBytePosition )
+    {
+    // The header value has the form: "bytes <first>-<last>/<length>"
+
+    if ( contentRange == null ) return ( false );
+
+    String prefix = "bytes " + firstBytePosition + "-";
+
+    return ( contentRange.trim().startsWith( prefix ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns a validator that can be used to check that
+   * a remote file hasn't changed, or null if there isn't
+   * one. Weak entity tags cannot be used with a range
+   * request.
+   *
+   *****************************************************/
+  static private String getValidator( URLConnection urlConnection )
+    {
+    String eTag = urlConnection.getHeaderField( HEADER_NAME_ETAG );
+
+    if ( eTag != null && ! eTag.startsWith( "W/" ) ) return ( eTag );
+
+    return ( urlConnection.getHeaderField( HEADER_NAME_LAST_MODIFIED ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Reads a saved validator.
+   *
+   *****************************************************/
+  static private String readValidator( File validatorFile )
+    {
+    if ( ! validatorFile.exists() ) return ( null );
+
+    FileInputStream fileInputStream = null;
+
+    try
+      {
+      fileInputStream = new FileInputStream( validatorFile );
+
+      byte[] buffer = new byte[ (int)validatorFile.length() ];
+
+      int byteCount = 0;
+      int numberOfBytesRead;
+
+      while ( byteCount < buffer.length && ( numberOfBytesRead = fileInputStream.read( buffer, byteCount, buffer.length - byteCount ) ) >= 0 )
+        {
+        byteCount += numberOfBytesRead;
+        }
+
+      String validator = new String( buffer, 0, byteCount, "UTF-8" ).trim();
+
+      return ( validator.length() > 0 ? validator : null );
+      }
+    catch ( IOException ioe )
+      {
+      Log.e( LOG_TAG, "Unable to read validator file", ioe );
+
+      return ( null );
+      }
+    finally
+      {
+      if ( fileInputStream != null )
         {
         try
           {
-          inputStream.close();
+          fileInputStream.close();
           }
         catch ( IOException ioe )
           {
-          return ( ioe );
+          // Ignore
           }
         }
       }
     }
 
 
+  /*****************************************************
+   *
+   * Saves a validator, or removes any existing one if the
+   * validator is null.
+   *
+   *****************************************************/
+  static private void writeValidator( File validatorFile, String validator ) throws IOException
+    {
+    if ( validator == null )
+      {
+      validatorFile.delete();
+
+      return;
+      }
+
+    FileOutputStream fileOutputStream = new FileOutputStream( validatorFile );
+
+    try
+      {
+      fileOutputStream.write( validator.getBytes( "UTF-8" ) );
+      }
+    finally
+      {
+      fileOutputStream.close();
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the total number of bytes downloaded since the
+   * app started.
+   *
+   *****************************************************/
+  static public long getDownloadedByteCount()
+    {
+    return ( sDownloadedByteCount.get() );
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the total number of bytes that did not need
+   * to be downloaded again because a download was resumed.
+   *
+   *****************************************************/
+  static public long getResumedByteCount()
+    {
+    return ( sResumedByteCount.get() );
+    }
+
+
   ////////// Constructor(s) //////////
 
   private FileDownloader( Context context )
+    {
+    this( context, null );
+    }
+
+
+  /*****************************************************
+   *
+   * Creates a downloader. If no executor is supplied, a
+   * fixed thread pool is created for the downloads.
+   *
+   *****************************************************/
+  FileDownloader( Context context, Executor executor )
     {
     mContext                 = context;
-    mThreadPoolExecutor      = Executors.newFixedThreadPool( MAX_CONCURRENT_DOWNLOADS );
+    mThreadPoolExecutor      = ( executor != null ? executor : Executors.newFixedThreadPool( MAX_CONCURRENT_DOWNLOADS ) );
     mInProgressDownloadTasks = new HashMap<>();
+
+    mTaskLanes               = new ArrayList<>();
+
+    for ( int laneIndex = 0; laneIndex < ImageRequestProcessor.Priority.values().length; laneIndex ++ )
+      {
+      mTaskLanes.add( new LinkedList<DownloaderTask>() );
+      }
+
+    mHostRunningCountTable   = new HashMap<>();
     }
 
 
@@ -234,12 +649,31 @@ public class FileDownloader
    *****************************************************/
   public void clearPendingRequests()
     {
-    for ( DownloaderTask downloaderTask : mInProgressDownloadTasks.values() )
+    List<DownloaderTask> cancelledTaskList = new ArrayList<>( mInProgressDownloadTasks.values() );
+
+    for ( DownloaderTask downloaderTask : cancelledTaskList )
       {
       downloaderTask.cancel( true );
       }
 
     mInProgressDownloadTasks.clear();
+
+    for ( LinkedList<DownloaderTask> taskLane : mTaskLanes )
+      {
+      taskLane.clear();
+      }
+
+
+    // Cancelled tasks never call onDownloadSuccess or onDownloadFailure, so let any
+    // callbacks that are keeping track know what has happened.
+
+    for ( DownloaderTask downloaderTask : cancelledTaskList )
+      {
+      for ( ICallback callback : downloaderTask.mCallbacks )
+        {
+        if ( callback instanceof ICancellableCallback ) ( (ICancellableCallback)callback ).onDownloadCancelled( downloaderTask.mSourceURL );
+        }
+      }
     }
 
 
@@ -250,25 +684,68 @@ public class FileDownloader
    * Must be called on the UI thread.
    *
    *****************************************************/
-  public void requestFileDownload( URL sourceURL, File targetDirectory, File targetFile, boolean forceDownload, ICallback callback )
+  public void requestFileDownload( URL sourceURL, File targetDirectory, File targetFile, boolean forceDownload, ImageRequestProcessor.Priority priority, ICallback callback )
     {
-    if ( mInProgressDownloadTasks.get( sourceURL ) == null )
+    DownloaderTask existingTask = mInProgressDownloadTasks.get( sourceURL );
+
+    if ( existingTask == null )
       {
-      // No in-progress task downloading this file, let's kick one off
+      // No in-progress task downloading this file, let's queue one up
 
-      DownloaderTask downloaderTask = new DownloaderTask( sourceURL, targetDirectory, targetFile, forceDownload, callback );
+      DownloaderTask downloaderTask = new DownloaderTask( sourceURL, targetDirectory, targetFile, forceDownload, priority, callback );
 
       mInProgressDownloadTasks.put( sourceURL, downloaderTask );
 
-      downloaderTask.executeOnExecutor( mThreadPoolExecutor );
+      mTaskLanes.get( priority.ordinal() ).addLast( downloaderTask );
       }
     else
       {
       // A download is already in progress for this file so just add to the list of callbacks that
       // will be notified upon completion
 
-      mInProgressDownloadTasks.get( sourceURL ).addCallback( callback );
+      existingTask.addCallback( callback );
+
+
+      // If the task hasn't started yet, and we need it sooner than whoever asked for it
+      // first, move it to the higher priority lane.
+
+      if ( ! existingTask.mStarted && priority.ordinal() < existingTask.mPriority.ordinal() )
+        {
+        mTaskLanes.get( existingTask.mPriority.ordinal() ).remove( existingTask );
+
+        existingTask.mPriority = priority;
+
+        mTaskLanes.get( priority.ordinal() ).addLast( existingTask );
+        }
       }
+
+    startDownloads();
+    }
+
+
+  /*****************************************************
+   *
+   * Requests a file to be downloaded.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  public void requestFileDownload( URL sourceURL, File targetDirectory, File targetFile, boolean forceDownload, ICallback callback )
+    {
+    requestFileDownload( sourceURL, targetDirectory, targetFile, forceDownload, ImageRequestProcessor.Priority.VISIBLE, callback );
+    }
+
+
+  /*****************************************************
+   *
+   * Requests a file to be downloaded.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  public void requestFileDownload( URL sourceURL, File targetDirectory, File targetFile, ImageRequestProcessor.Priority priority, ICallback callback )
+    {
+    requestFileDownload( sourceURL, targetDirectory, targetFile, false, priority, callback );
     }
 
 
@@ -281,7 +758,112 @@ public class FileDownloader
    *****************************************************/
   public void requestFileDownload( URL sourceURL, File targetDirectory, File targetFile, ICallback callback )
     {
-    requestFileDownload( sourceURL, targetDirectory, targetFile, false, callback );
+    requestFileDownload( sourceURL, targetDirectory, targetFile, false, ImageRequestProcessor.Priority.VISIBLE, callback );
+    }
+
+
+  /*****************************************************
+   *
+   * Starts as many queued downloads as we can.
+   *
+   * We always leave one download slot free for visible
+   * requests, and limit the number of downloads from
+   * any one host. Low priority requests have a lower
+   * limit per host, so they can't stop a visible request
+   * from starting.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  private void startDownloads()
+    {
+    int maxLowPriorityRunningCount = Math.max( 1, MAX_CONCURRENT_DOWNLOADS - 1 );
+
+    while ( mRunningCount < MAX_CONCURRENT_DOWNLOADS )
+      {
+      DownloaderTask nextTask = null;
+
+      for ( ImageRequestProcessor.Priority priority : ImageRequestProcessor.Priority.values() )
+        {
+        if ( priority != ImageRequestProcessor.Priority.VISIBLE && mLowPriorityRunningCount >= maxLowPriorityRunningCount ) break;
+
+        int maxHostRunningCount = ( priority == ImageRequestProcessor.Priority.VISIBLE ? MAX_CONCURRENT_DOWNLOADS_PER_HOST : MAX_LOW_PRIORITY_DOWNLOADS_PER_HOST );
+
+        for ( DownloaderTask candidateTask : mTaskLanes.get( priority.ordinal() ) )
+          {
+          if ( getHostRunningCount( candidateTask.mHost ) < maxHostRunningCount )
+            {
+            nextTask = candidateTask;
+
+            break;
+            }
+          }
+
+        if ( nextTask != null ) break;
+        }
+
+      if ( nextTask == null ) return;
+
+
+      mTaskLanes.get( nextTask.mPriority.ordinal() ).remove( nextTask );
+
+      mRunningCount ++;
+
+      if ( nextTask.mPriority != ImageRequestProcessor.Priority.VISIBLE )
+        {
+        mLowPriorityRunningCount ++;
+
+        nextTask.mCountedAsLowPriority = true;
+        }
+
+      mHostRunningCountTable.put( nextTask.mHost, getHostRunningCount( nextTask.mHost ) + 1 );
+
+      nextTask.mStarted = true;
+
+      nextTask.executeOnExecutor( mThreadPoolExecutor );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Returns the number of running downloads for a host.
+   *
+   *****************************************************/
+  private int getHostRunningCount( String host )
+    {
+    Integer count = mHostRunningCountTable.get( host );
+
+    return ( count != null ? count : 0 );
+    }
+
+
+  /*****************************************************
+   *
+   * Called when a started task has finished, whether it
+   * completed or was cancelled.
+   *
+   * Must be called on the UI thread.
+   *
+   *****************************************************/
+  private void onTaskFinished( DownloaderTask downloaderTask )
+    {
+    mRunningCount --;
+
+    if ( downloaderTask.mCountedAsLowPriority ) mLowPriorityRunningCount --;
+
+    int hostRunningCount = getHostRunningCount( downloaderTask.mHost ) - 1;
+
+    if ( hostRunningCount > 0 ) mHostRunningCountTable.put( downloaderTask.mHost, hostRunningCount );
+    else                        mHostRunningCountTable.remove( downloaderTask.mHost );
+
+    // Only remove the task if it hasn't been replaced by a new request since the queue was cleared
+    if ( mInProgressDownloadTasks.get( downloaderTask.mSourceURL ) == downloaderTask )
+      {
+      mInProgressDownloadTasks.remove( downloaderTask.mSourceURL );
+      }
+
+    startDownloads();
     }
 
 
@@ -299,6 +881,45 @@ public class FileDownloader
     }
 
 
+  /*****************************************************
+   *
+   * A downloaded image consumer that also needs to know
+   * when its download is cancelled by a call to
+   * clearPendingRequests.
+   *
+   *****************************************************/
+  public interface ICancellableCallback extends ICallback
+    {
+    public void onDownloadCancelled( URL sourceURL );
+    }
+
+
+  /*****************************************************
+   *
+   * A lock for a target file.
+   *
+   *****************************************************/
+  static private class TargetFileLock
+    {
+    // Guarded by sTargetFileLockTable
+    int  mUserCount;
+    }
+
+
+  /*****************************************************
+   *
+   * A download failure that will not be fixed by trying
+   * again.
+   *
+   *****************************************************/
+  static private class NonRetryableIOException extends IOException
+    {
+    NonRetryableIOException( String message )
+      {
+      super( message );
+      }
+    }
+
 
   /*****************************************************
    *
@@ -307,19 +928,26 @@ public class FileDownloader
    *****************************************************/
   private class DownloaderTask extends AsyncTask< Void, Void, Exception >
     {
-    private final URL              mSourceURL;
-    private final File             mTargetDirectory;
-    private final File             mTargetFile;
-    private final boolean          mForceDownload;
-    private final List<ICallback>  mCallbacks;
+    private final URL                       mSourceURL;
+    private final String                    mHost;
+    private final File                      mTargetDirectory;
+    private final File                      mTargetFile;
+    private final boolean                   mForceDownload;
+    private final List<ICallback>           mCallbacks;
+
+    private ImageRequestProcessor.Priority  mPriority;
+    private boolean                         mStarted;
+    private boolean                         mCountedAsLowPriority;
 
 
-    public DownloaderTask( URL sourceURL, File targetDirectory, File targetFile, boolean forceDownload, ICallback callback )
+    public DownloaderTask( URL sourceURL, File targetDirectory, File targetFile, boolean forceDownload, ImageRequestProcessor.Priority priority, ICallback callback )
       {
       mSourceURL       = sourceURL;
+      mHost            = ( sourceURL.getHost() != null ? sourceURL.getHost() : "" );
       mTargetDirectory = targetDirectory;
       mTargetFile      = targetFile;
       mForceDownload   = forceDownload;
+      mPriority        = priority;
 
       mCallbacks = new ArrayList<>();
       mCallbacks.add( callback );
@@ -342,7 +970,9 @@ public class FileDownloader
       {
       if (  mForceDownload || ( ! mTargetFile.exists() ) )
         {
-        return ( download( mSourceURL, mTargetDirectory, mTargetFile ) );
+        SDKCustomiser customiser = KiteSDK.getInstance( mContext ).getCustomiser();
+
+        return ( download( mSourceURL, mTargetDirectory, mTargetFile, customiser.getHTTPConnectionTimeoutMillis(), customiser.getHTTPSocketTimeoutMillis() ) );
         }
 
       return ( null );
@@ -361,10 +991,16 @@ public class FileDownloader
         for ( ICallback callback : mCallbacks ) callback.onDownloadFailure( mSourceURL, resultException );
         }
 
-      mInProgressDownloadTasks.remove( mSourceURL );
+      onTaskFinished( this );
+      }
+
+
+    @Override
+    protected void onCancelled()
+      {
+      if ( mStarted ) onTaskFinished( this );
       }
     }
 
 
   }
-
@@ -0,0 +1,305 @@
+/*****************************************************
+ *
+ * HTTPClientAgent.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.util;
+
+
+///// Import(s) /////
+
+import android.content.Context;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import ly.kite.KiteSDK;
+import ly.kite.SDKCustomiser;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class supplies the HTTP client shared by all
+ * requests, so that connections (and their TLS sessions)
+ * are pooled and kept alive between requests, rather than
+ * being set up again for every request.
+ *
+ * Responses are requested gzipped, and decompressed
+ * transparently.
+ *
+ * Anyone executing a request must consume or abort the
+ * response, otherwise its connection is never returned
+ * to the pool.
+ *
+ *****************************************************/
+public class HTTPClientAgent
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  static private final String  LOG_TAG                          = "HTTPClientAgent";
+
+  static private final int     MAX_TOTAL_CONNECTIONS            = 16;
+  static private final int     MAX_CONNECTIONS_PER_ROUTE        = 6;
+
+  static private final long    CONNECTION_POOL_TIMEOUT_MILLIS   = 30000L;
+  static private final long    MAX_KEEP_ALIVE_MILLIS            = 30000L;
+
+  static private final int     SOCKET_BUFFER_SIZE               = 16 * 1024;
+
+  static private final String  HEADER_NAME_ACCEPT_ENCODING      = "Accept-Encoding";
+  static private final String  ENCODING_GZIP                    = "gzip";
+
+
+  ////////// Static Variable(s) //////////
+
+  static private DefaultHttpClient  sHttpClient;
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+  /*****************************************************
+   *
+   * Returns the shared HTTP client, creating it if
+   * necessary.
+   *
+   *****************************************************/
+  static synchronized public HttpClient getHttpClient( Context context )
+    {
+    if ( sHttpClient == null )
+      {
+      sHttpClient = createHttpClient( KiteSDK.getInstance( context ).getCustomiser() );
+      }
+    else
+      {
+      // Don't hold on to connections the server will have given up on
+      sHttpClient.getConnectionManager().closeIdleConnections( MAX_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS );
+      }
+
+    return ( sHttpClient );
+    }
+
+
+  /*****************************************************
+   *
+   * Creates a pooled HTTP client.
+   *
+   *****************************************************/
+  static private DefaultHttpClient createHttpClient( SDKCustomiser customiser )
+    {
+    HttpParams httpParams = new BasicHttpParams();
+
+    HttpProtocolParams.setVersion( httpParams, HttpVersion.HTTP_1_1 );
+    HttpProtocolParams.setContentCharset( httpParams, HTTP.UTF_8 );
+
+    HttpConnectionParams.setConnectionTimeout( httpParams, customiser.getHTTPConnectionTimeoutMillis() );
+    HttpConnectionParams.setSoTimeout( httpParams, customiser.getHTTPSocketTimeoutMillis() );
+    HttpConnectionParams.setSocketBufferSize( httpParams, SOCKET_BUFFER_SIZE );
+    HttpConnectionParams.setTcpNoDelay( httpParams, true );
+
+    // Pooled connections may have been closed by the server
+    HttpConnectionParams.setStaleCheckingEnabled( httpParams, true );
+
+    ConnManagerParams.setMaxTotalConnections( httpParams, MAX_TOTAL_CONNECTIONS );
+    ConnManagerParams.setMaxConnectionsPerRoute( httpParams, new ConnPerRouteBean( MAX_CONNECTIONS_PER_ROUTE ) );
+    ConnManagerParams.setTimeout( httpParams, CONNECTION_POOL_TIMEOUT_MILLIS );
+
+
+    SchemeRegistry schemeRegistry = new SchemeRegistry();
+
+    schemeRegistry.register( new Scheme( "http",  PlainSocketFactory.getSocketFactory(), 80 ) );
+    schemeRegistry.register( new Scheme( "https", SSLSocketFactory.getSocketFactory(),  443 ) );
+
+
+    DefaultHttpClient httpClient = new DefaultHttpClient( new ThreadSafeClientConnManager( httpParams, schemeRegistry ), httpParams );
+
+    httpClient.setKeepAliveStrategy( new KeepAliveStrategy() );
+    httpClient.addRequestInterceptor( new AcceptGzipInterceptor() );
+    httpClient.addResponseInterceptor( new GzipResponseInterceptor() );
+
+    return ( httpClient );
+    }
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+
+  ////////// Inner Class(es) //////////
+
+  /*****************************************************
+   *
+   * A keep-alive strategy that uses the time from the
+   * server, but never keeps a connection for longer than
+   * our maximum.
+   *
+   *****************************************************/
+  static private class KeepAliveStrategy extends DefaultConnectionKeepAliveStrategy
+    {
+    @Override
+    public long getKeepAliveDuration( HttpResponse response, HttpContext context )
+      {
+      long durationMillis = super.getKeepAliveDuration( response, context );
+
+      if ( durationMillis < 0 || durationMillis > MAX_KEEP_ALIVE_MILLIS ) return ( MAX_KEEP_ALIVE_MILLIS );
+
+      return ( durationMillis );
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Asks for gzipped responses.
+   *
+   *****************************************************/
+  static private class AcceptGzipInterceptor implements HttpRequestInterceptor
+    {
+    @Override
+    public void process( HttpRequest request, HttpContext context ) throws HttpException, IOException
+      {
+      if ( ! request.containsHeader( HEADER_NAME_ACCEPT_ENCODING ) )
+        {
+        request.addHeader( HEADER_NAME_ACCEPT_ENCODING, ENCODING_GZIP );
+        }
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * Decompresses gzipped responses.
+   *
+   *****************************************************/
+  static private class GzipResponseInterceptor implements HttpResponseInterceptor
+    {
+    @Override
+    public void process( HttpResponse response, HttpContext context ) throws HttpException, IOException
+      {
+      HttpEntity entity = response.getEntity();
+
+      if ( entity == null ) return;
+
+      Header contentEncodingHeader = entity.getContentEncoding();
+
+      if ( contentEncodingHeader == null ) return;
+
+      for ( HeaderElement headerElement : contentEncodingHeader.getElements() )
+        {
+        if ( ENCODING_GZIP.equalsIgnoreCase( headerElement.getName() ) )
+          {
+          response.setEntity( new GzipDecompressingEntity( entity ) );
+
+          return;
+          }
+        }
+      }
+    }
+
+
+  /*****************************************************
+   *
+   * An entity that decompresses a gzipped entity.
+   *
+   *****************************************************/
+  static private class GzipDecompressingEntity extends HttpEntityWrapper
+    {
+    GzipDecompressingEntity( HttpEntity entity )
+      {
+      super( entity );
+      }
+
+
+    @Override
+    public InputStream getContent() throws IOException
+      {
+      return ( new GZIPInputStream( wrappedEntity.getContent() ) );
+      }
+
+
+    @Override
+    public long getContentLength()
+      {
+      // The decompressed length isn't known
+      return ( -1 );
+      }
+
+
+    @Override
+    public Header getContentEncoding()
+      {
+      return ( null );
+      }
+    }
+
+  }
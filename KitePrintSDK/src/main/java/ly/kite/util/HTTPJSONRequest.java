@@ -49,6 +49,7 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import android.content.Context;
+import android.util.JsonReader;
 import android.util.Log;
 
 import ly.kite.KiteSDKException;
@@ -77,6 +78,7 @@ public class HTTPJSONRequest extends HTTPRequest
   ////////// Member Variable(s) //////////
 
   private IJSONResponseListener  mJSONResponseListener;
+  private IJSONStreamParser      mJSONStreamParser;
 
   private JSONObject             mJSONResponse;
 
@@ -110,6 +112,26 @@ public class HTTPJSONRequest extends HTTPRequest
     }
 
 
+  /*****************************************************
+   *
+   * Starts the request, streaming a successful response
+   * to the parser instead of creating a JSON object from
+   * it. This avoids holding the whole response in memory.
+   * The listener is then called with an empty JSON object.
+   *
+   * Unsuccessful responses are still returned to the
+   * listener as a JSON object, so that errors can be
+   * read.
+   *
+   *****************************************************/
+  public void start( IJSONStreamParser streamParser, IJSONResponseListener listener )
+    {
+    mJSONStreamParser = streamParser;
+
+    start( listener );
+    }
+
+
   /*****************************************************
    *
    * Processes the response on a background thread.
@@ -118,6 +140,40 @@ public class HTTPJSONRequest extends HTTPRequest
   @Override
   protected void processResponseInBackground( HttpResponse response ) throws Exception
     {
+    int httpStatusCode = response.getStatusLine().getStatusCode();
+
+    if ( mJSONStreamParser != null && httpStatusCode >= 200 && httpStatusCode <= 299 )
+      {
+      JsonReader jsonReader = new JsonReader( new InputStreamReader( response.getEntity().getContent(), "UTF-8" ) );
+
+      // Be as forgiving as the JSON tokener
+      jsonReader.setLenient( true );
+
+      try
+        {
+        mJSONStreamParser.parseResponse( jsonReader );
+        }
+      finally
+        {
+        jsonReader.close();
+        }
+
+      mJSONResponse = new JSONObject();
+
+      return;
+      }
+
+
+    // Some responses, such as 304 Not Modified, have no body at all
+
+    if ( response.getEntity() == null )
+      {
+      mJSONResponse = new JSONObject();
+
+      return;
+      }
+
+
     BufferedReader reader = new BufferedReader( new InputStreamReader( response.getEntity().getContent(), "UTF-8" ) );
     StringBuilder builder = new StringBuilder();
     for ( String line = null; ( line = reader.readLine() ) != null; )
@@ -213,5 +269,18 @@ public class HTTPJSONRequest extends HTTPRequest
     void onError  ( Exception exception );
     }
 
+
+  /*****************************************************
+   *
+   * A parser for streamed responses. This is called on a
+   * background thread, before the response listener. Any
+   * exception is returned to the listener as an error.
+   *
+   *****************************************************/
+  public interface IJSONStreamParser
+    {
+    void parseResponse( JsonReader jsonReader ) throws Exception;
+    }
+
   }
 
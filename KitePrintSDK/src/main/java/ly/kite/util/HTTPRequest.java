@@ -44,13 +44,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 
 import android.content.Context;
 import android.os.AsyncTask;
@@ -87,6 +87,8 @@ public class HTTPRequest
 
   private   IResponseListener    mResponseListener;
 
+  private   Header[]             mResponseHeaders;
+
   private AsyncTask<Void, Void, HTTPRequestResult> mRequestTask;
 
 
@@ -124,6 +126,27 @@ public class HTTPRequest
     }
 
 
+  /*****************************************************
+   *
+   * Returns the first response header with the supplied
+   * name, or null if there is no such header. This may be
+   * called from processResponseInBackground, or once the
+   * listener has been called.
+   *
+   *****************************************************/
+  public String getResponseHeader( String name )
+    {
+    if ( mResponseHeaders == null ) return ( null );
+
+    for ( Header header : mResponseHeaders )
+      {
+      if ( header.getName().equalsIgnoreCase( name ) ) return ( header.getValue() );
+      }
+
+    return ( null );
+    }
+
+
   /*****************************************************
    *
    * Starts the request.
@@ -281,7 +304,7 @@ public class HTTPRequest
       {
       HTTPRequestResult httpRequestResult = new HTTPRequestResult();
 
-      HttpClient httpclient = new DefaultHttpClient();
+      HttpClient      httpclient = HTTPClientAgent.getHttpClient( mApplicationContext );
       HttpRequestBase request    = null;
 
       if ( mHTTPMethod == HttpMethod.GET )
@@ -340,12 +363,23 @@ public class HTTPRequest
 
         httpRequestResult.httpStatusCode = response.getStatusLine().getStatusCode();
 
+        mResponseHeaders = response.getAllHeaders();
+
         processResponseInBackground( response );
+
+        // Read any remaining content, so the connection can go back to the pool
+        HttpEntity entity = response.getEntity();
+
+        if ( entity != null ) entity.consumeContent();
         }
       catch ( Exception exception )
         {
         Log.e( LOG_TAG, "Unable to process response", exception );
 
+        // Don't return a connection in an unknown state to the pool. Aborting
+        // closes it without reading the rest of the body.
+        request.abort();
+
         httpRequestResult.exception = exception;
         }
 
@@ -0,0 +1,208 @@
+/*****************************************************
+ *
+ * JSONReaderUtils.java
+ *
+ *
+ * Modified MIT License
+ *
+ * Copyright (c) 2010-2017 Kite Tech Ltd. https://www.kite.ly
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The software MAY ONLY be used with the Kite Tech Ltd platform and MAY NOT be modified
+ * to be used with any competitor platforms. This means the software MAY NOT be modified 
+ * to place orders with any competitors to Kite Tech Ltd, all orders MUST go through the
+ * Kite Tech Ltd platform servers. 
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ *****************************************************/
+
+///// Package Declaration /////
+
+package ly.kite.util;
+
+
+///// Import(s) /////
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+
+///// Class Declaration /////
+
+/*****************************************************
+ *
+ * This class provides methods for reading parts of a
+ * streamed JSON document into JSON objects, so that
+ * a large document can be processed a piece at a time
+ * rather than all at once.
+ *
+ *****************************************************/
+public class JSONReaderUtils
+  {
+  ////////// Static Constant(s) //////////
+
+  @SuppressWarnings( "unused" )
+  private static final String  LOG_TAG = "JSONReaderUtils";
+
+
+  ////////// Static Variable(s) //////////
+
+
+  ////////// Member Variable(s) //////////
+
+
+  ////////// Static Initialiser(s) //////////
+
+
+  ////////// Static Method(s) //////////
+
+  /*****************************************************
+   *
+   * Reads the next value, which must be an object, into
+   * a JSON object.
+   *
+   *****************************************************/
+  static public JSONObject readObject( JsonReader jsonReader ) throws IOException, JSONException
+    {
+    JSONObject jsonObject = new JSONObject();
+
+    jsonReader.beginObject();
+
+    while ( jsonReader.hasNext() )
+      {
+      String name = jsonReader.nextName();
+
+      jsonObject.put( name, readValue( jsonReader ) );
+      }
+
+    jsonReader.endObject();
+
+    return ( jsonObject );
+    }
+
+
+  /*****************************************************
+   *
+   * Reads the next value, which must be an array, into
+   * a JSON array.
+   *
+   *****************************************************/
+  static public JSONArray readArray( JsonReader jsonReader ) throws IOException, JSONException
+    {
+    JSONArray jsonArray = new JSONArray();
+
+    jsonReader.beginArray();
+
+    while ( jsonReader.hasNext() )
+      {
+      jsonArray.put( readValue( jsonReader ) );
+      }
+
+    jsonReader.endArray();
+
+    return ( jsonArray );
+    }
+
+
+  /*****************************************************
+   *
+   * Reads the next value, of any type, as the type that
+   * would be used by a JSON object.
+   *
+   *****************************************************/
+  static public Object readValue( JsonReader jsonReader ) throws IOException, JSONException
+    {
+    JsonToken token = jsonReader.peek();
+
+    switch ( token )
+      {
+      case BEGIN_OBJECT:
+
+        return ( readObject( jsonReader ) );
+
+      case BEGIN_ARRAY:
+
+        return ( readArray( jsonReader ) );
+
+      case STRING:
+
+        return ( jsonReader.nextString() );
+
+      case NUMBER:
+
+        return ( parseNumber( jsonReader.nextString() ) );
+
+      case BOOLEAN:
+
+        return ( jsonReader.nextBoolean() );
+
+      case NULL:
+
+        jsonReader.nextNull();
+
+        return ( JSONObject.NULL );
+      }
+
+    throw ( new JSONException( "Unexpected token: " + token ) );
+    }
+
+
+  /*****************************************************
+   *
+   * Parses a number in the same way as a JSON tokener:
+   * integers if they fit, otherwise doubles.
+   *
+   *****************************************************/
+  static Number parseNumber( String numberString )
+    {
+    if ( numberString.indexOf( '.' ) < 0 && numberString.indexOf( 'e' ) < 0 && numberString.indexOf( 'E' ) < 0 )
+      {
+      try
+        {
+        long longValue = Long.parseLong( numberString );
+
+        if ( longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE ) return ( (int)longValue );
+
+        return ( longValue );
+        }
+      catch ( NumberFormatException nfe )
+        {
+        // Fall through to a double
+        }
+      }
+
+    return ( Double.valueOf( numberString ) );
+    }
+
+
+  ////////// Constructor(s) //////////
+
+
+  ////////// Method(s) //////////
+
+
+  ////////// Inner Class(es) //////////
+
+  }
@@ -61,6 +61,7 @@ import ly.kite.util.Asset;
 import ly.kite.util.AssetFragment;
 import ly.kite.image.IImageConsumer;
 import ly.kite.image.ImageAgent;
+import ly.kite.image.ImageLoadRequest;
 
 
 ///// Class Declaration /////
@@ -105,6 +106,7 @@ abstract public class AAREImageContainerFrame extends FrameLayout implements IIm
 
   private   String               mPendingImageCategory;
   private   Object               mPendingImageSource;
+  private   ImageLoadRequest     mPendingImageLoadRequest;
 
   private   Object               mExpectedKey;
 
@@ -488,7 +490,7 @@ abstract public class AAREImageContainerFrame extends FrameLayout implements IIm
 
         AssetFragment requestAssetFragment = (AssetFragment) mPendingImageSource;
 
-        ImageAgent.with( getContext() )
+        mPendingImageLoadRequest = ImageAgent.with( getContext() )
                 .load( requestAssetFragment )
                 .reduceColourSpace()
                 .resize( mWidth, mHeight )
@@ -501,7 +503,7 @@ abstract public class AAREImageContainerFrame extends FrameLayout implements IIm
 
         Asset requestAsset = (Asset) mPendingImageSource;
 
-        ImageAgent.with( getContext() )
+        mPendingImageLoadRequest = ImageAgent.with( getContext() )
                 .load( requestAsset )
                 .reduceColourSpace()
                 .resize( mWidth, mHeight )
@@ -514,7 +516,7 @@ abstract public class AAREImageContainerFrame extends FrameLayout implements IIm
 
         URL requestURL = (URL) mPendingImageSource;
 
-        ImageAgent.with( getContext() )
+        mPendingImageLoadRequest = ImageAgent.with( getContext() )
                 .load( requestURL, mPendingImageCategory )
                 .reduceColourSpace()
                 .resize( mWidth, mHeight )
@@ -527,7 +529,7 @@ abstract public class AAREImageContainerFrame extends FrameLayout implements IIm
 
         int drawableResourceId = ( (Integer)mPendingImageSource ).intValue();
 
-        ImageAgent.with( getContext() )
+        mPendingImageLoadRequest = ImageAgent.with( getContext() )
                 .load( drawableResourceId )
                 .reduceColourSpace()
                 .resize( mWidth, mHeight )
@@ -565,6 +567,24 @@ abstract public class AAREImageContainerFrame extends FrameLayout implements IIm
     }
 
 
+  /*****************************************************
+   *
+   * Cancels any outstanding image load request, so that we
+   * don't waste time decoding an image that will never be
+   * displayed (e.g. because the view has been recycled).
+   *
+   *****************************************************/
+  private void cancelPendingImageLoadRequest()
+    {
+    if ( mPendingImageLoadRequest != null )
+      {
+      mPendingImageLoadRequest.cancel();
+
+      mPendingImageLoadRequest = null;
+      }
+    }
+
+
   /*****************************************************
    *
    * Clears the image and sets the key for the next
@@ -575,6 +595,8 @@ abstract public class AAREImageContainerFrame extends FrameLayout implements IIm
     {
     if ( KiteSDK.DEBUG_IMAGE_CONTAINERS ) Log.d( LOG_TAG, "clearForNewImage( expectedKey = " + expectedKey + " )" );
 
+    cancelPendingImageLoadRequest();
+
     clearPendingImage();
 
     setExpectedKey( expectedKey );
@@ -593,6 +615,8 @@ abstract public class AAREImageContainerFrame extends FrameLayout implements IIm
     {
     if ( KiteSDK.DEBUG_IMAGE_CONTAINERS ) Log.d( LOG_TAG, "clearForAnyImage()" );
 
+    cancelPendingImageLoadRequest();
+
     clearPendingImage();
 
     setExpectedKey( ANY_KEY );